@@ -344,7 +344,7 @@ public class DEDetailPopupMenu extends JPopupMenu implements ActionListener,Item
 				DEScrollableMenu hitlistAddMenu = null;
 				DEScrollableMenu hitlistRemoveMenu = null;
 				for (int i = 0; i<hh.getListCount(); i++) {
-					if (record.isFlagSet(hh.getListFlagNo(i))) {
+					if (hh.isListMember(record, i)) {
 						if (hitlistRemoveMenu == null)
 							hitlistRemoveMenu = new DEScrollableMenu("Remove Row From List");
 						addSubmenuItem(hitlistRemoveMenu, hh.getListName(i), REMOVE_FROM_LIST+hh.getListName(i));
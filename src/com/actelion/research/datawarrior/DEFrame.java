@@ -23,6 +23,8 @@ import com.actelion.research.datawarrior.task.DEMacroRecorder;
 import com.actelion.research.datawarrior.task.file.*;
 import com.actelion.research.gui.FileHelper;
 import com.actelion.research.gui.hidpi.HiDPIHelper;
+import com.actelion.research.table.CompoundTableBinaryFile;
+import com.actelion.research.table.CompoundTableLoader;
 import com.actelion.research.table.CompoundTableSaver;
 import com.actelion.research.table.DataDependentPropertyWriter;
 import com.actelion.research.table.RuntimePropertyEvent;
@@ -230,6 +232,18 @@ public class DEFrame extends JFrame implements ApplicationViewFactory,CompoundTa
 	 * @param embedDetails
 	 */
 	public void saveNativeFile(final File file, final boolean visibleOnly, boolean embedDetails) {
+		saveNativeFile(file, visibleOnly, embedDetails, CompoundTableBinaryFile.isBinaryFile(file), CompoundTableLoader.isGZipFile(file));
+		}
+
+	/**
+	 * Saves the frames content into the given file without asking any questions.
+	 * @param file proper file with proper privileges
+	 * @param visibleOnly
+	 * @param embedDetails
+	 * @param binaryFormat whether to use the binary native format instead of the text based one
+	 * @param compress whether to gzip compress the text based native format
+	 */
+	public void saveNativeFile(final File file, final boolean visibleOnly, boolean embedDetails, boolean binaryFormat, boolean compress) {
 		DERuntimeProperties rtp = new DERuntimeProperties(mParentPane);
 		CompoundTableSaver saver = new CompoundTableSaver(this, mParentPane.getTableModel(), mParentPane.getMainPane().getTable()) {
 			public void finalStatus(File file) {
@@ -242,7 +256,7 @@ public class DEFrame extends JFrame implements ApplicationViewFactory,CompoundTa
 		DataDependentPropertyWriter cvpw = new CardViewPositionWriter(getMainFrame().getMainPane());
 		saver.addDataDependentPropertyWriter(clpw);
 		saver.addDataDependentPropertyWriter(cvpw);
-		saver.saveNative(rtp, file, visibleOnly, embedDetails);
+		saver.saveNative(rtp, file, visibleOnly, embedDetails, binaryFormat, compress);
 		}
 
 	/**
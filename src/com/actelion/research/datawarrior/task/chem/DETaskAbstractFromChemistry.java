@@ -25,6 +25,7 @@ import com.actelion.research.chem.reaction.Reaction;
 import com.actelion.research.datawarrior.DEFrame;
 import com.actelion.research.datawarrior.task.ConfigurableTask;
 import com.actelion.research.gui.hidpi.HiDPIHelper;
+import com.actelion.research.table.RowTaskScheduler;
 import com.actelion.research.table.model.CompoundTableModel;
 import info.clearthought.layout.TableLayout;
 
@@ -60,13 +61,14 @@ public abstract class DETaskAbstractFromChemistry extends ConfigurableTask imple
 	private static final String PROPERTY_COORDS3D_COLUMN = "coords3D";
 	private static final String PROPERTY_NEW_COLUMN_NAME = "columnName";
 
+	private static final int ROWS_PER_CHUNK = 16;	// rows claimed at once by a calculation thread
+
 	private JComboBox			mComboBoxStructureColumn, mComboBoxChildColumn;
 	private JTextField[]		mTextFieldColumnName;
 
 	private volatile CompoundTableModel	mTableModel;
 	private volatile int				mChildColumnClass,mChemistryColumn,mChildColumn;
 	private volatile boolean			mUseMultipleCores,mEditableColumnNames;
-	private AtomicInteger				mSMPRecordIndex,mSMPWorkingThreads,mSMPErrorCount;
 
 	/**
 	 *
@@ -492,48 +494,27 @@ public abstract class DETaskAbstractFromChemistry extends ConfigurableTask imple
 	 * @param firstNewColumn -1 if getNewColumnCount() returns 0
 	 */
 	private void finishTaskMultiCore(final int firstNewColumn) {
-		int threadCount = Runtime.getRuntime().availableProcessors();
-		mSMPRecordIndex = new AtomicInteger(mTableModel.getTotalRowCount());
-		mSMPWorkingThreads = new AtomicInteger(threadCount);
-		mSMPErrorCount = new AtomicInteger(0);
-
-		Thread[] t = new Thread[threadCount];
-		for (int i=0; i<threadCount; i++) {
-			t[i] = new Thread("Abstract ChemProp Calculator "+(i+1)) {
-				public void run() {
-					StereoMolecule containerMol = new StereoMolecule();
-					int recordIndex = mSMPRecordIndex.decrementAndGet();
-					while (recordIndex >= 0 && !threadMustDie()) {
-						try {
-							processRow(recordIndex, firstNewColumn, containerMol);
-							}
-						catch (Exception e) {
-							mSMPErrorCount.incrementAndGet();
-							System.out.println("Exception in row "+recordIndex);
-							e.printStackTrace();
-							}
+		final AtomicInteger errorCount = new AtomicInteger(0);
 
-						updateProgress(-1);
-						recordIndex = mSMPRecordIndex.decrementAndGet();
+		// rows are claimed in increasing order, which keeps row ordered output of processRow() flowing
+		RowTaskScheduler.processRows(mTableModel.getTotalRowCount(), ROWS_PER_CHUNK, () -> new StereoMolecule(),
+				(row, containerMol) -> {
+					try {
+						processRow(row, firstNewColumn, containerMol);
 						}
-
-					if (mSMPWorkingThreads.decrementAndGet() == 0) {
-						if (!threadMustDie() && mSMPErrorCount.get() != 0)
-							showErrorCount(mSMPErrorCount.get());
-
-						if (getNewColumnCount() != 0)
-							mTableModel.finalizeNewColumns(firstNewColumn, DETaskAbstractFromChemistry.this);
+					catch (Exception e) {
+						errorCount.incrementAndGet();
+						System.out.println("Exception in row "+row);
+						e.printStackTrace();
 						}
-					}
-				};
-			t[i].setPriority(Thread.MIN_PRIORITY);
-			t[i].start();
-			}
+					},
+				() -> threadMustDie(), count -> updateProgress(count));
+
+		if (!threadMustDie() && errorCount.get() != 0)
+			showErrorCount(errorCount.get());
 
-		// the controller thread must wait until all others are finished
-		// before the next task can begin or the dialog is closed
-		for (int i=0; i<threadCount; i++)
-			try { t[i].join(); } catch (InterruptedException e) {}
+		if (getNewColumnCount() != 0)
+			mTableModel.finalizeNewColumns(firstNewColumn, this);
 		}
 
 	private void showErrorCount(int errorCount) {
@@ -29,6 +29,7 @@ import com.actelion.research.datawarrior.FXConformerDialog;
 import com.actelion.research.datawarrior.task.file.JFilePathLabel;
 import com.actelion.research.gui.FileHelper;
 import com.actelion.research.gui.hidpi.HiDPIHelper;
+import com.actelion.research.table.RowBlockWriter;
 import com.actelion.research.table.model.CompoundTableModel;
 import com.actelion.research.util.DoubleFormat;
 import info.clearthought.layout.TableLayout;
@@ -39,12 +40,8 @@ import org.openmolecules.chem.conf.so.SelfOrganizedConformer;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
-import java.io.BufferedWriter;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.*;
-import java.util.concurrent.SynchronousQueue;
 
 
 public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implements Runnable {
@@ -62,6 +59,8 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 	private static final String PROPERTY_PROTONATION_PH = "protonationPH";
 	private static final String PROPERTY_PROTONATION_SPAN = "protonationSpan";
 	private static final String PROPERTY_STEREO_ISOMER_LIMIT = "stereoIsomerLimit";
+	private static final String PROPERTY_COMPRESS = "compress";
+	private static final String PROPERTY_KEEP_ROW_ORDER = "keepRowOrder";
 
 	private static final String[] TORSION_SOURCE_TEXT = { "From crystallographic database", "Use 60 degree steps" };
 	private static final String[] TORSION_SOURCE_CODE = { "crystallDB", "6steps" };
@@ -98,7 +97,8 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 	private static final int[] FILE_TYPE = { FileHelper.cFileTypeDataWarrior, FileHelper.cFileTypeSDV2, FileHelper.cFileTypeSDV3 };
 
 	private JComboBox			mComboBoxAlgorithm,mComboBoxTorsionSource,mComboBoxMinimize,mComboBoxFileType;
-	private JCheckBox			mCheckBoxExportFile,mCheckBoxPoolConformers,mCheckBoxLargestFragment,mCheckBoxNeutralize,mCheckBoxSkip,mCheckBoxProtonate;
+	private JCheckBox			mCheckBoxExportFile,mCheckBoxPoolConformers,mCheckBoxLargestFragment,mCheckBoxNeutralize,mCheckBoxSkip,mCheckBoxProtonate,
+								mCheckBoxCompress,mCheckBoxKeepRowOrder;
 	private JFilePathLabel		mLabelFileName;
 	private JTextField			mTextFieldMaxCount,mTextFieldSkip,mTextFieldPH,mTextFieldPHSpan;
 	private JButton				mButtonEdit;
@@ -109,9 +109,8 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 	private volatile float		mPH1,mPH2;
 	private volatile int		mAlgorithm,mMinimization,mTorsionSource,mMinimizationErrors,mFileType,mMaxConformers,
 								mStereoIsomerLimit,mIdentifierColumn;
-	private volatile BufferedWriter mFileWriter;
+	private volatile RowBlockWriter mRowWriter;
 	private volatile Map<String,Object> mMMFFOptions;
-	private volatile SynchronousQueue<String> mRowQueue;
 
 	public DETaskAdd3DCoordinates(DEFrame parent) {
 		super(parent, DESCRIPTOR_NONE, false, true);
@@ -148,7 +147,8 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 							{TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED,
 							3*gap, TableLayout.PREFERRED,
 							gap/2, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED,
-							gap/2, TableLayout.PREFERRED, gap/2, TableLayout.PREFERRED, gap/2, TableLayout.PREFERRED} };
+							gap/2, TableLayout.PREFERRED, gap/2, TableLayout.PREFERRED, gap/2, TableLayout.PREFERRED,
+							gap/2, TableLayout.PREFERRED, gap/2, TableLayout.PREFERRED} };
 		ep.setLayout(new TableLayout(size));
 		ep.add(new JLabel("Algorithm:"), "0,0");
 		mComboBoxAlgorithm = new JComboBox(ALGORITHM_TEXT);
@@ -214,6 +214,12 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 		protonationPanel.add(mTextFieldPHSpan);
 		ep.add(protonationPanel, "0,20,4,20");
 
+		mCheckBoxKeepRowOrder = new JCheckBox("Write conformers in row order");
+		ep.add(mCheckBoxKeepRowOrder, "2,22,4,22");
+
+		mCheckBoxCompress = new JCheckBox("Compress file (gzip)");
+		ep.add(mCheckBoxCompress, "2,24,4,24");
+
 		return ep;
 		}
 
@@ -298,6 +304,8 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 				if (mTextFieldPHSpan.getText().length() != 0 && !mTextFieldPHSpan.getText().equals("0"))
 					configuration.setProperty(PROPERTY_PROTONATION_SPAN, mTextFieldPHSpan.getText());
 				}
+			configuration.setProperty(PROPERTY_KEEP_ROW_ORDER, mCheckBoxKeepRowOrder.isSelected()?"true":"false");
+			configuration.setProperty(PROPERTY_COMPRESS, mCheckBoxCompress.isSelected()?"true":"false");
 			}
 
 		return configuration;
@@ -328,6 +336,9 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 		mTextFieldPH.setText(configuration.getProperty(PROPERTY_PROTONATION_PH, "7.4"));
 		mTextFieldPHSpan.setText(configuration.getProperty(PROPERTY_PROTONATION_SPAN, "0"));
 
+		mCheckBoxKeepRowOrder.setSelected("true".equals(configuration.getProperty(PROPERTY_KEEP_ROW_ORDER)));
+		mCheckBoxCompress.setSelected("true".equals(configuration.getProperty(PROPERTY_COMPRESS)));
+
 		enableItems();
 		mComboBoxTorsionSource.setEnabled(ALGORITHM_NEEDS_TORSIONS[mComboBoxAlgorithm.getSelectedIndex()]);
 		}
@@ -348,6 +359,8 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 		mCheckBoxProtonate.setSelected(false);
 		mTextFieldPH.setText("7.4");
 		mTextFieldPHSpan.setText("0");
+		mCheckBoxKeepRowOrder.setSelected(false);
+		mCheckBoxCompress.setSelected(false);
 
 		enableItems();
 		mComboBoxTorsionSource.setEnabled(ALGORITHM_NEEDS_TORSIONS[mComboBoxAlgorithm.getSelectedIndex()]);
@@ -366,6 +379,8 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 		mCheckBoxProtonate.setEnabled(isEnabled && mMarvinAvailable && (!mCheckBoxLargestFragment.isSelected() || !mCheckBoxNeutralize.isSelected()));
 		mTextFieldPH.setEnabled(mCheckBoxProtonate.isEnabled() && mCheckBoxProtonate.isSelected());
 		mTextFieldPHSpan.setEnabled(mCheckBoxProtonate.isEnabled() && mCheckBoxProtonate.isSelected());
+		mCheckBoxKeepRowOrder.setEnabled(isEnabled);
+		mCheckBoxCompress.setEnabled(isEnabled);
 		}
 
 	@Override
@@ -542,8 +557,14 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 			String columnName = getTableModel().getColumnProperty(getChemistryColumn(), CompoundTableConstants.cColumnPropertyRelatedIdentifierColumn);
 			mIdentifierColumn = (columnName == null) ? -1 : getTableModel().findColumn(columnName);
 
+			if ("true".equals(configuration.getProperty(PROPERTY_COMPRESS)) && !fileName.endsWith(".gz"))
+				fileName = fileName.concat(".gz");
+
 			try {
-				mFileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resolvePathVariables(fileName)), "UTF-8"));
+				mRowWriter = new RowBlockWriter(resolvePathVariables(fileName),
+						"true".equals(configuration.getProperty(PROPERTY_COMPRESS)),
+						"true".equals(configuration.getProperty(PROPERTY_KEEP_ROW_ORDER)));
+				mRowWriter.setAbortCondition(() -> threadMustDie());	// cancelled workers skip rows
 
 				if (mFileType == FileHelper.cFileTypeDataWarrior)
 					writeDataWarriorHeader();
@@ -552,39 +573,44 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 				showErrorMessage(ioe.toString());
 				return false;
 				}
-
-			mRowQueue = new SynchronousQueue<>();
-			new Thread(() -> consumeRows()).start();
 			}
 
 		return true;
 		}
 
-	private void consumeRows() {
-		String row;
-		try {
-			while ((row = mRowQueue.take()).length() != 0) {
-				try {
-					mFileWriter.write(row);
-					} catch (IOException ioe) { break; }
-				}
-			} catch (InterruptedException ie) {}
+	@Override
+	public void runTask(Properties configuration) {
+		super.runTask(configuration);
 
+		if (mRowWriter != null)	// if cancelled, postprocess() was not called
+			closeRowWriter();
+		}
+
+	private void closeRowWriter() {
 		try {
-			if (mFileType == FileHelper.cFileTypeDataWarrior)
+			if (threadMustDie())
+				mRowWriter.abort();
+			else if (mFileType == FileHelper.cFileTypeDataWarrior)
 				writeDataWarriorFooter();
 
-			mFileWriter.close();
+			mRowWriter.close();
 			}
 		catch (IOException ioe) {
 			showErrorMessage(ioe.toString());
 			}
+		mRowWriter = null;
 		}
 
 	@Override
 	public void processRow(int row, int firstNewColumn, StereoMolecule mol) throws Exception {
 		if (mFileType != FILE_TYPE_NONE) {
-			addConformersToQueue(row, mol);
+			String records = null;
+			try {
+				records = createConformerRecords(row, mol);
+				}
+			finally {	// ordered writing requires every row
+				mRowWriter.writeRecord(row, records);
+				}
 			}
 		else {
 			addConformerToTable(row, firstNewColumn, mol);
@@ -593,8 +619,8 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 
 	@Override
 	protected void postprocess(int firstNewColumn) {
-		if (mRowQueue != null)
-			try { mRowQueue.put(""); } catch (InterruptedException ie) {}  // to release consuming thread
+		if (mRowWriter != null)
+			closeRowWriter();
 
 		long seconds = (System.currentTimeMillis()-mStartMillis)/1000;
 		System.out.println("Up to "+mMaxConformers+" conformers generated from "+getTableModel().getTotalRowCount()+" molecules in "+seconds+" seconds.");
@@ -754,10 +780,13 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 			}
 		}
 
-	private void addConformersToQueue(int row, StereoMolecule mol) throws Exception {
+	/**
+	 * @return all file records of the row's conformers or null
+	 */
+	private String createConformerRecords(int row, StereoMolecule mol) throws Exception {
 		mol = getChemicalStructure(row, mol);
 		if (mol == null || mol.getAllAtoms() == 0)
-			return;
+			return null;
 
 		if (mLargestFragmentOnly) {
 			mol.stripSmallFragments();
@@ -769,10 +798,7 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 		if (Float.isNaN(mPH1)) {
 			StringBuilder builder = new StringBuilder();
 			addConformersToQueue2(row, -1, mol, builder);
-			if (builder.length() != 0)
-				mRowQueue.put(builder.toString());
-
-			return;
+			return (builder.length() == 0) ? null : builder.toString();
 			}
 
 		double[] basicpKa = new double[3];
@@ -815,8 +841,7 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 			mol.setAtomCharge(pKa[i].atom, pKa[i].isBasic ? 0 : -1);
 			addConformersToQueue2(row, i-i1+1, new StereoMolecule(mol), builder);
 			}
-		if (builder.length() != 0)
-			mRowQueue.put(builder.toString());
+		return (builder.length() == 0) ? null : builder.toString();
 		}
 
 	public static int[] suggestSuperposeAtoms(StereoMolecule mol) {
@@ -1179,53 +1204,57 @@ public class DETaskAdd3DCoordinates extends DETaskAbstractFromStructure implemen
 			}
 		}
 
-	private void writeDataWarriorHeader() throws IOException {
-		mFileWriter.write("<datawarrior-fileinfo>\n");
-		mFileWriter.write("<version=\"3.1\">\n");
-		mFileWriter.write("</datawarrior-fileinfo>\n");
-		mFileWriter.write("<column properties>\n");
-		mFileWriter.write("<columnName=\"Structure\">\n");
-		mFileWriter.write("<columnProperty=\"specialType\tidcode\">\n");
-		mFileWriter.write("<columnName=\"idcoordinates3D\">\n");
-		mFileWriter.write("<columnProperty=\"specialType\tidcoordinates3D\">\n");
-		mFileWriter.write("<columnProperty=\"parent\tStructure\">\n");
-		mFileWriter.write("</column properties>\n");
-		mFileWriter.write("Structure\tidcoordinates3D\tID");
+	private void writeDataWarriorHeader() {
+		StringBuilder header = new StringBuilder();
+		header.append("<datawarrior-fileinfo>\n");
+		header.append("<version=\"3.1\">\n");
+		header.append("</datawarrior-fileinfo>\n");
+		header.append("<column properties>\n");
+		header.append("<columnName=\"Structure\">\n");
+		header.append("<columnProperty=\"specialType\tidcode\">\n");
+		header.append("<columnName=\"idcoordinates3D\">\n");
+		header.append("<columnProperty=\"specialType\tidcoordinates3D\">\n");
+		header.append("<columnProperty=\"parent\tStructure\">\n");
+		header.append("</column properties>\n");
+		header.append("Structure\tidcoordinates3D\tID");
 		if (!Float.isNaN(mPH1))
-			mFileWriter.write("\tProtonation State");
-		mFileWriter.write("\tStereo Isomer");
+			header.append("\tProtonation State");
+		header.append("\tStereo Isomer");
 		if (mMinimization != MINIMIZE_NONE)
-			mFileWriter.write("\tEnergy\tMinimization Error");	// Don't change. These names are used in CompoundTableSaver!!!
-		mFileWriter.write("\n");
+			header.append("\tEnergy\tMinimization Error");	// Don't change. These names are used in CompoundTableSaver!!!
+		header.append("\n");
+		mRowWriter.writeText(header.toString());
 		}
 
-	private void writeDataWarriorFooter() throws IOException {
-		mFileWriter.write("<datawarrior properties>\n");
-		mFileWriter.write("<columnWidth_Table_Energy=\"75\">\n");
-		mFileWriter.write("<columnWidth_Table_ID=\"75\">\n");
-		mFileWriter.write("<columnWidth_Table_Minimization Error=\"75\">\n");
-		mFileWriter.write("<columnWidth_Table_Structure=\"132\">\n");
-		mFileWriter.write("<detailView=\"height[Data]=0.22;height[Structure]=0.30;height[3D-Structure]=0.48\">\n");
-		mFileWriter.write("<filter0=\"#double#\tEnergy\">\n");
-		mFileWriter.write("<mainSplitting=\"0.72\">\n");
-		mFileWriter.write("<mainView=\"Structures\">\n");
-		mFileWriter.write("<mainViewCount=\"2\">\n");
-		mFileWriter.write("<mainViewDockInfo0=\"root\">\n");
-		mFileWriter.write("<mainViewDockInfo1=\"Table\tright\t0.50\">\n");
-		mFileWriter.write("<mainViewName0=\"Table\">\n");
-		mFileWriter.write("<mainViewName1=\"Structures\">\n");
-		mFileWriter.write("<mainViewType0=\"tableView\">\n");
-		mFileWriter.write("<mainViewType1=\"structureView\">\n");
-		mFileWriter.write("<rightSplitting=\"0.16\">\n");
-		mFileWriter.write("<rowHeight_Table=\"80\">\n");
-		mFileWriter.write("<structureGridColumn_Structures=\"Structure\">\n");
-		mFileWriter.write("<structureGridColumns_Structures=\"6\">\n");
-		mFileWriter.write("</datawarrior properties>\n");
+	private void writeDataWarriorFooter() {
+		StringBuilder footer = new StringBuilder();
+		footer.append("<datawarrior properties>\n");
+		footer.append("<columnWidth_Table_Energy=\"75\">\n");
+		footer.append("<columnWidth_Table_ID=\"75\">\n");
+		footer.append("<columnWidth_Table_Minimization Error=\"75\">\n");
+		footer.append("<columnWidth_Table_Structure=\"132\">\n");
+		footer.append("<detailView=\"height[Data]=0.22;height[Structure]=0.30;height[3D-Structure]=0.48\">\n");
+		footer.append("<filter0=\"#double#\tEnergy\">\n");
+		footer.append("<mainSplitting=\"0.72\">\n");
+		footer.append("<mainView=\"Structures\">\n");
+		footer.append("<mainViewCount=\"2\">\n");
+		footer.append("<mainViewDockInfo0=\"root\">\n");
+		footer.append("<mainViewDockInfo1=\"Table\tright\t0.50\">\n");
+		footer.append("<mainViewName0=\"Table\">\n");
+		footer.append("<mainViewName1=\"Structures\">\n");
+		footer.append("<mainViewType0=\"tableView\">\n");
+		footer.append("<mainViewType1=\"structureView\">\n");
+		footer.append("<rightSplitting=\"0.16\">\n");
+		footer.append("<rowHeight_Table=\"80\">\n");
+		footer.append("<structureGridColumn_Structures=\"Structure\">\n");
+		footer.append("<structureGridColumns_Structures=\"6\">\n");
+		footer.append("</datawarrior properties>\n");
+		mRowWriter.writeText(footer.toString());
 		}
 
 	private void buildDataWarriorRecord(StringBuilder builder, String idcode, String coords, String id,
 										int protonationState, int stereoIsomer, String energy, String error) {
-		builder.append(idcode+"\t"+coords+"\t"+id);
+		builder.append(idcode).append('\t').append(coords).append('\t').append(id);
 		if (!Float.isNaN(mPH1)) {
 			builder.append('\t');
 			builder.append(protonationState+1);
@@ -24,10 +24,12 @@ import com.actelion.research.datawarrior.DEFrame;
 import com.actelion.research.datawarrior.DEMainPane;
 import com.actelion.research.datawarrior.DataWarrior;
 import com.actelion.research.datawarrior.task.ConfigurableTask;
+import com.actelion.research.datawarrior.task.data.GraphNodeArranger;
 import com.actelion.research.table.MarkerLabelDisplayer;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableEvent;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.CompoundTablePairSimilarityCalculator;
 import com.actelion.research.table.view.*;
 import com.actelion.research.util.DoubleFormat;
 import info.clearthought.layout.TableLayout;
@@ -37,11 +39,6 @@ import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicIntegerArray;
 
 
 public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements ItemListener,Runnable {
@@ -74,14 +71,9 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 	private JComboBox			mComboBoxDescriptorColumn,mComboBoxActivityColumn,mComboBoxIdentifierColumn,mComboBoxGroupByColumn;
 	private JSlider				mSimilaritySlider;
 	private JCheckBox			mCheckBoxSimilarityAutomatic,mCheckBoxNewSimilarityView,mCheckBoxNewDocument;
-	private ExecutorService		mExecutor;
-	private AtomicIntegerArray  mX,mY,mDX,mDY;
+	private GraphNodeArranger	mArranger;
 	private int[]				mNeighborCount;
 	private ArrayList<SimilarPair> mPairList;
-	private Integer[]			mSortedID;
-	private SMPWorker[]			mSMPWorker;
-	private AtomicInteger		mSMPRecordIndex,mSMPPairCount,mSMPPairIndex,mSMPMaxSali;
-	private CountDownLatch		mSMPDoneSignal;
 
 	public DETaskAnalyseActivityCliffs(DEFrame parent, DataWarrior application) {
 		super(parent, true);
@@ -415,79 +407,21 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 		final int rowCount = mSourceTableModel.getTotalRowCount();
 		mPairList = new ArrayList<SimilarPair>();
 
-		startProgress((activityColumn == -1) ? "Calculating Similarities..." : "Calculating Activity Cliffs...", 0, (rowCount-1)/2);
-		float maxSali = 0f;
-		final AtomicIntegerArray similarityCount = new AtomicIntegerArray(100-MIN_SIMILARITY+1);
-
-		int threadCount = Runtime.getRuntime().availableProcessors();
-		mSMPRecordIndex = new AtomicInteger(rowCount);
-		mSMPPairCount = new AtomicInteger(0);
-		mSMPDoneSignal = new CountDownLatch(threadCount);
-
-		mSMPMaxSali = new AtomicInteger(Float.floatToIntBits(0.0f));
-
-		for (int i=0; i<threadCount; i++) {
-			Thread t = new Thread("SALI Similarity Calculator "+(i+1)) {
-				public void run() {
-					int row2 = mSMPRecordIndex.decrementAndGet();
-					while (row2 >= 1) {
-						CompoundRecord r2 = mSourceTableModel.getTotalRecord(row2);
-						if (r2.getData(descriptorColumn) != null) {
-							for (int row1=0; row1<row2 && !threadMustDie(); row1++) {
-								if (mSMPPairCount.incrementAndGet() % rowCount == 0)
-									updateProgress(-1);
-	
-								CompoundRecord r1 = mSourceTableModel.getTotalRecord(row1);
-								if (r1.getData(descriptorColumn) != null) {
-									float similarity = mSourceTableModel.getDescriptorSimilarity(r1, r2, descriptorColumn);
-									if (similarity >= initialSimilarityLimit-0.004999) {	// -0.005 (adapted for rounding problem) to have a complete bin
-										similarityCount.incrementAndGet((int)(100*similarity+0.5-MIN_SIMILARITY));
-
-										boolean calculateSALI = (activityColumn != -1
-												  && !Double.isNaN(r1.getDouble(activityColumn))
-												  && !Double.isNaN(r2.getDouble(activityColumn))
-												  && (groupByColumn == -1
-												   || Arrays.equals((byte[])r1.getData(groupByColumn),
-														   			(byte[])r2.getData(groupByColumn))));
-
-										if (calculateSALI) {
-											float activityDif = Math.abs(r1.getDouble(activityColumn) - r2.getDouble(activityColumn));
-											float saliValue = activityDif / (1.0f - similarity);
-											if (!Double.isInfinite(saliValue)) {
-												int maxSali = mSMPMaxSali.get();
-												while (Float.intBitsToFloat(maxSali) < saliValue) {
-													if (mSMPMaxSali.compareAndSet(maxSali, Float.floatToIntBits(saliValue)))
-														break;
-													maxSali = mSMPMaxSali.get();
-													}
-												}
-		   									synchronized(mPairList) {
-												mPairList.add(new SimilarPair(row1, row2, activityDif, similarity, saliValue));
-												}
-											}
-										else {
-											synchronized(mPairList) {
-												mPairList.add(new SimilarPair(row1, row2, Float.NaN, similarity, Float.NaN));
-												}
-											}
-										}
-									}
-								}
-							}
+		CompoundTablePairSimilarityCalculator calculator = new CompoundTablePairSimilarityCalculator(mSourceTableModel, descriptorColumn);
+		startProgress((activityColumn == -1) ? "Calculating Similarities..." : "Calculating Activity Cliffs...", 0, calculator.getTilePairCount());
 
-						row2 = mSMPRecordIndex.decrementAndGet();
-						}
-					mSMPDoneSignal.countDown();
-					}
-				};
-			t.setPriority(Thread.MIN_PRIORITY);
-			t.start();
-			}
+		// -0.005 (adapted for rounding problem) to have a complete bin
+		ArrayList<SALIPairConsumer> consumerList = calculator.calculate(initialSimilarityLimit-0.004999f,
+				() -> new SALIPairConsumer(activityColumn, groupByColumn), this);
 
-		try {
-			mSMPDoneSignal.await();
+		float maxSali = 0f;
+		int[] similarityCount = new int[100-MIN_SIMILARITY+1];
+		for (SALIPairConsumer consumer:consumerList) {
+			mPairList.addAll(consumer.pairList);
+			for (int i=0; i<similarityCount.length; i++)
+				similarityCount[i] += consumer.similarityCount[i];
+			maxSali = Math.max(maxSali, consumer.maxSali);
 			}
-		catch (InterruptedException e) {}
 
 		float optSimilarityLimit = initialSimilarityLimit;
 		if (automaticSimilarityLimit) {	// determine reasonable limit and remove sali pairs below this
@@ -495,7 +429,7 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 			if (mPairList.size() > desiredPairCount) {
 				int pairCount = 0;
 				for (int i=100-MIN_SIMILARITY; i>0; i--) {
-					pairCount += similarityCount.get(i);
+					pairCount += similarityCount[i];
 					if (pairCount > desiredPairCount) {
 						optSimilarityLimit = (float)(MIN_SIMILARITY+i)/100f;
 						break;
@@ -594,114 +528,20 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 				}
 			}
 
-		mX = null;
-		mY = null;
+		mArranger = null;
 		final boolean addCoords = configuration.getProperty(PROPERTY_NEW_VIEW, "false").equals("true");
 		if (!threadMustDie() && addCoords) {
 			startProgress("Calculating similarity based positions...", 0, VIEW_CYCLE_COUNT);
 
-			if (threadCount != 1) {
-				mExecutor = Executors.newFixedThreadPool(threadCount);
-				mSMPWorker = new SMPWorker[threadCount];
-				for (int t=0; t<threadCount; t++)
-					mSMPWorker[t] = new SMPWorker();
-				}
-
-			mX = new AtomicIntegerArray(rowCount);
-			mY = new AtomicIntegerArray(rowCount);
-			for (int row=0; row<rowCount; row++) {
-				mX.set(row, Float.floatToIntBits((float)Math.random()));
-				mY.set(row, Float.floatToIntBits((float)Math.random()));
-				}
-
-			mDX = new AtomicIntegerArray(rowCount);
-			mDY = new AtomicIntegerArray(rowCount);
-
-			mSMPPairIndex = new AtomicInteger(0);
-			mSMPRecordIndex = new AtomicInteger(0);
-
-			mSortedID = new Integer[rowCount];
-			for (int row=0; row<rowCount; row++)
-				mSortedID[row] = new Integer(row);
-
-			int zero = Float.floatToIntBits(0.0f);
-
-			for (int cycle=0; cycle<VIEW_CYCLE_COUNT; cycle++) {
-				if (threadMustDie())
-					break;
-				updateProgress(cycle);
-
-				Arrays.sort(mSortedID, new Comparator<Integer>() {
-					@Override
-					public int compare(Integer i1, Integer i2) {
-						float x1 = Float.intBitsToFloat(mX.get(i1.intValue()));
-						float x2 = Float.intBitsToFloat(mX.get(i2.intValue()));
-						return x1 < x2 ? -1	: x1 == x2 ? 0 : 1;
-						}
-					} );
-
-				for (int i=0; i<rowCount; i++) {
-					mDX.set(i, zero);
-					mDY.set(i, zero);
-					}
-
-				mSMPPairIndex.set(0);
-				mSMPRecordIndex.set(0);
-
-				if (threadCount != 1) {
-					optimizeCoordinatesSMP(cycle);
-					}
-				else {
-					optimizeCoordinates(cycle);
-					}
-
-				for (int i=0; i<rowCount; i++) {
-					mX.set(i, Float.floatToIntBits(Math.min(Math.max(
-							Float.intBitsToFloat(mX.get(i))+Float.intBitsToFloat(mDX.get(i)), 0f), 1.0f)));
-					mY.set(i, Float.floatToIntBits(Math.min(Math.max(
-							Float.intBitsToFloat(mY.get(i))+Float.intBitsToFloat(mDY.get(i)), 0f), 1.0f)));
-					}
+			int[] edgeNode1 = new int[mPairList.size()];
+			int[] edgeNode2 = new int[mPairList.size()];
+			for (int i=0; i<mPairList.size(); i++) {
+				edgeNode1[i] = mPairList.get(i).row1;
+				edgeNode2[i] = mPairList.get(i).row2;
 				}
-			}
-
-		if (!threadMustDie() && addCoords) {
-			startProgress("Cleaning Positions...", 0, 0);
-			Arrays.sort(mSortedID, new Comparator<Integer>() {
-				@Override
-				public int compare(Integer i1, Integer i2) {
-					float x1 = Float.intBitsToFloat(mX.get(i1.intValue()))-0.5f;
-					float y1 = Float.intBitsToFloat(mY.get(i1.intValue()))-0.5f;
-					float d1 = (float)Math.sqrt(x1*x1+y1*y1);
-					float x2 = Float.intBitsToFloat(mX.get(i2.intValue()))-0.5f;
-					float y2 = Float.intBitsToFloat(mY.get(i2.intValue()))-0.5f;
-					float d2 = (float)Math.sqrt(x2*x2+y2*y2);
-					return d1 < d2 ? -1	: d1 == d2 ? 0 : 1;
-					}
-				} );
-			for (int i=0; i<rowCount; i++) {
-				int row = mSortedID[i].intValue();
-				float x = Float.intBitsToFloat(mX.get(row))-0.5f;
-				float y = Float.intBitsToFloat(mY.get(row))-0.5f;
-
-				double a;
-				if (y != 0f) {
-					a = (float)Math.atan(x/y);
-					if (y < 0) {
-						if (x < 0)
-							a -= Math.PI;
-						else
-							a += Math.PI;
-						}
-					}
-				else {
-					a = (x > 0f) ? (float)Math.PI/2 : -(float)Math.PI/2;
-					}
 
-				x = (float)(Math.sqrt((0.5f+i)/rowCount) * Math.sin(a));
-				y = (float)(Math.sqrt((0.5f+i)/rowCount) * Math.cos(a));
-				mX.set(row, Float.floatToIntBits(x));
-				mY.set(row, Float.floatToIntBits(y));
-				}
+			mArranger = new GraphNodeArranger(rowCount, edgeNode1, edgeNode2);
+			mArranger.arrange(VIEW_CYCLE_COUNT, this);
 			}
 
 		if (!threadMustDie()) {
@@ -767,8 +607,8 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 					}
 
 				if (addCoords) {
-					mSourceTableModel.setTotalValueAt(""+Float.intBitsToFloat(mX.get(row)), row, column++);
-					mSourceTableModel.setTotalValueAt(""+Float.intBitsToFloat(mY.get(row)), row, column++);
+					mSourceTableModel.setTotalValueAt(""+mArranger.getX(row), row, column++);
+					mSourceTableModel.setTotalValueAt(""+mArranger.getY(row), row, column++);
 					}
 
 				if (saliColumn != -1 && sali[row] != null)
@@ -783,8 +623,7 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 
 			sali = null;
 			identifier = null;
-			mX = null;
-			mY = null;
+			mArranger = null;
 
 			if (addCoords || activityColumn != -1) {
 				final float similarityColorMin = 1f-2f*(1f-optSimilarityLimit);
@@ -963,117 +802,6 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 			}
 		}
 
-	private void optimizeCoordinatesSMP(int cycle) {
-		CountDownLatch doneSignal = new CountDownLatch(mSMPWorker.length);
-		for (SMPWorker w:mSMPWorker) {
-			w.initialize(doneSignal, cycle);
-			mExecutor.execute(w);
-			}
-		try {
-			doneSignal.await();
-			}
-		catch (InterruptedException e) {}
-		}
-
-	private void optimizeCoordinates(int cycle) {
-		int rowCount = mX.length();
-		float minDistance = 1.0f / (float)Math.sqrt(rowCount);
-		float cycleState = (float)cycle / (float)VIEW_CYCLE_COUNT;
-		float cycleMinDistance = cycleState*(2.0f-cycleState) * minDistance;
-
-		float attractionCycleFactor = 0.8f * (1.0f - cycleState) * ((cycleState < 0.5) ? 0.5f : (1.0f - cycleState));
-		float repulsionCycleFactor = (cycleState < 0.5) ? 0.5f : (1.0f - cycleState);
-
-		int current,updated;
-
-		while (true) {
-			int listIndex = mSMPPairIndex.getAndIncrement();
-			if (listIndex >= mPairList.size())
-				break;
-
-			SimilarPair sp = mPairList.get(listIndex);
-			float dx = Float.intBitsToFloat(mX.get(sp.row2))-Float.intBitsToFloat(mX.get(sp.row1));
-			float dy = Float.intBitsToFloat(mY.get(sp.row2))-Float.intBitsToFloat(mY.get(sp.row1));
-			float distance = (float)Math.sqrt(dx*dx+dy*dy);
-// reducing minDistance with higher sp.attraction (i.e. similarity) indeed more often puts closest neighbors in the first shell,
-// but comes with the price of putting other neighbors in third and even forth shell, while some positions in 2nd and 3rd shell are
-// occupied with rwcords not being a neighbor at all. Finally, it is not worth it.
-//			float strengthAdaptedMinDistance = minDistance + 2f * (0.5f - sp.attraction) * minDistance;
-//			float shift = distance - strengthAdaptedMinDistance;
-			float shift = distance - minDistance;
-			if (shift > 0) {
-				dx *= shift/distance;
-				dy *= shift/distance;
-				float neighborFactor1 = (mNeighborCount[sp.row1] > 4) ? 4.0f / mNeighborCount[sp.row1] : 1.0f;
-				float neighborFactor2 = (mNeighborCount[sp.row2] > 4) ? 4.0f / mNeighborCount[sp.row2] : 1.0f;
-
-				do {
-					current = mDX.get(sp.row1);
-					updated = Float.floatToIntBits(Float.intBitsToFloat(current) + dx * attractionCycleFactor * neighborFactor1);
-					} while (!mDX.compareAndSet(sp.row1, current, updated));
-				do {
-					current = mDY.get(sp.row1);
-					updated = Float.floatToIntBits(Float.intBitsToFloat(current) + dy * attractionCycleFactor * neighborFactor1);
-					} while (!mDY.compareAndSet(sp.row1, current, updated));
-				do {
-					current = mDX.get(sp.row2);
-					updated = Float.floatToIntBits(Float.intBitsToFloat(current) - dx * attractionCycleFactor * neighborFactor2);
-					} while (!mDX.compareAndSet(sp.row2, current, updated));
-				do {
-					current = mDY.get(sp.row2);
-					updated = Float.floatToIntBits(Float.intBitsToFloat(current) - dy * attractionCycleFactor * neighborFactor2);
-					} while (!mDY.compareAndSet(sp.row2, current, updated));
-				}
-			}
-
-		while (true) {
-			int i = mSMPRecordIndex.getAndIncrement();
-			if (i >= rowCount-1)
-				break;
-
-			int row1 = mSortedID[i].intValue();
-			for (int j=i+1; j<rowCount; j++) {
-				int row2 = mSortedID[j].intValue();
-				float dx = Float.intBitsToFloat(mX.get(row2))-Float.intBitsToFloat(mX.get(row1));
-				if (Math.abs(dx) >= cycleMinDistance)
-					break;
-
-				float dy = Float.intBitsToFloat(mY.get(row2))-Float.intBitsToFloat(mY.get(row1));
-				if (Math.abs(dy) < cycleMinDistance) {
-					double distance = Math.sqrt(dx*dx+dy*dy);
-					if (distance < cycleMinDistance) {
-						if (distance == 0.0) {
-							double angle = 2.0 * Math.PI * Math.random();
-							dx = (float)Math.sin(angle) * cycleMinDistance;
-							dy = (float)Math.cos(angle) * cycleMinDistance;
-							}
-						else {
-							double shift = cycleMinDistance - distance;
-							dx *= shift/distance;
-							dy *= shift/distance;
-							}
-						do {
-							current = mDX.get(row1);
-							updated = Float.floatToIntBits(Float.intBitsToFloat(current) - dx * repulsionCycleFactor);
-							} while (!mDX.compareAndSet(row1, current, updated));
-						do {
-							current = mDY.get(row1);
-							updated = Float.floatToIntBits(Float.intBitsToFloat(current) - dy * repulsionCycleFactor);
-							} while (!mDY.compareAndSet(row1, current, updated));
-						do {
-							current = mDX.get(row2);
-							updated = Float.floatToIntBits(Float.intBitsToFloat(current) + dx * repulsionCycleFactor);
-							} while (!mDX.compareAndSet(row2, current, updated));
-						do {
-							current = mDY.get(row2);
-							updated = Float.floatToIntBits(Float.intBitsToFloat(current) + dy * repulsionCycleFactor);
-							} while (!mDY.compareAndSet(row2, current, updated));
-						}
-					}
-				}
-			}
-		}
-
 	private String addValue(String oldValue, String value) {
 		return (oldValue == null) ? value : oldValue + CompoundTableModel.cEntrySeparator + value;
 		}
@@ -1095,23 +823,42 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 		return mSourceTableModel.isColumnTypeCategory(column);
 		}
 
-	private class SMPWorker implements Runnable {
-		private CountDownLatch	mDoneSignal;
-		private int				mCycle;
-
-		private SMPWorker() {
-			}
-
-		public void initialize(CountDownLatch doneSignal, int cycle) {
-			mDoneSignal = doneSignal;
-			mCycle = cycle;
-			
-			}
-
-		public void run() {
-			optimizeCoordinates(mCycle);
-
-			mDoneSignal.countDown();
+	private class SALIPairConsumer implements CompoundTablePairSimilarityCalculator.PairConsumer {
+		private int activityColumn,groupByColumn;
+		private ArrayList<SimilarPair> pairList;
+		private int[] similarityCount;
+		private float maxSali;
+
+		public SALIPairConsumer(int activityColumn, int groupByColumn) {
+			this.activityColumn = activityColumn;
+			this.groupByColumn = groupByColumn;
+			this.pairList = new ArrayList<SimilarPair>();
+			this.similarityCount = new int[100-MIN_SIMILARITY+1];
+			}
+
+		@Override
+		public void addPair(int row1, int row2, float similarity) {
+			similarityCount[(int)(100*similarity+0.5-MIN_SIMILARITY)]++;
+
+			CompoundRecord r1 = mSourceTableModel.getTotalRecord(row1);
+			CompoundRecord r2 = mSourceTableModel.getTotalRecord(row2);
+			boolean calculateSALI = (activityColumn != -1
+								  && !Double.isNaN(r1.getDouble(activityColumn))
+								  && !Double.isNaN(r2.getDouble(activityColumn))
+								  && (groupByColumn == -1
+								   || Arrays.equals((byte[])r1.getData(groupByColumn),
+												   (byte[])r2.getData(groupByColumn))));
+
+			if (calculateSALI) {
+				float activityDif = Math.abs(r1.getDouble(activityColumn) - r2.getDouble(activityColumn));
+				float saliValue = activityDif / (1.0f - similarity);
+				if (!Double.isInfinite(saliValue))
+					maxSali = Math.max(maxSali, saliValue);
+				pairList.add(new SimilarPair(row1, row2, activityDif, similarity, saliValue));
+				}
+			else {
+				pairList.add(new SimilarPair(row1, row2, Float.NaN, similarity, Float.NaN));
+				}
 			}
 		}
 
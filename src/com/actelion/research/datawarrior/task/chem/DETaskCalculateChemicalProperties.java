@@ -27,6 +27,7 @@ import com.actelion.research.datawarrior.DETableView;
 import com.actelion.research.datawarrior.task.ConfigurableTask;
 import com.actelion.research.gui.hidpi.HiDPIHelper;
 import com.actelion.research.table.CompoundTableColorHandler;
+import com.actelion.research.table.RowTaskScheduler;
 import com.actelion.research.table.model.CompoundTableModel;
 import com.actelion.research.table.view.VisualizationColor;
 import com.actelion.research.util.DoubleFormat;
@@ -69,6 +70,8 @@ public class DETaskCalculateChemicalProperties extends ConfigurableTask {
 	private static final int PREDICTOR_FLAG_NASTY_FUNCTIONS	= (1 << PREDICTOR_NASTY_FUNCTIONS);
 	private static final int PREDICTOR_FLAG_FLEXIBILITY		= (1 << PREDICTOR_FLEXIBILITY);
 
+	private static final int ROWS_PER_CHUNK = 16;	// rows claimed at once by a calculation thread
+
 	private static final int PROPERTY_COUNT = 63;
 
 	private static final int TOTAL_WEIGHT = 0;
@@ -166,7 +169,6 @@ public class DETaskCalculateChemicalProperties extends ConfigurableTask {
 	private JComboBox					mComboBoxStructureColumn;
 	private JTabbedPane					mTabbedPane;
 	private DEPropertyGUI[]				mPropertyGUI;
-	private AtomicInteger				mSMPRecordIndex,mSMPWorkingThreads,mSMPErrorCount;
 
 	public DETaskCalculateChemicalProperties(DEFrame parent) {
 		super(parent, true);
@@ -642,46 +644,24 @@ public class DETaskCalculateChemicalProperties extends ConfigurableTask {
 		}
 
 	private void finishTaskMultiCore(final int firstNewColumn) {
-		int threadCount = Runtime.getRuntime().availableProcessors();
-		mSMPRecordIndex = new AtomicInteger(mTableModel.getTotalRowCount());
-		mSMPWorkingThreads = new AtomicInteger(threadCount);
-		mSMPErrorCount = new AtomicInteger(0);
-
-		Thread[] t = new Thread[threadCount];
-		for (int i=0; i<threadCount; i++) {
-			t[i] = new Thread("Chemical Property Calculator "+(i+1)) {
-				public void run() {
-					StereoMolecule containerMol = new StereoMolecule();
-					int recordIndex = mSMPRecordIndex.decrementAndGet();
-					while (recordIndex >= 0 && !threadMustDie()) {
-						try {
-							processRow(recordIndex, firstNewColumn, containerMol);
-							}
-						catch (Exception e) {
-							mSMPErrorCount.incrementAndGet();
-							e.printStackTrace();
-							}
+		final AtomicInteger errorCount = new AtomicInteger(0);
 
-						updateProgress(-1);
-						recordIndex = mSMPRecordIndex.decrementAndGet();
+		RowTaskScheduler.processRows(mTableModel.getTotalRowCount(), ROWS_PER_CHUNK, () -> new StereoMolecule(),
+				(row, containerMol) -> {
+					try {
+						processRow(row, firstNewColumn, containerMol);
 						}
-
-					if (mSMPWorkingThreads.decrementAndGet() == 0) {
-						if (!threadMustDie() && mSMPErrorCount.get() != 0)
-							showErrorMessage("The task '"+TASK_NAME+"' failed on "+mSMPErrorCount.get()+" molecules.");
-
-   						finalizeTableModel(firstNewColumn);
+					catch (Exception e) {
+						errorCount.incrementAndGet();
+						e.printStackTrace();
 						}
-					}
-				};
-			t[i].setPriority(Thread.MIN_PRIORITY);
-			t[i].start();
-			}
+					},
+				() -> threadMustDie(), count -> updateProgress(count));
 
-		// the controller thread must wait until all others are finished
-		// before the next task can begin or the dialog is closed
-		for (int i=0; i<threadCount; i++)
-			try { t[i].join(); } catch (InterruptedException e) {}
+		if (!threadMustDie() && errorCount.get() != 0)
+			showErrorMessage("The task '"+TASK_NAME+"' failed on "+errorCount.get()+" molecules.");
+
+		finalizeTableModel(firstNewColumn);
 		}
 
 	private void finalizeTableModel(int firstNewColumn) {
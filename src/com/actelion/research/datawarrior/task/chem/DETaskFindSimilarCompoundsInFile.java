@@ -32,6 +32,7 @@ import com.actelion.research.gui.VerticalFlowLayout;
 import com.actelion.research.table.CompoundTableSaver;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.CompoundTableSimilarityIndex;
 import com.actelion.research.util.ByteArrayComparator;
 import com.actelion.research.util.DoubleFormat;
 import info.clearthought.layout.TableLayout;
@@ -916,6 +917,21 @@ public class DETaskFindSimilarCompoundsInFile extends ConfigurableTask implement
 		int[] matchCount = new int[mTableModel.getTotalRowCount()];
 		float[] maxSimilarity = isDescriptor ? new float[mTableModel.getTotalRowCount()] : null;
 
+		// for binary fingerprints the similarity index only compares rows, which may reach the similarity limit
+		CompoundTableSimilarityIndex similarityIndex = (isDescriptor && similarityLimit > 0f) ? mTableModel.getSimilarityIndex(chemColumn) : null;
+		int[] idToRow = null;
+		float[] similarityByID = null;
+		if (similarityIndex != null) {
+			idToRow = new int[mTableModel.getTotalRowCount()];
+			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
+				int id = mTableModel.getTotalRecord(row).getID();
+				if (id >= idToRow.length)
+					idToRow = Arrays.copyOf(idToRow, id+1);
+				idToRow[id] = row;
+				}
+			similarityByID = new float[idToRow.length];
+			}
+
 	//try {
 		int rowCount = parser.getRowCount();
 		startProgress("Processing Compounds From File...", 0, (rowCount == -1) ? 0 : rowCount);
@@ -975,15 +991,27 @@ public class DETaskFindSimilarCompoundsInFile extends ConfigurableTask implement
 					try { t[i].join(); } catch (InterruptedException ie) {}
 				}
 
+			int[] candidateRow = null;
+			if (similarityIndex != null && descriptor instanceof long[]) {
+				int[] candidateID = similarityIndex.getSimilarRecordIDs((long[])descriptor, similarityLimit, similarityByID);
+				candidateRow = new int[candidateID.length];
+				for (int i=0; i<candidateID.length; i++)
+					candidateRow[i] = idToRow[candidateID[i]];
+				Arrays.sort(candidateRow);
+				}
+
 			boolean isSimilar = false;
 			byte[] idcodeBytes = (isDescriptor || needsHash) ? null : idcode.getBytes();
 
-			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
+			int comparedRowCount = (candidateRow != null) ? candidateRow.length : mTableModel.getTotalRowCount();
+			for (int r=0; r<comparedRowCount; r++) {
+				int row = (candidateRow != null) ? candidateRow[r] : r;
 				CompoundRecord record = mTableModel.getTotalRecord(row);
 
 				float similarity = 0;
 				if (isDescriptor) {
-					similarity = (similarityList != null) ? similarityList[row]
+					similarity = (candidateRow != null) ? similarityByID[record.getID()]
+							: (similarityList != null) ? similarityList[row]
 							: dh.getSimilarity(descriptor, record.getData(chemColumn));
 					}
 				else if (needsHash) {
@@ -18,10 +18,8 @@
 
 package com.actelion.research.datawarrior.task.chem;
 
+import java.util.ArrayList;
 import java.util.Properties;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLongArray;
 
 import com.actelion.research.chem.descriptor.*;
 import com.actelion.research.chem.descriptor.DescriptorHandlerIntVector;
@@ -31,6 +29,7 @@ import com.actelion.research.datawarrior.task.AbstractTaskWithoutConfiguration;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableEvent;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.CompoundTablePairSimilarityCalculator;
 
 
 public class DETestExtractPairwiseCompoundSimilarities extends AbstractTaskWithoutConfiguration {
@@ -39,8 +38,6 @@ public class DETestExtractPairwiseCompoundSimilarities extends AbstractTaskWitho
 	private DataWarrior			mApplication;
 	private DEFrame				mTargetFrame;
     private CompoundTableModel	mSourceTableModel;
-    private AtomicInteger		mSMPRecordIndex,mSMPPairCount;
-    private CountDownLatch		mSMPDoneSignal;
 
 	public DETestExtractPairwiseCompoundSimilarities(DEFrame parent, DataWarrior application) {
 		super(parent, true);
@@ -102,74 +99,23 @@ public class DETestExtractPairwiseCompoundSimilarities extends AbstractTaskWitho
 			if (qualifiesAsDescriptorColumn(column))
 				descriptorColumn[descriptorCount++] = column;
 
-		final int rowCount = mSourceTableModel.getTotalRowCount();
-
-		startProgress("Calculating Similarities...", 0, (rowCount-1)/2);
-		final AtomicLongArray[] similarityCount = new AtomicLongArray[descriptorCount];
-		final AtomicLongArray[][] ySimilaritySum = new AtomicLongArray[descriptorCount][(descriptorCount)];
-		for (int i=0; i<descriptorCount; i++)
-			similarityCount[i] = new AtomicLongArray(101);
-		for (int i=0; i<descriptorCount; i++)
-			for (int j=0; j<descriptorCount; j++)
-				if (i != j)
-					ySimilaritySum[i][j] = new AtomicLongArray(101);
-
-    	int threadCount = Runtime.getRuntime().availableProcessors();
-    	mSMPRecordIndex = new AtomicInteger(rowCount);
-    	mSMPPairCount = new AtomicInteger(0);
-    	mSMPDoneSignal = new CountDownLatch(threadCount);
-
-        for (int i=0; i<threadCount; i++) {
-    		Thread t = new Thread("Similarity Calculator "+(i+1)) {
-    			public void run() {
-    				int row2 = mSMPRecordIndex.decrementAndGet();
-    				float[] similarity = new float[descriptorColumn.length];
-    				while (row2 >= 1) {
-    					CompoundRecord r2 = mSourceTableModel.getTotalRecord(row2);
-    					for (int row1=0; row1<row2 && !threadMustDie(); row1++) {
-    						if (mSMPPairCount.incrementAndGet() % rowCount == 0)
-    							updateProgress(-1);
-
-    						boolean failed = false;
-    						for (int i=0; i<descriptorColumn.length; i++) {
-    							similarity[i] = Float.NaN;
-	    						CompoundRecord r1 = mSourceTableModel.getTotalRecord(row1);
-								if (r1.getData(descriptorColumn[i]) != null
-								 && r2.getData(descriptorColumn[i]) != null)
-									similarity[i] = mSourceTableModel.getDescriptorSimilarity(r1, r2, descriptorColumn[i]);
-								if (Float.isNaN(similarity[i])) {
-									failed = true;
-									break;
-									}
-								}
-
-    						if (!failed) {
-        						for (int i=0; i<descriptorColumn.length; i++) {
-        							int countIndex = (int)(100f*similarity[i]+0.5);
-        							similarityCount[i].incrementAndGet(countIndex);
-            						for (int j=0; j<descriptorColumn.length; j++) {
-            							if (i != j) {
-            								ySimilaritySum[i][j].addAndGet(countIndex, (long)(100f*similarity[j]+0.5));
-            								}
-            							}
-        							}
-    							}
-    						}
-
-    					row2 = mSMPRecordIndex.decrementAndGet();
-    					}
-    				mSMPDoneSignal.countDown();
-    				}
-    			};
-    		t.setPriority(Thread.MIN_PRIORITY);
-    		t.start();
-    		}
-
-		try {
-			mSMPDoneSignal.await();
+		// all pairs are enumerated via the first descriptor; the consumers calculate all others
+		CompoundTablePairSimilarityCalculator calculator = new CompoundTablePairSimilarityCalculator(mSourceTableModel, descriptorColumn[0]);
+		startProgress("Calculating Similarities...", 0, calculator.getTilePairCount());
+		ArrayList<SimilarityHistogramConsumer> consumerList = calculator.calculate(0f,
+				() -> new SimilarityHistogramConsumer(descriptorColumn), this);
+
+		long[][] similarityCount = new long[descriptorCount][101];
+		long[][][] ySimilaritySum = new long[descriptorCount][descriptorCount][101];
+		for (SimilarityHistogramConsumer consumer:consumerList) {
+			for (int i=0; i<descriptorCount; i++) {
+				for (int k=0; k<=100; k++) {
+					similarityCount[i][k] += consumer.similarityCount[i][k];
+					for (int j=0; j<descriptorCount; j++)
+						ySimilaritySum[i][j][k] += consumer.ySimilaritySum[i][j][k];
+					}
+				}
 			}
-		catch (InterruptedException e) {}
-
 
 		if (!threadMustDie()) {
 			startProgress("Populating new document...", 0, 0);
@@ -191,11 +137,11 @@ public class DETestExtractPairwiseCompoundSimilarities extends AbstractTaskWitho
 							targetTableModel.setTotalValueAt(xShortName, row, 0);
 							targetTableModel.setTotalValueAt(""+k, row, 1);
 							targetTableModel.setTotalValueAt(yShortName, row, 2);
-							if (similarityCount[i].get(k) == 0)
+							if (similarityCount[i][k] == 0)
 								targetTableModel.setTotalValueAt("", row, 3);
 							else
-								targetTableModel.setTotalValueAt(""+ySimilaritySum[i][j].get(k)/similarityCount[i].get(k), row, 3);
-							targetTableModel.setTotalValueAt(""+similarityCount[i].get(k), row, 4);
+								targetTableModel.setTotalValueAt(""+ySimilaritySum[i][j][k]/similarityCount[i][k], row, 3);
+							targetTableModel.setTotalValueAt(""+similarityCount[i][k], row, 4);
 							row++;
 							}
 						}
@@ -206,6 +152,40 @@ public class DETestExtractPairwiseCompoundSimilarities extends AbstractTaskWitho
 			}
 		}
 
+	private class SimilarityHistogramConsumer implements CompoundTablePairSimilarityCalculator.PairConsumer {
+		private int[] descriptorColumn;
+		private float[] similarity;
+		private long[][] similarityCount;
+		private long[][][] ySimilaritySum;
+
+		public SimilarityHistogramConsumer(int[] descriptorColumn) {
+			this.descriptorColumn = descriptorColumn;
+			this.similarity = new float[descriptorColumn.length];
+			this.similarityCount = new long[descriptorColumn.length][101];
+			this.ySimilaritySum = new long[descriptorColumn.length][descriptorColumn.length][101];
+			}
+
+		@Override
+		public void addPair(int row1, int row2, float similarity0) {
+			CompoundRecord r1 = mSourceTableModel.getTotalRecord(row1);
+			CompoundRecord r2 = mSourceTableModel.getTotalRecord(row2);
+			similarity[0] = similarity0;
+			for (int i=1; i<descriptorColumn.length; i++) {
+				similarity[i] = mSourceTableModel.getDescriptorSimilarity(r1, r2, descriptorColumn[i]);
+				if (Float.isNaN(similarity[i]))
+					return;
+				}
+
+			for (int i=0; i<descriptorColumn.length; i++) {
+				int countIndex = (int)(100f*similarity[i]+0.5);
+				similarityCount[i][countIndex]++;
+				for (int j=0; j<descriptorColumn.length; j++)
+					if (i != j)
+						ySimilaritySum[i][j][countIndex] += (long)(100f*similarity[j]+0.5);
+				}
+			}
+		}
+
 	private boolean qualifiesAsDescriptorColumn(int column) {
 		if (!mSourceTableModel.isDescriptorColumn(column))
 			return false;
@@ -610,6 +610,7 @@ public class DETaskBuildEvolutionaryLibrary extends AbstractTask implements Acti
 				hitlistHandler.addRecordSilent(tableModel.getTotalRecord(row), hitlistFlagNo);
 				}
 			}
+		hitlistHandler.releaseListFlag(name);
 		return hitlistHandler.getListIndex(name);
 		}
 
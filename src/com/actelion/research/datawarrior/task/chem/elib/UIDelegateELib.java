@@ -241,28 +241,29 @@ public class UIDelegateELib implements ActionListener,TaskConstantsELib,TaskUIDe
 		}
 
 	protected ArrayList<MoleculeWithDescriptor> getSelectedMolecules(String comboBoxOption, String descriptorType) {
-		int flag = -1;
+		int list = CompoundTableListHandler.LISTINDEX_NONE;
 		int idcodeColumn = -1;
 		if (comboBoxOption.contains(HITLIST_OPTION)) {
 			int index = comboBoxOption.indexOf(HITLIST_OPTION);
 			idcodeColumn = mTableModel.findColumn(comboBoxOption.substring(0, index));
 			String hitlistName = comboBoxOption.substring(index+HITLIST_OPTION.length(), comboBoxOption.length()-1);
 			CompoundTableListHandler hh = mTableModel.getListHandler();
-			flag = hh.getListFlagNo(hh.getListIndex(hitlistName));
+			list = hh.getListIndex(hitlistName);
 			}
 		else if (comboBoxOption.startsWith(SELECTED_OPTION)) {
 			idcodeColumn = mTableModel.findColumn(comboBoxOption.substring(SELECTED_OPTION.length(), comboBoxOption.length()-3));
-			flag = CompoundRecord.cFlagSelected;
+			list = CompoundTableListHandler.LISTINDEX_SELECTION;
 			}
 		else if (comboBoxOption.startsWith(ALL_OPTION)) {
 			idcodeColumn = mTableModel.findColumn(comboBoxOption.substring(ALL_OPTION.length(), comboBoxOption.length()-3));
-			flag = -2;
+			list = CompoundTableListHandler.LISTINDEX_ANY;	// all rows
 			}
 		int descriptorColumn = (descriptorType == null) ? -1 : mTableModel.getChildColumn(idcodeColumn, descriptorType);
 		ArrayList<MoleculeWithDescriptor> moleculeList = new ArrayList<MoleculeWithDescriptor>();
 		for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
 			CompoundRecord record = mTableModel.getTotalRecord(row);
-			if (flag == -2 || record.isFlagSet(flag)) {
+			if (list == CompoundTableListHandler.LISTINDEX_ANY
+			 || (list != CompoundTableListHandler.LISTINDEX_NONE && mTableModel.getListHandler().isListMember(record, list))) {
 				StereoMolecule mol = mTableModel.getChemicalStructure(record, idcodeColumn, CompoundTableModel.ATOM_COLOR_MODE_NONE, null);
 				if (mol != null) {
 					mol.removeAtomColors();
@@ -28,13 +28,19 @@ import com.actelion.research.table.model.CompoundTableListHandler;
 import com.actelion.research.table.model.CompoundTableModel;
 import com.actelion.research.util.DoubleFormat;
 import info.clearthought.layout.TableLayout;
+import org.nfunk.jep.ASTFunNode;
 import org.nfunk.jep.JEP;
+import org.nfunk.jep.Node;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class DETaskAddCalculatedValues extends ConfigurableTask
 			implements ActionListener,Runnable {
@@ -57,6 +63,20 @@ public class DETaskAddCalculatedValues extends ConfigurableTask
 	private static final String IS_SELECTED_ROW = "isSelectedRow";
 	private static final String IS_MEMBER_OF = "isMemberOf_";
 
+	private static final int MIN_ROWS_FOR_PARALLEL_EVALUATION = 4096;
+	private static final int CALCULATION_CHUNK_SIZE = 1024;
+
+	// functions that call getCurrentRow() or depend on the row order
+	private static final String[] ROW_DEPENDENT_FUNCTION = { "row", "numvalue", "normalize",
+			"increase", "increaseInCategory", "percentIncrease", "percentIncreaseInCategory",
+			"cumulativeSum", "cumulativeSumInCategory", "frequencyInCategory",
+			"categoryFirst", "categoryMin", "categoryMax", "categorySum", "categoryMean", "categoryMedian",
+			"movingAverageInCategory", "refvalue" };
+
+	// functions with cached or precalculated results, which are shared by all parallel parsers
+	private static final String[] SHARED_FUNCTION = { JEPChemSimilarityFunction.FUNCTION_NAME,
+			JEPMaxChemSimilarityFunction.FUNCTION_NAME, "frequency" };
+
 	private volatile CompoundTableModel	mTableModel;
 	private volatile String		mResolvedValue;
 	private volatile String		mFormula;
@@ -106,7 +126,7 @@ public class DETaskAddCalculatedValues extends ConfigurableTask
 		parser.addFunction("ligeff1", new JEPRateHTSFunction(mTableModel));
 		parser.addFunction("ligeff2", new JEPLigEffFunction(mTableModel));
 		parser.addFunction("normalize", new JEPNormalizeFunction(mTableModel, this));
-		parser.addFunction("maxsim", new JEPMaxChemSimilarityFunction(mTableModel));
+		parser.addFunction(JEPMaxChemSimilarityFunction.FUNCTION_NAME, new JEPMaxChemSimilarityFunction(mTableModel));
 		parser.addFunction("increase", new JEPOrderDependentFunction(mTableModel, JEPOrderDependentFunction.TYPE_INCREASE, this));
 		parser.addFunction("increaseInCategory", new JEPOrderDependentInCategoryFunction(mTableModel, JEPOrderDependentInCategoryFunction.TYPE_INCREASE, this));
 		parser.addFunction("percentIncrease", new JEPOrderDependentFunction(mTableModel, JEPOrderDependentFunction.TYPE_PERCENT_INCREASE, this));
@@ -536,13 +556,26 @@ public class DETaskAddCalculatedValues extends ConfigurableTask
 
 	@Override
 	public void runTask(Properties configuration) {
-		startProgress("Calculating values...", 0, mTableModel.getTotalRowCount());
-
 		// before 28Jul2020 '\n' were not encoded as '<NL>'
 		String formula = resolveVariables(configuration.getProperty(PROPERTY_FORMULA,"").replace("\n", "").replace("<NL>", ""));
-		if (!parseFormula(mParser, preprocessFormula(formula, false)))
+		String preprocessedFormula = preprocessFormula(formula, false);
+		if (!parseFormula(mParser, preprocessedFormula))
 			return;
 
+		precalculateSimilarities(preprocessedFormula);
+		if (threadMustDie())
+			return;
+		startProgress("Calculating values...", 0, mTableModel.getTotalRowCount());
+
+		JEP[] workerParser = null;
+		if (mTableModel.getTotalRowCount() >= MIN_ROWS_FOR_PARALLEL_EVALUATION
+		 && Runtime.getRuntime().availableProcessors() > 1
+		 && !usesRowDependentFunction(mParser.getTopNode())) {
+			workerParser = createWorkerParsers(preprocessedFormula);
+			if (workerParser == null)
+				return;
+			}
+
 		boolean isOverwrite = "true".equals(configuration.getProperty(PROPERTY_OVERWRITE_COLUMN));
 
 		String[] columnName = new String[1];
@@ -550,62 +583,191 @@ public class DETaskAddCalculatedValues extends ConfigurableTask
 		int targetColumn = isOverwrite ? mTableModel.findColumn(configuration.getProperty(PROPERTY_COLUMN_NAME)) : mTableModel.addNewColumns(columnName);
 		mTableModel.setColumnProperty(targetColumn, CompoundTableConstants.cColumnPropertyFormula, formula);
 
-		CompoundTableListHandler hitlistHandler = mTableModel.getListHandler();
+		Throwable workerFailure = null;
+		if (workerParser != null)
+			workerFailure = calculateValuesInParallel(workerParser, targetColumn);
+		else {
+			for (mCurrentRow=0; mCurrentRow<mTableModel.getTotalRowCount(); mCurrentRow++) {
+				if (threadMustDie())
+					break;
+				if (mCurrentRow % 16 == 0)
+					updateProgress(mCurrentRow);
 
-		for (mCurrentRow=0; mCurrentRow<mTableModel.getTotalRowCount(); mCurrentRow++) {
-			if (threadMustDie())
-				break;
-			if (mCurrentRow % 16 == 0)
-				updateProgress(mCurrentRow);
-
-			CompoundRecord record = mTableModel.getTotalRecord(mCurrentRow);
-			if (mPreprocessVariables != null) {
-				for (String varName:mPreprocessVariables) {
-					if (varName.startsWith(PREPROCESS_FUNCTION_VALUE_COUNT)) {
-						int column = Integer.parseInt(varName.substring(PREPROCESS_FUNCTION_VALUE_COUNT.length()));
-						int count = record.getData(column) == null ? 0
-							: mTableModel.separateEntries(mTableModel.encodeData(record, column)).length;
-						mParser.addVariable(varName, count);
-						}
-					}
+				mTableModel.setTotalValueAt(calculateValue(mParser, mCurrentRow), mCurrentRow, targetColumn);
 				}
-			for (String varName:mRunTimeColumnMap.keySet()) {
-				int column = mRunTimeColumnMap.get(varName).intValue();
-				if (CompoundTableListHandler.isListColumn(column)) {
-					long hitlistMask = hitlistHandler.getListMask(CompoundTableListHandler.convertToListIndex(column));
-					mParser.addVariable(varName, (record.getFlags() & hitlistMask) != 0 ? 1.0 : 0.0 );
+			}
+
+		if (isOverwrite)
+			mTableModel.finalizeChangeAlphaNumericalColumn(targetColumn, 0, mTableModel.getTotalRowCount());
+		else
+			mTableModel.finalizeNewColumns(targetColumn, this);
+
+		if (workerFailure != null) {
+			workerFailure.printStackTrace();
+			showErrorMessage("The formula could not be evaluated for all rows:\n"+workerFailure);
+			}
+		}
+
+	/**
+	 * Sets all parser variables from the given row and evaluates the formula.
+	 * @param parser
+	 * @param row total row index
+	 * @return the formatted result
+	 */
+	private String calculateValue(JEP parser, int row) {
+		CompoundRecord record = mTableModel.getTotalRecord(row);
+		if (mPreprocessVariables != null) {
+			for (String varName:mPreprocessVariables) {
+				if (varName.startsWith(PREPROCESS_FUNCTION_VALUE_COUNT)) {
+					int column = Integer.parseInt(varName.substring(PREPROCESS_FUNCTION_VALUE_COUNT.length()));
+					int count = record.getData(column) == null ? 0
+						: mTableModel.separateEntries(mTableModel.encodeData(record, column)).length;
+					parser.addVariable(varName, count);
 					}
-				else {
-					if (mTableModel.getColumnSpecialType(column) != null)
-						mParser.addVariable(varName, new JEPParameter(record, column));
-					else if (mTableModel.isColumnTypeDouble(column)) {  // this includes date for the date functions
-						double value = mTableModel.getTotalOriginalDoubleAt(mCurrentRow, column);
-						mParser.addVariable(varName, value);
-						}
-					else
-						mParser.addVariable(varName, mTableModel.getValue(record, column));
+				}
+			}
+		for (String varName:mRunTimeColumnMap.keySet()) {
+			int column = mRunTimeColumnMap.get(varName).intValue();
+			if (CompoundTableListHandler.isListColumn(column)) {
+				boolean isMember = mTableModel.getListHandler().isListMember(record, CompoundTableListHandler.convertToListIndex(column));
+				parser.addVariable(varName, isMember ? 1.0 : 0.0 );
+				}
+			else {
+				if (mTableModel.getColumnSpecialType(column) != null)
+					parser.addVariable(varName, new JEPParameter(record, column));
+				else if (mTableModel.isColumnTypeDouble(column)) {  // this includes date for the date functions
+					double value = mTableModel.getTotalOriginalDoubleAt(row, column);
+					parser.addVariable(varName, value);
 					}
+				else
+					parser.addVariable(varName, mTableModel.getValue(record, column));
 				}
-			mParser.addVariable(IS_VISIBLE_ROW, mTableModel.isVisible(record) ? 1.0 : 0.0);
-			mParser.addVariable(IS_SELECTED_ROW, mTableModel.isVisibleAndSelected(record) ? 1.0 : 0.0);
+			}
+		parser.addVariable(IS_VISIBLE_ROW, mTableModel.isVisible(record) ? 1.0 : 0.0);
+		parser.addVariable(IS_SELECTED_ROW, mTableModel.isVisibleAndSelected(record) ? 1.0 : 0.0);
+
+		Object o = parser.getValueAsObject();
 
-			Object o = mParser.getValueAsObject();
+//		String value = (o == null) ? "NaN" : o.toString();
+//		if (o instanceof Double && value.endsWith(".0"))
+//			value = value.substring(0, value.length()-2);
 
-//			String value = (o == null) ? "NaN" : o.toString();
-//			if (o instanceof Double && value.endsWith(".0"))
-//  			value = value.substring(0, value.length()-2);
+		return (o == null) ? "NaN"
+				: !(o instanceof Double) ? o.toString()
+				: DoubleFormat.toString((Double)o, 7, true);
+		}
 
-			String value = (o == null) ? "NaN"
-					: !(o instanceof Double) ? o.toString()
-					: DoubleFormat.toString((Double)o, 7, true);
+	/**
+	 * Checks, whether the parsed formula contains any function, whose result depends on the
+	 * row order or which needs to know the current row by calling getCurrentRow().
+	 * @param node
+	 * @return true, if the formula must be evaluated row by row in the given order
+	 */
+	private boolean usesRowDependentFunction(Node node) {
+		if (node instanceof ASTFunNode)
+			for (String name:ROW_DEPENDENT_FUNCTION)
+				if (name.equals(((ASTFunNode)node).getName()))
+					return true;
 
-			mTableModel.setTotalValueAt(value, mCurrentRow, targetColumn);
+		for (int i=0; i<node.jjtGetNumChildren(); i++)
+			if (usesRowDependentFunction(node.jjtGetChild(i)))
+				return true;
+
+		return false;
+		}
+
+	/**
+	 * Creates and parses one parser per worker thread for calculateValuesInParallel().
+	 * Functions with precalculated or cached results share the instance of the main parser.
+	 * @param formula preprocessed formula
+	 * @return one parser per available core or null, if the formula could not be parsed
+	 */
+	private JEP[] createWorkerParsers(String formula) {
+		JEP[] parser = new JEP[Runtime.getRuntime().availableProcessors()];
+		for (int i=0; i<parser.length; i++) {
+			parser[i] = createParser();
+			for (String name:SHARED_FUNCTION)
+				parser[i].addFunction(name, mParser.getFunctionTable().get(name));
+			if (!parseFormula(parser[i], formula))
+				return null;	// shouldn't happen, because mParser could parse it
 			}
+		return parser;
+		}
 
-		if (isOverwrite)
-			mTableModel.finalizeChangeAlphaNumericalColumn(targetColumn, 0, mTableModel.getTotalRowCount());
-		else
-			mTableModel.finalizeNewColumns(targetColumn, this);
+	/**
+	 * Evaluates a formula, which doesn't contain any row dependent function, on all available cores.
+	 * Since JEP parsers keep variable values and the evaluation stack as instance state,
+	 * every worker thread uses its own parser. Rows are processed in chunks,
+	 * which are handed out to the worker threads in ascending order.
+	 * If one worker fails, all workers stop and the first failure is returned.
+	 * @param workerParser one parsed parser per worker thread
+	 * @param targetColumn
+	 * @return null or the first exception thrown by any worker
+	 */
+	private Throwable calculateValuesInParallel(JEP[] workerParser, final int targetColumn) {
+		final int rowCount = mTableModel.getTotalRowCount();
+		final AtomicInteger chunkIndex = new AtomicInteger(0);
+		final AtomicInteger doneCount = new AtomicInteger(0);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		Thread[] worker = new Thread[workerParser.length];
+		for (int i=0; i<worker.length; i++) {
+			final JEP parser = workerParser[i];
+			worker[i] = new Thread(() -> {
+				try {
+					int startRow = CALCULATION_CHUNK_SIZE * chunkIndex.getAndIncrement();
+					while (startRow < rowCount && failure.get() == null && !threadMustDie()) {
+						int endRow = Math.min(rowCount, startRow + CALCULATION_CHUNK_SIZE);
+						for (int row=startRow; row<endRow; row++)
+							mTableModel.setTotalValueAt(calculateValue(parser, row), row, targetColumn);
+
+						updateProgress(doneCount.addAndGet(endRow - startRow));
+						startRow = CALCULATION_CHUNK_SIZE * chunkIndex.getAndIncrement();
+						}
+					}
+				catch (Throwable t) {
+					failure.compareAndSet(null, t);
+					}
+				}, "Formula Evaluator "+(i+1));
+			worker[i].setPriority(Thread.MIN_PRIORITY);
+			worker[i].start();
+			}
+
+		for (Thread t:worker)
+			try { t.join(); } catch (InterruptedException e) {}
+
+		return failure.get();
+		}
+
+	/**
+	 * Functions like maxsim() would compare every row with every other row when evaluated row by row.
+	 * Therefore, we recognize maxsim(descriptor) and chemsim(descriptor,"idcode") calls in the formula
+	 * and let the functions calculate all values in one parallel batch before evaluating the formula.
+	 * @param formula preprocessed formula
+	 */
+	private void precalculateSimilarities(String formula) {
+		JEPMaxChemSimilarityFunction maxSimFunction = (JEPMaxChemSimilarityFunction)mParser.getFunctionTable().get(JEPMaxChemSimilarityFunction.FUNCTION_NAME);
+		JEPChemSimilarityFunction chemSimFunction = (JEPChemSimilarityFunction)mParser.getFunctionTable().get(JEPChemSimilarityFunction.FUNCTION_NAME);
+		maxSimFunction.clearCache();
+		chemSimFunction.clearCache();
+
+		for (String varName:mRunTimeColumnMap.keySet()) {
+			int column = mRunTimeColumnMap.get(varName).intValue();
+			if (CompoundTableListHandler.isListColumn(column) || !mTableModel.isDescriptorColumn(column))
+				continue;
+
+			String quotedVarName = Pattern.quote(varName);
+			if (Pattern.compile("\\b"+JEPMaxChemSimilarityFunction.FUNCTION_NAME+"\\s*\\(\\s*"+quotedVarName+"\\s*\\)").matcher(formula).find()) {
+				startProgress("Calculating maximum similarities...", 0, 0);
+				maxSimFunction.precalculate(column, this);
+				}
+
+			Matcher matcher = Pattern.compile("\\b"+JEPChemSimilarityFunction.FUNCTION_NAME+"\\s*\\(\\s*"+quotedVarName+"\\s*,\\s*\"([^\"]*)\"\\s*\\)").matcher(formula);
+			while (matcher.find()) {
+				startProgress("Calculating similarities...", 0, 0);
+				chemSimFunction.precalculate(column, matcher.group(1), this);
+				}
+			}
 		}
 
 	/**
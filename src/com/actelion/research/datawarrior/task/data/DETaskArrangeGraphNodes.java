@@ -35,15 +35,8 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Properties;
 import java.util.TreeMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicIntegerArray;
 
 
 public class DETaskArrangeGraphNodes extends ConfigurableTask implements ActionListener,Runnable {
@@ -67,13 +60,9 @@ public class DETaskArrangeGraphNodes extends ConfigurableTask implements ActionL
 	private CompoundTableModel	mSourceTableModel;
 	private JComboBox			mComboBoxKeyColumn,mComboBoxReferencingColumn,mComboBoxStrengthColumn;
 	private JCheckBox			mCheckBoxNeglectNodes,mCheckBoxAdaptiveLimit;
-	private ExecutorService		mExecutor;
-	private AtomicIntegerArray  mX,mY,mDX,mDY;
+	private GraphNodeArranger	mArranger;
 	private int[]				mNeighborCount;
 	private SortedList<SimilarPair> mPairList;
-	private Integer[]			mSortedID;
-	private SMPWorker[]			mSMPWorker;
-	private AtomicInteger		mSMPRecordIndex,mSMPPairIndex;
 
 	public DETaskArrangeGraphNodes(DEFrame parent) {
 		super(parent, true);
@@ -363,116 +352,19 @@ public class DETaskArrangeGraphNodes extends ConfigurableTask implements ActionL
 			mNeighborCount[pair.row2]++;
 			}
 
-		int threadCount = Runtime.getRuntime().availableProcessors();
-		mSMPRecordIndex = new AtomicInteger(rowCount);
-
-		mX = null;
-		mY = null;
+		mArranger = null;
 		if (!threadMustDie()) {
 			startProgress("Calculating similarity based positions...", 0, VIEW_CYCLE_COUNT);
 
-			if (threadCount != 1) {
-				mExecutor = Executors.newFixedThreadPool(threadCount);
-				mSMPWorker = new SMPWorker[threadCount];
-				for (int t=0; t<threadCount; t++)
-					mSMPWorker[t] = new SMPWorker();
-				}
-
-			mX = new AtomicIntegerArray(rowCount);
-			mY = new AtomicIntegerArray(rowCount);
-			for (int row=0; row<rowCount; row++) {
-				mX.set(row, Float.floatToIntBits((float)Math.random()));
-				mY.set(row, Float.floatToIntBits((float)Math.random()));
-				}
-
-			mDX = new AtomicIntegerArray(rowCount);
-			mDY = new AtomicIntegerArray(rowCount);
-
-			mSMPPairIndex = new AtomicInteger(0);
-			mSMPRecordIndex = new AtomicInteger(0);
-
-			mSortedID = new Integer[rowCount];
-			for (int row=0; row<rowCount; row++)
-				mSortedID[row] = new Integer(row);
-
-			int zero = Float.floatToIntBits(0.0f);
-
-			for (int cycle=0; cycle<VIEW_CYCLE_COUNT; cycle++) {
-				if (threadMustDie())
-					break;
-				updateProgress(cycle);
-
-				Arrays.sort(mSortedID, new Comparator<Integer>() {
-					@Override
-					public int compare(Integer i1, Integer i2) {
-						float x1 = Float.intBitsToFloat(mX.get(i1.intValue()));
-						float x2 = Float.intBitsToFloat(mX.get(i2.intValue()));
-						return x1 < x2 ? -1	: x1 == x2 ? 0 : 1;
-						}
-					} );
-
-				for (int i=0; i<rowCount; i++) {
-					mDX.set(i, zero);
-					mDY.set(i, zero);
-					}
-
-				mSMPPairIndex.set(0);
-				mSMPRecordIndex.set(0);
-
-				if (threadCount != 1) {
-					optimizeCoordinatesSMP(cycle);
-					}
-				else {
-					optimizeCoordinates(cycle);
-					}
-
-				for (int i=0; i<rowCount; i++) {
-					mX.set(i, Float.floatToIntBits(Math.min(Math.max(
-							Float.intBitsToFloat(mX.get(i))+Float.intBitsToFloat(mDX.get(i)), 0f), 1.0f)));
-					mY.set(i, Float.floatToIntBits(Math.min(Math.max(
-							Float.intBitsToFloat(mY.get(i))+Float.intBitsToFloat(mDY.get(i)), 0f), 1.0f)));
-					}
+			int[] edgeNode1 = new int[mPairList.size()];
+			int[] edgeNode2 = new int[mPairList.size()];
+			for (int i=0; i<mPairList.size(); i++) {
+				edgeNode1[i] = mPairList.get(i).row1;
+				edgeNode2[i] = mPairList.get(i).row2;
 				}
-			}
-
-		if (!threadMustDie()) {
-			startProgress("Cleaning Positions...", 0, 0);
-			Arrays.sort(mSortedID, new Comparator<Integer>() {
-				@Override
-				public int compare(Integer i1, Integer i2) {
-					float x1 = Float.intBitsToFloat(mX.get(i1.intValue()))-0.5f;
-					float y1 = Float.intBitsToFloat(mY.get(i1.intValue()))-0.5f;
-					float d1 = (float)Math.sqrt(x1*x1+y1*y1);
-					float x2 = Float.intBitsToFloat(mX.get(i2.intValue()))-0.5f;
-					float y2 = Float.intBitsToFloat(mY.get(i2.intValue()))-0.5f;
-					float d2 = (float)Math.sqrt(x2*x2+y2*y2);
-					return d1 < d2 ? -1	: d1 == d2 ? 0 : 1;
-					}
-				} );
-			for (int i=0; i<rowCount; i++) {
-				int row = mSortedID[i].intValue();
-				float x = Float.intBitsToFloat(mX.get(row))-0.5f;
-				float y = Float.intBitsToFloat(mY.get(row))-0.5f;
-
-				double a;
-				if (y != 0f) {
-					a = (float)Math.atan(x/y);
-					if (y < 0) {
-						if (x < 0)
-							a -= Math.PI;
-						else
-							a += Math.PI;
-						}
-					}
-				else {
-					a = (x > 0f) ? (float)Math.PI/2 : -(float)Math.PI/2;
-					}
 
-				x = (float)(Math.sqrt((0.5f+i)/rowCount) * Math.sin(a));
-				y = (float)(Math.sqrt((0.5f+i)/rowCount) * Math.cos(a));
-				mX.set(row, Float.floatToIntBits(x));
-				mY.set(row, Float.floatToIntBits(y));
-				}
+			mArranger = new GraphNodeArranger(rowCount, edgeNode1, edgeNode2);
+			mArranger.arrange(VIEW_CYCLE_COUNT, this);
 			}
 
 		if (!threadMustDie()) {
@@ -487,13 +379,12 @@ public class DETaskArrangeGraphNodes extends ConfigurableTask implements ActionL
 
 			for (int row=0; row<rowCount; row++) {
 				mSourceTableModel.setTotalValueAt(""+mNeighborCount[row], row, neighborCountColumn);
-				mSourceTableModel.setTotalValueAt(""+Float.intBitsToFloat(mX.get(row)), row, xColumn);
-				mSourceTableModel.setTotalValueAt(""+Float.intBitsToFloat(mY.get(row)), row, yColumn);
+				mSourceTableModel.setTotalValueAt(""+mArranger.getX(row), row, xColumn);
+				mSourceTableModel.setTotalValueAt(""+mArranger.getY(row), row, yColumn);
 				}
 			mSourceTableModel.finalizeNewColumns(firstNewColumn, this);
 
-			mX = null;
-			mY = null;
+			mArranger = null;
 
 			try {
 				SwingUtilities.invokeAndWait(new Runnable() {
@@ -626,117 +517,6 @@ public class DETaskArrangeGraphNodes extends ConfigurableTask implements ActionL
 			}
 		}
 
-	private void optimizeCoordinatesSMP(int cycle) {
-		CountDownLatch doneSignal = new CountDownLatch(mSMPWorker.length);
-		for (SMPWorker w:mSMPWorker) {
-			w.initialize(doneSignal, cycle);
-			mExecutor.execute(w);
-			}
-		try {
-			doneSignal.await();
-			}
-		catch (InterruptedException e) {}
-		}
-
-	private void optimizeCoordinates(int cycle) {
-		int rowCount = mX.length();
-		float minDistance = 1.0f / (float)Math.sqrt(rowCount);
-		float cycleState = (float)cycle / (float)VIEW_CYCLE_COUNT;
-		float cycleMinDistance = cycleState*(2.0f-cycleState) * minDistance;
-
-		float attractionCycleFactor = 0.8f * (1.0f - cycleState) * ((cycleState < 0.5) ? 0.5f : (1.0f - cycleState));
-		float repulsionCycleFactor = (cycleState < 0.5) ? 0.5f : (1.0f - cycleState);
-
-		int current,updated;
-
-		while (true) {
-			int listIndex = mSMPPairIndex.getAndIncrement();
-			if (listIndex >= mPairList.size())
-				break;
-
-			SimilarPair sp = mPairList.get(listIndex);
-			float dx = Float.intBitsToFloat(mX.get(sp.row2))-Float.intBitsToFloat(mX.get(sp.row1));
-			float dy = Float.intBitsToFloat(mY.get(sp.row2))-Float.intBitsToFloat(mY.get(sp.row1));
-			float distance = (float)Math.sqrt(dx*dx+dy*dy);
-// reducing minDistance with higher sp.attraction (i.e. similarity) indeed more often puts closest neighbors in the first shell,
-// but comes with the price of putting other neighbors in third and even forth shell, while some positions in 2nd and 3rd shell are
-// occupied with rwcords not being a neighbor at all. Finally, it is not worth it.
-//			float strengthAdaptedMinDistance = minDistance + 2f * (0.5f - sp.attraction) * minDistance;
-//			float shift = distance - strengthAdaptedMinDistance;
-			float shift = distance - minDistance;
-			if (shift > 0) {
-				dx *= shift/distance;
-				dy *= shift/distance;
-				float neighborFactor1 = (mNeighborCount[sp.row1] > 4) ? 4.0f / mNeighborCount[sp.row1] : 1.0f;
-				float neighborFactor2 = (mNeighborCount[sp.row2] > 4) ? 4.0f / mNeighborCount[sp.row2] : 1.0f;
-
-				do {
-					current = mDX.get(sp.row1);
-					updated = Float.floatToIntBits(Float.intBitsToFloat(current) + dx * attractionCycleFactor * neighborFactor1);
-					} while (!mDX.compareAndSet(sp.row1, current, updated));
-				do {
-					current = mDY.get(sp.row1);
-					updated = Float.floatToIntBits(Float.intBitsToFloat(current) + dy * attractionCycleFactor * neighborFactor1);
-					} while (!mDY.compareAndSet(sp.row1, current, updated));
-				do {
-					current = mDX.get(sp.row2);
-					updated = Float.floatToIntBits(Float.intBitsToFloat(current) - dx * attractionCycleFactor * neighborFactor2);
-					} while (!mDX.compareAndSet(sp.row2, current, updated));
-				do {
-					current = mDY.get(sp.row2);
-					updated = Float.floatToIntBits(Float.intBitsToFloat(current) - dy * attractionCycleFactor * neighborFactor2);
-					} while (!mDY.compareAndSet(sp.row2, current, updated));
-				}
-			}
-
-		while (true) {
-			int i = mSMPRecordIndex.getAndIncrement();
-			if (i >= rowCount-1)
-				break;
-
-			int row1 = mSortedID[i].intValue();
-			for (int j=i+1; j<rowCount; j++) {
-				int row2 = mSortedID[j].intValue();
-				float dx = Float.intBitsToFloat(mX.get(row2))-Float.intBitsToFloat(mX.get(row1));
-				if (Math.abs(dx) >= cycleMinDistance)
-					break;
-
-				float dy = Float.intBitsToFloat(mY.get(row2))-Float.intBitsToFloat(mY.get(row1));
-				if (Math.abs(dy) < cycleMinDistance) {
-					double distance = Math.sqrt(dx*dx+dy*dy);
-					if (distance < cycleMinDistance) {
-						if (distance == 0.0) {
-							double angle = 2.0 * Math.PI * Math.random();
-							dx = (float)Math.sin(angle) * cycleMinDistance;
-							dy = (float)Math.cos(angle) * cycleMinDistance;
-							}
-						else {
-							double shift = cycleMinDistance - distance;
-							dx *= shift/distance;
-							dy *= shift/distance;
-							}
-						do {
-							current = mDX.get(row1);
-							updated = Float.floatToIntBits(Float.intBitsToFloat(current) - dx * repulsionCycleFactor);
-							} while (!mDX.compareAndSet(row1, current, updated));
-						do {
-							current = mDY.get(row1);
-							updated = Float.floatToIntBits(Float.intBitsToFloat(current) - dy * repulsionCycleFactor);
-							} while (!mDY.compareAndSet(row1, current, updated));
-						do {
-							current = mDX.get(row2);
-							updated = Float.floatToIntBits(Float.intBitsToFloat(current) + dx * repulsionCycleFactor);
-							} while (!mDX.compareAndSet(row2, current, updated));
-						do {
-							current = mDY.get(row2);
-							updated = Float.floatToIntBits(Float.intBitsToFloat(current) + dy * repulsionCycleFactor);
-							} while (!mDY.compareAndSet(row2, current, updated));
-						}
-					}
-				}
-			}
-		}
-
 	private boolean qualifiesAsKeyColumn(int column) {
 		return mSourceTableModel.getColumnSpecialType(column) == null
 			&& mSourceTableModel.isColumnDataUnique(column);
@@ -750,26 +530,6 @@ public class DETaskArrangeGraphNodes extends ConfigurableTask implements ActionL
 		return mSourceTableModel.isColumnTypeDouble(column);
 		}
 
-	private class SMPWorker implements Runnable {
-		private CountDownLatch	mDoneSignal;
-		private int				mCycle;
-
-		private SMPWorker() {
-			}
-
-		public void initialize(CountDownLatch doneSignal, int cycle) {
-			mDoneSignal = doneSignal;
-			mCycle = cycle;
-			
-			}
-
-		public void run() {
-			optimizeCoordinates(mCycle);
-
-			mDoneSignal.countDown();
-			}
-		}
-
 	private class SimilarPair implements Comparable<SimilarPair> {
 		public int row1,row2;
 		public float similarity;
@@ -22,24 +22,31 @@ import com.actelion.research.gui.hidpi.HiDPIHelper;
 import com.jujutsu.tsne.TSneConfiguration;
 import com.jujutsu.tsne.barneshut.BHTSne;
 import com.jujutsu.tsne.barneshut.BarnesHutTSne;
+import com.jujutsu.tsne.barneshut.FFTTsne;
 import com.jujutsu.tsne.barneshut.ParallelBHTsne;
 import com.jujutsu.utils.TSneUtils;
 import info.clearthought.layout.TableLayout;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.util.Arrays;
+import java.util.PriorityQueue;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.*;
 import javax.swing.text.html.HTMLEditorKit;
 
 import com.actelion.research.chem.descriptor.DescriptorConstants;
+import com.actelion.research.chem.descriptor.DescriptorHandler;
 import com.actelion.research.chem.descriptor.DescriptorHelper;
 import com.actelion.research.datawarrior.DEFrame;
 import com.actelion.research.datawarrior.DEMainPane;
 import com.actelion.research.datawarrior.task.ConfigurableTask;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.CompoundTableRangeIndex;
+import com.actelion.research.table.model.CompoundTableSimilarityIndex;
 import com.actelion.research.table.view.JVisualization;
 import com.actelion.research.table.view.VisualizationColor;
 import com.actelion.research.table.view.VisualizationPanel2D;
@@ -57,11 +64,15 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 	private static final String PROPERTY_PCADIMENSIONS = "pcadimensions";
 	private static final String PROPERTY_ITERATIONS = "iterations";
 	private static final String PROPERTY_CREATE_VIEW = "createView";
+	private static final String PROPERTY_DESCRIPTOR_SIMILARITY = "descriptorSimilarity";
+	private static final String PROPERTY_FFT_GRADIENT = "fftGradient";
+
+	private static final int NEIGHBOR_CHUNK_SIZE = 256;
 
     private DEFrame				mParentFrame,mTargetFrame;
 	private CompoundTableModel  mTableModel;
 	private JComboBox			mComboBoxNoOfComponents;
-	private JCheckBox			mCheckBoxCreateViews;
+	private JCheckBox			mCheckBoxCreateViews,mCheckBoxDescriptorSimilarity,mCheckBoxFFTGradient;
 	private JList				mListColumns;
 	private JTextArea			mTextArea;
 	private JTextField			mTextFieldPerplexity,mTextFieldIterations,mTextFieldPCADimensions;
@@ -131,7 +142,8 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
         int space = HiDPIHelper.scale(8);
         double[][] size = { {space, TableLayout.PREFERRED, space/2, TableLayout.PREFERRED, space/2, TableLayout.PREFERRED, space},
                             {space, TableLayout.PREFERRED, space, HiDPIHelper.scale(128), space,
-									TableLayout.PREFERRED, space, TableLayout.PREFERRED, space, TableLayout.PREFERRED, space, TableLayout.PREFERRED, space} };
+									TableLayout.PREFERRED, space, TableLayout.PREFERRED, space, TableLayout.PREFERRED, space,
+									TableLayout.PREFERRED, space, TableLayout.PREFERRED, space, TableLayout.PREFERRED, space} };
         p1.setLayout(new TableLayout(size));
 
 		final String[] optionList = {"2", "3"};
@@ -179,8 +191,14 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 		p1.add(new JLabel("Iterations:"), "1,9");
 		p1.add(mTextFieldIterations, "3,9");
 
+		mCheckBoxDescriptorSimilarity = new JCheckBox("Use descriptor similarity (single descriptor only)");
+		p1.add(mCheckBoxDescriptorSimilarity, "1,11,5,11");
+
+		mCheckBoxFFTGradient = new JCheckBox("Grid interpolated gradient (fast, 2D only)");
+		p1.add(mCheckBoxFFTGradient, "1,13,5,13");
+
 		mCheckBoxCreateViews = new JCheckBox("Automatically create 2D- or 3D-view");
-        p1.add(mCheckBoxCreateViews, "1,11,5,11");
+        p1.add(mCheckBoxCreateViews, "1,15,5,15");
 
         return p1;
 	    }
@@ -202,6 +220,8 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 
 		configuration.put(PROPERTY_DIMENSIONS, mComboBoxNoOfComponents.getSelectedItem());
 		configuration.put(PROPERTY_CREATE_VIEW, mCheckBoxCreateViews.isSelected() ? "true" : "false");
+		configuration.put(PROPERTY_DESCRIPTOR_SIMILARITY, mCheckBoxDescriptorSimilarity.isSelected() ? "true" : "false");
+		configuration.put(PROPERTY_FFT_GRADIENT, mCheckBoxFFTGradient.isSelected() ? "true" : "false");
 
 		configuration.put(PROPERTY_PERPLEXITY, mTextFieldPerplexity.getText());
 		configuration.put(PROPERTY_PCADIMENSIONS, mTextFieldPCADimensions.getText());
@@ -227,6 +247,8 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 		mTextFieldIterations.setText(configuration.getProperty(PROPERTY_ITERATIONS, "1000"));
 
 		mCheckBoxCreateViews.setSelected("true".equals(configuration.getProperty(PROPERTY_CREATE_VIEW, "true")));
+		mCheckBoxDescriptorSimilarity.setSelected("true".equals(configuration.getProperty(PROPERTY_DESCRIPTOR_SIMILARITY, "false")));
+		mCheckBoxFFTGradient.setSelected("true".equals(configuration.getProperty(PROPERTY_FFT_GRADIENT, "false")));
 		}
 
 	@Override
@@ -243,6 +265,8 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 		mTextFieldIterations.setText("1000");
 
 		mCheckBoxCreateViews.setSelected(true);
+		mCheckBoxDescriptorSimilarity.setSelected(false);
+		mCheckBoxFFTGradient.setSelected(false);
 		}
 
 	@Override
@@ -315,6 +339,11 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 				showErrorMessage("A t-SNE visualization needs at least 3 numerical columns or one chemical descriptor.");
 			    return false;
 				}
+			if ("true".equals(configuration.getProperty(PROPERTY_DESCRIPTOR_SIMILARITY))
+			 && (descriptorCount != 1 || parameterCount != 0)) {
+				showErrorMessage("Using descriptor similarity requires exactly one descriptor column and no other column.");
+				return false;
+				}
 			if (countFullDataRows(column) < 3) {
 				showErrorMessage("Less than 3 usable rows. All other rows have empty values.");
 			    return false;
@@ -386,6 +415,120 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 				regularColumn[regularCount++] = column;
 			}
 
+		int outputDims = 2;
+		try { outputDims = Integer.parseInt(configuration.getProperty(PROPERTY_DIMENSIONS, "2")); } catch (NumberFormatException nfe) {}
+
+		double perplexity = Float.parseFloat(configuration.getProperty(PROPERTY_PERPLEXITY, "20.0"));
+		int initial_dims = Integer.parseInt(configuration.getProperty(PROPERTY_PCADIMENSIONS, "50"));
+		int iterations = Integer.parseInt(configuration.getProperty(PROPERTY_ITERATIONS, "1000"));
+		boolean useFFTGradient = (outputDims == 2 && "true".equals(configuration.getProperty(PROPERTY_FFT_GRADIENT, "false")));
+		double[][] Y = null;
+		try {
+			if ("true".equals(configuration.getProperty(PROPERTY_DESCRIPTOR_SIMILARITY, "false"))) {
+				if (mFullDataRowCount - 1 < 3 * perplexity)
+					throw new IllegalArgumentException("Perplexity too large for the number of data points!");
+
+				int neighborCount = (int)(3 * perplexity);
+				int[] neighborStart = new int[mFullDataRowCount+1];
+				int[] neighbor = new int[mFullDataRowCount*neighborCount];
+				double[] distance = new double[mFullDataRowCount*neighborCount];
+				findNearestNeighbors(descriptorColumn[0], neighborCount, neighborStart, neighbor, distance);
+				if (threadMustDie())
+					return;
+
+				ParallelBHTsne tsne = useFFTGradient ? new FFTTsne() : new ParallelBHTsne();
+				Y = tsne.tsne(mFullDataRowCount, neighborStart, neighbor, distance, outputDims, perplexity, iterations, 0.5, this);
+				}
+			else {
+				double[][] X = createInputMatrix(descriptorColumn, regularColumn);
+				if (threadMustDie())
+					return;
+
+				BarnesHutTSne tsne = useFFTGradient ? new FFTTsne() : new ParallelBHTsne();    // this is the single thread alternative: new BHTSne();
+
+//BarnesHutTSne tsne = new BHTSne();	// for some small datasets the parallel implementation seems to hang; TLS 26-Oct-2018
+// on 04-Apr-2019 arofab suggested a change in BarnesHutTSne that seems to solve the issue. Thus going back to parallel; TLS 09-Apr-2019
+
+				TSneConfiguration config = TSneUtils.buildConfig(X, outputDims, initial_dims, perplexity, iterations);
+				Y = tsne.tsne(config, this);
+				}
+			}
+		catch (Exception e) {
+			showErrorMessage(e.getMessage());
+			return;
+			}
+
+		if (!threadMustDie()) {
+			String[] columnTitle = new String[outputDims];
+			for (int i=0; i<outputDims; i++)
+				columnTitle[i] = "t-SNE "+(char)('X'+i);
+			final int firstNewColumn = mTableModel.addNewColumns(columnTitle);
+			for (int i=0; i<outputDims; i++)
+				for (int r=0; r<mFullDataRowCount; r++)
+					mTableModel.setTotalValueAt(""+Y[r][i], mFullDataRow[r], firstNewColumn+i);
+
+			mTableModel.finalizeNewColumns(firstNewColumn, this);
+
+			if (outputDims >= 2 && "true".equals(configuration.getProperty(PROPERTY_CREATE_VIEW, "true"))) {
+				int colorColumn = -1;
+				for (int column=0; column<firstNewColumn; column++) {
+					if (mTableModel.isColumnTypeDouble(column)) {
+						colorColumn = column;
+						break;
+						}
+					}
+				if (colorColumn == -1) {
+					for (int column=0; column<firstNewColumn; column++) {
+						if (mTableModel.isColumnTypeCategory(column) && mTableModel.getCategoryCount(column) < VisualizationColor.cMaxColorCategories) {
+							colorColumn = column;
+							break;
+							}
+						}
+					}
+
+				final int dimensions = outputDims;
+				final int _colorColumn = colorColumn;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						DEMainPane mainPane = mParentFrame.getMainFrame().getMainPane();
+
+						int colorListMode = VisualizationColor.cColorListModeHSBLong;
+						Color[] colorList = (_colorColumn == -1) ? null : VisualizationColor.createColorWedge(Color.red, Color.blue, colorListMode, null);
+
+						if (dimensions == 2) {
+							VisualizationPanel2D vpanel1 = mainPane.add2DView("t-SNE 2D", null);
+							vpanel1.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
+							vpanel1.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn + 1));
+							vpanel1.getVisualization().setPreferredChartType(JVisualization.cChartTypeScatterPlot, -1, -1);
+		                    if (_colorColumn != -1)
+								vpanel1.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
+							}
+	                    if (dimensions == 3) {
+		                    VisualizationPanel3D vpanel2 = mainPane.add3DView("t-SNE 3D", null);
+		                    vpanel2.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
+		                    vpanel2.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn+1));
+		                    vpanel2.setAxisColumnName(2, mTableModel.getColumnTitle(firstNewColumn+2));
+		                    vpanel2.getVisualization().setPreferredChartType(JVisualization.cChartTypeScatterPlot, -1, -1);
+							if (_colorColumn != -1)
+			                    vpanel2.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
+	                    	}
+						}
+					} );
+				}
+			}
+		}
+
+	/**
+	 * Expands the varying bits or bytes of all descriptors and all numerical columns
+	 * into a dense input matrix with z-scored columns.
+	 * @param descriptorColumn
+	 * @param regularColumn
+	 * @return input matrix as [mFullDataRowCount][parameter count]
+	 */
+	private double[][] createInputMatrix(int[] descriptorColumn, int[] regularColumn) {
+		int descriptorCount = descriptorColumn.length;
+		int regularCount = regularColumn.length;
+
 		int[] varyingBits = new int[descriptorCount];
 		Object[] varyingKey = new Object[descriptorCount];
 		for (int fp=0; fp<descriptorCount; fp++) {
@@ -478,9 +621,6 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 			for (int i=0; i<regularCount; i++)
 				variance[i] /= (double)(mFullDataRowCount-1);
 
-		int outputDims = 2;
-		try { outputDims = Integer.parseInt(configuration.getProperty(PROPERTY_DIMENSIONS, "2")); } catch (NumberFormatException nfe) {}
-
 		startProgress("Calculating t-SNE input array...", 0, mFullDataRowCount);
 		double [][] X = new double[mFullDataRowCount][regularCount];
 		for (int r=0; r<mFullDataRowCount; r++) {
@@ -493,82 +633,107 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 				X[r][i] = (rowParameter[i] - meanParameter[i]) / Math.sqrt(variance[i]);
 			}
 
-		double perplexity = Float.parseFloat(configuration.getProperty(PROPERTY_PERPLEXITY, "20.0"));
-		int initial_dims = Integer.parseInt(configuration.getProperty(PROPERTY_PCADIMENSIONS, "50"));
-		int iterations = Integer.parseInt(configuration.getProperty(PROPERTY_ITERATIONS, "1000"));
-		double[][] Y = null;
-		try {
-			BarnesHutTSne tsne = new ParallelBHTsne();    // this is the single thread alternative: new BHTSne();
-
-//BarnesHutTSne tsne = new BHTSne();	// for some small datasets the parallel implementation seems to hang; TLS 26-Oct-2018
-// on 04-Apr-2019 arofab suggested a change in BarnesHutTSne that seems to solve the issue. Thus going back to parallel; TLS 09-Apr-2019
-
-			TSneConfiguration config = TSneUtils.buildConfig(X, outputDims, initial_dims, perplexity, iterations);
-			Y = tsne.tsne(config, this);
-			}
-		catch (Exception e) {
-			showErrorMessage(e.getMessage());
-			return;
-			}
-
-		if (!threadMustDie()) {
-			String[] columnTitle = new String[outputDims];
-			for (int i=0; i<outputDims; i++)
-				columnTitle[i] = "t-SNE "+(char)('X'+i);
-			final int firstNewColumn = mTableModel.addNewColumns(columnTitle);
-			for (int i=0; i<outputDims; i++)
-				for (int r=0; r<mFullDataRowCount; r++)
-					mTableModel.setTotalValueAt(""+Y[r][i], mFullDataRow[r], firstNewColumn+i);
-
-			mTableModel.finalizeNewColumns(firstNewColumn, this);
+		return X;
+		}
 
-			if (outputDims >= 2 && "true".equals(configuration.getProperty(PROPERTY_CREATE_VIEW, "true"))) {
-				int colorColumn = -1;
-				for (int column=0; column<firstNewColumn; column++) {
-					if (mTableModel.isColumnTypeDouble(column)) {
-						colorColumn = column;
-						break;
-						}
-					}
-				if (colorColumn == -1) {
-					for (int column=0; column<firstNewColumn; column++) {
-						if (mTableModel.isColumnTypeCategory(column) && mTableModel.getCategoryCount(column) < VisualizationColor.cMaxColorCategories) {
-							colorColumn = column;
-							break;
+	/**
+	 * Finds for every full data row the given number of most similar other full data rows
+	 * using the descriptor handler's similarity. For binary fingerprints the table model's
+	 * similarity index is used, which skips all fingerprints whose bit count doesn't allow
+	 * a higher similarity than the worst neighbor found so far. Other descriptors are compared
+	 * to all rows. Rows are processed in chunks on all cores.
+	 * @param descriptorColumn
+	 * @param neighborCount desired number of neighbors per row
+	 * @param neighborStart receives N+1 offsets into neighbor and distance
+	 * @param neighbor receives full data row indexes of neighbors
+	 * @param distance receives 1.0 - similarity of neighbors
+	 */
+	private void findNearestNeighbors(final int descriptorColumn, final int neighborCount,
+									  int[] neighborStart, int[] neighbor, double[] distance) {
+		startProgress("Finding nearest neighbors...", 0, mFullDataRowCount);
+
+		final DescriptorHandler<Object,Object> dh = mTableModel.getDescriptorHandler(descriptorColumn);
+		final CompoundTableSimilarityIndex index = mTableModel.getSimilarityIndex(descriptorColumn);
+
+		int maxID = 0;
+		for (int r=0; r<mFullDataRowCount; r++)
+			maxID = Math.max(maxID, mTableModel.getTotalRecord(mFullDataRow[r]).getID());
+		final int[] idToIndex = new int[maxID+1];
+		Arrays.fill(idToIndex, -1);
+		for (int r=0; r<mFullDataRowCount; r++)
+			idToIndex[mTableModel.getTotalRecord(mFullDataRow[r]).getID()] = r;
+
+		final int[] foundCount = new int[mFullDataRowCount];
+		final AtomicInteger chunkIndex = new AtomicInteger(0);
+		final AtomicInteger doneCount = new AtomicInteger(0);
+
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		Thread[] worker = new Thread[threadCount];
+		for (int i=0; i<threadCount; i++) {
+			worker[i] = new Thread(() -> {
+				int start = NEIGHBOR_CHUNK_SIZE * chunkIndex.getAndIncrement();
+				while (start < mFullDataRowCount && !threadMustDie()) {
+					int end = Math.min(mFullDataRowCount, start + NEIGHBOR_CHUNK_SIZE);
+					for (int r=start; r<end; r++) {
+						Object query = mTableModel.getTotalRecord(mFullDataRow[r]).getData(descriptorColumn);
+						int offset = r * neighborCount;
+						if (index != null && query instanceof long[]) {
+							for (int id:index.getMostSimilarRecordIDs((long[])query, neighborCount+2, null)) {
+								int n = (id < idToIndex.length) ? idToIndex[id] : -1;
+								if (n != -1 && n != r && foundCount[r] < neighborCount) {
+									Object descriptor = mTableModel.getTotalRecord(mFullDataRow[n]).getData(descriptorColumn);
+									neighbor[offset+foundCount[r]] = n;
+									distance[offset+foundCount[r]] = 1.0 - dh.getSimilarity(query, descriptor);
+									foundCount[r]++;
+									}
+								}
+							}
+						else {
+							// entries are sortable similarity in the upper and full data index in the lower half
+							PriorityQueue<Long> best = new PriorityQueue<>(neighborCount+1);
+							for (int n=0; n<mFullDataRowCount; n++) {
+								if (n != r) {
+									float similarity = dh.getSimilarity(query, mTableModel.getTotalRecord(mFullDataRow[n]).getData(descriptorColumn));
+									long entry = ((long)CompoundTableRangeIndex.toSortableInt(similarity) << 32) | n;
+									if (best.size() < neighborCount || entry > best.peek()) {
+										best.add(entry);
+										if (best.size() > neighborCount)
+											best.poll();
+										}
+									}
+								}
+							while (!best.isEmpty()) {
+								long entry = best.poll();
+								int bits = (int)(entry >> 32);
+								neighbor[offset+foundCount[r]] = (int)entry;
+								distance[offset+foundCount[r]] = 1.0 - Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7FFFFFFF));
+								foundCount[r]++;
+								}
 							}
 						}
-					}
 
-				final int dimensions = outputDims;
-				final int _colorColumn = colorColumn;
-				SwingUtilities.invokeLater(new Runnable() {
-					public void run() {
-						DEMainPane mainPane = mParentFrame.getMainFrame().getMainPane();
+					updateProgress(doneCount.addAndGet(end - start));
+					start = NEIGHBOR_CHUNK_SIZE * chunkIndex.getAndIncrement();
+					}
+				}, "t-SNE Neighbor Finder "+(i+1));
+			worker[i].setPriority(Thread.MIN_PRIORITY);
+			worker[i].start();
+			}
 
-						int colorListMode = VisualizationColor.cColorListModeHSBLong;
-						Color[] colorList = (_colorColumn == -1) ? null : VisualizationColor.createColorWedge(Color.red, Color.blue, colorListMode, null);
+		for (Thread t:worker)
+			try { t.join(); } catch (InterruptedException e) {}
 
-						if (dimensions == 2) {
-							VisualizationPanel2D vpanel1 = mainPane.add2DView("t-SNE 2D", null);
-							vpanel1.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
-							vpanel1.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn + 1));
-							vpanel1.getVisualization().setPreferredChartType(JVisualization.cChartTypeScatterPlot, -1, -1);
-		                    if (_colorColumn != -1)
-								vpanel1.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
-							}
-	                    if (dimensions == 3) {
-		                    VisualizationPanel3D vpanel2 = mainPane.add3DView("t-SNE 3D", null);
-		                    vpanel2.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
-		                    vpanel2.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn+1));
-		                    vpanel2.setAxisColumnName(2, mTableModel.getColumnTitle(firstNewColumn+2));
-		                    vpanel2.getVisualization().setPreferredChartType(JVisualization.cChartTypeScatterPlot, -1, -1);
-							if (_colorColumn != -1)
-			                    vpanel2.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
-	                    	}
-						}
-					} );
+		// compact neighbor lists, if some rows have less than neighborCount neighbors
+		int count = 0;
+		for (int r=0; r<mFullDataRowCount; r++) {
+			neighborStart[r] = count;
+			for (int i=0; i<foundCount[r]; i++) {
+				neighbor[count] = neighbor[r*neighborCount+i];
+				distance[count] = distance[r*neighborCount+i];
+				count++;
 				}
 			}
+		neighborStart[mFullDataRowCount] = count;
 		}
 
 	private void calculateParameterRow(int[] descriptorColumn, int[] regularColumn, int row, Object[] varyingKey, double[] rowParameter) {
@@ -27,7 +27,10 @@ import info.clearthought.layout.TableLayout;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.BorderFactory;
 import javax.swing.JCheckBox;
@@ -68,11 +71,16 @@ public class DETaskPCA extends ConfigurableTask {
 	private static final String PROPERTY_COMPONENT_COUNT = "componentCount";
 	private static final String PROPERTY_CREATE_VIEWS = "createViews";
 	private static final String PROPERTY_NEW_EIGEN_VALUE_WINDOW = "newEigenValueWindow";
+	private static final String PROPERTY_RANDOMIZED = "randomized";
+
+	private static final int ROW_CHUNK_SIZE = 1024;
+	private static final int OVERSAMPLING = 10;
+	private static final int POWER_ITERATIONS = 2;
 
     private DEFrame				mParentFrame,mTargetFrame;
 	private CompoundTableModel  mTableModel;
 	private JComboBox			mComboBoxNoOfComponents;
-	private JCheckBox			mCheckBoxCreateViews,mCheckBoxNewEigenValueWindow;
+	private JCheckBox			mCheckBoxCreateViews,mCheckBoxNewEigenValueWindow,mCheckBoxRandomized;
 	private JList				mListColumns;
 	private JTextArea			mTextArea;
 	private boolean				mIsInteractive;
@@ -140,7 +148,7 @@ public class DETaskPCA extends ConfigurableTask {
         JPanel p1 = new JPanel();
 		int space = HiDPIHelper.scale(8);
 		double[][] size = { {space, TableLayout.PREFERRED, space/2, TableLayout.PREFERRED, space/2, TableLayout.PREFERRED, space},
-				{space, TableLayout.PREFERRED, space, HiDPIHelper.scale(128), space, TableLayout.PREFERRED, space/2, TableLayout.PREFERRED, space} };
+				{space, TableLayout.PREFERRED, space, HiDPIHelper.scale(128), space, TableLayout.PREFERRED, space/2, TableLayout.PREFERRED, space/2, TableLayout.PREFERRED, space} };
         p1.setLayout(new TableLayout(size));
 
 		final String[] optionList = {"1", "2", "3", "4", "5", "6", "7", "8"};
@@ -182,6 +190,9 @@ public class DETaskPCA extends ConfigurableTask {
 		mCheckBoxNewEigenValueWindow = new JCheckBox("Open new window with eigenvalues");
 		p1.add(mCheckBoxNewEigenValueWindow, "1,7,5,7");
 
+		mCheckBoxRandomized = new JCheckBox("Fast randomized PCA (for many parameters or rows)");
+		p1.add(mCheckBoxRandomized, "1,9,5,9");
+
         return p1;
 	    }
 
@@ -203,6 +214,7 @@ public class DETaskPCA extends ConfigurableTask {
 		configuration.put(PROPERTY_COMPONENT_COUNT, mComboBoxNoOfComponents.getSelectedItem());
 		configuration.put(PROPERTY_CREATE_VIEWS, mCheckBoxCreateViews.isSelected() ? "true" : "false");
 		configuration.put(PROPERTY_NEW_EIGEN_VALUE_WINDOW, mCheckBoxNewEigenValueWindow.isSelected() ? "true" : "false");
+		configuration.put(PROPERTY_RANDOMIZED, mCheckBoxRandomized.isSelected() ? "true" : "false");
 
 		return configuration;
 		}
@@ -221,6 +233,7 @@ public class DETaskPCA extends ConfigurableTask {
 
 		mCheckBoxCreateViews.setSelected("true".equals(configuration.getProperty(PROPERTY_CREATE_VIEWS, "true")));
 		mCheckBoxNewEigenValueWindow.setSelected("true".equals(configuration.getProperty(PROPERTY_NEW_EIGEN_VALUE_WINDOW, "false")));
+		mCheckBoxRandomized.setSelected("true".equals(configuration.getProperty(PROPERTY_RANDOMIZED, "false")));
 		}
 
 	@Override
@@ -234,6 +247,7 @@ public class DETaskPCA extends ConfigurableTask {
 
 		mCheckBoxCreateViews.setSelected(true);
 		mCheckBoxNewEigenValueWindow.setSelected(false);
+		mCheckBoxRandomized.setSelected(false);
 		}
 
 	@Override
@@ -406,88 +420,55 @@ public class DETaskPCA extends ConfigurableTask {
         		}
 			}
 
-		double[] rowParameter = new double[regularCount];
-
-		startProgress("Calculating mean parameters...", 0, mFullDataRowCount);
-		double[] meanParameter = new double[regularCount];
-		for (int r=0; r<mFullDataRowCount; r++) {
-			if (threadMustDie())
-				break;
-			updateProgress(r);
-
-			calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
-
-			for (int i=0; i<regularCount; i++)
-				meanParameter[i] += rowParameter[i];
-			}
+		final int parameterCount = regularCount;
+		double[] meanParameter = accumulateRows("Calculating mean parameters...", descriptorColumn, regularColumn, varyingKey, parameterCount, parameterCount,
+				(r, rowParameter, nonZero, nonZeroCount, sum) -> {
+			for (int i=0; i<nonZeroCount; i++)
+				sum[nonZero[i]] += rowParameter[nonZero[i]];
+			} );
 		if (!threadMustDie())
 			for (int i=0; i<regularCount; i++)
 				meanParameter[i] /= (double)mFullDataRowCount;
 
-		startProgress("Calculating variance...", 0, mFullDataRowCount);
-		double[] variance = new double[regularCount];
-		for (int r=0; r<mFullDataRowCount; r++) {
-			if (threadMustDie())
-				break;
-			updateProgress(r);
-
-			calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
-
-			for (int i=0; i<regularCount; i++) {
+		double[] variance = accumulateRows("Calculating variance...", descriptorColumn, regularColumn, varyingKey, parameterCount, parameterCount,
+				(r, rowParameter, nonZero, nonZeroCount, sum) -> {
+			for (int i=0; i<parameterCount; i++) {
 				double dif = (rowParameter[i] - meanParameter[i]);
-				variance[i] += dif * dif;
+				sum[i] += dif * dif;
 				}
-			}
+			} );
 		if (!threadMustDie())
 			for (int i=0; i<regularCount; i++)
 				variance[i] /= (double)(mFullDataRowCount-1);
 
-		startProgress("Building parameter matrix...", 0, mFullDataRowCount);
-
-		double[][] squareMatrix = new double[regularCount][regularCount];
-		for (int r=0; r<mFullDataRowCount; r++) {
-			if (threadMustDie())
-				break;
-			updateProgress(r);
-
-			calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
-			for (int i=0; i<regularCount; i++)
-				rowParameter[i] = (rowParameter[i] - meanParameter[i]) / Math.sqrt(variance[i]);
-
-			for (int i=0; i<regularCount; i++)
-				for (int j=0; j<regularCount; j++)
-					squareMatrix[i][j] += rowParameter[i] * rowParameter[j];
-			}
-
+		// constant parameters don't contribute
+		double[] invSD = new double[regularCount];
 		for (int i=0; i<regularCount; i++)
-			for (int j=0; j<regularCount; j++)
-				squareMatrix[i][j] /= (mFullDataRowCount-1);
-
-			// Principle component analysis
-		double[][] eigenVectorsLeft = null;
-		double[][] factorArray = null;
-		SingularValueDecomposition svd = null;
-
-		if (!threadMustDie()) {
-			svd = new SingularValueDecomposition(squareMatrix, this, this);
-			}
-
-		if (!threadMustDie()) {
-			eigenVectorsLeft = svd.getU();
-//			for (int i=0; i<eigenVectorsLeft.length; i++)
-//				System.out.println("EigenVectorsLeft["+i+"][0]"+i+": "+(eigenVectorsLeft[i][0]));
-			}
+			invSD[i] = (variance[i] == 0.0) ? 0.0 : 1.0 / Math.sqrt(variance[i]);
 
 		int pcaCount = 3;
-    	try { pcaCount = Integer.parseInt(configuration.getProperty(PROPERTY_COMPONENT_COUNT, "3")); } catch (NumberFormatException nfe) {}
+		try { pcaCount = Integer.parseInt(configuration.getProperty(PROPERTY_COMPONENT_COUNT, "3")); } catch (NumberFormatException nfe) {}
 
-		if (!threadMustDie()) {
-			factorArray = new double[mFullDataRowCount][pcaCount];
-			int eigenValueN = (eigenVectorsLeft.length == 0) ? 0 : eigenVectorsLeft[0].length;
-			if (pcaCount > eigenValueN)
-				pcaCount = eigenValueN;
+		double[][] eigenVectorsLeft = null;
+		double[] eigenValue = null;
+		double eigenValueSum = 0.0;
+		if ("true".equals(configuration.getProperty(PROPERTY_RANDOMIZED, "false"))) {
+			if (!threadMustDie()) {
+				eigenValue = new double[Math.min(pcaCount, regularCount)];
+				eigenVectorsLeft = calculateRandomizedPCA(descriptorColumn, regularColumn, varyingKey,
+						meanParameter, invSD, eigenValue.length, eigenValue);
+
+				// the sum of all eigenvalues is the trace of the correlation matrix
+				for (int i=0; i<regularCount; i++)
+					if (invSD[i] != 0.0)
+						eigenValueSum++;
+				}
+			}
+		else {
+			double[] rowParameter = new double[regularCount];
+			startProgress("Building parameter matrix...", 0, mFullDataRowCount);
 
-			startProgress("Multiplying descriptors with eigenvalues...", 0, mFullDataRowCount);
+			double[][] squareMatrix = new double[regularCount][regularCount];
 			for (int r=0; r<mFullDataRowCount; r++) {
 				if (threadMustDie())
 					break;
@@ -495,12 +476,57 @@ public class DETaskPCA extends ConfigurableTask {
 
 				calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
 				for (int i=0; i<regularCount; i++)
-					rowParameter[i] = (rowParameter[i] - meanParameter[i]) / Math.sqrt(variance[i]);
+					rowParameter[i] = (rowParameter[i] - meanParameter[i]) * invSD[i];
 
-				for (int i=0; i<pcaCount; i++)
+				for (int i=0; i<regularCount; i++)
 					for (int j=0; j<regularCount; j++)
-						factorArray[r][i] += rowParameter[j] * eigenVectorsLeft[j][i];
+						squareMatrix[i][j] += rowParameter[i] * rowParameter[j];
+				}
+
+			for (int i=0; i<regularCount; i++)
+				for (int j=0; j<regularCount; j++)
+					squareMatrix[i][j] /= (mFullDataRowCount-1);
+
+				// Principle component analysis
+			if (!threadMustDie()) {
+				SingularValueDecomposition svd = new SingularValueDecomposition(squareMatrix, this, this);
+				eigenVectorsLeft = svd.getU();
+				eigenValue = svd.getSingularValues();
+				for (int i=0; i<eigenValue.length; i++)
+					eigenValueSum += eigenValue[i];
+	//			for (int i=0; i<eigenVectorsLeft.length; i++)
+	//				System.out.println("EigenVectorsLeft["+i+"][0]"+i+": "+(eigenVectorsLeft[i][0]));
+				}
+			}
+
+		double[][] factorArray = null;
+		if (!threadMustDie()) {
+			int eigenValueN = (eigenVectorsLeft.length == 0) ? 0 : eigenVectorsLeft[0].length;
+			if (pcaCount > eigenValueN)
+				pcaCount = eigenValueN;
+
+			// project standardized rows: sum_j (x_j-mean_j)/sd_j * v_j = sum_j x_j*w_j - sum_j mean_j*w_j
+			final int componentCount = pcaCount;
+			final double[][] weight = new double[componentCount][regularCount];
+			final double[] offset = new double[componentCount];
+			for (int i=0; i<componentCount; i++) {
+				for (int j=0; j<regularCount; j++) {
+					weight[i][j] = eigenVectorsLeft[j][i] * invSD[j];
+					offset[i] += meanParameter[j] * weight[i][j];
+					}
 				}
+
+			final double[][] factor = new double[mFullDataRowCount][componentCount];
+			accumulateRows("Multiplying descriptors with eigenvalues...", descriptorColumn, regularColumn, varyingKey, parameterCount, 0,
+					(r, rowParameter, nonZero, nonZeroCount, sum) -> {
+				for (int i=0; i<componentCount; i++) {
+					double f = -offset[i];
+					for (int k=0; k<nonZeroCount; k++)
+						f += rowParameter[nonZero[k]] * weight[i][nonZero[k]];
+					factor[r][i] = f;
+					}
+				} );
+			factorArray = factor;
 			}
 
 		if (!threadMustDie()) {
@@ -604,10 +630,8 @@ public class DETaskPCA extends ConfigurableTask {
 			}
 
 		if (!threadMustDie()) {
-			double[] singularValue = svd.getSingularValues();
-			double sum = 0.0;
-			for (int i=0; i<singularValue.length; i++)
-				sum += singularValue[i];
+			double[] singularValue = eigenValue;
+			double sum = eigenValueSum;
 			int maxIndex = Math.min(10, singularValue.length);
 			StringBuffer sb = new StringBuffer();
 			sb.append("<b>Explained variance percentage of<BR>the first "+maxIndex+" Principal Components</b><BR>");
@@ -619,6 +643,263 @@ public class DETaskPCA extends ConfigurableTask {
 			}
 		}
 
+	private interface RowAccumulator {
+		/**
+		 * @param r full data row index
+		 * @param rowParameter all parameter values of the row
+		 * @param nonZero indexes of all parameters with non-zero values
+		 * @param nonZeroCount
+		 * @param sum the calling thread's sum buffer
+		 */
+		void add(int r, double[] rowParameter, int[] nonZero, int nonZeroCount, double[] sum);
+		}
+
+	/**
+	 * Calculates the parameter rows of all full data rows in parallel chunks and passes them to the accumulator.
+	 * Every thread adds to its own sum buffer, which are added up when all rows are processed.
+	 * @return sum of all thread buffers
+	 */
+	private double[] accumulateRows(String message, int[] descriptorColumn, int[] regularColumn, Object[] varyingKey,
+									int parameterCount, int sumSize, RowAccumulator accumulator) {
+		startProgress(message, 0, mFullDataRowCount);
+
+		final AtomicInteger chunkIndex = new AtomicInteger(0);
+		final AtomicInteger doneCount = new AtomicInteger(0);
+
+		int threadCount = Math.min(Runtime.getRuntime().availableProcessors(), 1 + mFullDataRowCount / ROW_CHUNK_SIZE);
+		double[][] threadSum = new double[threadCount][];
+		Thread[] worker = new Thread[threadCount];
+		for (int i=0; i<threadCount; i++) {
+			final double[] sum = new double[sumSize];
+			threadSum[i] = sum;
+			worker[i] = new Thread(() -> {
+				double[] rowParameter = new double[parameterCount];
+				int[] nonZero = new int[parameterCount];
+				int start = ROW_CHUNK_SIZE * chunkIndex.getAndIncrement();
+				while (start < mFullDataRowCount && !threadMustDie()) {
+					int end = Math.min(mFullDataRowCount, start + ROW_CHUNK_SIZE);
+					for (int r=start; r<end; r++) {
+						calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
+						int nonZeroCount = 0;
+						for (int j=0; j<parameterCount; j++)
+							if (rowParameter[j] != 0.0)
+								nonZero[nonZeroCount++] = j;
+						accumulator.add(r, rowParameter, nonZero, nonZeroCount, sum);
+						}
+
+					updateProgress(doneCount.addAndGet(end - start));
+					start = ROW_CHUNK_SIZE * chunkIndex.getAndIncrement();
+					}
+				}, "PCA Calculator "+(i+1));
+			worker[i].setPriority(Thread.MIN_PRIORITY);
+			worker[i].start();
+			}
+
+		for (Thread t:worker)
+			try { t.join(); } catch (InterruptedException e) {}
+
+		for (int i=1; i<threadCount; i++)
+			for (int j=0; j<sumSize; j++)
+				threadSum[0][j] += threadSum[i][j];
+
+		return threadSum[0];
+		}
+
+	/**
+	 * Calculates the top eigenvectors of the parameter correlation matrix C with a randomized range finder
+	 * followed by subspace iterations without ever building C. Instead, every pass over all rows calculates
+	 * C*V for a thin matrix V of componentCount+OVERSAMPLING vectors. The small projection Q'CQ onto the
+	 * found subspace is finally diagonalized.
+	 * @param meanParameter
+	 * @param invSD inverse standard deviations of all parameters, 0.0 for constant parameters
+	 * @param componentCount
+	 * @param eigenValue receives the top componentCount eigenvalues
+	 * @return eigenvectors as [parameter][component] or null, if cancelled
+	 */
+	private double[][] calculateRandomizedPCA(int[] descriptorColumn, int[] regularColumn, Object[] varyingKey,
+											  double[] meanParameter, double[] invSD, int componentCount, double[] eigenValue) {
+		int parameterCount = meanParameter.length;
+		int vectorCount = Math.min(parameterCount, componentCount + OVERSAMPLING);
+
+		Random random = new Random();
+		double[][] q = new double[vectorCount][parameterCount];
+		for (int i=0; i<vectorCount; i++)
+			for (int j=0; j<parameterCount; j++)
+				q[i][j] = random.nextGaussian();
+		orthonormalize(q);
+
+		for (int iteration=0; iteration<=POWER_ITERATIONS; iteration++) {
+			String message = "Calculating components (pass "+(iteration+1)+" of "+(POWER_ITERATIONS+1)+")...";
+			double[][] cq = multiplyCorrelationMatrix(message, descriptorColumn, regularColumn, varyingKey, meanParameter, invSD, q);
+			if (threadMustDie())
+				return null;
+
+			if (iteration < POWER_ITERATIONS) {
+				orthonormalize(cq);
+				q = cq;
+				continue;
+				}
+
+			double[][] b = new double[vectorCount][vectorCount];
+			for (int i=0; i<vectorCount; i++)
+				for (int k=0; k<vectorCount; k++)
+					for (int j=0; j<parameterCount; j++)
+						b[i][k] += q[i][j] * cq[k][j];
+			for (int i=0; i<vectorCount; i++)	// remove numerical asymmetry
+				for (int k=i+1; k<vectorCount; k++)
+					b[i][k] = b[k][i] = 0.5 * (b[i][k] + b[k][i]);
+
+			double[][] eigenVector = new double[vectorCount][vectorCount];
+			double[] value = diagonalize(b, eigenVector);
+
+			double[][] u = new double[parameterCount][componentCount];
+			for (int c=0; c<componentCount; c++) {
+				eigenValue[c] = value[c];
+				for (int i=0; i<vectorCount; i++)
+					for (int j=0; j<parameterCount; j++)
+						u[j][c] += q[i][j] * eigenVector[i][c];
+				}
+			return u;
+			}
+
+		return null;
+		}
+
+	/**
+	 * Calculates C*v for all vectors v of q, where C is the correlation matrix of all full data rows.
+	 * With a_r = (x_r-mean)/sd being the standardized row r, C*v = sum_r a_r (a_r.v) / (n-1).
+	 * To skip zero parameters, e.g. fingerprint bits, the sums are taken over raw values x_r
+	 * and corrected for the mean afterwards.
+	 * @return C*q with the same layout as q
+	 */
+	private double[][] multiplyCorrelationMatrix(String message, int[] descriptorColumn, int[] regularColumn, Object[] varyingKey,
+												 double[] meanParameter, double[] invSD, double[][] q) {
+		final int parameterCount = meanParameter.length;
+		final int vectorCount = q.length;
+		final double[][] weight = new double[vectorCount][parameterCount];
+		final double[] offset = new double[vectorCount];
+		for (int i=0; i<vectorCount; i++) {
+			for (int j=0; j<parameterCount; j++) {
+				weight[i][j] = q[i][j] * invSD[j];
+				offset[i] += meanParameter[j] * weight[i][j];
+				}
+			}
+
+		// sum layout: vectorCount blocks of sum_r x_r*t_r followed by vectorCount values sum_r t_r
+		double[] sum = accumulateRows(message, descriptorColumn, regularColumn, varyingKey, parameterCount, vectorCount*(parameterCount+1),
+				(r, rowParameter, nonZero, nonZeroCount, s) -> {
+			for (int i=0; i<vectorCount; i++) {
+				double t = -offset[i];
+				for (int k=0; k<nonZeroCount; k++)
+					t += rowParameter[nonZero[k]] * weight[i][nonZero[k]];
+
+				int base = i * parameterCount;
+				for (int k=0; k<nonZeroCount; k++)
+					s[base+nonZero[k]] += rowParameter[nonZero[k]] * t;
+				s[vectorCount*parameterCount+i] += t;
+				}
+			} );
+
+		double[][] cq = new double[vectorCount][parameterCount];
+		for (int i=0; i<vectorCount; i++) {
+			double tSum = sum[vectorCount*parameterCount+i];
+			for (int j=0; j<parameterCount; j++)
+				cq[i][j] = (sum[i*parameterCount+j] - meanParameter[j] * tSum) * invSD[j] / (mFullDataRowCount-1);
+			}
+		return cq;
+		}
+
+	/**
+	 * Modified Gram-Schmidt orthonormalization of the vectors v[i]. Linearly dependent vectors are set to 0.
+	 */
+	private static void orthonormalize(double[][] v) {
+		for (int i=0; i<v.length; i++) {
+			for (int k=0; k<i; k++) {
+				double dot = 0.0;
+				for (int j=0; j<v[i].length; j++)
+					dot += v[i][j] * v[k][j];
+				for (int j=0; j<v[i].length; j++)
+					v[i][j] -= dot * v[k][j];
+				}
+
+			double norm = 0.0;
+			for (int j=0; j<v[i].length; j++)
+				norm += v[i][j] * v[i][j];
+			norm = Math.sqrt(norm);
+			double factor = (norm < 1e-10) ? 0.0 : 1.0 / norm;
+			for (int j=0; j<v[i].length; j++)
+				v[i][j] *= factor;
+			}
+		}
+
+	/**
+	 * Diagonalizes a small symmetric matrix with cyclic Jacobi rotations.
+	 * @param a symmetric matrix, which is destroyed
+	 * @param eigenVector receives eigenvectors as columns sorted by decreasing eigenvalue
+	 * @return eigenvalues sorted in decreasing order
+	 */
+	private static double[] diagonalize(double[][] a, double[][] eigenVector) {
+		int n = a.length;
+		double[][] v = new double[n][n];
+		for (int i=0; i<n; i++)
+			v[i][i] = 1.0;
+
+		for (int sweep=0; sweep<100; sweep++) {
+			double offDiagonal = 0.0;
+			for (int p=0; p<n; p++)
+				for (int q=p+1; q<n; q++)
+					offDiagonal += a[p][q] * a[p][q];
+			if (offDiagonal < 1e-22)
+				break;
+
+			for (int p=0; p<n; p++) {
+				for (int q=p+1; q<n; q++) {
+					if (a[p][q] == 0.0)
+						continue;
+
+					double theta = (a[q][q] - a[p][p]) / (2.0 * a[p][q]);
+					double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1.0));
+					if (theta == 0.0)
+						t = 1.0;
+					double c = 1.0 / Math.sqrt(t * t + 1.0);
+					double s = t * c;
+
+					for (int k=0; k<n; k++) {
+						double akp = a[k][p];
+						double akq = a[k][q];
+						a[k][p] = c * akp - s * akq;
+						a[k][q] = s * akp + c * akq;
+						}
+					for (int k=0; k<n; k++) {
+						double apk = a[p][k];
+						double aqk = a[q][k];
+						a[p][k] = c * apk - s * aqk;
+						a[q][k] = s * apk + c * aqk;
+						}
+					for (int k=0; k<n; k++) {
+						double vkp = v[k][p];
+						double vkq = v[k][q];
+						v[k][p] = c * vkp - s * vkq;
+						v[k][q] = s * vkp + c * vkq;
+						}
+					}
+				}
+			}
+
+		Integer[] order = new Integer[n];
+		for (int i=0; i<n; i++)
+			order[i] = i;
+		Arrays.sort(order, (i1, i2) -> Double.compare(a[i2][i2], a[i1][i1]));
+
+		double[] value = new double[n];
+		for (int i=0; i<n; i++) {
+			value[i] = a[order[i]][order[i]];
+			for (int k=0; k<n; k++)
+				eigenVector[k][i] = v[k][order[i]];
+			}
+		return value;
+		}
+
 	private int findBestCorrelatingColumn(int[] regularColumn, double[][] eigenVectorsLeft, int dimensions) {
 		double[] correlation = new double[regularColumn.length];
 		for (int i=0; i<regularColumn.length; i++)
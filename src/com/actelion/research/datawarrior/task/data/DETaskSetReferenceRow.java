@@ -147,11 +147,10 @@ public class DETaskSetReferenceRow extends ConfigurableTask implements Runnable
 
 		if (list != -1) {
 			CompoundTableListHandler hlh = mTableModel.getListHandler();
-			long mask = hlh.getListMask(list);
 
 			int count = 0;
 			for (int row=0; row<mTableModel.getTotalRowCount(); row++)
-				if ((mTableModel.getRecord(row).getFlags() & mask) != 0)
+				if (hlh.isListMember(mTableModel.getRecord(row), list))
 					count++;
 
 			if (count < 2) {
@@ -161,12 +160,12 @@ public class DETaskSetReferenceRow extends ConfigurableTask implements Runnable
 				if (which == WHICH_RANDOM) {
 					do {
 						newRow = new Random().nextInt(mTableModel.getTotalRowCount());
-						} while (newRow == oldRow || (mTableModel.getRecord(newRow).getFlags() & mask) == 0);
+						} while (newRow == oldRow || !hlh.isListMember(mTableModel.getRecord(newRow), list));
 					}
 				else {	// WHICH_NEXT
 					do {
 						newRow = (oldRow+1 == mTableModel.getTotalRowCount()) ? 0 : oldRow+1;
-						} while ((mTableModel.getRecord(newRow).getFlags() & mask) == 0);
+						} while (!hlh.isListMember(mTableModel.getRecord(newRow), list));
 					}
 				}
 			}
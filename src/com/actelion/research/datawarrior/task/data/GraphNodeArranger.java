@@ -0,0 +1,308 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.datawarrior.task.data;
+
+import com.actelion.research.calc.ProgressController;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Arranges the nodes of a similarity graph in 2D, such that connected nodes are close to each other,
+ * while all nodes keep a minimum distance. In every cycle connected nodes attract each other and
+ * nodes closer than the current minimum distance repel each other.<br>
+ * Since the repulsion only acts within the minimum distance, nodes are binned into a uniform grid
+ * with a cell size not smaller than the minimum distance and every node only needs to consider the
+ * nodes in its own and the eight surrounding cells. Every worker thread takes chunks of nodes and
+ * calculates the complete shift of every node from the node's own perspective. Thus, every shift
+ * value is written by one thread only, which needs neither atomic updates nor any reduction.
+ * Finally, nodes are spread evenly onto a disc keeping their angular positions.
+ */
+public class GraphNodeArranger {
+	private static final int NODE_CHUNK_SIZE = 1024;
+
+	private final int		mNodeCount;
+	private final float[]	mX,mY,mDX,mDY;
+	private final int[]		mNeighborCount,mNeighborStart,mNeighbor;
+	private int[]			mCellStart,mCellNode;
+	private int				mGridSize;
+	private float			mMinDistance,mCycleMinDistance,mAttractionCycleFactor,mRepulsionCycleFactor;
+	private AtomicInteger	mSMPChunkIndex;
+
+	/**
+	 * @param nodeCount
+	 * @param edgeNode1 first node index of every edge
+	 * @param edgeNode2 second node index of every edge
+	 */
+	public GraphNodeArranger(int nodeCount, int[] edgeNode1, int[] edgeNode2) {
+		mNodeCount = nodeCount;
+		mX = new float[nodeCount];
+		mY = new float[nodeCount];
+		mDX = new float[nodeCount];
+		mDY = new float[nodeCount];
+
+		mNeighborCount = new int[nodeCount];
+		for (int i=0; i<edgeNode1.length; i++) {
+			mNeighborCount[edgeNode1[i]]++;
+			mNeighborCount[edgeNode2[i]]++;
+			}
+
+		mNeighborStart = new int[nodeCount+1];
+		for (int node=0; node<nodeCount; node++)
+			mNeighborStart[node+1] = mNeighborStart[node] + mNeighborCount[node];
+
+		mNeighbor = new int[mNeighborStart[nodeCount]];
+		int[] index = Arrays.copyOf(mNeighborStart, nodeCount);
+		for (int i=0; i<edgeNode1.length; i++) {
+			mNeighbor[index[edgeNode1[i]]++] = edgeNode2[i];
+			mNeighbor[index[edgeNode2[i]]++] = edgeNode1[i];
+			}
+
+		mMinDistance = 1.0f / (float)Math.sqrt(nodeCount);
+		}
+
+	/**
+	 * Runs all optimization cycles and then spreads nodes onto a disc.
+	 * Progress is reported as current cycle number.
+	 * @param cycleCount
+	 * @param pc
+	 * @return false, if cancelled
+	 */
+	public boolean arrange(int cycleCount, ProgressController pc) {
+		for (int node=0; node<mNodeCount; node++) {
+			mX[node] = (float)Math.random();
+			mY[node] = (float)Math.random();
+			}
+
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = (threadCount == 1) ? null : Executors.newFixedThreadPool(threadCount);
+		mSMPChunkIndex = new AtomicInteger();
+
+		try {
+			for (int cycle=0; cycle<cycleCount; cycle++) {
+				if (pc.threadMustDie())
+					return false;
+				pc.updateProgress(cycle);
+
+				float cycleState = (float)cycle / (float)cycleCount;
+				mCycleMinDistance = cycleState*(2.0f-cycleState) * mMinDistance;
+				mAttractionCycleFactor = 0.8f * (1.0f - cycleState) * ((cycleState < 0.5) ? 0.5f : (1.0f - cycleState));
+				mRepulsionCycleFactor = (cycleState < 0.5) ? 0.5f : (1.0f - cycleState);
+
+				buildGrid();
+				mSMPChunkIndex.set(0);
+
+				if (executor == null) {
+					calculateShifts();
+					}
+				else {
+					CountDownLatch doneSignal = new CountDownLatch(threadCount);
+					for (int t=0; t<threadCount; t++) {
+						executor.execute(() -> {
+							calculateShifts();
+							doneSignal.countDown();
+							} );
+						}
+					try {
+						doneSignal.await();
+						}
+					catch (InterruptedException e) {
+						return false;
+						}
+					}
+
+				for (int node=0; node<mNodeCount; node++) {
+					mX[node] = Math.min(Math.max(mX[node]+mDX[node], 0f), 1.0f);
+					mY[node] = Math.min(Math.max(mY[node]+mDY[node], 0f), 1.0f);
+					}
+				}
+			}
+		finally {
+			if (executor != null)
+				executor.shutdown();
+			}
+
+		pc.startProgress("Cleaning Positions...", 0, 0);
+		spreadOnDisc();
+		return true;
+		}
+
+	public float getX(int node) {
+		return mX[node];
+		}
+
+	public float getY(int node) {
+		return mY[node];
+		}
+
+	/**
+	 * Bins all nodes into a square grid by a counting sort. The grid is limited to about 4*nodeCount cells,
+	 * which in early cycles with tiny minimum distances gives cells larger than the minimum distance.
+	 */
+	private void buildGrid() {
+		int maxGridSize = 2 * (int)Math.sqrt(mNodeCount) + 1;
+		mGridSize = (mCycleMinDistance == 0f) ? 1 : Math.max(1, Math.min(maxGridSize, (int)(1.0f / mCycleMinDistance)));
+		int cellCount = mGridSize * mGridSize;
+
+		if (mCellStart == null || mCellStart.length < cellCount+1)
+			mCellStart = new int[cellCount+1];
+		else
+			Arrays.fill(mCellStart, 0, cellCount+1, 0);
+		if (mCellNode == null)
+			mCellNode = new int[mNodeCount];
+
+		for (int node=0; node<mNodeCount; node++)
+			mCellStart[getCell(node)+1]++;
+		for (int cell=0; cell<cellCount; cell++)
+			mCellStart[cell+1] += mCellStart[cell];
+
+		int[] index = Arrays.copyOf(mCellStart, cellCount);
+		for (int node=0; node<mNodeCount; node++)
+			mCellNode[index[getCell(node)]++] = node;
+		}
+
+	private int getCell(int node) {
+		return getGridIndex(mY[node]) * mGridSize + getGridIndex(mX[node]);
+		}
+
+	private int getGridIndex(float position) {
+		return Math.min(mGridSize-1, (int)(position * mGridSize));
+		}
+
+	/**
+	 * Takes chunks of grid sorted nodes and calculates the shift of every node due to
+	 * the attraction of its graph neighbors and the repulsion of too close nodes.
+	 * This is called concurrently by all worker threads.
+	 */
+	private void calculateShifts() {
+		while (true) {
+			int start = NODE_CHUNK_SIZE * mSMPChunkIndex.getAndIncrement();
+			if (start >= mNodeCount)
+				break;
+
+			int end = Math.min(mNodeCount, start + NODE_CHUNK_SIZE);
+			for (int i=start; i<end; i++) {
+				int node = mCellNode[i];
+				mDX[node] = 0f;
+				mDY[node] = 0f;
+				addAttraction(node);
+				if (mCycleMinDistance != 0f)
+					addRepulsion(node);
+				}
+			}
+		}
+
+	private void addAttraction(int node) {
+		float neighborFactor = (mNeighborCount[node] > 4) ? 4.0f / mNeighborCount[node] : 1.0f;
+		float factor = mAttractionCycleFactor * neighborFactor;
+
+		for (int i=mNeighborStart[node]; i<mNeighborStart[node+1]; i++) {
+			int neighbor = mNeighbor[i];
+			float dx = mX[neighbor] - mX[node];
+			float dy = mY[neighbor] - mY[node];
+			float distance = (float)Math.sqrt(dx*dx+dy*dy);
+			float shift = distance - mMinDistance;
+			if (shift > 0) {
+				mDX[node] += dx * shift / distance * factor;
+				mDY[node] += dy * shift / distance * factor;
+				}
+			}
+		}
+
+	private void addRepulsion(int node) {
+		int cx = getGridIndex(mX[node]);
+		int cy = getGridIndex(mY[node]);
+		for (int gy=Math.max(0, cy-1); gy<=Math.min(mGridSize-1, cy+1); gy++) {
+			for (int gx=Math.max(0, cx-1); gx<=Math.min(mGridSize-1, cx+1); gx++) {
+				int cell = gy * mGridSize + gx;
+				for (int i=mCellStart[cell]; i<mCellStart[cell+1]; i++) {
+					int other = mCellNode[i];
+					if (other == node)
+						continue;
+
+					float dx = mX[other] - mX[node];
+					if (Math.abs(dx) >= mCycleMinDistance)
+						continue;
+
+					float dy = mY[other] - mY[node];
+					if (Math.abs(dy) >= mCycleMinDistance)
+						continue;
+
+					double distance = Math.sqrt(dx*dx+dy*dy);
+					if (distance < mCycleMinDistance) {
+						if (distance == 0.0) {
+							double angle = 2.0 * Math.PI * ThreadLocalRandom.current().nextDouble();
+							dx = (float)Math.sin(angle) * mCycleMinDistance;
+							dy = (float)Math.cos(angle) * mCycleMinDistance;
+							}
+						else {
+							double shift = mCycleMinDistance - distance;
+							dx *= shift/distance;
+							dy *= shift/distance;
+							}
+						mDX[node] -= dx * mRepulsionCycleFactor;
+						mDY[node] -= dy * mRepulsionCycleFactor;
+						}
+					}
+				}
+			}
+		}
+
+	/**
+	 * Sorts nodes by their distance from the center and places them on a disc with radius 1.0,
+	 * such that the node density is uniform, while every node keeps its angle.
+	 */
+	private void spreadOnDisc() {
+		long[] key = new long[mNodeCount];
+		for (int node=0; node<mNodeCount; node++) {
+			float x = mX[node]-0.5f;
+			float y = mY[node]-0.5f;
+			float d = (float)Math.sqrt(x*x+y*y);
+			key[node] = ((long)Float.floatToIntBits(d) << 32) | node;	// positive floats sort like their int bits
+			}
+		Arrays.parallelSort(key);
+
+		for (int i=0; i<mNodeCount; i++) {
+			int node = (int)key[i];
+			float x = mX[node]-0.5f;
+			float y = mY[node]-0.5f;
+
+			double a;
+			if (y != 0f) {
+				a = (float)Math.atan(x/y);
+				if (y < 0) {
+					if (x < 0)
+						a -= Math.PI;
+					else
+						a += Math.PI;
+					}
+				}
+			else {
+				a = (x > 0f) ? (float)Math.PI/2 : -(float)Math.PI/2;
+				}
+
+			mX[node] = (float)(Math.sqrt((0.5f+i)/mNodeCount) * Math.sin(a));
+			mY[node] = (float)(Math.sqrt((0.5f+i)/mNodeCount) * Math.cos(a));
+			}
+		}
+	}
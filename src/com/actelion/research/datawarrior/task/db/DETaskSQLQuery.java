@@ -28,6 +28,7 @@ import com.actelion.research.datawarrior.task.ConfigurableTask;
 import com.actelion.research.gui.JLoginDialog;
 import com.actelion.research.gui.hidpi.HiDPIHelper;
 import com.actelion.research.table.model.CompoundTableEvent;
+import com.actelion.research.table.model.CompoundTableModel;
 import info.clearthought.layout.TableLayout;
 
 import javax.swing.*;
@@ -65,6 +66,15 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 	private static final int MAX_TOLERATED_SMILES_FAILURES = 4;
 	private static final String STRUCTURE_COLUMN_NAME_START ="Structure of ";
 
+	private static final int FETCH_SIZE = 1000;
+	private static final int FIRST_BLOCK_SIZE = 4096;
+	private static final int MAX_BLOCK_SIZE = 262144;
+
+	private static final int COLUMN_KIND_STRING = 0;
+	private static final int COLUMN_KIND_INTEGER = 1;
+	private static final int COLUMN_KIND_FLOAT = 2;
+	private static final int COLUMN_KIND_SINGLE = 3;
+
 	private static JLoginDialog sLoginDialog;
 	private static boolean	sOracleDriverRegistered,sMySQLDriverRegistered,sPostgreSQLDriverRegistered,sSQLServerDriverRegistered;
 	private static TreeMap<String,DatabaseSpec> sKnownDatabaseMap;	// map from database name to connect string
@@ -457,64 +467,190 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 
 		startProgress("Retrieving data ...", 0, 0);
 
-		String[] columnName = null;
-		ArrayList<byte[][]> resultList = new ArrayList<byte[][]>();
+		Statement stmt = null;
+		ResultSet rset = null;
+		CompoundTableModel tableModel = null;
 		try {
 			String sql = resolveVariables(configuration.getProperty(PROPERTY_SQL).replace(NEWLINE_STRING, " "));
 			sql = resolveVariables(sql);
-			Statement stmt = connection.createStatement();
-			ResultSet rset = stmt.executeQuery (sql);
+			stmt = connection.createStatement();
+			stmt.setFetchSize(FETCH_SIZE);
+			rset = stmt.executeQuery (sql);
 			ResultSetMetaData metaData = rset.getMetaData();
 
-			columnName = new String[metaData.getColumnCount()];
-			for (int column=0; column<metaData.getColumnCount(); column++)
+			int sqlColumnCount = metaData.getColumnCount();
+			String[] columnName = new String[sqlColumnCount];
+			int[] columnKind = new int[sqlColumnCount];
+			for (int column=0; column<sqlColumnCount; column++) {
 				columnName[column] = metaData.getColumnName(column+1);
-	
-			while (rset.next()) {
-				byte[][] result = new byte[metaData.getColumnCount()][];
-				for (int column=0; column<metaData.getColumnCount(); column++) {
-					String s = rset.getString(column+1);
-					result[column] = (s == null) ? null : s.getBytes();
-					}
-				resultList.add(result);
+				columnKind[column] = getColumnKind(metaData, column+1);
+				}
+
+			// The first block is used to detect SMILES columns and to create the table.
+			// Later blocks are appended with growing sizes to keep the repeated row analysis cheap.
+			StereoMolecule mol = new StereoMolecule();
+			ArrayList<byte[][]> block = new ArrayList<>();
+			ArrayList<float[]> valueBlock = new ArrayList<>();
+			boolean hasMoreRows = readBlock(rset, columnKind, block, valueBlock, FIRST_BLOCK_SIZE);
+			int[] smilesColumn = findSmilesColumns(block, mol, sqlColumnCount);
+			columnName = insertStructureColumnNames(columnName, smilesColumn);
+			insertStructureColumns(block, smilesColumn, mol);
+
+			mTargetFrame = mApplication.getEmptyFrame("Custom SQL Result");
+			tableModel = mTargetFrame.getTableModel();
+			tableModel.initializeTable(block.size(), columnName.length);
+
+			for (int column=0; column<columnName.length; column++)
+				tableModel.setColumnName(columnName[column], column);
+
+			copyBlockToTable(tableModel, block, 0);
+			setPreparsedValues(tableModel, columnKind, valueBlock, smilesColumn);
+
+			if (smilesColumn.length != 0)
+				for (int i=0; i<columnName.length; i++)
+					if (columnName[i].startsWith(STRUCTURE_COLUMN_NAME_START))
+						tableModel.setColumnProperty(i,
+								CompoundTableConstants.cColumnPropertySpecialType, CompoundTableConstants.cColumnTypeIDCode);
+
+			tableModel.finalizeTable(CompoundTableEvent.cSpecifierDefaultFiltersAndViews, this);
+
+			int blockSize = FIRST_BLOCK_SIZE;
+			while (hasMoreRows && !threadMustDie()) {
+				blockSize = Math.min(MAX_BLOCK_SIZE, 2 * blockSize);
+				startProgress("Retrieving data ("+tableModel.getTotalRowCount()+" rows so far)...", 0, 0);
+				block.clear();
+				hasMoreRows = readBlock(rset, columnKind, block, null, blockSize);
+				insertStructureColumns(block, smilesColumn, mol);
+
+				int firstNewRow = tableModel.getTotalRowCount();
+				tableModel.addNewRows(block.size(), true);
+				copyBlockToTable(tableModel, block, firstNewRow);
+				tableModel.finalizeNewRows(firstNewRow, this);
 				}
-			rset.close();
-			stmt.close();
 			}
 		catch (SQLException e) {
 			showErrorMessage(e.toString());
-			return;
 			}
+		finally {
+			try {
+				if (rset != null)
+					rset.close();
+				if (stmt != null)
+					stmt.close();
+				}
+			catch (SQLException e) {}
+			}
+		}
 
-		int oldColumnCount = columnName.length;
-		columnName = handleSmiles(columnName, resultList);
-
-		mTargetFrame = mApplication.getEmptyFrame("Custom SQL Result");
-		mTargetFrame.getTableModel().initializeTable(resultList.size(), columnName.length);
-
-		for (int column=0; column<columnName.length; column++)
-			mTargetFrame.getTableModel().setColumnName(columnName[column], column);
-
-		startProgress("Populating table ...", 0, resultList.size());
-		for (int row=0; row<resultList.size(); row++) {
-			if (threadMustDie())
-				break;
+	/**
+	 * @return COLUMN_KIND_... of the column, which determines the getter used to retrieve its values
+	 */
+	private int getColumnKind(ResultSetMetaData metaData, int sqlColumn) throws SQLException {
+		switch (metaData.getColumnType(sqlColumn)) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+				return COLUMN_KIND_INTEGER;
+			case Types.REAL:
+				return COLUMN_KIND_SINGLE;
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return COLUMN_KIND_FLOAT;
+			case Types.NUMERIC:
+			case Types.DECIMAL:
+				return (metaData.getScale(sqlColumn) == 0 && metaData.getPrecision(sqlColumn) > 0
+					 && metaData.getPrecision(sqlColumn) <= 18) ? COLUMN_KIND_INTEGER : COLUMN_KIND_STRING;
+			default:
+				return COLUMN_KIND_STRING;
+			}
+		}
 
-			if ((row & 15) == 15)
-				updateProgress(row);
+	/**
+	 * Reads up to maxRows rows from the current result set position into block.
+	 * Every cell is retrieved exactly once: numerical columns with their typed getter, from whose
+	 * value the cell text is formatted, all other columns as text. If valueBlock is given, the
+	 * numerical values are also collected, such that the table model doesn't need to parse them
+	 * again when the table is finalized.
+	 * @param valueBlock null or list receiving one array of numerical values per row, indexed by SQL column
+	 * @return true, if the result set may contain more rows
+	 */
+	private boolean readBlock(ResultSet rset, int[] columnKind, ArrayList<byte[][]> block,
+							  ArrayList<float[]> valueBlock, int maxRows) throws SQLException {
+		while (block.size() < maxRows) {
+			if (threadMustDie() || !rset.next())
+				return false;
 
-			byte[][] result = resultList.get(row);
-			for (int column=0; column<columnName.length; column++)
-				mTargetFrame.getTableModel().setTotalDataAt(result[column], row, column);
+			byte[][] result = new byte[columnKind.length][];
+			float[] value = (valueBlock == null) ? null : new float[columnKind.length];
+			for (int column=0; column<columnKind.length; column++) {
+				String s = null;
+				float v = Float.NaN;
+				switch (columnKind[column]) {
+					case COLUMN_KIND_INTEGER:
+						long l = rset.getLong(column+1);
+						if (!rset.wasNull()) {
+							s = Long.toString(l);
+							v = l;
+							}
+						break;
+					case COLUMN_KIND_FLOAT:
+						double d = rset.getDouble(column+1);
+						if (!rset.wasNull()) {
+							s = Double.toString(d);
+							v = (float)d;
+							}
+						break;
+					case COLUMN_KIND_SINGLE:
+						float f = rset.getFloat(column+1);
+						if (!rset.wasNull()) {
+							s = Float.toString(f);
+							v = f;
+							}
+						break;
+					default:
+						s = rset.getString(column+1);
+						break;
+					}
+				result[column] = (s == null) ? null : s.getBytes();
+				if (value != null)
+					value[column] = v;
+				}
+			block.add(result);
+			if (valueBlock != null)
+				valueBlock.add(value);
 			}
+		return true;
+		}
 
-		if (oldColumnCount != columnName.length)
-			for (int i=0; i<columnName.length; i++)
-				if (columnName[i].startsWith(STRUCTURE_COLUMN_NAME_START))
-					mTargetFrame.getTableModel().setColumnProperty(i,
-							CompoundTableConstants.cColumnPropertySpecialType, CompoundTableConstants.cColumnTypeIDCode);
+	/**
+	 * Passes the values of numerical SQL columns, which were retrieved with typed getters,
+	 * to the table model, which uses them instead of parsing the cells in finalizeTable().
+	 * @param smilesColumn SQL columns, in front of which a structure column was inserted
+	 */
+	private void setPreparsedValues(CompoundTableModel tableModel, int[] columnKind,
+									ArrayList<float[]> valueBlock, int[] smilesColumn) {
+		for (int sqlColumn=0; sqlColumn<columnKind.length; sqlColumn++) {
+			if (columnKind[sqlColumn] != COLUMN_KIND_STRING) {
+				int column = sqlColumn;
+				for (int sc:smilesColumn)
+					if (sc <= sqlColumn)
+						column++;
+
+				float[] value = new float[valueBlock.size()];	// row index equals record ID in a new table
+				for (int row=0; row<value.length; row++)
+					value[row] = valueBlock.get(row)[sqlColumn];
+				tableModel.setPreparsedValues(column, value, false);
+				}
+			}
+		}
 
-		mTargetFrame.getTableModel().finalizeTable(CompoundTableEvent.cSpecifierDefaultFiltersAndViews, this);
+	private void copyBlockToTable(CompoundTableModel tableModel, ArrayList<byte[][]> block, int firstRow) {
+		for (int i=0; i<block.size(); i++) {
+			byte[][] result = block.get(i);
+			for (int column=0; column<result.length; column++)
+				tableModel.setTotalDataAt(result[column], firstRow+i, column);
+			}
 		}
 
 	@Override
@@ -522,39 +658,49 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 		return mTargetFrame;
 		}
 
-	private String[] handleSmiles(String[] columnName, ArrayList<byte[][]> resultList) {
-		StereoMolecule mol = new StereoMolecule();
-		int columns = Math.min(MAX_COLUMNS_FOR_SMILES_CHECK, columnName.length);
-		for (int column=columns-1; column>=0; column--) {
-			if (checkForSmiles(resultList, mol, column)) {
-				columnName = insertStructureColumnFromSmiles(columnName, resultList, mol, column);
-				}
-			}
-		return columnName;
+	/**
+	 * @return SMILES column indexes in decreasing order
+	 */
+	private int[] findSmilesColumns(ArrayList<byte[][]> resultList, StereoMolecule mol, int columnCount) {
+		int columns = Math.min(MAX_COLUMNS_FOR_SMILES_CHECK, columnCount);
+		ArrayList<Integer> smilesColumnList = new ArrayList<>();
+		for (int column=columns-1; column>=0; column--)
+			if (checkForSmiles(resultList, mol, column))
+				smilesColumnList.add(column);
+
+		int[] smilesColumn = new int[smilesColumnList.size()];
+		for (int i=0; i<smilesColumn.length; i++)
+			smilesColumn[i] = smilesColumnList.get(i);
+		return smilesColumn;
 		}
 
-	private String[] insertStructureColumnFromSmiles(String[] columnName, ArrayList<byte[][]> resultList, StereoMolecule mol, int smilesColumn) {
-		int columnCount = columnName.length;
-		String structureColumnName = STRUCTURE_COLUMN_NAME_START+columnName[smilesColumn];
-
-		String[] newColumnName = new String[columnCount+1];
-		for (int i=0; i<columnCount; i++) {
-			newColumnName[i < smilesColumn ? i : i+1] = columnName[i];
+	private String[] insertStructureColumnNames(String[] columnName, int[] smilesColumn) {
+		for (int column:smilesColumn) {
+			String[] newColumnName = new String[columnName.length+1];
+			for (int i=0; i<columnName.length; i++)
+				newColumnName[i < column ? i : i+1] = columnName[i];
+			newColumnName[column] = STRUCTURE_COLUMN_NAME_START+columnName[column];
+			columnName = newColumnName;
 			}
-		newColumnName[smilesColumn] = structureColumnName;
+		return columnName;
+		}
 
-		byte[][][] rowList = resultList.toArray(new byte[0][][]);
-		resultList.clear();
-		for (byte[][] row:rowList) {
-			byte[][] newRow = new byte[columnCount+1][];
-			for (int i=0; i<columnCount; i++)
-				newRow[i < smilesColumn ? i : i+1] = row[i];
-			if (isValidSmiles(mol, row[smilesColumn]))
-				newRow[smilesColumn] = getIDCodeFromMolecule(mol);
-			resultList.add(newRow);
+	/**
+	 * Inserts a structure column in front of every SMILES column of all rows of resultList.
+	 * @param smilesColumn SMILES column indexes in decreasing order
+	 */
+	private void insertStructureColumns(ArrayList<byte[][]> resultList, int[] smilesColumn, StereoMolecule mol) {
+		for (int column:smilesColumn) {
+			for (int r=0; r<resultList.size(); r++) {
+				byte[][] row = resultList.get(r);
+				byte[][] newRow = new byte[row.length+1][];
+				for (int i=0; i<row.length; i++)
+					newRow[i < column ? i : i+1] = row[i];
+				if (isValidSmiles(mol, row[column]))
+					newRow[column] = getIDCodeFromMolecule(mol);
+				resultList.set(r, newRow);
+				}
 			}
-
-		return newColumnName;
 		}
 
 	/**
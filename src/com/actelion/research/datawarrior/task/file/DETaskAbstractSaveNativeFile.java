@@ -33,9 +33,11 @@ import com.actelion.research.datawarrior.DEFrame;
 
 public abstract class DETaskAbstractSaveNativeFile extends DETaskAbstractSaveFile {
 	private static final String PROPERTY_EMBED_DETAIL = "embedDetail";
+	private static final String PROPERTY_BINARY_FORMAT = "binaryFormat";
+	private static final String PROPERTY_COMPRESS = "compress";
 
 	private boolean mVisibleOnly;
-	private JCheckBox mCheckBoxEmbedDetails;
+	private JCheckBox mCheckBoxEmbedDetails,mCheckBoxBinaryFormat,mCheckBoxCompress;
 
 	public DETaskAbstractSaveNativeFile(DEFrame parent, String dialogTitle, boolean visibleOnly) {
 		super(parent, dialogTitle);
@@ -51,12 +53,19 @@ public abstract class DETaskAbstractSaveNativeFile extends DETaskAbstractSaveFil
 	public JComponent createInnerDialogContent() {
 		JPanel p = new JPanel();
 		double[][] size = { {8, TableLayout.PREFERRED, 8},
-							{8, TableLayout.PREFERRED, 8} };
+							{8, TableLayout.PREFERRED, 4, TableLayout.PREFERRED, 4, TableLayout.PREFERRED, 8} };
 		p.setLayout(new TableLayout(size));
 
 		mCheckBoxEmbedDetails = new JCheckBox("Embed referenced detail data");
 		p.add(mCheckBoxEmbedDetails, "1,1");
 
+		mCheckBoxBinaryFormat = new JCheckBox("Use binary file format (faster loading)");
+		mCheckBoxBinaryFormat.addActionListener(e -> mCheckBoxCompress.setEnabled(!mCheckBoxBinaryFormat.isSelected()));
+		p.add(mCheckBoxBinaryFormat, "1,3");
+
+		mCheckBoxCompress = new JCheckBox("Compress text file (gzip)");
+		p.add(mCheckBoxCompress, "1,5");
+
 		return p;
 		}
 
@@ -80,18 +89,26 @@ public abstract class DETaskAbstractSaveNativeFile extends DETaskAbstractSaveFil
 	public void setDialogConfigurationToDefault() {
 		super.setDialogConfigurationToDefault();
 		mCheckBoxEmbedDetails.setSelected(false);
+		mCheckBoxBinaryFormat.setSelected(false);
+		mCheckBoxCompress.setSelected(false);
+		mCheckBoxCompress.setEnabled(true);
 		}
 
 	@Override
 	public void setDialogConfiguration(Properties configuration) {
 		super.setDialogConfiguration(configuration);
 		mCheckBoxEmbedDetails.setSelected("true".equals(configuration.getProperty(PROPERTY_EMBED_DETAIL)));
+		mCheckBoxBinaryFormat.setSelected("true".equals(configuration.getProperty(PROPERTY_BINARY_FORMAT)));
+		mCheckBoxCompress.setSelected("true".equals(configuration.getProperty(PROPERTY_COMPRESS)));
+		mCheckBoxCompress.setEnabled(!mCheckBoxBinaryFormat.isSelected());
 		}
 
 	@Override
 	public Properties getDialogConfiguration() {
 		Properties configuration = super.getDialogConfiguration();
 		configuration.setProperty(PROPERTY_EMBED_DETAIL, mCheckBoxEmbedDetails.isSelected() ? "true" : "false");
+		configuration.setProperty(PROPERTY_BINARY_FORMAT, mCheckBoxBinaryFormat.isSelected() ? "true" : "false");
+		configuration.setProperty(PROPERTY_COMPRESS, mCheckBoxCompress.isSelected() ? "true" : "false");
 		return configuration;
 		}
 
@@ -140,6 +157,8 @@ public abstract class DETaskAbstractSaveNativeFile extends DETaskAbstractSaveFil
 			}
 
 		boolean embedDetail = "true".equals(configuration.getProperty(PROPERTY_EMBED_DETAIL));
-		((DEFrame)getParentFrame()).saveNativeFile(file, mVisibleOnly, embedDetail);
+		boolean binaryFormat = "true".equals(configuration.getProperty(PROPERTY_BINARY_FORMAT));
+		boolean compress = "true".equals(configuration.getProperty(PROPERTY_COMPRESS));
+		((DEFrame)getParentFrame()).saveNativeFile(file, mVisibleOnly, embedDetail, binaryFormat, compress);
 		}
 	}
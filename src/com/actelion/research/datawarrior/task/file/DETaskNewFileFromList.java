@@ -18,6 +18,7 @@
 
 package com.actelion.research.datawarrior.task.file;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Properties;
 import java.util.TreeSet;
@@ -30,6 +31,7 @@ import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableEvent;
 import com.actelion.research.table.model.CompoundTableListHandler;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.RowBitmap;
 
 
 public class DETaskNewFileFromList extends DETaskAbstractListTask {
@@ -71,22 +73,16 @@ public class DETaskNewFileFromList extends DETaskAbstractListTask {
 		CompoundTableListHandler sourceHitlistHandler = sourceTableModel.getListHandler();
 
 	   	boolean[] hitlistUsed = new boolean[sourceHitlistHandler.getListCount()];
-	   	long hitlistMask[] = null;
-	   	if (hitlistUsed.length != 0) {
-	   		hitlistMask = new long[hitlistUsed.length];
-	   		for (int i=0; i<hitlistUsed.length; i++)
-	   			hitlistMask[i] = sourceHitlistHandler.getListMask(i);
-	   		}
 
-		long mask = getTableModel().getListHandler().getListMask(getListIndex(configuration));
+		RowBitmap sourceMembers = sourceHitlistHandler.getListBitmap(getListIndex(configuration));
 
 		int listMemberCount = 0;
 		for (int row=0; row<sourceTableModel.getTotalRowCount(); row++) {
 	   		CompoundRecord record = sourceTableModel.getTotalRecord(row);
-			if ((record.getFlags() & mask) != 0) {
+			if (sourceMembers.contains(record.getID())) {
 				listMemberCount++;
 		   		for (int i=0; i<hitlistUsed.length; i++)
-		   			if ((record.getFlags() & hitlistMask[i]) != 0)
+		   			if (sourceHitlistHandler.isListMember(record, i))
 		   				hitlistUsed[i] = true;
 				}
 			}
@@ -107,7 +103,7 @@ public class DETaskNewFileFromList extends DETaskAbstractListTask {
 		TreeSet<String> detaiIDSet = new TreeSet<String>();
 	   	for (int targetRow=0,row=0; row<sourceTableModel.getTotalRowCount(); row++) {
 	   		CompoundRecord record = sourceTableModel.getTotalRecord(row);
-			if ((record.getFlags() & mask) != 0) {
+			if (sourceMembers.contains(record.getID())) {
  				for (int column=0; column<sourceTableModel.getTotalColumnCount(); column++) {
 					targetTableModel.setTotalValueAt(sourceTableModel.encodeDataWithDetail(record, column), targetRow, column);
 					String[][] key = record.getDetailReferences(column);
@@ -125,17 +121,17 @@ public class DETaskNewFileFromList extends DETaskAbstractListTask {
 
 		for (int i=0; i<hitlistUsed.length; i++) {
 			if (hitlistUsed[i]) {
-				int flagNo = targetHitlistHandler.getListFlagNo(targetHitlistHandler.createList(
-						sourceHitlistHandler.getListName(i), -1, CompoundTableListHandler.EMPTY_LIST, -1, null, false));
+				BitSet members = new BitSet(targetTableModel.getTotalRowCount());
 			   	int tRow = 0;
 				for (int row=0; row<sourceTableModel.getTotalRowCount(); row++) {
 			   		CompoundRecord record = sourceTableModel.getTotalRecord(row);
-					if ((record.getFlags() & mask) != 0) {
-						if ((record.getFlags() & hitlistMask[i]) != 0)
-							targetHitlistHandler.addRecordSilent(targetTableModel.getTotalRecord(tRow), flagNo);
+					if (sourceMembers.contains(record.getID())) {
+						if (sourceHitlistHandler.isListMember(record, i))
+							members.set(targetTableModel.getTotalRecord(tRow).getID());
 						tRow++;
 						}
 			   		}
+				targetHitlistHandler.createList(sourceHitlistHandler.getListName(i), new RowBitmap(members));
 				}
 			}
 
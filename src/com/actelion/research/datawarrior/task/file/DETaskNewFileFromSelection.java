@@ -27,8 +27,10 @@ import com.actelion.research.datawarrior.task.DEMacro;
 import com.actelion.research.table.model.CompoundTableEvent;
 import com.actelion.research.table.model.CompoundTableListHandler;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.RowBitmap;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Properties;
 import java.util.TreeSet;
@@ -77,19 +79,13 @@ public class DETaskNewFileFromSelection extends AbstractTaskWithoutConfiguration
         CompoundTableListHandler sourceHitlistHandler = sourceTableModel.getListHandler();
 
        	boolean[] hitlistUsed = new boolean[sourceHitlistHandler.getListCount()];
-       	long hitlistMask[] = null;
-       	if (hitlistUsed.length != 0) {
-       		hitlistMask = new long[hitlistUsed.length];
-       		for (int i=0; i<hitlistUsed.length; i++)
-       			hitlistMask[i] = sourceHitlistHandler.getListMask(i);
-       		}
 
 		int selectionCount = 0;
         for (int row=0; row<sourceTableModel.getRowCount(); row++) {
 			if (sourceTableModel.isSelected(row)) {
 				selectionCount++;
 	       		for (int i=0; i<hitlistUsed.length; i++)
-	       			if ((sourceTableModel.getRecord(row).getFlags() & hitlistMask[i]) != 0)
+	       			if (sourceHitlistHandler.isListMember(sourceTableModel.getRecord(row), i))
 	       				hitlistUsed[i] = true;
 				}
         	}
@@ -127,16 +123,16 @@ public class DETaskNewFileFromSelection extends AbstractTaskWithoutConfiguration
 
         for (int i=0; i<hitlistUsed.length; i++) {
         	if (hitlistUsed[i]) {
-        		int flagNo = targetHitlistHandler.getListFlagNo(targetHitlistHandler.createList(
-        				sourceHitlistHandler.getListName(i), -1, CompoundTableListHandler.EMPTY_LIST, -1, null, false));
+        		BitSet members = new BitSet(targetTableModel.getTotalRowCount());
                	int tRow = 0;
                	for (int row=0; row<sourceTableModel.getRowCount(); row++) {
         			if (sourceTableModel.isSelected(row)) {
-        				if ((sourceTableModel.getRecord(row).getFlags() & hitlistMask[i]) != 0)
-        					targetHitlistHandler.addRecordSilent(targetTableModel.getTotalRecord(tRow), flagNo);
+        				if (sourceHitlistHandler.isListMember(sourceTableModel.getRecord(row), i))
+        					members.set(targetTableModel.getTotalRecord(tRow).getID());
         				tRow++;
         				}
                		}
+        		targetHitlistHandler.createList(sourceHitlistHandler.getListName(i), new RowBitmap(members));
         		}
         	}
 
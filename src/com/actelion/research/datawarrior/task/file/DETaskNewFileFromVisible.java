@@ -18,6 +18,7 @@
 
 package com.actelion.research.datawarrior.task.file;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Properties;
 import java.util.TreeSet;
@@ -29,6 +30,7 @@ import com.actelion.research.datawarrior.task.AbstractTaskWithoutConfiguration;
 import com.actelion.research.table.model.CompoundTableEvent;
 import com.actelion.research.table.model.CompoundTableListHandler;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.RowBitmap;
 
 
 public class DETaskNewFileFromVisible extends AbstractTaskWithoutConfiguration {
@@ -74,16 +76,10 @@ public class DETaskNewFileFromVisible extends AbstractTaskWithoutConfiguration {
         CompoundTableListHandler sourceHitlistHandler = sourceTableModel.getListHandler();
 
        	boolean[] hitlistUsed = new boolean[sourceHitlistHandler.getListCount()];
-       	long hitlistMask[] = null;
-       	if (hitlistUsed.length != 0) {
-       		hitlistMask = new long[hitlistUsed.length];
-       		for (int i=0; i<hitlistUsed.length; i++)
-       			hitlistMask[i] = sourceHitlistHandler.getListMask(i);
-       		}
 
         for (int row=0; row<sourceTableModel.getRowCount(); row++)
        		for (int i=0; i<hitlistUsed.length; i++)
-       			if ((sourceTableModel.getRecord(row).getFlags() & hitlistMask[i]) != 0)
+       			if (sourceHitlistHandler.isListMember(sourceTableModel.getRecord(row), i))
        				hitlistUsed[i] = true;
 
         mTargetFrame = mApplication.getEmptyFrame("Subset of "+mSourceFrame.getTitle());
@@ -116,11 +112,11 @@ public class DETaskNewFileFromVisible extends AbstractTaskWithoutConfiguration {
 
         for (int i=0; i<hitlistUsed.length; i++) {
         	if (hitlistUsed[i]) {
-        		int flagNo = targetHitlistHandler.getListFlagNo(targetHitlistHandler.createList(
-        				sourceHitlistHandler.getListName(i), -1, CompoundTableListHandler.EMPTY_LIST, -1, null, false));
+        		BitSet members = new BitSet(targetTableModel.getTotalRowCount());
                	for (int row=0; row<sourceTableModel.getRowCount(); row++)
-       				if ((sourceTableModel.getRecord(row).getFlags() & hitlistMask[i]) != 0)
-       					targetHitlistHandler.addRecordSilent(targetTableModel.getTotalRecord(row), flagNo);
+       				if (sourceHitlistHandler.isListMember(sourceTableModel.getRecord(row), i))
+       					members.set(targetTableModel.getTotalRecord(row).getID());
+        		targetHitlistHandler.createList(sourceHitlistHandler.getListName(i), new RowBitmap(members));
         		}
         	}
 
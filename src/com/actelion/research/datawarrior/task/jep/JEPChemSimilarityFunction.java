@@ -18,17 +18,23 @@
 
 package com.actelion.research.datawarrior.task.jep;
 
+import java.util.Arrays;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.nfunk.jep.ParseException;
 import org.nfunk.jep.function.PostfixMathCommand;
 
+import com.actelion.research.calc.ProgressController;
 import com.actelion.research.chem.IDCodeParser;
 import com.actelion.research.chem.StereoMolecule;
 import com.actelion.research.chem.descriptor.DescriptorHandler;
 import com.actelion.research.chem.reaction.Reaction;
 import com.actelion.research.chem.reaction.ReactionEncoder;
+import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.CompoundTableSimilarityIndex;
 
 /**
  * An Actelion custom function class for JEP
@@ -40,9 +46,12 @@ import com.actelion.research.table.model.CompoundTableModel;
 public class JEPChemSimilarityFunction extends PostfixMathCommand {
 	public static final String FUNCTION_NAME = "chemsim";
 
+	private static final int INDEX_CHUNK_SIZE = 4096;
+
 	private CompoundTableModel mTableModel;
     private String mPreviousChemCode;
     private Object mDescriptor;
+    private TreeMap<String,float[]> mSimilarityMap;	// column and chemistry code -> similarity by record ID
 
     /**
 	 * Constructor
@@ -54,6 +63,90 @@ public class JEPChemSimilarityFunction extends PostfixMathCommand {
 		numberOfParameters = 2;
 	    }
 
+	/**
+	 * Removes all precalculated values. This must be called before evaluating a new formula.
+	 */
+	public void clearCache() {
+		mSimilarityMap = null;
+		}
+
+	/**
+	 * Calculates the similarities of all records to one constant molecule or reaction in one batch
+	 * on all available cores, which run() uses afterwards for chemsim(column, chemCode).
+	 * Binary fingerprints are compared using the column's similarity index.
+	 * @param column descriptor column
+	 * @param chemCode idcode or reaction code
+	 * @param pc may be null
+	 */
+	public void precalculate(int column, String chemCode, ProgressController pc) {
+		String key = column+"\t"+chemCode;
+		if (mSimilarityMap != null && mSimilarityMap.containsKey(key))
+			return;
+
+		final DescriptorHandler handler = mTableModel.getDescriptorHandler(column);
+		final Object refDescriptor = createDescriptor(handler, column, chemCode);
+		if (handler == null || refDescriptor == null)
+			return;
+
+		final int rowCount = mTableModel.getTotalRowCount();
+		final float[] similarity = new float[rowCount];
+		Arrays.fill(similarity, Float.NaN);
+
+		// binary fingerprints are compared in chunks of the column's similarity index
+		final CompoundTableSimilarityIndex index = (refDescriptor instanceof long[]) ? mTableModel.getSimilarityIndex(column) : null;
+		final AtomicInteger rowIndex = new AtomicInteger(rowCount);
+		final AtomicInteger indexPosition = new AtomicInteger(0);
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		Thread[] worker = new Thread[threadCount];
+		for (int i=0; i<threadCount; i++) {
+			worker[i] = new Thread(() -> {
+				if (index != null) {
+					int fromIndex = indexPosition.getAndAdd(INDEX_CHUNK_SIZE);
+					while (fromIndex < index.getSize() && (pc == null || !pc.threadMustDie())) {
+						index.getSimilarities((long[])refDescriptor, similarity, fromIndex, Math.min(index.getSize(), fromIndex+INDEX_CHUNK_SIZE));
+						fromIndex = indexPosition.getAndAdd(INDEX_CHUNK_SIZE);
+						}
+					return;
+					}
+
+				int row = rowIndex.decrementAndGet();
+				while (row >= 0 && (pc == null || !pc.threadMustDie())) {
+					CompoundRecord record = mTableModel.getTotalRecord(row);
+					Object descriptor = record.getData(column);
+					if (descriptor != null)
+						similarity[record.getID()] = handler.getSimilarity(descriptor, refDescriptor);
+					row = rowIndex.decrementAndGet();
+					}
+				}, "chemsim() Calculator "+(i+1));
+			worker[i].setPriority(Thread.MIN_PRIORITY);
+			worker[i].start();
+			}
+		for (Thread t:worker)
+			try { t.join(); } catch (InterruptedException e) {}
+
+		if (pc != null && pc.threadMustDie())
+			return;
+
+		if (mSimilarityMap == null)
+			mSimilarityMap = new TreeMap<>();
+		mSimilarityMap.put(key, similarity);
+		}
+
+	private Object createDescriptor(DescriptorHandler handler, int column, String chemCode) {
+		try {
+			if (mTableModel.isColumnTypeStructure(mTableModel.getParentColumn(column))) {
+				StereoMolecule mol = new IDCodeParser(handler.getInfo().needsCoordinates).getCompactMolecule(chemCode);
+				return handler.createDescriptor(mol);
+				}
+			else if (mTableModel.isColumnTypeReaction(mTableModel.getParentColumn(column))) {
+				Reaction rxn = ReactionEncoder.decode(chemCode, handler.getInfo().needsCoordinates);
+				return handler.createDescriptor(rxn);
+				}
+			}
+		catch (Exception e) {}
+		return null;
+		}
+
 	/**
 	 * Runs the operation on the inStack. The parameters are popped
 	 * off the <code>inStack</code>, and the square root of it's value is 
@@ -116,24 +209,32 @@ public class JEPChemSimilarityFunction extends PostfixMathCommand {
             	}
 
             if (param2 instanceof String) {
-                if (!param2.equals(mPreviousChemCode)) {
-                    try {
-    	            	if (mTableModel.isColumnTypeStructure(mTableModel.getParentColumn(jepParam1.column))) {
-    	            		mPreviousChemCode = (String)param2;
-    	            		StereoMolecule mol = new IDCodeParser(handler1.getInfo().needsCoordinates).getCompactMolecule(mPreviousChemCode);
-                            mDescriptor = handler1.createDescriptor(mol);
-    	            		}
-    	            	else if (mTableModel.isColumnTypeReaction(mTableModel.getParentColumn(jepParam1.column))) {
-    	            		mPreviousChemCode = (String)param2;
-    	            		Reaction rxn = ReactionEncoder.decode(mPreviousChemCode, handler1.getInfo().needsCoordinates);
-                            mDescriptor = handler1.createDescriptor(rxn);
-    	            		}
-                        }
-                    catch (Exception e) {
-                        throw new ParseException("Second parameter of chemsim() is invalid.");
-                        }
+                float[] similarity = (mSimilarityMap == null) ? null : mSimilarityMap.get(jepParam1.column+"\t"+param2);
+                if (similarity != null) {
+                    inStack.push(new Double(similarity[jepParam1.record.getID()]));
+                    return;
                     }
-            	value2 = mDescriptor;
+
+                synchronized (this) {	// may be shared by parallel parsers
+                    if (!param2.equals(mPreviousChemCode)) {
+                        try {
+        	            	if (mTableModel.isColumnTypeStructure(mTableModel.getParentColumn(jepParam1.column))) {
+        	            		mPreviousChemCode = (String)param2;
+        	            		StereoMolecule mol = new IDCodeParser(handler1.getInfo().needsCoordinates).getCompactMolecule(mPreviousChemCode);
+                                mDescriptor = handler1.createDescriptor(mol);
+        	            		}
+        	            	else if (mTableModel.isColumnTypeReaction(mTableModel.getParentColumn(jepParam1.column))) {
+        	            		mPreviousChemCode = (String)param2;
+        	            		Reaction rxn = ReactionEncoder.decode(mPreviousChemCode, handler1.getInfo().needsCoordinates);
+                                mDescriptor = handler1.createDescriptor(rxn);
+        	            		}
+                            }
+                        catch (Exception e) {
+                            throw new ParseException("Second parameter of chemsim() is invalid.");
+                            }
+                        }
+                	value2 = mDescriptor;
+                	}
             	}
 
             double similarity = handler1.getSimilarity(value1, value2);
@@ -44,7 +44,7 @@ public class JEPFrequencyFunction extends PostfixMathCommand {
 		numberOfParameters = 2;
 		}
 
-	private TreeMap<byte[],Integer> createByteArrayMap(int column) {
+	private synchronized TreeMap<byte[],Integer> createByteArrayMap(int column) {
 		if (mByteArrayMaps == null)
 			mByteArrayMaps = new TreeMap<>();
 
@@ -66,7 +66,7 @@ public class JEPFrequencyFunction extends PostfixMathCommand {
 		return byteArrayMap;
 		}
 
-	private TreeMap<Double,Integer> createDoubleMap(int column) {
+	private synchronized TreeMap<Double,Integer> createDoubleMap(int column) {
 		if (mDoubleMaps == null)
 			mDoubleMaps = new TreeMap<>();
 
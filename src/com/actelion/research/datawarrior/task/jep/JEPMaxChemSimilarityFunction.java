@@ -18,16 +18,26 @@
 
 package com.actelion.research.datawarrior.task.jep;
 
+import com.actelion.research.calc.ProgressController;
 import com.actelion.research.chem.descriptor.DescriptorHandler;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.CompoundTablePairSimilarityCalculator;
+import com.actelion.research.table.model.CompoundTableSimilarityIndex;
 import org.nfunk.jep.ParseException;
 import org.nfunk.jep.function.PostfixMathCommand;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class JEPMaxChemSimilarityFunction extends PostfixMathCommand {
+	public static final String FUNCTION_NAME = "maxsim";
+
 	private CompoundTableModel mTableModel;
+	private TreeMap<Integer,float[]> mMaxSimilarityMap;	// descriptor column -> max similarity by record ID
 
 	public JEPMaxChemSimilarityFunction(CompoundTableModel tableModel) {
 		super();
@@ -35,6 +45,82 @@ public class JEPMaxChemSimilarityFunction extends PostfixMathCommand {
 		numberOfParameters = 1;
 		}
 
+	/**
+	 * Removes all precalculated values. This must be called before evaluating a new formula.
+	 */
+	public void clearCache() {
+		mMaxSimilarityMap = null;
+		}
+
+	/**
+	 * Calculates for every record the maximum similarity to any other record in one batch on all
+	 * available cores, which run() uses afterwards instead of comparing each row to all others.
+	 * For binary fingerprints the two nearest neighbours are taken from the column's similarity index.
+	 * For other descriptors all pairs are compared once.
+	 * @param column descriptor column
+	 * @param pc may be null
+	 */
+	public void precalculate(int column, ProgressController pc) {
+		if (mMaxSimilarityMap != null && mMaxSimilarityMap.containsKey(column))
+			return;
+
+		final int rowCount = mTableModel.getTotalRowCount();
+		final float[] maxSim = new float[rowCount];
+		Arrays.fill(maxSim, Float.NaN);
+
+		CompoundTableSimilarityIndex index = mTableModel.getSimilarityIndex(column);
+		if (index != null) {
+			final AtomicInteger rowIndex = new AtomicInteger(rowCount);
+			int threadCount = Runtime.getRuntime().availableProcessors();
+			Thread[] worker = new Thread[threadCount];
+			for (int i=0; i<threadCount; i++) {
+				worker[i] = new Thread(() -> {
+					float[] similarity = new float[2];
+					int row = rowIndex.decrementAndGet();
+					while (row >= 0 && (pc == null || !pc.threadMustDie())) {
+						CompoundRecord record = mTableModel.getTotalRecord(row);
+						Object descriptor = record.getData(column);
+						if (descriptor instanceof long[]) {
+							int[] id = index.getMostSimilarRecordIDs((long[])descriptor, 2, similarity);
+							for (int j=0; j<id.length; j++) {
+								if (id[j] != record.getID()) {
+									maxSim[record.getID()] = similarity[j];
+									break;
+									}
+								}
+							}
+						row = rowIndex.decrementAndGet();
+						}
+					}, "maxsim() Calculator "+(i+1));
+				worker[i].setPriority(Thread.MIN_PRIORITY);
+				worker[i].start();
+				}
+			for (Thread t:worker)
+				try { t.join(); } catch (InterruptedException e) {}
+			}
+		else {
+			CompoundTablePairSimilarityCalculator calculator = new CompoundTablePairSimilarityCalculator(mTableModel, column);
+			ArrayList<MaxSimilarityConsumer> consumerList = calculator.calculate(0f, () -> new MaxSimilarityConsumer(rowCount), pc);
+			for (MaxSimilarityConsumer consumer:consumerList)
+				for (int row=0; row<rowCount; row++)
+					if (Float.isNaN(maxSim[row]) || maxSim[row] < consumer.maxSim[row])
+						maxSim[row] = consumer.maxSim[row];
+
+			// consumers work with total row indexes, but results are accessed by record ID
+			float[] maxSimByID = new float[rowCount];
+			for (int row=0; row<rowCount; row++)
+				maxSimByID[mTableModel.getTotalRecord(row).getID()] = maxSim[row];
+			System.arraycopy(maxSimByID, 0, maxSim, 0, rowCount);
+			}
+
+		if (pc != null && pc.threadMustDie())
+			return;
+
+		if (mMaxSimilarityMap == null)
+			mMaxSimilarityMap = new TreeMap<>();
+		mMaxSimilarityMap.put(column, maxSim);
+		}
+
 	/**
 	 * Runs the operation on the inStack. The parameters are popped
 	 * off the <code>inStack</code>, and the square root of it's value is
@@ -64,6 +150,12 @@ public class JEPMaxChemSimilarityFunction extends PostfixMathCommand {
 			if (refDescriptor == null)
 				throw new ParseException("The parameter of maxsim() is empty");
 
+			float[] maxSimByID = (mMaxSimilarityMap == null) ? null : mMaxSimilarityMap.get(jepParam.column);
+			if (maxSimByID != null) {
+				inStack.push(new Double(maxSimByID[jepParam.record.getID()]));
+				return;
+				}
+
 			float maxSim = Float.NaN;
 			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
 				CompoundRecord record = mTableModel.getTotalRecord(row);
@@ -82,4 +174,21 @@ public class JEPMaxChemSimilarityFunction extends PostfixMathCommand {
 			throw new ParseException("Invalid parameter type");
 			}
 		}
+
+	private static class MaxSimilarityConsumer implements CompoundTablePairSimilarityCalculator.PairConsumer {
+		private float[] maxSim;
+
+		public MaxSimilarityConsumer(int rowCount) {
+			maxSim = new float[rowCount];
+			Arrays.fill(maxSim, Float.NaN);
+			}
+
+		@Override
+		public void addPair(int row1, int row2, float similarity) {
+			if (Float.isNaN(maxSim[row1]) || maxSim[row1] < similarity)
+				maxSim[row1] = similarity;
+			if (Float.isNaN(maxSim[row2]) || maxSim[row2] < similarity)
+				maxSim[row2] = similarity;
+			}
+		}
 	}
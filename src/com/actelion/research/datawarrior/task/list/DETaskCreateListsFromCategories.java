@@ -21,6 +21,7 @@ package com.actelion.research.datawarrior.task.list;
 import com.actelion.research.table.model.CompoundTableListHandler;
 import info.clearthought.layout.TableLayout;
 
+import java.util.BitSet;
 import java.util.Properties;
 import java.util.TreeMap;
 
@@ -34,6 +35,7 @@ import com.actelion.research.datawarrior.DEFrame;
 import com.actelion.research.datawarrior.task.ConfigurableTask;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.RowBitmap;
 
 public class DETaskCreateListsFromCategories extends ConfigurableTask {
 	public static final String TASK_NAME = "Create Row Lists From Category Column";
@@ -150,10 +152,6 @@ public class DETaskCreateListsFromCategories extends ConfigurableTask {
 				showErrorMessage("Column '"+columnName+"' contains too many or no categories.");
 				return false;
 				}
-			if (mTableModel.getUnusedRowFlagCount() < mTableModel.getCategoryCount(column)) {
-				showErrorMessage("Column '"+columnName+"' contains more categories than available row flags.\nClose filters or delete row lists to free row flags.");
-				return false;
-				}
 			}
 
 		return true;
@@ -169,18 +167,16 @@ public class DETaskCreateListsFromCategories extends ConfigurableTask {
 		String[] category = mTableModel.getCategoryList(column);
 		int categoryCount = mTableModel.isMultiCategoryColumn(column) ? category.length-1 : category.length;
 
-		TreeMap<String,Long> map = new TreeMap<String,Long>();
-		for (int i=0; i<categoryCount; i++) {
-			String name = prefix+(category[i].length() == 0 ? "<empty>" : category[i])+postfix;
-			name = hh.createList(name, -1, CompoundTableListHandler.EMPTY_LIST, -1, null, false);
-			map.put(category[i], hh.getListMask(hh.getListIndex(name)));
-			}
+		// collect members as record IDs, such that the number of lists is not limited by available row flags
+		TreeMap<String,BitSet> map = new TreeMap<String,BitSet>();
+		for (int i=0; i<categoryCount; i++)
+			map.put(category[i], new BitSet(mTableModel.getTotalRowCount()));
 
         startProgress("Populating row lists...", 0, mTableModel.getTotalRowCount());
 
 		for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
             if (threadMustDie())
-                break;
+                return;
 
             if ((row % 16) == 15)
             	updateProgress(row);
@@ -188,10 +184,18 @@ public class DETaskCreateListsFromCategories extends ConfigurableTask {
             CompoundRecord record = mTableModel.getTotalRecord(row);
 			if (record.getData(column) != null) {
 				String[] entries = mTableModel.separateEntries(mTableModel.getTotalValueAt(row, column));
-				for (String entry:entries)
-					record.setFlags(map.get(mTableModel.normalizeCategoryEntry(entry, column)));
+				for (String entry:entries) {
+					BitSet members = map.get(mTableModel.normalizeCategoryEntry(entry, column));
+					if (members != null)
+						members.set(record.getID());
+					}
 				}
 			}
+
+		for (int i=0; i<categoryCount; i++) {
+			String name = prefix+(category[i].length() == 0 ? "<empty>" : category[i])+postfix;
+			hh.createList(name, new RowBitmap(map.get(category[i])));
+			}
 		}
 
 	@Override
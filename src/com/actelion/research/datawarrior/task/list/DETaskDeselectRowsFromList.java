@@ -48,7 +48,7 @@ public class DETaskDeselectRowsFromList extends DETaskAbstractListTask {
 
 	@Override
 	public void runTask(Properties configuration) {
-		getTableModel().deselectByList(getTableModel().getListHandler().getListFlagNo(getListIndex(configuration)));
+		getTableModel().deselectByList(getListIndex(configuration));
 		}
 
 	@Override
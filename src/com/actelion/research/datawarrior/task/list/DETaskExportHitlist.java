@@ -40,6 +40,7 @@ import com.actelion.research.datawarrior.DEFrame;
 import com.actelion.research.datawarrior.task.ConfigurableTask;
 import com.actelion.research.datawarrior.task.file.JFilePathLabel;
 import com.actelion.research.gui.FileHelper;
+import com.actelion.research.table.model.CompoundTableListHandler;
 import com.actelion.research.table.model.CompoundTableModel;
 
 public class DETaskExportHitlist extends ConfigurableTask implements ActionListener {
@@ -197,9 +198,10 @@ public class DETaskExportHitlist extends ConfigurableTask implements ActionListe
 		int column = mTableModel.findColumn(configuration.getProperty(PROPERTY_KEY_COLUMN));
 
 		TreeSet<String> keySet = new TreeSet<String>();
-		int flagNo = mTableModel.getListHandler().getListFlagNo(mTableModel.getListHandler().getListIndex(listName));
+		CompoundTableListHandler listHandler = mTableModel.getListHandler();
+		int listIndex = listHandler.getListIndex(listName);
 		for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
-			if (mTableModel.getTotalRecord(row).isFlagSet(flagNo)) {
+			if (listHandler.isListMember(mTableModel.getTotalRecord(row), listIndex)) {
 				String[] entry = mTableModel.separateEntries(mTableModel.getTotalValueAt(row, column));
 				for (int i=0; i<entry.length; i++)
 					if (entry[i].length() > 0)
@@ -123,7 +123,7 @@ public class DETaskNewColumnWithListNames extends ConfigurableTask {
             StringBuilder buf = null;
             CompoundRecord record = mTableModel.getTotalRecord(row);
             for (int i = 0; i<hitlistHandler.getListCount(); i++) {
-                if (record.isFlagSet(hitlistHandler.getListFlagNo(i))) {
+                if (hitlistHandler.isListMember(record, i)) {
                     if (buf == null)
                         buf = new StringBuilder();
                     else
@@ -578,6 +578,8 @@ public class DETaskNewRowList extends ConfigurableTask implements ActionListener
 				if (comparator.compare(record[row - 1], record[row]) != 0)
 					listHandler.addRecordSilent(record[row], hitlistFlagNo);
 			}
+
+		listHandler.releaseListFlag(listName);
 		}
 
 	@Override
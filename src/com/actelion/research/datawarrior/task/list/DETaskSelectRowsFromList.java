@@ -49,7 +49,7 @@ public class DETaskSelectRowsFromList extends DETaskAbstractListTask {
 
 	@Override
 	public void runTask(Properties configuration) {
-		getTableModel().selectByList(getTableModel().getListHandler().getListFlagNo(getListIndex(configuration)));
+		getTableModel().selectByList(getListIndex(configuration));
 		}
 
 	@Override
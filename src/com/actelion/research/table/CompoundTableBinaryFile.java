@@ -0,0 +1,526 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table;
+
+import com.actelion.research.chem.descriptor.DescriptorHandler;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary variant of the native DataWarrior file format, which stores cell data column by column.
+ * Every column is split into blocks of BLOCK_ROWS rows, which are compressed independently.
+ * Text cells and idcodes are stored as raw bytes, binary descriptors as raw int or long arrays,
+ * and pre-parsed numerical values of numerical columns as raw floats, which saves parsing cell
+ * content when loading the file. Everything else that a text based DataWarrior file contains
+ * (file header, column properties, lists, details, runtime properties, etc.) is stored as one
+ * compressed text block, which is identical to a text based DataWarrior file without any rows.<br>
+ * File layout: magic number, format version, all column blocks, text block, column directory,
+ * position of the column directory. The file extension is the same as for text based files.
+ * Binary files are recognized by their first four bytes, which never occur in text files.<br>
+ * The Reader keeps the compressed columns in memory and decodes them on request. Thus, the table model
+ * may define non-displayable columns as lazy, which are decoded when they are needed first.
+ * Since the file is closed after reading, it may be overwritten while lazy columns are still undecoded.
+ */
+public class CompoundTableBinaryFile {
+	public static final int BLOCK_ROWS = 8192;
+
+	public static final int COLUMN_FLAG_LAZY = 1;			// column may be decoded on first access
+	public static final int COLUMN_FLAG_HAS_MODIFIERS = 2;	// pre-parsed values contain modifiers
+
+	private static final int MAGIC = 0x89445742;	// 0x89,'D','W','B'
+	private static final int FORMAT_VERSION = 1;
+
+	private static final byte CELL_EMPTY = 0;
+	private static final byte CELL_BYTES = 1;
+	private static final byte CELL_INTS = 2;
+	private static final byte CELL_LONGS = 3;
+	private static final byte CELL_ENCODED = 4;	// descriptor encoded by its DescriptorHandler
+
+	/**
+	 * @param file
+	 * @return whether the file starts with the magic number of a binary DataWarrior file
+	 */
+	public static boolean isBinaryFile(File file) {
+		if (file == null || !file.isFile() || file.length() < 4)
+			return false;
+
+		try (DataInputStream is = new DataInputStream(new FileInputStream(file))) {
+			return is.readInt() == MAGIC;
+			}
+		catch (IOException ioe) {
+			return false;
+			}
+		}
+
+	/**
+	 * Location and size of one compressed block within the file.
+	 */
+	public static class Block {
+		private long offset;
+		private int compressedSize,rawSize;
+
+		private Block(long offset, int compressedSize, int rawSize) {
+			this.offset = offset;
+			this.compressedSize = compressedSize;
+			this.rawSize = rawSize;
+			}
+		}
+
+	/**
+	 * Directory entry of one column.
+	 */
+	public static class Column {
+		private String name;
+		private int flags,emptyCellCount;
+		private Block[] cellBlock;
+		private Block valueBlock;
+
+		public String getName() {
+			return name;
+			}
+
+		public boolean isLazy() {
+			return (flags & COLUMN_FLAG_LAZY) != 0;
+			}
+
+		public boolean hasModifiers() {
+			return (flags & COLUMN_FLAG_HAS_MODIFIERS) != 0;
+			}
+
+		public boolean hasPreparsedValues() {
+			return valueBlock != null;
+			}
+
+		public int getEmptyCellCount() {
+			return emptyCellCount;
+			}
+		}
+
+	/**
+	 * Collects the cells of one block in raw form, i.e. before compression.
+	 */
+	public static class CellEncoder {
+		private ByteArrayOutputStream mBuffer;
+		private DataOutputStream mOutput;
+
+		public CellEncoder() {
+			mBuffer = new ByteArrayOutputStream(1 << 16);
+			mOutput = new DataOutputStream(mBuffer);
+			}
+
+		/**
+		 * Adds one cell. Byte, int and long arrays are stored as they are.
+		 * Other cell objects must be passed in encoded form.
+		 * @param cell null, byte[], int[] or long[]
+		 * @param encodedCell null or encoded descriptor, if cell is not one of the above
+		 * @return true if the cell is empty
+		 */
+		public boolean addCell(Object cell, byte[] encodedCell) {
+			try {
+				if (cell instanceof byte[]) {
+					byte[] bytes = (byte[])cell;
+					mOutput.writeByte(CELL_BYTES);
+					mOutput.writeInt(bytes.length);
+					mOutput.write(bytes);
+					}
+				else if (cell instanceof int[]) {
+					int[] ints = (int[])cell;
+					mOutput.writeByte(CELL_INTS);
+					mOutput.writeInt(ints.length);
+					for (int i:ints)
+						mOutput.writeInt(i);
+					}
+				else if (cell instanceof long[]) {
+					long[] longs = (long[])cell;
+					mOutput.writeByte(CELL_LONGS);
+					mOutput.writeInt(longs.length);
+					for (long l:longs)
+						mOutput.writeLong(l);
+					}
+				else if (encodedCell != null) {
+					mOutput.writeByte(CELL_ENCODED);
+					mOutput.writeInt(encodedCell.length);
+					mOutput.write(encodedCell);
+					}
+				else {
+					mOutput.writeByte(CELL_EMPTY);
+					return true;
+					}
+				}
+			catch (IOException ioe) {}	// doesn't happen with ByteArrayOutputStream
+			return false;
+			}
+
+		/**
+		 * Adds one pre-parsed numerical value.
+		 * @param value
+		 */
+		public void addValue(float value) {
+			try {
+				mOutput.writeFloat(value);
+				}
+			catch (IOException ioe) {}	// doesn't happen with ByteArrayOutputStream
+			}
+
+		/**
+		 * @return raw content of all added cells or values
+		 */
+		public byte[] getBytes() {
+			return mBuffer.toByteArray();
+			}
+
+		public void reset() {
+			mBuffer.reset();
+			}
+		}
+
+	/**
+	 * @param raw
+	 * @param deflater a deflater, which is not used concurrently
+	 * @return compressed raw data
+	 */
+	public static byte[] compress(byte[] raw, Deflater deflater) {
+		deflater.reset();
+		deflater.setInput(raw);
+		deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+		byte[] buffer = new byte[1 << 16];
+		while (!deflater.finished()) {
+			int count = deflater.deflate(buffer);
+			compressed.write(buffer, 0, count);
+			}
+		return compressed.toByteArray();
+		}
+
+	/**
+	 * Writes a binary file: first the compressed blocks of all columns with addColumn(),
+	 * then the text part and the column directory with finish().
+	 */
+	public static class Writer implements Closeable {
+		private DataOutputStream mOutput;
+		private ArrayList<Column> mColumnList;
+		private long mPosition;
+
+		/**
+		 * Creates the file and writes the file header.
+		 * @param file
+		 * @throws IOException
+		 */
+		public Writer(File file) throws IOException {
+			mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			mOutput.writeInt(MAGIC);
+			mOutput.writeInt(FORMAT_VERSION);
+			mPosition = 8;
+			mColumnList = new ArrayList<>();
+			}
+
+		/**
+		 * Adds a column with its compressed cell and value blocks.
+		 * @param name column name
+		 * @param flags COLUMN_FLAG_... values
+		 * @param emptyCellCount
+		 * @param cellBlock compressed cell blocks in row order
+		 * @param cellBlockSize uncompressed sizes of cellBlocks
+		 * @param valueBlock null or compressed pre-parsed numerical values of all rows
+		 * @param valueBlockSize uncompressed size of valueBlock
+		 * @throws IOException
+		 */
+		public void addColumn(String name, int flags, int emptyCellCount, byte[][] cellBlock, int[] cellBlockSize,
+							  byte[] valueBlock, int valueBlockSize) throws IOException {
+			Column column = new Column();
+			column.name = name;
+			column.flags = flags;
+			column.emptyCellCount = emptyCellCount;
+			column.cellBlock = new Block[cellBlock.length];
+			for (int i=0; i<cellBlock.length; i++)
+				column.cellBlock[i] = writeBlock(cellBlock[i], cellBlockSize[i]);
+			if (valueBlock != null)
+				column.valueBlock = writeBlock(valueBlock, valueBlockSize);
+			mColumnList.add(column);
+			}
+
+		private Block writeBlock(byte[] compressed, int rawSize) throws IOException {
+			Block block = new Block(mPosition, compressed.length, rawSize);
+			mOutput.write(compressed);
+			mPosition += compressed.length;
+			return block;
+			}
+
+		/**
+		 * Writes the text part, the column directory and closes the file.
+		 * @param text everything of a text based DataWarrior file except the rows
+		 * @param rowCount
+		 * @throws IOException
+		 */
+		public void finish(String text, int rowCount) throws IOException {
+			byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+			Deflater deflater = new Deflater();
+			Block textBlock = writeBlock(compress(raw, deflater), raw.length);
+			deflater.end();
+
+			long directoryPosition = mPosition;
+			mOutput.writeInt(rowCount);
+			writeBlockEntry(textBlock);
+			mOutput.writeInt(mColumnList.size());
+			for (Column column:mColumnList) {
+				mOutput.writeUTF(column.name);
+				mOutput.writeInt(column.flags);
+				mOutput.writeInt(column.emptyCellCount);
+				mOutput.writeInt(column.cellBlock.length);
+				for (Block block:column.cellBlock)
+					writeBlockEntry(block);
+				mOutput.writeBoolean(column.valueBlock != null);
+				if (column.valueBlock != null)
+					writeBlockEntry(column.valueBlock);
+				}
+			mOutput.writeLong(directoryPosition);
+			close();
+			}
+
+		private void writeBlockEntry(Block block) throws IOException {
+			mOutput.writeLong(block.offset);
+			mOutput.writeInt(block.compressedSize);
+			mOutput.writeInt(block.rawSize);
+			}
+
+		@Override
+		public void close() throws IOException {
+			if (mOutput != null) {
+				mOutput.close();
+				mOutput = null;
+				}
+			}
+		}
+
+	/**
+	 * Reads a binary file into memory and decodes its text part and columns on request.
+	 * Columns are kept compressed. The file is closed after reading. Different columns may be decoded concurrently.
+	 */
+	public static class Reader {
+		private int mRowCount;
+		private String mText;
+		private Column[] mColumn;
+		private ByteBuffer[] mColumnBuffer;	// one buffer per column, covering all its blocks
+		private long[] mColumnOffset;
+
+		/**
+		 * Reads the column directory, the text part and all compressed columns.
+		 * @param file
+		 * @throws IOException if the file is not a valid binary DataWarrior file
+		 */
+		public Reader(File file) throws IOException {
+			try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+				long size = channel.size();
+				ByteBuffer header = readFully(channel, 0, 8);
+				if (header.getInt() != MAGIC)
+					throw new IOException("Not a binary DataWarrior file.");
+				if (header.getInt() > FORMAT_VERSION)
+					throw new IOException("File was written by a newer version of DataWarrior.");
+
+				long directoryPosition = readFully(channel, size-8, 8).getLong();
+				if (directoryPosition < 8 || directoryPosition > size-8)
+					throw new IOException("Corrupt binary DataWarrior file.");
+
+				DataInputStream directory = new DataInputStream(new ByteArrayInputStream(
+						readFully(channel, directoryPosition, (int)(size-8-directoryPosition)).array()));
+				mRowCount = directory.readInt();
+				Block textBlock = readBlockEntry(directory);
+				mColumn = new Column[directory.readInt()];
+				for (int i=0; i<mColumn.length; i++) {
+					mColumn[i] = new Column();
+					mColumn[i].name = directory.readUTF();
+					mColumn[i].flags = directory.readInt();
+					mColumn[i].emptyCellCount = directory.readInt();
+					mColumn[i].cellBlock = new Block[directory.readInt()];
+					for (int j=0; j<mColumn[i].cellBlock.length; j++)
+						mColumn[i].cellBlock[j] = readBlockEntry(directory);
+					if (directory.readBoolean())
+						mColumn[i].valueBlock = readBlockEntry(directory);
+					}
+
+				ByteBuffer textBuffer = readFully(channel, textBlock.offset, textBlock.compressedSize);
+				mText = new String(uncompressBlock(textBuffer, 0, textBlock), StandardCharsets.UTF_8);
+
+				mColumnBuffer = new ByteBuffer[mColumn.length];
+				mColumnOffset = new long[mColumn.length];
+				for (int i=0; i<mColumn.length; i++) {
+					long start = Long.MAX_VALUE;
+					long end = 0;
+					for (Block block:mColumn[i].cellBlock) {
+						start = Math.min(start, block.offset);
+						end = Math.max(end, block.offset + block.compressedSize);
+						}
+					if (mColumn[i].valueBlock != null) {
+						start = Math.min(start, mColumn[i].valueBlock.offset);
+						end = Math.max(end, mColumn[i].valueBlock.offset + mColumn[i].valueBlock.compressedSize);
+						}
+					if (end > start) {
+						if (end > directoryPosition || end - start > Integer.MAX_VALUE)
+							throw new IOException("Corrupt or too large column in binary DataWarrior file.");
+						mColumnBuffer[i] = readFully(channel, start, (int)(end - start));
+						mColumnOffset[i] = start;
+						}
+					}
+				}
+			catch (DataFormatException dfe) {
+				throw new IOException("Corrupt binary DataWarrior file.");
+				}
+			}
+
+		public int getRowCount() {
+			return mRowCount;
+			}
+
+		public int getColumnCount() {
+			return mColumn.length;
+			}
+
+		public Column getColumn(int column) {
+			return mColumn[column];
+			}
+
+		/**
+		 * @return everything of a text based DataWarrior file except the rows
+		 */
+		public String getText() {
+			return mText;
+			}
+
+		/**
+		 * Frees the compressed data of a column, which is not going to be decoded again.
+		 * @param column
+		 */
+		public void releaseColumn(int column) {
+			mColumnBuffer[column] = null;
+			}
+
+		/**
+		 * Decodes all cells of one column.
+		 * @param column
+		 * @param descriptorHandler used to decode encoded descriptors; null to skip encoded descriptors
+		 * @return cell data of all rows
+		 * @throws IOException
+		 */
+		public Object[] decodeCells(int column, DescriptorHandler<?,?> descriptorHandler) throws IOException {
+			Object[] cell = new Object[mRowCount];
+			int row = 0;
+			for (Block block:mColumn[column].cellBlock) {
+				ByteBuffer buffer = ByteBuffer.wrap(uncompress(column, block));
+				while (buffer.hasRemaining() && row < mRowCount) {
+					byte type = buffer.get();
+					if (type != CELL_EMPTY) {
+						int length = buffer.getInt();
+						switch (type) {
+						case CELL_BYTES:
+							byte[] bytes = new byte[length];
+							buffer.get(bytes);
+							cell[row] = bytes;
+							break;
+						case CELL_INTS:
+							int[] ints = new int[length];
+							buffer.asIntBuffer().get(ints);
+							buffer.position(buffer.position() + 4*length);
+							cell[row] = ints;
+							break;
+						case CELL_LONGS:
+							long[] longs = new long[length];
+							buffer.asLongBuffer().get(longs);
+							buffer.position(buffer.position() + 8*length);
+							cell[row] = longs;
+							break;
+						case CELL_ENCODED:
+							byte[] encoded = new byte[length];
+							buffer.get(encoded);
+							if (descriptorHandler != null)
+								cell[row] = descriptorHandler.decode(encoded);
+							break;
+						default:
+							throw new IOException("Corrupt binary DataWarrior file.");
+							}
+						}
+					row++;
+					}
+				}
+			return cell;
+			}
+
+		/**
+		 * @param column column with pre-parsed values
+		 * @return pre-parsed numerical values of all rows
+		 * @throws IOException
+		 */
+		public float[] decodeValues(int column) throws IOException {
+			float[] value = new float[mRowCount];
+			ByteBuffer.wrap(uncompress(column, mColumn[column].valueBlock)).asFloatBuffer().get(value);
+			return value;
+			}
+
+		private byte[] uncompress(int column, Block block) throws IOException {
+			ByteBuffer buffer = mColumnBuffer[column];
+			if (buffer == null)
+				throw new IOException("Column data was released.");
+			try {
+				return uncompressBlock(buffer.duplicate(), (int)(block.offset - mColumnOffset[column]), block);
+				}
+			catch (DataFormatException dfe) {
+				throw new IOException("Corrupt binary DataWarrior file.");
+				}
+			}
+		}
+
+	private static byte[] uncompressBlock(ByteBuffer buffer, int position, Block block) throws DataFormatException {
+		byte[] compressed = new byte[block.compressedSize];
+		buffer.position(position);
+		buffer.get(compressed);
+		byte[] raw = new byte[block.rawSize];
+		Inflater inflater = new Inflater();
+		inflater.setInput(compressed);
+		int size = 0;
+		while (size < raw.length && !inflater.finished()) {
+			int count = inflater.inflate(raw, size, raw.length - size);
+			if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				break;
+			size += count;
+			}
+		inflater.end();
+		if (size != raw.length)
+			throw new DataFormatException("Unexpected block size");
+		return raw;
+		}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of binary DataWarrior file.");
+		buffer.flip();
+		return buffer;
+		}
+
+	private static Block readBlockEntry(DataInputStream directory) throws IOException {
+		return new Block(directory.readLong(), directory.readInt(), directory.readInt());
+		}
+	}
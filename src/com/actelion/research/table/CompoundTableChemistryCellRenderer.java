@@ -29,12 +29,14 @@ import com.actelion.research.table.view.VisualizationColor;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
 
 public class CompoundTableChemistryCellRenderer extends ChemistryCellRenderer implements ColorizedCellRenderer {
 	public static final int ON_THE_FLY_COORD_MAX_ATOMS = 255;
 	private static final String[] ON_THE_FLY_COORD_ERROR_MESSAGE = { "Calculate 2D-atom", "coordinates to render", "large molecules!" };
 
 	private VisualizationColor mForegroundColor,mBackgroundColor;
+	private CompoundRecord mPrefetchFirstRecord,mPrefetchLastRecord;
 	private boolean	mIsReaction;
 
 	public void setReaction(boolean isReaction) {
@@ -63,11 +65,10 @@ public class CompoundTableChemistryCellRenderer extends ChemistryCellRenderer im
 						renderPanel = getErrorRendererComponent();
 						}
 					else {
-						StereoMolecule mol = new StereoMolecule();
-						new IDCodeParser(true).parse(mol, idcode, coords);
-						tableModel.colorizeStructureAtoms(record, idcodeColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL, mol);
-						value = mol;
+						// the depictor changes the coordinates; thus, we must not pass the shared cached molecule
+						value = tableModel.getCachedChemicalStructure(record, idcodeColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL, new StereoMolecule());
 						}
+					prefetchAdjacentStructures(table, tableModel, idcodeColumn, coordsColumn);
 					}
 				}
 			}
@@ -96,6 +97,49 @@ public class CompoundTableChemistryCellRenderer extends ChemistryCellRenderer im
 		return renderPanel;
 		}
 
+	/**
+	 * Lets the table model create the molecules of one page of rows after and one page before
+	 * the visible rows in the background, such that they can be drawn without delay when scrolling.
+	 */
+	private void prefetchAdjacentStructures(JTable table, CompoundTableModel tableModel, int idcodeColumn, int coordsColumn) {
+		Rectangle visibleRect = table.getVisibleRect();
+		int firstVisible = table.rowAtPoint(new Point(0, visibleRect.y));
+		int lastVisible = table.rowAtPoint(new Point(0, visibleRect.y + visibleRect.height - 1));
+		if (firstVisible == -1)
+			return;
+		if (lastVisible == -1)
+			lastVisible = table.getRowCount() - 1;
+
+		// don't repeat the request for every painted cell
+		CompoundRecord firstRecord = tableModel.getRecord(firstVisible);
+		CompoundRecord lastRecord = tableModel.getRecord(lastVisible);
+		if (firstRecord == mPrefetchFirstRecord && lastRecord == mPrefetchLastRecord)
+			return;
+
+		mPrefetchFirstRecord = firstRecord;
+		mPrefetchLastRecord = lastRecord;
+
+		int pageSize = lastVisible - firstVisible + 1;
+		ArrayList<CompoundRecord> recordList = new ArrayList<>();
+		IDCodeParser parser = new IDCodeParser();
+		for (int row=lastVisible+1; row<Math.min(table.getRowCount(), lastVisible+1+pageSize); row++)
+			addPrefetchRecord(tableModel.getRecord(row), idcodeColumn, coordsColumn, parser, recordList);
+		for (int row=firstVisible-1; row>=Math.max(0, firstVisible-pageSize); row--)
+			addPrefetchRecord(tableModel.getRecord(row), idcodeColumn, coordsColumn, parser, recordList);
+
+		tableModel.prefetchChemicalStructures(recordList.toArray(new CompoundRecord[0]),
+				idcodeColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL);
+		}
+
+	private void addPrefetchRecord(CompoundRecord record, int idcodeColumn, int coordsColumn, IDCodeParser parser,
+								   ArrayList<CompoundRecord> recordList) {
+		byte[] idcode = (byte[])record.getData(idcodeColumn);
+		if (idcode != null
+		 && (coordsColumn != -1 && record.getData(coordsColumn) != null
+		  || parser.getAtomCount(idcode, 0) <= ON_THE_FLY_COORD_MAX_ATOMS))
+			recordList.add(record);
+		}
+
 	private JPanel getErrorRendererComponent() {
 		return new JPanel() {
 			private static final long serialVersionUID = 20150417L;
@@ -44,7 +44,12 @@ import java.awt.datatransfer.DataFlavor;
 import java.io.*;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 	public static final String DATASET_COLUMN_TITLE = "Dataset Name";
@@ -79,6 +84,8 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 	private static final int PROGRESS_LIMIT = 50000;
 	private static final int PROGRESS_STEP = 200;
 
+	private static final int LINE_CHUNK_SIZE = 4096;	// lines per chunk handed to one tokenizer thread
+
 	private static final int MAX_COLUMNS_FOR_SMILES_CHECK = 64;
 	private static final int MAX_ROWS_FOR_SMILES_CHECK = 20;
 	private static final float MAX_TOLERATED_SMILES_FAILURE_RATE = 0.2f;
@@ -127,7 +134,7 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 	private volatile CompoundTableModel mTableModel;
 	private Frame				mParentFrame;
 	private volatile ProgressController	mProgressController;
-	private volatile File		mFile;
+	private volatile File		mFile,mBinaryFile;
 	private volatile Reader		mDataReader;
 	private volatile int		mDataType,mAction;
 	private volatile TreeMap<String,DataDependentPropertyReader> mDataDependentPropertyReaderMap;
@@ -149,6 +156,12 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 	private TreeMap<String,String> mColumnProperties;
 	private TreeMap<String,Object> mExtensionMap;
 	private HashMap<String,byte[]> mDetails;
+	private DescriptorHandler<?,?>[] mDescriptorHandler;
+	private boolean[]			mDescriptorValid;
+	private ArrayList<Integer>	mOldStyleIDCodeColumnList;
+	private CompoundTableColumnStore.LazyColumn[] mLazyColumn;
+	private float[][]			mPreparsedValue;
+	private boolean[]			mPreparsedHasModifiers;
 
 	public static void setColumnPropertyProvider(IdentifierHandler p) {
 		sIdentifierHandler = p;
@@ -189,6 +202,7 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 			else if (headerRow != 0)
 				mWithHeaderLine = analyzeHeaderLine(new StringReader(s));
 			mDataReader = new StringReader(s);
+			mBinaryFile = null;
 			mAction = READ_DATA | REPLACE_DATA;
 			mDataType = FileHelper.cFileTypeTextTabDelimited;
 			mNewWindowTitle = "Data From Clipboard";
@@ -216,6 +230,7 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 			JOptionPane.showMessageDialog(mParentFrame, "IO-Exception during file retrieval.");
 			return;
 			}
+		mBinaryFile = null;
 		mDataType = FileHelper.cFileTypeDataWarrior;
 		mAction = READ_DATA | REPLACE_DATA;
 		mWithHeaderLine = true;
@@ -238,8 +253,16 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 
 	public void readFile(File file, RuntimeProperties properties, int dataType, int action) {
 		mFile = file;
+		if (dataType == FileHelper.cFileTypeDataWarrior && CompoundTableBinaryFile.isBinaryFile(file)) {
+			startReading(null, file, properties, dataType, action, mFile.getName());
+			return;
+			}
+
 		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"));
+			InputStream is = new FileInputStream(mFile);
+			if (isGZipFile(mFile))
+				is = new GZIPInputStream(is, 1 << 16);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
 			BOMSkipper.skip(reader);
 			readStream(reader, properties, dataType, action, mFile.getName());
 			}
@@ -253,11 +276,42 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 			JOptionPane.showMessageDialog(mParentFrame, "Unsupported encoding.");
 			return;
 			}
+		catch (IOException e) {
+			mTableModel.unlock();
+			JOptionPane.showMessageDialog(mParentFrame, "Corrupt compressed file.");
+			return;
+			}
+		}
+
+	/**
+	 * @param file
+	 * @return whether the file starts with the gzip magic number, e.g. a compressed native file
+	 */
+	public static boolean isGZipFile(File file) {
+		if (file == null || !file.isFile() || file.length() < 2)
+			return false;
+
+		try (InputStream is = new FileInputStream(file)) {
+			return is.read() == 0x1F && is.read() == 0x8B;
+			}
+		catch (IOException ioe) {
+			return false;
+			}
 		}
 
 	public void readStream(BufferedReader reader, RuntimeProperties properties, int dataType, int action,
 	                       String windowTitle) {
+		startReading(reader, null, properties, dataType, action, windowTitle);
+		}
+
+	/**
+	 * @param reader text source or null, if binaryFile is given
+	 * @param binaryFile null or file in binary native format
+	 */
+	private void startReading(Reader reader, File binaryFile, RuntimeProperties properties, int dataType, int action,
+							  String windowTitle) {
 		mDataReader = reader;
+		mBinaryFile = binaryFile;
 		mDataType = dataType;
 		mAction = action;
 		mWithHeaderLine = true;
@@ -519,133 +573,269 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 		boolean wasTouched = false;
 		boolean runtimePropertiesRead = false;
 		CompoundTableExtensionHandler extensionHandler = mTableModel.getExtensionHandler();
-		ArrayList<byte[]> lineList = new ArrayList<>();
+		LineTokenizer tokenizer = null;
 		StringBuilder lineBuilder = new StringBuilder();
 
 		try {
-			while (true) {
-				boolean isFirstLine = !wasTouched;
-				wasTouched = true;
-				String theLine = theReader.readLine();
-				if (theLine == null)
-					break;
-
-				if (isFirstLine && theLine.equals(cNativeFileHeaderStart)) {
-					rowCount = readFileHeader(theReader);
-					if (rowCount > PROGRESS_LIMIT)
-						mProgressController.startProgress("Reading Data...", 0, (rowCount > PROGRESS_LIMIT) ? rowCount : 0);
-					continue;
-					}
+			try {
+				while (true) {
+					boolean isFirstLine = !wasTouched;
+					wasTouched = true;
+					String theLine = theReader.readLine();
+					if (theLine == null)
+						break;
 
-				if (isFirstLine && isGooglePatentsFile(theLine)) {
-					prepareGooglePatentsFile();
-					continue;
-					}
+					if (isFirstLine && theLine.equals(cNativeFileHeaderStart)) {
+						rowCount = readFileHeader(theReader);
+						if (rowCount > PROGRESS_LIMIT)
+							mProgressController.startProgress("Reading Data...", 0, (rowCount > PROGRESS_LIMIT) ? rowCount : 0);
+						continue;
+						}
 
-				if (extensionHandler != null) {
-					String name = extensionHandler.extractExtensionName(theLine);
-					if (name != null) {
-						if (mExtensionMap == null)
-							mExtensionMap = new TreeMap<>();
-						mExtensionMap.put(name, extensionHandler.readData(name, theReader));
+					if (isFirstLine && isGooglePatentsFile(theLine)) {
+						prepareGooglePatentsFile();
 						continue;
 						}
-					}
 
-				if (theLine.equals(cColumnPropertyStart)) {
-					readColumnProperties(theReader);
-					continue;
-					}
+					if (extensionHandler != null) {
+						String name = extensionHandler.extractExtensionName(theLine);
+						if (name != null) {
+							if (mExtensionMap == null)
+								mExtensionMap = new TreeMap<>();
+							mExtensionMap.put(name, extensionHandler.readData(name, theReader));
+							continue;
+							}
+						}
 
-				if (theLine.equals(cHitlistDataStart)) {
-					readHitlistData(theReader);
-					continue;
-					}
+					if (theLine.equals(cColumnPropertyStart)) {
+						readColumnProperties(theReader);
+						continue;
+						}
 
-				if (theLine.equals(cDetailDataStart)) {
-					readDetailData(theReader);
-					continue;
-					}
+					if (theLine.equals(cHitlistDataStart)) {
+						readHitlistData(theReader);
+						continue;
+						}
 
-				if (ViewConfiguration.isStartTag(theLine, cViewConfigTagName)) {
-					if ((mAction & APPEND_DATA) == 0
-					 && (mAction & MERGE_DATA) == 0
-					 && mRuntimeProperties != null)
-						mRuntimeProperties.readViewConfiguration(theReader, theLine);
-					continue;
-					}
+					if (theLine.equals(cDetailDataStart)) {
+						readDetailData(theReader);
+						continue;
+						}
 
-				if (theLine.equals(cPropertiesStart)) {
-					if ((mAction & APPEND_DATA) == 0
-					 && (mAction & MERGE_DATA) == 0
-					 && mRuntimeProperties != null)
-						mRuntimeProperties.read(theReader);
+					if (ViewConfiguration.isStartTag(theLine, cViewConfigTagName)) {
+						if ((mAction & APPEND_DATA) == 0
+						 && (mAction & MERGE_DATA) == 0
+						 && mRuntimeProperties != null)
+							mRuntimeProperties.readViewConfiguration(theReader, theLine);
+						continue;
+						}
 
-					runtimePropertiesRead = true;
-					continue;
-					}
+					if (theLine.equals(cPropertiesStart)) {
+						if ((mAction & APPEND_DATA) == 0
+						 && (mAction & MERGE_DATA) == 0
+						 && mRuntimeProperties != null)
+							mRuntimeProperties.read(theReader);
 
-				if (theLine.startsWith(cDataDependentPropertiesStart)) {
-					String name = extractValue(theLine);
-					if (mDataDependentPropertyReaderMap != null && mDataDependentPropertyReaderMap.get(name) != null) {
-						mDataDependentPropertyReaderMap.get(name).read(theReader);
+						runtimePropertiesRead = true;
+						continue;
 						}
-					else {
-						do {
-							theLine = theReader.readLine();
-							} while (theLine != null && !theLine.equals(cDataDependentPropertiesEnd));
+
+					if (theLine.startsWith(cDataDependentPropertiesStart)) {
+						String name = extractValue(theLine);
+						if (mDataDependentPropertyReaderMap != null && mDataDependentPropertyReaderMap.get(name) != null) {
+							mDataDependentPropertyReaderMap.get(name).read(theReader);
+							}
+						else {
+							do {
+								theLine = theReader.readLine();
+								} while (theLine != null && !theLine.equals(cDataDependentPropertiesEnd));
+							}
 						}
-					}
 
-				if (runtimePropertiesRead) {	// behind runtime properties we allow sections for future use
-					if (theLine.startsWith("<") && theLine.endsWith(">")) {
-						String endTag = "</"+theLine.substring(1);
-						do {
-							theLine = theReader.readLine();
-							} while (theLine != null && !theLine.equals(endTag));
+					if (runtimePropertiesRead) {	// behind runtime properties we allow sections for future use
+						if (theLine.startsWith("<") && theLine.endsWith(">")) {
+							String endTag = "</"+theLine.substring(1);
+							do {
+								theLine = theReader.readLine();
+								} while (theLine != null && !theLine.equals(endTag));
+							continue;
+							}
+						break;
+						}
+
+					if (theLine.length() == 0 && (mDataType != FileHelper.cFileTypeDataWarrior || header != null))
 						continue;
+
+					if (mDataType != FileHelper.cFileTypeDataWarriorTemplate) {
+						if (mWithHeaderLine && header == null) {
+							evaluateSeparatorSymbol(theLine);
+							header = convertCSVLine(theLine, lineBuilder, theReader);
+							}
+						else {
+							byte[] lineBytes = convertCSVLine(theLine, lineBuilder, theReader).getBytes();
+							if (tokenizer == null) {
+								prepareColumns(header, lineBytes);
+								tokenizer = new LineTokenizer();
+								}
+							tokenizer.add(lineBytes);
+							if (tokenizer.getRowCount()%PROGRESS_STEP == 0) {
+								if (mProgressController.threadMustDie())
+									return false;
+								if (rowCount > PROGRESS_LIMIT)
+									mProgressController.updateProgress(tokenizer.getRowCount());
+								}
+							}
 						}
-					break;
 					}
+				theReader.close();
+				}
+			catch (IOException e) {}
+			catch (InterruptedException e) {
+				return false;
+				}
 
-				if (theLine.length() == 0 && (mDataType != FileHelper.cFileTypeDataWarrior || header != null))
-					continue;
+			if (mWithHeaderLine && header == null) {
+				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mParentFrame, "No header line found.") );
+				return false;
+				}
 
-				if (mDataType != FileHelper.cFileTypeDataWarriorTemplate) {
-					if (mWithHeaderLine && header == null) {
-						evaluateSeparatorSymbol(theLine);
-						header = convertCSVLine(theLine, lineBuilder, theReader);
-						}
-					else {
-						lineList.add(convertCSVLine(theLine, lineBuilder, theReader).getBytes());
-						if (rowCount > PROGRESS_LIMIT && lineList.size()%PROGRESS_STEP == 0)
-							mProgressController.updateProgress(lineList.size());
+			if (mColumnProperties != null) {
+				for (String key:mColumnProperties.keySet()) {
+					if (key.endsWith("\tspecialType") && mColumnProperties.get(key).equals("Catalysts")
+					 || key.endsWith("\treactionPart") && mColumnProperties.get(key).equals("catalysts")) {
+						SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mParentFrame, "Outdated reaction file format. Please download update from 'openmolecules.org'.") );
+						return false;
 						}
 					}
 				}
-			theReader.close();
+
+			if (mDataType != FileHelper.cFileTypeDataWarriorTemplate) {
+				if (tokenizer == null)
+					prepareColumns(header, null);
+
+				mProgressController.startProgress("Processing Records...", 0, 0);
+
+				try {
+					mFieldData = (tokenizer == null) ? new Object[0][mFieldNames.length] : tokenizer.finish();
+					}
+				catch (InterruptedException e) {
+					return false;
+					}
+
+				if (mProgressController.threadMustDie())
+					return false;
+
+				completeColumns();
+				}
+
+			return true;
+			}
+		finally {	// stops the tokenizer threads on all early returns; doesn't harm after finish()
+			if (tokenizer != null)
+				tokenizer.abort();
+			}
+		}
+
+	/**
+	 * Reads a file in binary native format. Its text part is parsed like a text based native file
+	 * without any rows. Then all columns are decoded concurrently, except non-displayable columns,
+	 * e.g. descriptors or coordinates, which are passed as lazy columns to the table model,
+	 * if the file's data replaces the table content. These are decoded when they are needed first.
+	 * @return true if successful
+	 */
+	private boolean readBinaryData() {
+		final CompoundTableBinaryFile.Reader reader;
+		try {
+			reader = new CompoundTableBinaryFile.Reader(mBinaryFile);
+			}
+		catch (IOException ioe) {
+			final String message = ioe.getMessage();
+			SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mParentFrame, message) );
+			return false;
 			}
-		catch (IOException e) {}
 
-		if (mWithHeaderLine && header == null) {
-			SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mParentFrame, "No header line found.") );
+		mDataReader = new StringReader(reader.getText());
+		if (!readTextData())
+			return false;
+
+		final int columnCount = mFieldNames.length;
+		if (columnCount != reader.getColumnCount()) {
+			SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mParentFrame, "Corrupt binary DataWarrior file.") );
 			return false;
 			}
 
-		if (mColumnProperties != null) {
-			for (String key:mColumnProperties.keySet()) {
-				if (key.endsWith("\tspecialType") && mColumnProperties.get(key).equals("Catalysts")
-				 || key.endsWith("\treactionPart") && mColumnProperties.get(key).equals("catalysts")) {
-					SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mParentFrame, "Outdated reaction file format. Please download update from 'openmolecules.org'.") );
-					return false;
-					}
+		// descriptors of outdated versions are not read, which causes their re-calculation
+		final DescriptorHandler<?,?>[] descriptorHandler = new DescriptorHandler[columnCount];
+		final boolean[] isEagerColumn = new boolean[columnCount];
+		boolean isLazyAllowed = ((mAction & REPLACE_DATA) != 0);
+		mLazyColumn = isLazyAllowed ? new CompoundTableColumnStore.LazyColumn[columnCount] : null;
+		mPreparsedValue = isLazyAllowed ? new float[columnCount][] : null;
+		mPreparsedHasModifiers = new boolean[columnCount];
+		for (int column=0; column<columnCount; column++) {
+			descriptorHandler[column] = CompoundTableModel.getDefaultDescriptorHandler(getColumnSpecialType(mFieldNames[column]));
+			if (descriptorHandler[column] != null
+			 && !descriptorHandler[column].getVersion().equals(
+					 mColumnProperties.get(mFieldNames[column] + "\t" + cColumnPropertyDescriptorVersion)))
+				continue;
+
+			final CompoundTableBinaryFile.Column binaryColumn = reader.getColumn(column);
+			mPreparsedHasModifiers[column] = binaryColumn.hasModifiers();
+			if (isLazyAllowed && binaryColumn.isLazy()) {
+				final int lazyColumn = column;
+				final String columnName = mFieldNames[column];
+				final String fileName = mBinaryFile.getName();
+				mLazyColumn[column] = new CompoundTableColumnStore.LazyColumn() {
+					@Override
+					public int getEmptyCellCount() {
+						return binaryColumn.getEmptyCellCount();
+						}
+
+					@Override
+					public Object[] load() throws IOException {
+						try {
+							return reader.decodeCells(lazyColumn, descriptorHandler[lazyColumn]);
+							}
+						catch (IOException ioe) {
+							final String message = "Column '"+columnName+"' could not be read from '"+fileName
+												 + "': "+ioe.getMessage()+"\nThe file cannot be saved anymore, because this column's data would be lost.";
+							SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mParentFrame, message) );
+							throw ioe;
+							}
+						}
+					};
+				}
+			else {
+				isEagerColumn[column] = true;
 				}
 			}
 
-		if (mDataType != FileHelper.cFileTypeDataWarriorTemplate)
-			processLines(header, lineList);
+		final int rowCount = reader.getRowCount();
+		mFieldData = new Object[rowCount][columnCount];
+		final AtomicInteger errorCount = new AtomicInteger();
 
-		return true;
+		mProgressController.startProgress("Decoding Columns...", 0, columnCount);
+		RowTaskScheduler.processRows(columnCount, 1, null, (column, state) -> {
+			if (isEagerColumn[column]) {
+				try {
+					Object[] cell = reader.decodeCells(column, descriptorHandler[column]);
+					for (int row=0; row<rowCount; row++)
+						mFieldData[row][column] = cell[row];
+					if (mPreparsedValue != null && reader.getColumn(column).hasPreparsedValues())
+						mPreparsedValue[column] = reader.decodeValues(column);
+					reader.releaseColumn(column);
+					}
+				catch (IOException ioe) {
+					errorCount.incrementAndGet();
+					}
+				}
+			}, () -> mProgressController.threadMustDie(), processed -> mProgressController.updateProgress(processed));
+
+		if (errorCount.get() != 0) {
+			SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mParentFrame, "Corrupt binary DataWarrior file.") );
+			return false;
+			}
+
+		return !mProgressController.threadMustDie();
 		}
 
 	private boolean isGooglePatentsFile(String firstLine) {
@@ -826,14 +1016,21 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 		return lineBuilder.toString();
 		}
 
-	private void processLines(String header, ArrayList<byte[]> lineList) {
+	/**
+	 * Determines column names, types and descriptor handlers from the header line or,
+	 * if there is no header line, from the first data line. Must be called before
+	 * any data line is tokenized.
+	 * @param header header line or null
+	 * @param firstLine first data line or null, if there are no data lines
+	 */
+	private void prepareColumns(String header, byte[] firstLine) {
 		ArrayList<String> columnNameList = new ArrayList<String>();
 		byte columnSeparator = (byte)'\t';
 
 		// In case we have an old style idcode column 'name [idcode]', which may also be a modern
 		// clipboard transfer, then we may have space delimited atom coordinates and potentially
 		// need insert a new column for the detached coordinates.
-		ArrayList<Integer> oldStyleIDCodeColumnList = null;
+		mOldStyleIDCodeColumnList = null;
 
 		if (mWithHeaderLine) {
 			int fromIndex = 0;
@@ -855,9 +1052,9 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 						columnName = columnName.substring(0, columnName.length()-type[i].length()-2).trim();
 						addColumnProperty(columnName, cColumnPropertySpecialType, type[i]);
 						if (type[i].equals(cColumnTypeIDCode)) {
-							if (oldStyleIDCodeColumnList == null)
-								oldStyleIDCodeColumnList = new ArrayList<>();
-							oldStyleIDCodeColumnList.add(columnNameList.size());
+							if (mOldStyleIDCodeColumnList == null)
+								mOldStyleIDCodeColumnList = new ArrayList<>();
+							mOldStyleIDCodeColumnList.add(columnNameList.size());
 							}
 						}
 					}
@@ -872,11 +1069,10 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 		if (mVersion == null)
 			createColumnPropertiesForFilesPriorVersion270(columnNameList);
 
-		if (!mWithHeaderLine && lineList.size() > 0) {
-			byte[] lineBytes = lineList.get(0);
+		if (!mWithHeaderLine && firstLine != null) {
 			columnNameList.add("Column 1");
 			int no = 2;
-			for (byte b:lineBytes)
+			for (byte b:firstLine)
 				if (b == columnSeparator)
 					columnNameList.add("Column "+no++);
 			}
@@ -884,60 +1080,72 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 		int columnCount = columnNameList.size();
 
 		mFieldNames = new String[columnCount];
-		mFieldData = new Object[lineList.size()][columnCount];
-
 		for (int column=0; column<columnCount; column++)
 			mFieldNames[column] = columnNameList.get(column);
 
-		boolean[] descriptorValid = new boolean[columnCount];
-		DescriptorHandler<?,?>[] descriptorHandler = new DescriptorHandler[columnCount];
+		mDescriptorValid = new boolean[columnCount];
+		mDescriptorHandler = new DescriptorHandler[columnCount];
 		for (int column=0; column<columnCount; column++) {
-			descriptorHandler[column] = CompoundTableModel.getDefaultDescriptorHandler(getColumnSpecialType(mFieldNames[column]));
-			descriptorValid[column] = descriptorHandler[column] != null
-					&& descriptorHandler[column].getVersion().equals(
+			mDescriptorHandler[column] = CompoundTableModel.getDefaultDescriptorHandler(getColumnSpecialType(mFieldNames[column]));
+			mDescriptorValid[column] = mDescriptorHandler[column] != null
+					&& mDescriptorHandler[column].getVersion().equals(
 							mColumnProperties.get(mFieldNames[column] + "\t" + cColumnPropertyDescriptorVersion));
 			}
+		}
 
-		mProgressController.startProgress("Processing Records...", 0, (mFieldData.length > PROGRESS_LIMIT) ? mFieldData.length : 0);
+	/**
+	 * Splits data lines into cells and decodes valid descriptors.
+	 * This is called concurrently by multiple tokenizer threads on distinct lines.
+	 * @param line data lines; processed entries are set to null
+	 * @param row receives the cell data of every line
+	 * @param count number of valid lines
+	 */
+	private void tokenizeLines(byte[][] line, Object[][] row, int count) {
+		if (mProgressController.threadMustDie())
+			return;	// the loader returns without using any row data
 
-		for (int row=0; row<mFieldData.length; row++) {
-			if (mProgressController.threadMustDie())
-				break;
-			if (mFieldData.length > PROGRESS_LIMIT && row%PROGRESS_STEP == 0)
-				mProgressController.updateProgress(row);
-			byte[] lineBytes = lineList.get(row);
-			lineList.set(row, null);
+		final byte columnSeparator = (byte)'\t';
+		int columnCount = mFieldNames.length;
+
+		for (int i=0; i<count; i++) {
+			byte[] lineBytes = line[i];
+			line[i] = null;
+			row[i] = new Object[columnCount];
 			int fromIndex = 0;
 			int column = 0;
 			do {
 				int toIndex = fromIndex;
-				int spaces = 0;
 
 				while (toIndex<lineBytes.length && lineBytes[toIndex] != columnSeparator)
 					toIndex++;
 
-				if (toIndex == fromIndex) {
-					mFieldData[row][column] = null;
-					}
-				else {
+				if (toIndex != fromIndex) {
 					byte[] cellBytes = Arrays.copyOfRange(lineBytes, fromIndex, toIndex);
-	
-					if (descriptorHandler[column] == null)
-						mFieldData[row][column] = convertNLAndTAB(cellBytes);
-					else if (descriptorValid[column])
-						mFieldData[row][column] = descriptorHandler[column].decode(cellBytes);
+
+					if (mDescriptorHandler[column] == null)
+						row[i][column] = convertNLAndTAB(cellBytes);
+					else if (mDescriptorValid[column])
+						row[i][column] = mDescriptorHandler[column].decode(cellBytes);
 					}
 
-				fromIndex = toIndex + 1 + spaces;
+				fromIndex = toIndex + 1;
 				column++;
 				} while (fromIndex<lineBytes.length && column<columnCount);
 			}
+		}
+
+	/**
+	 * Does all column related post processing, once all data lines are tokenized into mFieldData.
+	 */
+	private void completeColumns() {
+		mDescriptorHandler = null;
+		mDescriptorValid = null;
 
 		if (!mWithHeaderLine)
 			deduceColumnTitles();
 
-		if (oldStyleIDCodeColumnList != null)
-			handleOldStyleIDCodes(oldStyleIDCodeColumnList.toArray(new Integer[0]));
+		if (mOldStyleIDCodeColumnList != null)
+			handleOldStyleIDCodes(mOldStyleIDCodeColumnList.toArray(new Integer[0]));
 
 		if (mDataType != FileHelper.cFileTypeDataWarrior)
 			handleSmiles();
@@ -951,6 +1159,100 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 			handlePotentially3DCoordinates();
 		}
 
+	/**
+	 * Collects data lines into chunks, which are split into cells by a pool of tokenizer threads,
+	 * while the reader thread continues reading the file. The number of chunks in work is limited,
+	 * such that only a few chunks of raw lines exist at any time. Thus, the peak memory is about
+	 * the size of the cell data rather than the size of cell data plus the complete list of lines.
+	 */
+	private class LineTokenizer {
+		private final ArrayList<Object[][]> mRowChunkList;
+		private final ExecutorService mExecutor;
+		private final Semaphore mChunkPermits;
+		private byte[][] mLineChunk;
+		private int mLineCount,mRowCount;
+		private volatile Throwable mThrowable;
+
+		public LineTokenizer() {
+			int threadCount = Runtime.getRuntime().availableProcessors();
+			mRowChunkList = new ArrayList<>();
+			mExecutor = (threadCount == 1) ? null : Executors.newFixedThreadPool(threadCount);
+			mChunkPermits = new Semaphore(2*threadCount);
+			mLineChunk = new byte[LINE_CHUNK_SIZE][];
+			}
+
+		public void add(byte[] line) throws InterruptedException {
+			mLineChunk[mLineCount++] = line;
+			if (mLineCount == LINE_CHUNK_SIZE)
+				submitChunk();
+			}
+
+		public int getRowCount() {
+			return mRowCount + mLineCount;
+			}
+
+		private void submitChunk() throws InterruptedException {
+			final byte[][] line = mLineChunk;
+			final int count = mLineCount;
+			final Object[][] row = new Object[count][];
+			mRowChunkList.add(row);
+			mRowCount += count;
+			mLineChunk = new byte[LINE_CHUNK_SIZE][];
+			mLineCount = 0;
+
+			if (mExecutor == null) {
+				tokenizeLines(line, row, count);
+				return;
+				}
+
+			mChunkPermits.acquire();	// blocks the reader if tokenizers fall behind
+			mExecutor.execute(() -> {
+				try {
+					tokenizeLines(line, row, count);
+					}
+				catch (Throwable t) {
+					mThrowable = t;
+					}
+				finally {
+					mChunkPermits.release();
+					}
+				} );
+			}
+
+		/**
+		 * Waits for all chunks to be tokenized and returns the cell data of all lines in original order.
+		 * @return row data as [row][column]
+		 */
+		public Object[][] finish() throws InterruptedException {
+			if (mLineCount != 0)
+				submitChunk();
+
+			if (mExecutor != null) {
+				mExecutor.shutdown();
+				while (!mExecutor.awaitTermination(1, TimeUnit.SECONDS));
+				}
+
+			if (mThrowable instanceof Error)
+				throw (Error)mThrowable;
+			if (mThrowable != null)
+				throw new RuntimeException(mThrowable);
+
+			Object[][] fieldData = new Object[mRowCount][];
+			int offset = 0;
+			for (Object[][] row:mRowChunkList) {
+				System.arraycopy(row, 0, fieldData, offset, row.length);
+				offset += row.length;
+				}
+			mRowChunkList.clear();
+			return fieldData;
+			}
+
+		public void abort() {
+			if (mExecutor != null)
+				mExecutor.shutdownNow();
+			}
+		}
+
 	private void addColumnProperty(String columnName, String key, String value) {
 		if (mColumnProperties == null)
 			mColumnProperties = new TreeMap<>();
@@ -1937,6 +2239,14 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 				mTableModel.setTotalDataAt(mFieldData[row][column], row, column);
 			}
 
+		// columns from binary files
+		for (int column=0; column<mFieldNames.length; column++) {
+			if (mLazyColumn != null && mLazyColumn[column] != null)
+				mTableModel.setLazyColumn(column, mLazyColumn[column]);
+			if (mPreparsedValue != null && mPreparsedValue[column] != null)
+				mTableModel.setPreparsedValues(column, mPreparsedValue[column], mPreparsedHasModifiers[column]);
+			}
+
 		setColumnProperties(null);
 
 		clearBufferedData();
@@ -2039,6 +2349,7 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 			case FileHelper.cFileTypeDataWarriorTemplate:
 				return readTemplateOnly();
 			case FileHelper.cFileTypeDataWarrior:
+				return (mBinaryFile != null) ? readBinaryData() : readTextData();
 			case FileHelper.cFileTypeTextTabDelimited:
 			case FileHelper.cFileTypeTextCommaSeparated:
 				return readTextData();
@@ -2642,6 +2953,7 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 					String uniqueName = hitlistHandler.createList(name, -1, CompoundTableListHandler.EMPTY_LIST, -1, null, false);
 					int flagNo = hitlistHandler.getListFlagNo(uniqueName);
 					setListFlags(flagNo, data, rowCount, offset, destRowMap);
+					hitlistHandler.releaseListFlag(uniqueName);
 					}
 				}
 			}
@@ -2699,6 +3011,9 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 	private void clearBufferedData() {
 		mFieldNames = null;
 		mFieldData = null;
+		mLazyColumn = null;
+		mPreparsedValue = null;
+		mPreparsedHasModifiers = null;
 		mColumnProperties = null;
 		mAppendDestColumn = null;
 		mMergeDestColumn = null;
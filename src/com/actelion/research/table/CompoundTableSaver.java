@@ -36,6 +36,10 @@ import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 	public static final String cCurrentFileVersion = "3.3";
@@ -44,6 +48,7 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 	public static final int ID_BUILD_ONE = -2;
 
 	private static final int MULTI_CONFORMER_ROWS_TO_CHECK = 256;
+	private static final int RECORD_BLOCK_ROWS = 256;	// rows formatted by one worker at once
 
 	private JTable				mTable;
 	private CompoundTableModel	mTableModel;
@@ -51,9 +56,10 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 	private Frame   			mParentFrame;
 	private File				mFile;
 	private Writer				mDataWriter;
+	private OutputStream		mDataStream;
 	private int					mDataType,mSDColumnStructure,mSDColumnIdentifier,
 								mSDColumn2DCoordinates,mSDColumn3DCoordinates;
-	private boolean				mVisibleOnly,mToClipboard,mEmbedDetails,mPrefer3D,mSkipHeader;
+	private boolean				mVisibleOnly,mToClipboard,mEmbedDetails,mPrefer3D,mSkipHeader,mBinaryFormat,mCompress;
 	private RuntimeProperties	mRuntimeProperties;
 	private ArrayList<DataDependentPropertyWriter> mDataDependentPropertyWriterList;
 
@@ -74,11 +80,29 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 	 * @param embedDetails if true, referenced detail information is retrieved and embedded in the file
 	 */
 	public void saveNative(RuntimeProperties properties, File file, boolean visibleOnly, boolean embedDetails) {
+		saveNative(properties, file, visibleOnly, embedDetails, false, false);
+		}
+
+	/**
+	 * Writes the associated tableModel's data into a native file without asking any questions.
+	 * Before returning this method calls finalStatus(File file) with file== null if it couldn't be successfully written.
+	 * Error checking should be done before calling this function.
+	 * @param properties must be given if fileType==FileHelper.cFileTypeDataWarrior or ...Template
+	 * @param file a valid file with proper write privileges
+	 * @param visibleOnly if true, then only visible records are written
+	 * @param embedDetails if true, referenced detail information is retrieved and embedded in the file
+	 * @param binaryFormat if true, then the column oriented binary variant of the native format is written
+	 * @param compress if true, then the text based native format is written as gzip compressed file
+	 */
+	public void saveNative(RuntimeProperties properties, File file, boolean visibleOnly, boolean embedDetails,
+						   boolean binaryFormat, boolean compress) {
 		mRuntimeProperties = properties;
 		mDataType = FileHelper.cFileTypeDataWarrior;
 		mFile = file;
 		mVisibleOnly = visibleOnly;
 		mEmbedDetails = embedDetails;
+		mBinaryFormat = binaryFormat;
+		mCompress = compress && !binaryFormat;
 
 		saveFile();
 		}
@@ -168,7 +192,15 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 */
 	private void saveFile() {
 		try {
-			mDataWriter = new OutputStreamWriter(new FileOutputStream(mFile),"UTF-8");
+			if (mTableModel.getColumnLoadError() != null)
+				throw new IOException("Data of some columns could not be read from the original file ("
+									 + mTableModel.getColumnLoadError()+"). Saving would lose it.");
+
+			if (!mBinaryFormat || mDataType != FileHelper.cFileTypeDataWarrior) {
+				OutputStream os = new FileOutputStream(mFile);
+				mDataStream = mCompress ? new GZIPOutputStream(os, 1 << 16) : new BufferedOutputStream(os, 1 << 16);
+				mDataWriter = new OutputStreamWriter(mDataStream,"UTF-8");
+				}
 			mToClipboard = false;
 			processData();
 			}
@@ -180,6 +212,7 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 
 	public void copy(boolean skipHeader) {
 		mDataWriter = new StringWriter(1024);
+		mDataStream = null;
 		mDataType = FileHelper.cFileTypeTextTabDelimited;
 		mEmbedDetails = false;
 		mVisibleOnly = false;
@@ -251,6 +284,109 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 			}
 		}
 
+	/**
+	 * Writes the binary variant of the native format, i.e. all columns as compressed blocks
+	 * and everything else as one text block, which contains the same sections as a text based
+	 * native file. The text block includes the column header line, but no rows.
+	 * @throws IOException
+	 */
+	private void writeBinaryData() throws IOException {
+		int rowCount = mVisibleOnly ? mTableModel.getRowCount() : mTableModel.getTotalRowCount();
+		int columnCount = mTableModel.getTotalColumnCount();
+
+		if (mProgressDialog != null)
+			mProgressDialog.startProgress("Saving Columns...", 0, columnCount);
+
+		try (CompoundTableBinaryFile.Writer writer = new CompoundTableBinaryFile.Writer(mFile)) {
+			for (int column=0; column<columnCount; column++) {
+				if (mProgressDialog != null) {
+					if (mProgressDialog.threadMustDie())
+						return;
+					mProgressDialog.updateProgress(column);
+					}
+
+				writeBinaryColumn(writer, column, rowCount);
+				}
+
+			StringWriter text = new StringWriter();
+			BufferedWriter theWriter = new BufferedWriter(text);
+			writeFileHeader(theWriter);
+			writeTableExtensions(theWriter);
+			writeColumnProperties(theWriter);
+			for (int column=0; column<columnCount; column++) {
+				if (column != 0)
+					theWriter.write("\t");
+				theWriter.write(mTableModel.getColumnTitleNoAlias(column));
+				}
+			theWriter.newLine();
+			writeHitlists(theWriter);
+			writeEmbeddedDetails(theWriter);
+			if (mRuntimeProperties != null)
+				mRuntimeProperties.learnAndWrite(theWriter);
+			writeDataDependentProperties(theWriter);
+			theWriter.flush();
+
+			if (mProgressDialog == null || !mProgressDialog.threadMustDie())
+				writer.finish(text.toString(), rowCount);
+			}
+		}
+
+	/**
+	 * Encodes and compresses the blocks of one column concurrently and adds them to the writer.
+	 * Pre-parsed numerical values are added for numerical columns, if they were parsed
+	 * in the default way, i.e. if they can be used by the loader instead of parsing cell content.
+	 */
+	private void writeBinaryColumn(CompoundTableBinaryFile.Writer writer, final int column, final int rowCount) throws IOException {
+		final int blockCount = (rowCount + CompoundTableBinaryFile.BLOCK_ROWS - 1) / CompoundTableBinaryFile.BLOCK_ROWS;
+		final byte[][] cellBlock = new byte[blockCount][];
+		final int[] cellBlockSize = new int[blockCount];
+		final AtomicInteger emptyCellCount = new AtomicInteger();
+		final boolean isDescriptor = mTableModel.isDescriptorColumn(column);
+
+		RowTaskScheduler.processRows(blockCount, 1, () -> new CompoundTableBinaryFile.CellEncoder(), (block, encoder) -> {
+			encoder.reset();
+			int lastRow = Math.min(rowCount, (block+1) * CompoundTableBinaryFile.BLOCK_ROWS);
+			for (int row=block*CompoundTableBinaryFile.BLOCK_ROWS; row<lastRow; row++) {
+				CompoundRecord record = mVisibleOnly ? mTableModel.getRecord(row) : mTableModel.getTotalRecord(row);
+				Object data = record.getData(column);
+				byte[] encodedData = null;
+				if (data != null && !(data instanceof byte[] || data instanceof int[] || data instanceof long[]))
+					encodedData = mTableModel.encodeData(record, column).getBytes();
+				else if (data != null && !isDescriptor && record.getDetailReferences(column) != null)
+					data = mTableModel.encodeDataWithDetail(record, column).getBytes();
+				if (encoder.addCell(data, encodedData))
+					emptyCellCount.incrementAndGet();
+				}
+			byte[] raw = encoder.getBytes();
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			cellBlockSize[block] = raw.length;
+			cellBlock[block] = CompoundTableBinaryFile.compress(raw, deflater);
+			deflater.end();
+			}, null, null);
+
+		byte[] valueBlock = null;
+		int valueBlockSize = 0;
+		if (mTableModel.isColumnTypeDouble(column)
+		 && !mTableModel.isColumnTypeDate(column)
+		 && !mTableModel.isLogarithmicViewMode(column)
+		 && !mTableModel.getColumnModifierExclusion(column)
+		 && mTableModel.getColumnSummaryMode(column) == cSummaryModeNormal) {
+			CompoundTableBinaryFile.CellEncoder encoder = new CompoundTableBinaryFile.CellEncoder();
+			for (int row=0; row<rowCount; row++)
+				encoder.addValue((mVisibleOnly ? mTableModel.getRecord(row) : mTableModel.getTotalRecord(row)).getDouble(column));
+			byte[] raw = encoder.getBytes();
+			valueBlockSize = raw.length;
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			valueBlock = CompoundTableBinaryFile.compress(raw, deflater);
+			deflater.end();
+			}
+
+		int flags = (mTableModel.isColumnDisplayable(column) ? 0 : CompoundTableBinaryFile.COLUMN_FLAG_LAZY)
+				  | (mTableModel.isColumnWithModifiers(column) ? CompoundTableBinaryFile.COLUMN_FLAG_HAS_MODIFIERS : 0);
+		writer.addColumn(mTableModel.getColumnTitleNoAlias(column), flags, emptyCellCount.get(),
+						 cellBlock, cellBlockSize, valueBlock, valueBlockSize);
+		}
+
 	private void writeRecords(BufferedWriter theWriter) throws IOException {
 		if (mToClipboard && mTable == null)	// just to make sure
 			return;
@@ -306,6 +442,11 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 		if (mProgressDialog != null)
 			mProgressDialog.startProgress("Saving Records...", 0, rowCount);
 
+		if (!mToClipboard && mDataStream != null) {
+			writeRecordsConcurrently(theWriter, rowCount);
+			return;
+			}
+
 		for (int row=0; row<rowCount; row++) {
 			CompoundRecord record = (mVisibleOnly) ? mTableModel.getRecord(row)
 					   : mTableModel.getTotalRecord(row);
@@ -357,6 +498,69 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 			}
 		}
 
+	/**
+	 * Formats blocks of rows concurrently and passes them to a RowBlockWriter, which writes
+	 * them in row order directly into the file's output stream. Columns are written in the
+	 * same order as the header line, i.e. with native files non-displayable columns first.
+	 * @param theWriter writer used for the preceding file sections; it is flushed before writing rows
+	 * @param rowCount
+	 * @throws IOException
+	 */
+	private void writeRecordsConcurrently(BufferedWriter theWriter, final int rowCount) throws IOException {
+		theWriter.flush();
+
+		int columnCount = mTableModel.getTotalColumnCount();
+		int[] columnList = new int[columnCount];
+		int index = 0;
+		if (mDataType == FileHelper.cFileTypeDataWarrior)
+			for (int column=0; column<columnCount; column++)
+				if (!mTableModel.isColumnDisplayable(column))
+					columnList[index++] = column;
+		for (int column=0; column<columnCount; column++)
+			if (mTableModel.isColumnDisplayable(column))
+				columnList[index++] = column;
+		final int[] column = Arrays.copyOf(columnList, index);
+		final boolean trailingTab = (index < columnCount);	// like the header line, if non-displayable columns are skipped
+
+		final String lineSeparator = System.lineSeparator();
+		final int blockCount = (rowCount + RECORD_BLOCK_ROWS - 1) / RECORD_BLOCK_ROWS;
+		final BooleanSupplier mustStop = () -> mProgressDialog != null && mProgressDialog.threadMustDie();
+		final RowBlockWriter blockWriter = new RowBlockWriter(mDataStream, true);
+		blockWriter.setAbortCondition(mustStop);
+		try {
+			RowTaskScheduler.processRows(blockCount, 1, StringBuilder::new, (block, line) -> {
+				line.setLength(0);
+				int lastRow = Math.min(rowCount, (block+1) * RECORD_BLOCK_ROWS);
+				for (int row=block*RECORD_BLOCK_ROWS; row<lastRow; row++) {
+					CompoundRecord record = (mVisibleOnly) ? mTableModel.getRecord(row)
+							   : mTableModel.getTotalRecord(row);
+					for (int i=0; i<column.length; i++) {
+						if (i != 0)
+							line.append('\t');
+						line.append(convertNewlines(getValue(record, column[i])));
+						}
+					if (trailingTab)
+						line.append('\t');
+					line.append(lineSeparator);
+					}
+				blockWriter.writeRecord(block, line.toString());
+				}, mustStop,
+				   processed -> {
+					if (mProgressDialog != null)
+						mProgressDialog.updateProgress(Math.min(rowCount, processed * RECORD_BLOCK_ROWS));
+					} );
+			if (mustStop.getAsBoolean())
+				blockWriter.abort();
+			}
+		catch (RuntimeException re) {
+			blockWriter.abort();	// the failed block is missing
+			throw re;
+			}
+		finally {
+			blockWriter.close();
+			}
+		}
+
 	private String getValue(CompoundRecord record, int column) {
 		return (mDataType == FileHelper.cFileTypeDataWarrior) ?
 				   mTableModel.encodeDataWithDetail(record, column)
@@ -468,23 +672,24 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 			theWriter.write(cHitlistDataStart);
 			theWriter.newLine();
 			if (mTableModel.hasSelectedRows())
-				writeOneHitlist(theWriter, CompoundRecord.cFlagSelected, CompoundTableListHandler.LIST_CODE_SELECTION);
+				writeOneHitlist(theWriter, CompoundTableListHandler.LISTINDEX_SELECTION, CompoundTableListHandler.LIST_CODE_SELECTION);
 			if (hitlistHandler != null)
 				for (int list = 0; list<hitlistHandler.getListCount(); list++)
-					writeOneHitlist(theWriter, hitlistHandler.getListFlagNo(list), hitlistHandler.getListName(list));
+					writeOneHitlist(theWriter, list, hitlistHandler.getListName(list));
 			theWriter.write(cHitlistDataEnd);
 			theWriter.newLine();
 			}
 		}
 
-	private void writeOneHitlist(BufferedWriter theWriter, int flagNo, String listName) throws IOException {
+	private void writeOneHitlist(BufferedWriter theWriter, int listIndex, String listName) throws IOException {
+		CompoundTableListHandler hitlistHandler = mTableModel.getListHandler();
 		int rowCount = mVisibleOnly ? mTableModel.getRowCount() : mTableModel.getTotalRowCount();
 		byte[] data = new byte[(5+rowCount)/6];
 		int dataBit = 1;
 		int dataIndex = 0;
 		for (int row=0; row<rowCount; row++) {
 			CompoundRecord record = mVisibleOnly ? mTableModel.getRecord(row) : mTableModel.getTotalRecord(row);
-			if (record.isFlagSet(flagNo))
+			if (hitlistHandler.isListMember(record, listIndex))
 				data[dataIndex] |= dataBit;
 			dataBit *= 2;
 			if (dataBit == 64) {
@@ -740,6 +945,11 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 		try {
 			switch (mDataType) {
 			case FileHelper.cFileTypeDataWarrior:
+				if (mBinaryFormat)
+					writeBinaryData();
+				else
+					writeTextData();
+				break;
 			case FileHelper.cFileTypeDataWarriorTemplate:
 			case FileHelper.cFileTypeTextTabDelimited:
 				writeTextData();
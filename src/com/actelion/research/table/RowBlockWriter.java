@@ -0,0 +1,297 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes text records, which are created concurrently by many worker threads, into one file.
+ * Records are collected into large blocks, which are UTF-8 encoded by the producing threads and
+ * then passed through a bounded queue to one writer thread. Thus, workers never wait for
+ * the file system unless the queue is full, which limits the memory use.<br>
+ * In unordered mode every thread collects records into its own block in completion order.
+ * In ordered mode records are written in increasing row order. Records that complete early are
+ * kept until all records of lower rows are written. Workers wait if their row is ahead of the
+ * first unwritten row by more than the reorder window.<br>
+ * In ordered mode every row from 0 to the highest processed row must be passed exactly once,
+ * possibly as null, if the row doesn't produce any output. If the workers are stopped before all
+ * rows are passed, abort() must be called, which releases all waiting workers and discards records
+ * behind the first missing row. Alternatively, an abort condition may be set, which waiting
+ * workers check regularly.
+ */
+public class RowBlockWriter {
+	private static final int BLOCK_SIZE = 1 << 20;	// chars
+	private static final int QUEUE_CAPACITY = 8;
+	private static final int REORDER_WINDOW = 4096;
+	private static final int ABORT_CHECK_INTERVAL = 100;	// milliseconds
+	private static final byte[] END_OF_DATA = new byte[0];
+
+	private final OutputStream mOutputStream;
+	private final boolean mIsOrdered,mCloseStream;
+	private final ArrayBlockingQueue<byte[]> mBlockQueue;
+	private final ArrayList<StringBuilder> mThreadBlockList;
+	private final ThreadLocal<StringBuilder> mThreadBlock;
+	private final HashMap<Integer,String> mPendingRecordMap;
+	private final Thread mWriterThread;
+	private StringBuilder mOrderedBlock;
+	private int mNextRow;
+	private volatile IOException mException;
+	private volatile boolean mIsAborted;
+	private volatile BooleanSupplier mAbortCondition;
+
+	/**
+	 * Opens the file and starts the writer thread.
+	 * @param path
+	 * @param compress whether to write a gzip compressed file
+	 * @param isOrdered whether records must be written in row order
+	 * @throws IOException
+	 */
+	public RowBlockWriter(String path, boolean compress, boolean isOrdered) throws IOException {
+		this(openStream(path, compress), isOrdered, true);
+		}
+
+	/**
+	 * Starts the writer thread, which writes into an already open stream, e.g. after the caller
+	 * has written a file header. close() flushes the stream, but doesn't close it.
+	 * @param outputStream
+	 * @param isOrdered whether records must be written in row order
+	 */
+	public RowBlockWriter(OutputStream outputStream, boolean isOrdered) {
+		this(outputStream, isOrdered, false);
+		}
+
+	private RowBlockWriter(OutputStream outputStream, boolean isOrdered, boolean closeStream) {
+		mOutputStream = outputStream;
+		mIsOrdered = isOrdered;
+		mCloseStream = closeStream;
+		mBlockQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		mThreadBlockList = new ArrayList<>();
+		mThreadBlock = ThreadLocal.withInitial(() -> {
+			StringBuilder block = new StringBuilder(BLOCK_SIZE + (BLOCK_SIZE >> 3));
+			synchronized (mThreadBlockList) {
+				mThreadBlockList.add(block);
+				}
+			return block;
+			} );
+		mPendingRecordMap = new HashMap<>();
+		mOrderedBlock = new StringBuilder(BLOCK_SIZE + (BLOCK_SIZE >> 3));
+
+		mWriterThread = new Thread(() -> consumeBlocks(), "Row Block Writer");
+		mWriterThread.start();
+		}
+
+	private static OutputStream openStream(String path, boolean compress) throws IOException {
+		OutputStream os = new FileOutputStream(path);
+		return compress ? new GZIPOutputStream(os, 1 << 16) : new BufferedOutputStream(os, 1 << 16);
+		}
+
+	/**
+	 * Defines a condition, e.g. the cancel status of a task, which is checked regularly by workers
+	 * waiting for missing lower rows. If it becomes true, the writer is aborted.
+	 * @param abortCondition
+	 */
+	public void setAbortCondition(BooleanSupplier abortCondition) {
+		mAbortCondition = abortCondition;
+		}
+
+	/**
+	 * Stops accepting records and wakes up all workers waiting in writeRecord().
+	 * This must be called, if the workers are stopped before all rows were passed.
+	 * Records written so far up to the first missing row are still written by close().
+	 */
+	public void abort() {
+		mIsAborted = true;
+		synchronized (mPendingRecordMap) {
+			mPendingRecordMap.notifyAll();
+			}
+		}
+
+	/**
+	 * Writes text outside of any row records, e.g. a file header or footer.
+	 * This must not be called while worker threads are writing records.
+	 * @param text
+	 */
+	public void writeText(String text) {
+		flushAll();
+		enqueue(text.getBytes(StandardCharsets.UTF_8));
+		}
+
+	/**
+	 * Adds the record of one row. This may be called concurrently from multiple threads.
+	 * @param row
+	 * @param record all text belonging to this row or null
+	 */
+	public void writeRecord(int row, String record) {
+		if (mException != null || mIsAborted)
+			return;
+
+		if (!mIsOrdered) {
+			if (record != null && record.length() != 0) {
+				StringBuilder block = mThreadBlock.get();
+				block.append(record);
+				if (block.length() >= BLOCK_SIZE) {
+					enqueue(block.toString().getBytes(StandardCharsets.UTF_8));
+					block.setLength(0);
+					}
+				}
+			return;
+			}
+
+		byte[] fullBlock = null;
+		synchronized (mPendingRecordMap) {
+			while (row >= mNextRow + REORDER_WINDOW && mException == null && !mIsAborted) {
+				BooleanSupplier abortCondition = mAbortCondition;
+				if (abortCondition != null && abortCondition.getAsBoolean()) {
+					mIsAborted = true;
+					mPendingRecordMap.notifyAll();
+					break;
+					}
+				try {
+					mPendingRecordMap.wait(abortCondition == null ? 0 : ABORT_CHECK_INTERVAL);
+					}
+				catch (InterruptedException ie) {
+					break;
+					}
+				}
+
+			if (mIsAborted)
+				return;
+
+			if (row != mNextRow) {
+				mPendingRecordMap.put(row, (record == null) ? "" : record);
+				return;
+				}
+
+			if (record != null)
+				mOrderedBlock.append(record);
+			mNextRow++;
+			while (mPendingRecordMap.containsKey(mNextRow))
+				mOrderedBlock.append(mPendingRecordMap.remove(mNextRow++));
+
+			if (mOrderedBlock.length() >= BLOCK_SIZE) {
+				fullBlock = mOrderedBlock.toString().getBytes(StandardCharsets.UTF_8);
+				mOrderedBlock.setLength(0);
+				}
+
+			mPendingRecordMap.notifyAll();
+			}
+
+		if (fullBlock != null)
+			enqueue(fullBlock);
+		}
+
+	/**
+	 * Writes all remaining records, closes the file, if it was opened by this writer, and stops the writer thread.
+	 * This must be called after all worker threads have finished, also after abort().
+	 * @throws IOException if writing failed
+	 */
+	public void close() throws IOException {
+		flushAll();
+		enqueue(END_OF_DATA);
+		try {
+			mWriterThread.join();
+			}
+		catch (InterruptedException ie) {}
+
+		if (mException != null)
+			throw mException;
+		}
+
+	private void flushAll() {
+		synchronized (mThreadBlockList) {
+			for (StringBuilder block:mThreadBlockList) {
+				if (block.length() != 0) {
+					enqueue(block.toString().getBytes(StandardCharsets.UTF_8));
+					block.setLength(0);
+					}
+				}
+			}
+
+		synchronized (mPendingRecordMap) {	// in case of cancellation rows may be missing
+			if (mIsAborted)
+				mPendingRecordMap.clear();
+			else if (!mPendingRecordMap.isEmpty()) {
+				ArrayList<Integer> rowList = new ArrayList<>(mPendingRecordMap.keySet());
+				rowList.sort(null);
+				for (Integer row:rowList)
+					mOrderedBlock.append(mPendingRecordMap.get(row));
+				mPendingRecordMap.clear();
+				}
+			if (mOrderedBlock.length() != 0) {
+				enqueue(mOrderedBlock.toString().getBytes(StandardCharsets.UTF_8));
+				mOrderedBlock.setLength(0);
+				}
+			}
+		}
+
+	private void enqueue(byte[] block) {
+		if (mException != null && block != END_OF_DATA)
+			return;	// the writer thread doesn't consume anymore
+
+		try {
+			mBlockQueue.put(block);
+			}
+		catch (InterruptedException ie) {}
+		}
+
+	private void consumeBlocks() {
+		try {
+			while (true) {
+				byte[] block = mBlockQueue.take();
+				if (block == END_OF_DATA)
+					break;
+				if (mException == null)
+					mOutputStream.write(block);
+				}
+			}
+		catch (InterruptedException ie) {}
+		catch (IOException ioe) {
+			mException = ioe;
+			mBlockQueue.clear();
+			synchronized (mPendingRecordMap) {
+				mPendingRecordMap.notifyAll();
+				}
+			// keep consuming until END_OF_DATA to not block producers
+			try {
+				while (mBlockQueue.take() != END_OF_DATA);
+				}
+			catch (InterruptedException ie) {}
+			}
+
+		try {
+			if (mCloseStream)
+				mOutputStream.close();
+			else
+				mOutputStream.flush();
+			}
+		catch (IOException ioe) {
+			if (mException == null)
+				mException = ioe;
+			}
+		}
+	}
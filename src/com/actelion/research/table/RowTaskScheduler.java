@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Processes all rows of a table concurrently on one shared pool of low priority worker threads,
+ * which is created once and reused by all row based calculations.
+ * Rows are processed in chunks, which are claimed in increasing row order from a shared row counter.
+ * Every chunk is a separate task of the pool, which, when done, queues the task for the next chunk
+ * behind all other waiting tasks. Thus, concurrent calculations and other tasks of the pool, e.g.
+ * structure prefetching, take turns rather than waiting for a long calculation to finish.
+ * Chunks shrink towards the end of the table, such that all workers finish at about the same time.
+ * The maximum chunk size should reflect the cost of processing one row: large chunks for cheap
+ * calculations to minimize overhead, small chunks for expensive ones.<br>
+ * Progress is not reported by the workers. Instead, the calling thread, which waits for the
+ * workers to finish, reports the number of processed rows in regular intervals.<br>
+ * If the processing is stopped, the remaining rows of claimed chunks are not processed.
+ * Processors, which pass results to an ordered consumer like a RowBlockWriter, must therefore
+ * abort the consumer on stop rather than wait for the missing rows.
+ * If a processor throws an exception, all workers stop and the first exception is rethrown
+ * by processRows() in the calling thread.
+ */
+public class RowTaskScheduler {
+	private static final int PROGRESS_INTERVAL = 200;	// milliseconds
+	private static final int CHUNKS_PER_WORKER = 4;		// minimum number of chunks per worker, if the table is large enough
+
+	private static ExecutorService sPool;
+	private static int sWorkerCount;
+
+	public interface RowProcessor<T> {
+		/**
+		 * Processes one row. This is called concurrently from multiple worker threads.
+		 * An exception thrown here stops the processing of all rows and is rethrown by processRows().
+		 * @param row
+		 * @param workerState object created by the state factory for the calling worker or null
+		 */
+		void processRow(int row, T workerState);
+		}
+
+	/**
+	 * @return the shared pool with one worker thread per available processor, which runs tasks in submission order
+	 */
+	public static synchronized ExecutorService getPool() {
+		if (sPool == null) {
+			sWorkerCount = Runtime.getRuntime().availableProcessors();
+			final AtomicInteger threadCount = new AtomicInteger();
+			sPool = Executors.newFixedThreadPool(sWorkerCount, runnable -> {
+				Thread thread = new WorkerThread(runnable, "Row Task Worker "+threadCount.incrementAndGet());
+				thread.setPriority(Thread.MIN_PRIORITY);
+				thread.setDaemon(true);
+				return thread;
+				} );
+			}
+		return sPool;
+		}
+
+	/**
+	 * Processes rows 0 to rowCount-1 on the shared worker pool and waits until all rows are done
+	 * or until mustStop returns true. Every worker thread creates its own state object once per call,
+	 * e.g. a StereoMolecule container or thread-safe copies of descriptor handlers.
+	 * If called from a worker thread of the pool, rows are processed by the calling thread.
+	 * @param rowCount
+	 * @param maxChunkSize maximum number of rows processed by one task
+	 * @param stateFactory creates the per-worker state passed to the processor; may be null
+	 * @param processor
+	 * @param mustStop is checked before every row; may be null
+	 * @param progressReceiver receives the number of processed rows from the calling thread; may be null
+	 * @return number of processed rows
+	 * @throws RuntimeException the first exception thrown by the processor, if any
+	 */
+	public static <T> int processRows(final int rowCount, final int maxChunkSize, final Supplier<T> stateFactory,
+									  final RowProcessor<T> processor, final BooleanSupplier mustStop,
+									  final IntConsumer progressReceiver) {
+		if (rowCount <= 0)
+			return 0;
+
+		if (Thread.currentThread() instanceof WorkerThread) {	// waiting for other tasks of the pool could dead-lock
+			T state = (stateFactory == null) ? null : stateFactory.get();
+			int row = 0;
+			while (row < rowCount && (mustStop == null || !mustStop.getAsBoolean()))
+				processor.processRow(row++, state);
+			if (progressReceiver != null)
+				progressReceiver.accept(row);
+			return row;
+			}
+
+		ExecutorService pool = getPool();
+		final int workerCount = Math.min(sWorkerCount, rowCount);
+		final AtomicInteger nextRow = new AtomicInteger(0);
+		final AtomicInteger processedRows = new AtomicInteger(0);
+		final ConcurrentHashMap<Thread,T> stateMap = (stateFactory == null) ? null : new ConcurrentHashMap<>();
+		final CountDownLatch finishedChains = new CountDownLatch(workerCount);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		// every chain of chunk tasks ends, when no rows are left
+		for (int i=0; i<workerCount; i++)
+			pool.execute(new ChunkTask<T>(pool, rowCount, maxChunkSize, workerCount, nextRow, processedRows,
+										  stateFactory, stateMap, processor, mustStop, failure, finishedChains));
+
+		while (true) {
+			try {
+				if (finishedChains.await(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS))
+					break;
+				if (progressReceiver != null)
+					progressReceiver.accept(processedRows.get());
+				}
+			catch (InterruptedException ie) {}
+			}
+
+		if (progressReceiver != null)
+			progressReceiver.accept(processedRows.get());
+
+		Throwable t = failure.get();
+		if (t instanceof RuntimeException)
+			throw (RuntimeException)t;
+		if (t instanceof Error)
+			throw (Error)t;
+
+		return processedRows.get();
+		}
+
+	private static class WorkerThread extends Thread {
+		public WorkerThread(Runnable runnable, String name) {
+			super(runnable, name);
+			}
+		}
+
+	private static class ChunkTask<T> implements Runnable {
+		private final ExecutorService mPool;
+		private final int mRowCount,mMaxChunkSize,mWorkerCount;
+		private final AtomicInteger mNextRow,mProcessedRows;
+		private final Supplier<T> mStateFactory;
+		private final ConcurrentHashMap<Thread,T> mStateMap;
+		private final RowProcessor<T> mProcessor;
+		private final BooleanSupplier mMustStop;
+		private final AtomicReference<Throwable> mFailure;
+		private final CountDownLatch mFinishedChains;
+
+		public ChunkTask(ExecutorService pool, int rowCount, int maxChunkSize, int workerCount,
+						 AtomicInteger nextRow, AtomicInteger processedRows, Supplier<T> stateFactory,
+						 ConcurrentHashMap<Thread,T> stateMap, RowProcessor<T> processor,
+						 BooleanSupplier mustStop, AtomicReference<Throwable> failure,
+						 CountDownLatch finishedChains) {
+			mPool = pool;
+			mRowCount = rowCount;
+			mMaxChunkSize = maxChunkSize;
+			mWorkerCount = workerCount;
+			mNextRow = nextRow;
+			mProcessedRows = processedRows;
+			mStateFactory = stateFactory;
+			mStateMap = stateMap;
+			mProcessor = processor;
+			mMustStop = mustStop;
+			mFailure = failure;
+			mFinishedChains = finishedChains;
+			}
+
+		@Override
+		public void run() {
+			boolean isChainContinued = false;
+			try {
+				if (mustStop())
+					return;
+
+				int remaining = mRowCount - mNextRow.get();
+				if (remaining <= 0)
+					return;
+
+				int chunkSize = Math.max(1, Math.min(mMaxChunkSize, remaining / (mWorkerCount * CHUNKS_PER_WORKER)));
+				int firstRow = mNextRow.getAndAdd(chunkSize);
+				if (firstRow >= mRowCount)
+					return;
+
+				T state = (mStateMap == null) ? null : mStateMap.computeIfAbsent(Thread.currentThread(), t -> mStateFactory.get());
+				int lastRow = Math.min(mRowCount, firstRow + chunkSize);
+				int row = firstRow;
+				try {
+					while (row < lastRow && !mustStop())
+						mProcessor.processRow(row++, state);
+					}
+				finally {
+					mProcessedRows.addAndGet(row - firstRow);
+					}
+
+				mPool.execute(this);	// queue the next chunk behind other waiting tasks
+				isChainContinued = true;
+				}
+			catch (RuntimeException | Error e) {
+				mFailure.compareAndSet(null, e);	// stops all other chains; rethrown by processRows()
+				}
+			finally {
+				if (!isChainContinued)
+					mFinishedChains.countDown();
+				}
+			}
+
+		private boolean mustStop() {
+			return mFailure.get() != null || (mMustStop != null && mMustStop.getAsBoolean());
+			}
+		}
+	}
@@ -31,7 +31,7 @@ public class CompoundRecord {
 
 	private Object[]		mData;
 	protected String[][][]	mDetailReference;	// [column][detailIndex][count]
-	protected float[]		mFloat;
+	protected CompoundTableColumnStore mStore;
 	protected long			mFlags;
 	protected int			mOriginalIndex;
 
@@ -50,15 +50,16 @@ public class CompoundRecord {
 		mFloat = new float[data.length];
 		}*/
 
-	protected CompoundRecord(int index, int columns) {
+	protected CompoundRecord(CompoundTableColumnStore store, int index, int columns) {
+		mStore = store;
 		mOriginalIndex = index;
-        if (columns != 0) {
+        if (columns != 0)
             mData = new Object[columns];
-            mFloat = new float[columns];
-            }
 		}
 
 	protected CompoundRecord(CompoundRecord record, int index) {
+		record.mStore.loadAllLazyColumns();
+		mStore = record.mStore;
 		mOriginalIndex = index;
 		mFlags = record.mFlags;
 		int columns = record.mData == null ? 0 : record.mData.length;
@@ -82,8 +83,6 @@ public class CompoundRecord {
 						}
 					}
 				}
-
-			mFloat = new float[columns];
 			}
 		}
 
@@ -99,7 +98,25 @@ public class CompoundRecord {
 		}
 
 	public Object getData(int column) {
-		return (column == -1) ? null : mData[column];
+		if (column == -1)
+			return null;
+
+		Object data = mData[column];
+		if (data == null) {
+			if (mStore.isColumnLazy(column))
+				mStore.loadLazyColumn(column);
+			data = mData[column];	// another thread may have loaded the column after the first read
+			}
+		return data;
+		}
+
+	/**
+	 * Assigns decoded cell data of a lazy column without loading the column.
+	 * @param value
+	 * @param column
+	 */
+	protected void setLoadedData(Object value, int column) {
+		mData[column] = value;
 		}
 
     /**
@@ -147,7 +164,16 @@ public class CompoundRecord {
 	 * @return valid double value or NaN if cell is empty
 	 */
 	public float getDouble(int column) {
-		return mFloat[column];
+		return (mOriginalIndex == -1) ? Float.NaN : mStore.getFloat(column, mOriginalIndex);
+		}
+
+	/**
+	 * Sets the pre-processed double representation of this cell in the column store.
+	 * @param column
+	 * @param value
+	 */
+	protected void setDouble(int column, float value) {
+		mStore.setFloat(column, mOriginalIndex, value);
 		}
 
 	public void setDetailReferences(int column, String[][] detailReferences) {
@@ -173,6 +199,8 @@ public class CompoundRecord {
 		}
 
     public void setData(Object value, int column, boolean keepDetailReferences) {
+		if (mStore.isColumnLazy(column))
+			mStore.loadLazyColumn(column);
         mData[column] = value;
         if (mDetailReference != null && !keepDetailReferences)
             mDetailReference[column] = null;
@@ -185,6 +213,8 @@ public class CompoundRecord {
      * @param column
      */
     public void appendData(byte[] value, int column) {
+		if (mStore.isColumnLazy(column))
+			mStore.loadLazyColumn(column);
     	if (mData[column] == null)
     		mData[column] = value;
     	else if (value != null) {
@@ -223,7 +253,7 @@ public class CompoundRecord {
      * @param column 
      */
 	public void separateDetail(String separator, int column) {
-	    if (mData[column] == null)
+	    if (getData(column) == null)
 	        return;
 
 	    String data = new String((byte[])mData[column]);
@@ -291,16 +321,13 @@ public class CompoundRecord {
 	public void addColumns(int no) {
 		int currentColumnCount = mData.length;
 		Object[] newData = new Object[currentColumnCount+no];
-		float[] newFloat = new float[currentColumnCount+no];
 		String[][][] newDetailReference = (mDetailReference == null) ? null : new String[currentColumnCount+no][][];
 		for (int i=0; i<currentColumnCount; i++) {
 			newData[i] = mData[i];
-			newFloat[i] = mFloat[i];
 			if (newDetailReference != null)
 				newDetailReference[i] = mDetailReference[i];
 			}
 		mData = newData;
-		mFloat = newFloat;
 		mDetailReference = newDetailReference;
 		}
 
@@ -308,14 +335,12 @@ public class CompoundRecord {
 		int currentColumnCount = mData.length;
 		int newColumnCount = mData.length - removalCount;
 		Object[] newData = new Object[newColumnCount];
-		float[] newFloat = new float[newColumnCount];
 		String[][][] newDetailReference = (mDetailReference == null) ? null : new String[newColumnCount][][];
 		int newIndex = 0;
 		boolean detailFound = false;
 		for (int i=0; i<currentColumnCount; i++) {
 			if (!removeColumn[i]) {
 				newData[newIndex] = mData[i];
-				newFloat[newIndex] = mFloat[i];
 				if (newDetailReference != null && mDetailReference[i] != null) {
 					newDetailReference[newIndex] = mDetailReference[i];
 					detailFound = true;
@@ -324,7 +349,6 @@ public class CompoundRecord {
 				}
 			}
 		mData = newData;
-		mFloat = newFloat;
 		mDetailReference = (detailFound) ? newDetailReference : null;
 		}
 
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Column oriented storage of the pre-processed float values of all CompoundRecords
+ * of one CompoundTableModel. Values are kept in one contiguous float[] per column,
+ * which is indexed by the record ID (CompoundRecord.getID()). Since record IDs are
+ * immune to sorting and always cover 0 ... totalRecordCount-1, per-column loops
+ * may just iterate over the column array, which avoids one float[] per record and
+ * gives a cache friendly memory layout. CompoundRecord is a thin view on this store.<br>
+ * Columns may also be defined as lazy, e.g. when they are read from a binary DataWarrior file.
+ * The cell data of a lazy column is decoded and assigned to the records, when any record's
+ * cell of that column is accessed for the first time.
+ */
+public class CompoundTableColumnStore {
+	private static final int MIN_ROW_CAPACITY = 256;
+
+	private float[][]	mFloat;		// [column][recordID]
+	private int			mRowCapacity;
+	private volatile LazyColumn[] mLazyColumn;	// [column], null if no column is lazy
+	private CompoundRecord[] mLazyRecord;		// [recordID] at the time lazy columns were defined
+	private volatile String	mLoadError;			// first error that occurred when decoding a lazy column
+
+	/**
+	 * Source of the cell data of a column, which is not decoded before it is needed.
+	 */
+	public interface LazyColumn {
+		/**
+		 * @return number of records without any data in this column
+		 */
+		int getEmptyCellCount();
+
+		/**
+		 * Decodes all cells of this column. This is called only once.
+		 * @return cell data indexed by record ID
+		 * @throws IOException if the column's data cannot be decoded
+		 */
+		Object[] load() throws IOException;
+		}
+
+	protected CompoundTableColumnStore(int rows, int columns) {
+		mRowCapacity = Math.max(MIN_ROW_CAPACITY, rows);
+		mFloat = new float[columns][];
+		for (int column=0; column<columns; column++)
+			mFloat[column] = new float[mRowCapacity];
+		}
+
+	public int getColumnCount() {
+		return mFloat.length;
+		}
+
+	/**
+	 * @return number of records that can be stored without re-allocation
+	 */
+	public int getRowCapacity() {
+		return mRowCapacity;
+		}
+
+	/**
+	 * @param column
+	 * @param id record ID
+	 * @return pre-processed float value of the given cell
+	 */
+	public float getFloat(int column, int id) {
+		return mFloat[column][id];
+		}
+
+	protected void setFloat(int column, int id, float value) {
+		mFloat[column][id] = value;
+		}
+
+	/**
+	 * Returns the internal array of the given column, which is indexed by record ID.
+	 * Only the first totalRecordCount values are valid. The array must not be modified
+	 * and must not be kept, because it is replaced when rows are added or removed.
+	 * @param column
+	 * @return column values indexed by record ID
+	 */
+	public float[] getFloatColumn(int column) {
+		return mFloat[column];
+		}
+
+	/**
+	 * Makes sure that the given number of records can be stored, which re-allocates
+	 * all columns with some reserve, if the current capacity is too small.
+	 * @param rows
+	 */
+	protected void ensureRowCapacity(int rows) {
+		if (rows <= mRowCapacity)
+			return;
+
+		int capacity = Math.max(rows, mRowCapacity + mRowCapacity / 2);
+		for (int column=0; column<mFloat.length; column++) {
+			float[] newColumn = new float[capacity];
+			System.arraycopy(mFloat[column], 0, newColumn, 0, mRowCapacity);
+			mFloat[column] = newColumn;
+			}
+		mRowCapacity = capacity;
+		}
+
+	/**
+	 * Defines a column, whose cell data is decoded and assigned to the records on first access.
+	 * This must be called after all records were created and before any record is removed.
+	 * @param column
+	 * @param lazyColumn
+	 * @param recordByID all records indexed by their ID
+	 */
+	protected synchronized void setLazyColumn(int column, LazyColumn lazyColumn, CompoundRecord[] recordByID) {
+		if (mLazyColumn == null)
+			mLazyColumn = new LazyColumn[mFloat.length];
+		mLazyColumn[column] = lazyColumn;
+		mLazyRecord = recordByID;
+		}
+
+	/**
+	 * @param column
+	 * @return whether the column's cell data is not yet decoded
+	 */
+	protected boolean isColumnLazy(int column) {
+		LazyColumn[] lazyColumn = mLazyColumn;
+		return lazyColumn != null && lazyColumn[column] != null;
+		}
+
+	/**
+	 * @param column a lazy column
+	 * @return number of empty cells of the lazy column
+	 */
+	protected int getLazyEmptyCellCount(int column) {
+		LazyColumn[] lazyColumn = mLazyColumn;
+		return (lazyColumn == null || lazyColumn[column] == null) ? -1 : lazyColumn[column].getEmptyCellCount();
+		}
+
+	/**
+	 * Decodes the cell data of a lazy column and assigns it to all records.
+	 * Concurrent threads accessing the same column wait until the column is loaded.
+	 * If the column cannot be decoded, its cells remain empty and the error is kept,
+	 * because the table must not be saved without the column's data anymore.
+	 * @param column
+	 */
+	protected synchronized void loadLazyColumn(int column) {
+		if (mLazyColumn == null || mLazyColumn[column] == null)
+			return;
+
+		try {
+			Object[] data = mLazyColumn[column].load();
+			for (int id=0; id<mLazyRecord.length && id<data.length; id++)
+				if (data[id] != null)
+					mLazyRecord[id].setLoadedData(data[id], column);
+			}
+		catch (Exception e) {
+			e.printStackTrace();
+			if (mLoadError == null)
+				mLoadError = (e.getMessage() == null) ? e.toString() : e.getMessage();
+			}
+
+		// replace the volatile array to make the assigned data visible to other threads
+		LazyColumn[] lazyColumn = mLazyColumn.clone();
+		lazyColumn[column] = null;
+		for (LazyColumn lc:lazyColumn) {
+			if (lc != null) {
+				mLazyColumn = lazyColumn;
+				return;
+				}
+			}
+
+		mLazyColumn = null;
+		mLazyRecord = null;
+		}
+
+	/**
+	 * @return null or the message of the first error that occurred when decoding a lazy column
+	 */
+	protected String getLoadError() {
+		return mLoadError;
+		}
+
+	/**
+	 * Decodes all lazy columns. This must be done before columns or records are removed.
+	 */
+	protected void loadAllLazyColumns() {
+		LazyColumn[] lazyColumn = mLazyColumn;
+		if (lazyColumn != null)
+			for (int column=0; column<lazyColumn.length; column++)
+				if (lazyColumn[column] != null)
+					loadLazyColumn(column);
+		}
+
+	protected void addColumns(int no) {
+		synchronized (this) {
+			if (mLazyColumn != null)
+				mLazyColumn = Arrays.copyOf(mLazyColumn, mFloat.length+no);
+			}
+
+		float[][] newFloat = new float[mFloat.length+no][];
+		System.arraycopy(mFloat, 0, newFloat, 0, mFloat.length);
+		for (int column=mFloat.length; column<newFloat.length; column++)
+			newFloat[column] = new float[mRowCapacity];
+		mFloat = newFloat;
+		}
+
+	protected void removeColumns(boolean[] removeColumn, int removalCount) {
+		float[][] newFloat = new float[mFloat.length-removalCount][];
+		int newIndex = 0;
+		for (int column=0; column<mFloat.length; column++)
+			if (!removeColumn[column])
+				newFloat[newIndex++] = mFloat[column];
+		mFloat = newFloat;
+		}
+
+	/**
+	 * Compacts all columns after records were removed and the remaining records got new IDs.
+	 * @param mapping old record ID for every new record ID
+	 */
+	protected void removeRows(int[] mapping) {
+		for (int column=0; column<mFloat.length; column++) {
+			float[] oldColumn = mFloat[column];
+			float[] newColumn = new float[mRowCapacity];
+			for (int id=0; id<mapping.length; id++)
+				newColumn[id] = oldColumn[mapping[id]];
+			mFloat[column] = newColumn;
+			}
+		}
+	}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+/**
+ * Keeps one word aligned bitset per row exclusion flag, in which every bit represents one row
+ * in the current (sorted) row order of the CompoundTableModel. The OR of all active exclusion
+ * flags is maintained as a separate bitset, from which the list of visible records is compiled.
+ * Changes of individual bits mark the affected words as dirty. When compiling the visible
+ * records, only the dirty words are re-combined and the visible record list is only updated
+ * from the first dirty word on, because all visible records before are unchanged.
+ * The record's flags remain the authoritative source. Whenever flags are changed without
+ * going through this index, e.g. from worker threads or external code, the affected flag
+ * must be synchronized with updateFlag(). After a change of the row order or row count
+ * the index must be rebuilt.
+ */
+class CompoundTableExclusionIndex {
+	private static final int FLAG_COUNT = 64;
+
+	private long[][]	mFlagWord;		// [flagNo][word]; bit is set if row is excluded by flag
+	private long[]		mExcludedWord;	// OR of all active exclusion flags
+	private int[]		mModificationCount;
+	private long		mActiveFlags;
+	private int			mRowCount,mWordCount,mFirstDirtyWord,mLastDirtyWord;
+
+	protected CompoundTableExclusionIndex() {
+		mFlagWord = new long[FLAG_COUNT][];
+		mModificationCount = new int[FLAG_COUNT];
+		mExcludedWord = new long[0];
+		mFirstDirtyWord = Integer.MAX_VALUE;
+		mLastDirtyWord = -1;
+		}
+
+	/**
+	 * Recreates all bitsets from the records' flags. Bitsets are built for all given
+	 * exclusion flags and for all flags that were indexed before.
+	 * @param record all records in current order
+	 * @param rowCount
+	 * @param exclusionFlags mask of all allocated exclusion flags
+	 */
+	protected void rebuild(CompoundRecord[] record, int rowCount, long exclusionFlags) {
+		mRowCount = rowCount;
+		mWordCount = (rowCount + 63) >>> 6;
+
+		long indexedFlags = exclusionFlags;
+		for (int flagNo=0; flagNo<FLAG_COUNT; flagNo++)
+			if (mFlagWord[flagNo] != null)
+				indexedFlags |= (1L << flagNo);
+
+		for (int flagNo=0; flagNo<FLAG_COUNT; flagNo++)
+			mFlagWord[flagNo] = ((indexedFlags & (1L << flagNo)) == 0) ? null : new long[mWordCount];
+
+		for (int row=0; row<rowCount; row++) {
+			long flags = record[row].mFlags & indexedFlags;
+			while (flags != 0) {
+				mFlagWord[Long.numberOfTrailingZeros(flags)][row >>> 6] |= (1L << row);
+				flags &= flags - 1;
+				}
+			}
+
+		mExcludedWord = new long[mWordCount];
+		for (int flagNo=0; flagNo<FLAG_COUNT; flagNo++)
+			mModificationCount[flagNo]++;
+		markAllDirty();
+		}
+
+	protected int getRowCount() {
+		return mRowCount;
+		}
+
+	/**
+	 * The modification count of a flag is increased whenever any bit of the flag may have
+	 * changed. It allows clients to detect, whether a flag still has the state they left it in.
+	 * @param flagNo
+	 * @return
+	 */
+	protected int getModificationCount(int flagNo) {
+		return mModificationCount[flagNo];
+		}
+
+	/**
+	 * Synchronizes the bitset of one flag with the records' flags after the flag
+	 * was changed without going through this index. Only words with changed bits
+	 * are marked as dirty.
+	 * @param flagNo
+	 * @param record all records in current order
+	 */
+	protected void updateFlag(int flagNo, CompoundRecord[] record) {
+		long[] word = getFlagWords(flagNo);
+		long mask = (1L << flagNo);
+		for (int w=0; w<mWordCount; w++) {
+			long bits = 0L;
+			int maxRow = Math.min(mRowCount, (w+1) << 6);
+			for (int row=w << 6; row<maxRow; row++)
+				if ((record[row].mFlags & mask) != 0)
+					bits |= (1L << row);
+			if (word[w] != bits) {
+				word[w] = bits;
+				markDirty(w);
+				}
+			}
+		mModificationCount[flagNo]++;
+		}
+
+	/**
+	 * Replaces the bitset of one flag by the given one and updates the flag of those records,
+	 * whose bit has changed. Only changed words are marked as dirty.
+	 * @param flagNo
+	 * @param newWord new bitset in current row order
+	 * @param record all records in current order
+	 * @return whether any bit has changed
+	 */
+	protected boolean copyFlag(int flagNo, long[] newWord, CompoundRecord[] record) {
+		long[] word = getFlagWords(flagNo);
+		long mask = (1L << flagNo);
+		boolean changed = false;
+		for (int w=0; w<mWordCount; w++) {
+			long changedBits = word[w] ^ newWord[w];
+			if (changedBits != 0) {
+				while (changedBits != 0) {
+					int bit = Long.numberOfTrailingZeros(changedBits);
+					if ((newWord[w] & (1L << bit)) != 0)
+						record[(w << 6) + bit].mFlags |= mask;
+					else
+						record[(w << 6) + bit].mFlags &= ~mask;
+					changedBits &= changedBits - 1;
+					}
+				word[w] = newWord[w];
+				markDirty(w);
+				changed = true;
+				}
+			}
+		if (changed)
+			mModificationCount[flagNo]++;
+		return changed;
+		}
+
+	/**
+	 * @param flagNo
+	 * @param row index in current row order
+	 * @param isExcluded
+	 */
+	protected void set(int flagNo, int row, boolean isExcluded) {
+		long[] word = getFlagWords(flagNo);
+		int w = row >>> 6;
+		long oldWord = word[w];
+		word[w] = isExcluded ? oldWord | (1L << row) : oldWord & ~(1L << row);
+		if (word[w] != oldWord) {
+			markDirty(w);
+			mModificationCount[flagNo]++;
+			}
+		}
+
+	protected boolean isSet(int flagNo, int row) {
+		return mFlagWord[flagNo] != null && (mFlagWord[flagNo][row >>> 6] & (1L << row)) != 0;
+		}
+
+	protected void invert(int flagNo) {
+		long[] word = getFlagWords(flagNo);
+		for (int w=0; w<mWordCount; w++)
+			word[w] = ~word[w];
+		if ((mRowCount & 63) != 0)
+			word[mWordCount-1] &= (1L << (mRowCount & 63)) - 1;
+		mModificationCount[flagNo]++;
+		markAllDirty();
+		}
+
+	protected void clear(int flagNo) {
+		long[] word = mFlagWord[flagNo];
+		if (word != null) {
+			for (int w=0; w<mWordCount; w++) {
+				if (word[w] != 0L) {
+					word[w] = 0L;
+					markDirty(w);
+					}
+				}
+			mModificationCount[flagNo]++;
+			}
+		}
+
+	/**
+	 * Updates the list of visible records from the first dirty word on.
+	 * @param record all records in current order
+	 * @param visibleRecord list of visible records, which must be valid up to the first dirty row
+	 * @param activeFlags mask of currently active exclusion flags
+	 * @return new number of visible records
+	 */
+	protected int compileVisibleRecords(CompoundRecord[] record, CompoundRecord[] visibleRecord, long activeFlags) {
+		if (mActiveFlags != activeFlags) {
+			mActiveFlags = activeFlags;
+			markAllDirty();
+			}
+
+		int activeCount = 0;
+		long[][] activeWord = new long[FLAG_COUNT][];
+		for (int flagNo=0; flagNo<FLAG_COUNT; flagNo++)
+			if ((activeFlags & (1L << flagNo)) != 0 && mFlagWord[flagNo] != null)
+				activeWord[activeCount++] = mFlagWord[flagNo];
+
+		int lastDirtyWord = Math.min(mLastDirtyWord, mWordCount-1);
+		for (int w=mFirstDirtyWord; w<=lastDirtyWord; w++) {
+			long excluded = 0L;
+			for (int i=0; i<activeCount; i++)
+				excluded |= activeWord[i][w];
+			mExcludedWord[w] = excluded;
+			}
+
+		int firstWord = Math.min(mFirstDirtyWord, mWordCount);
+		int count = 0;
+		for (int w=0; w<firstWord; w++)
+			count += Long.bitCount(getVisibleBits(w));
+
+		for (int w=firstWord; w<mWordCount; w++) {
+			long visible = getVisibleBits(w);
+			int firstRow = w << 6;
+			while (visible != 0) {
+				visibleRecord[count++] = record[firstRow + Long.numberOfTrailingZeros(visible)];
+				visible &= visible - 1;
+				}
+			}
+
+		mFirstDirtyWord = Integer.MAX_VALUE;
+		mLastDirtyWord = -1;
+		return count;
+		}
+
+	private long getVisibleBits(int word) {
+		long visible = ~mExcludedWord[word];
+		if (word == mWordCount-1 && (mRowCount & 63) != 0)
+			visible &= (1L << (mRowCount & 63)) - 1;
+		return visible;
+		}
+
+	private long[] getFlagWords(int flagNo) {
+		if (mFlagWord[flagNo] == null)
+			mFlagWord[flagNo] = new long[mWordCount];
+		return mFlagWord[flagNo];
+		}
+
+	private void markDirty(int word) {
+		if (mFirstDirtyWord > word)
+			mFirstDirtyWord = word;
+		if (mLastDirtyWord < word)
+			mLastDirtyWord = word;
+		}
+
+	private void markAllDirty() {
+		mFirstDirtyWord = 0;
+		mLastDirtyWord = mWordCount - 1;
+		}
+	}
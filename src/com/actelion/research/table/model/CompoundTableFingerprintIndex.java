@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.util.Arrays;
+
+/**
+ * Column-major (bit-sliced) index of a binary fingerprint descriptor column, e.g. FragFp.
+ * For every fingerprint bit the index contains one bitset over all record IDs, in which
+ * those records are set, whose fingerprint has this bit set. Screening all records for
+ * potential substructure matches then is an AND of those bitsets, which correspond to the
+ * bits set in the query fingerprint. Records without valid fingerprint cannot be screened
+ * and are always reported as candidates.
+ * An index is immutable and must be discarded, whenever the descriptor column changes.
+ */
+public class CompoundTableFingerprintIndex {
+	private long[][]	mBitSlice;		// [fingerprintBit][word of record IDs]
+	private long[]		mUnscreenable;	// records without valid fingerprint
+	private int			mRecordCount,mWordCount;
+
+	/**
+	 * Creates the index from all records' fingerprints. This may be called from any thread,
+	 * but the caller must make sure that the descriptor column is complete and not changed
+	 * while building.
+	 * @param tableModel
+	 * @param record all records of the table model
+	 * @param recordCount
+	 * @param fingerprintColumn column with long[] fingerprints of constant length
+	 */
+	protected CompoundTableFingerprintIndex(CompoundTableModel tableModel, CompoundRecord[] record,
+											int recordCount, int fingerprintColumn) {
+		mRecordCount = recordCount;
+		mWordCount = (recordCount + 63) >>> 6;
+		mUnscreenable = new long[mWordCount];
+
+		int fingerprintLength = 0;
+		for (int row=0; row<recordCount; row++) {
+			Object fp = record[row].getData(fingerprintColumn);
+			if (fp instanceof long[]) {
+				fingerprintLength = Math.max(fingerprintLength, ((long[])fp).length);
+				}
+			}
+
+		mBitSlice = new long[64 * fingerprintLength][mWordCount];
+		for (int row=0; row<recordCount; row++) {
+			int id = record[row].getID();
+			Object fp = record[row].getData(fingerprintColumn);
+			if (!(fp instanceof long[])
+			 || tableModel.getDescriptorHandler(fingerprintColumn).calculationFailed(fp)) {
+				mUnscreenable[id >>> 6] |= (1L << id);
+				continue;
+				}
+
+			long[] fingerprint = (long[])fp;
+			for (int i=0; i<fingerprint.length; i++) {
+				long bits = fingerprint[i];
+				while (bits != 0) {
+					int bit = Long.numberOfTrailingZeros(bits);
+					mBitSlice[64*i+bit][id >>> 6] |= (1L << id);
+					bits &= bits - 1;
+					}
+				}
+			}
+		}
+
+	public int getRecordCount() {
+		return mRecordCount;
+		}
+
+	/**
+	 * Returns all records, whose fingerprint contains all bits of the query fingerprint,
+	 * plus all records without valid fingerprint.
+	 * @param query fingerprint of the substructure query
+	 * @return bitset of candidate record IDs
+	 */
+	public long[] getCandidates(long[] query) {
+		long[] candidate = new long[mWordCount];
+		Arrays.fill(candidate, -1L);
+		if ((mRecordCount & 63) != 0)
+			candidate[mWordCount-1] = (1L << (mRecordCount & 63)) - 1;
+
+		for (int i=0; i<query.length; i++) {
+			long bits = query[i];
+			while (bits != 0) {
+				int bit = Long.numberOfTrailingZeros(bits);
+				int sliceNo = 64*i+bit;
+				if (sliceNo >= mBitSlice.length) {	// bit not set in any record
+					Arrays.fill(candidate, 0L);
+					break;
+					}
+				long[] slice = mBitSlice[sliceNo];
+				for (int w=0; w<mWordCount; w++)
+					candidate[w] &= slice[w];
+				bits &= bits - 1;
+				}
+			}
+
+		for (int w=0; w<mWordCount; w++)
+			candidate[w] |= mUnscreenable[w];
+
+		return candidate;
+		}
+	}
@@ -20,8 +20,19 @@ package com.actelion.research.table.model;
 
 import javax.swing.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.TreeSet;
 
+/**
+ * Manages all row lists of a CompoundTableModel. The number of row lists is not limited.
+ * Row list membership is stored either in a record flag or, if the list wasn't used recently and
+ * all record flags are taken, in a compressed RowBitmap of record IDs. When the flag of a stored list
+ * is requested, the list gets a free flag, if necessary the one of the least recently used list.
+ * A flag obtained from getListFlagNo() or getListMask() is pinned, i.e. it is never taken away from
+ * its list, until it is handed back with releaseListFlag(). Code, which just needs to check list
+ * membership, e.g. when painting, should use isListMember() or getListBitmap(), which don't allocate flags.
+ */
 public class CompoundTableListHandler {
 	public static final int		EMPTY_LIST = 0;
 	public static final int		ALL_IN_LIST = 1;
@@ -51,6 +62,7 @@ public class CompoundTableListHandler {
 	private CompoundTableModel	mTableModel;
 	private ArrayList<ListInfo> mListInfoList;
 	private ArrayList<CompoundTableListListener> mListener;
+	private long				mUseCount;
 
 	/**
 	 * Negative column indexes, e.g. PSEUDO_COLUMN_SELECTION may refer to the selection, to list indexes,
@@ -132,9 +144,9 @@ public class CompoundTableListHandler {
 		}
 
     public int getListFlagNo(String name) {
-        for (ListInfo info: mListInfoList)
-            if (info.name.equals(name))
-                return info.flagNo;
+		int index = indexOf(name);
+		if (index != -1)
+			return getListFlagNo(index);
 
         if (LIST_NAME_SELECTION.equals(name))
         	return CompoundRecord.cFlagSelected;
@@ -144,15 +156,20 @@ public class CompoundTableListHandler {
 
     /**
      * Returns the compound record flag that is associated with this list.
+     * If the list is stored as bitmap, it gets a record flag first, which may be taken
+     * from the least recently used list. The returned flag is pinned to the list
+     * until releaseListFlag() is called.
      * @param index valid list index (>= 0) or LISTINDEX_SELECTION
-     * @return flagNo
+     * @return flagNo or -1, if no flag is available
      */
     public int getListFlagNo(int index) {
-        return (index == LISTINDEX_SELECTION) ? CompoundRecord.cFlagSelected : index < 0 ? -1 : mListInfoList.get(index).flagNo;
+        return (index == LISTINDEX_SELECTION) ? CompoundRecord.cFlagSelected : index < 0 ? -1 : allocateListFlag(index);
         }
 
     /**
-     * Creates a mask containing one all flags of those lists specified in index
+     * Creates a mask containing one all flags of those lists specified in index.
+     * LISTINDEX_ANY includes only those lists, which currently have a flag, and doesn't pin them.
+     * Use getListBitmap() to cover lists without flag.
      * @param index list index or LISTINDEX_NONE, LISTINDEX_SELECTION or LISTINDEX_ANY
      * @return mask
      */
@@ -163,11 +180,175 @@ public class CompoundTableListHandler {
 			return CompoundRecord.cFlagMaskSelected;
         if (index == LISTINDEX_ANY) {
             long mask = 0;
-            for (int i = 0; i< mListInfoList.size(); i++)
-                mask |= (1L << mListInfoList.get(i).flagNo);
+			synchronized (this) {
+	            for (ListInfo info:mListInfoList)
+	                if (info.flagNo != -1)
+	                    mask |= (1L << info.flagNo);
+				}
             return mask;
             }
-		return (1L << mListInfoList.get(index).flagNo);
+		int flagNo = allocateListFlag(index);
+		return (flagNo == -1) ? 0 : (1L << flagNo);
+		}
+
+	/**
+	 * Hands back a flag obtained from getListFlagNo() or getListMask(). Once all callers have
+	 * released a list's flag, the list may lose its flag to another list, if flags run short.
+	 * @param index valid list index or LISTINDEX_SELECTION
+	 */
+	public synchronized void releaseListFlag(int index) {
+		if (index >= 0 && index < mListInfoList.size()) {
+			ListInfo info = mListInfoList.get(index);
+			if (info.pinCount != 0)
+				info.pinCount--;
+			}
+		}
+
+	public void releaseListFlag(String name) {
+		releaseListFlag(indexOf(name));
+		}
+
+	/**
+	 * Checks list membership without allocating a record flag for lists stored as bitmap.
+	 * This may be called from any thread, while other threads move lists between flags and bitmaps.
+	 * @param record
+	 * @param index valid list index or LISTINDEX_SELECTION
+	 * @return whether record belongs to the list
+	 */
+	public boolean isListMember(CompoundRecord record, int index) {
+		if (index == LISTINDEX_SELECTION)
+			return record.isSelected();
+
+		ListInfo info = mListInfoList.get(index);
+		int flagNo = info.flagNo;
+		if (flagNo != -1)
+			return record.isFlagSet(flagNo);
+
+		synchronized (this) {	// flagNo and bitmap are changed together under this lock
+			if (info.flagNo != -1)
+				return record.isFlagSet(info.flagNo);
+			return info.bitmap != null && info.bitmap.contains(record.getID());
+			}
+		}
+
+	/**
+	 * Creates a set of record IDs of all records belonging to the specified list.
+	 * This doesn't allocate a record flag for the list.
+	 * @param index list index or LISTINDEX_SELECTION or LISTINDEX_ANY
+	 * @return bitmap of record IDs
+	 */
+	public synchronized RowBitmap getListBitmap(int index) {
+		if (index == LISTINDEX_SELECTION)
+			return createBitmapFromFlag(CompoundRecord.cFlagSelected);
+
+		if (index == LISTINDEX_ANY) {
+			RowBitmap bitmap = createBitmapFromMask(getListMask(LISTINDEX_ANY));
+			for (ListInfo info:mListInfoList)
+				if (info.flagNo == -1)
+					bitmap = bitmap.combine(info.bitmap, RowBitmap.OPERATION_OR);
+			return bitmap;
+			}
+
+		ListInfo info = mListInfoList.get(index);
+		return (info.flagNo == -1) ? info.bitmap : createBitmapFromFlag(info.flagNo);
+		}
+
+	/**
+	 * @return number of lists whose record flags may be released to be used otherwise
+	 */
+	protected synchronized int getFlaggedListCount() {
+		int count = 0;
+		for (ListInfo info:mListInfoList)
+			if (info.flagNo != -1 && info.pinCount == 0)
+				count++;
+		return count;
+		}
+
+	/**
+	 * Makes sure that the list's membership is stored in a record flag. If the list was stored
+	 * as bitmap, a free flag is allocated, which may release the flag of the least recently used list.
+	 * The flag is pinned until releaseListFlag() is called.
+	 * @param index valid list index
+	 * @return flagNo or -1, if all record flags are used for other purposes
+	 */
+	private synchronized int allocateListFlag(int index) {
+		ListInfo info = mListInfoList.get(index);
+		info.lastUse = ++mUseCount;
+		if (info.flagNo == -1) {
+			int flagNo = mTableModel.getUnusedRowFlag(false);
+			if (flagNo == -1)
+				return -1;
+
+			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
+				CompoundRecord record = mTableModel.getTotalRecord(row);
+				if (info.bitmap.contains(record.getID()))
+					record.setFlag(flagNo);
+				}
+
+			info.flagNo = flagNo;
+			info.bitmap = null;
+			mTableModel.setRowFlagToDirty(flagNo);
+			}
+		info.pinCount++;
+		return info.flagNo;
+		}
+
+	/**
+	 * Moves the membership of the least recently used list, which has a record flag that is not pinned,
+	 * into a bitmap and frees the flag. This is called by the CompoundTableModel, if
+	 * a new record flag is needed and all flags are in use.
+	 * @return true if a flag was freed
+	 */
+	protected synchronized boolean releaseLeastRecentlyUsedListFlag() {
+		ListInfo lruInfo = null;
+		for (ListInfo info:mListInfoList)
+			if (info.flagNo != -1 && info.pinCount == 0 && (lruInfo == null || info.lastUse < lruInfo.lastUse))
+				lruInfo = info;
+
+		if (lruInfo == null)
+			return false;
+
+		int flagNo = lruInfo.flagNo;
+		lruInfo.bitmap = createBitmapFromFlag(flagNo);
+		lruInfo.flagNo = -1;
+		mTableModel.freeRowFlag(flagNo);
+		return true;
+		}
+
+	/**
+	 * Translates the record IDs of all lists stored as bitmap after records were removed.
+	 * @param mapping old record ID for every new record ID
+	 * @param oldIDCount record count before the removal
+	 */
+	protected synchronized void translateRecordIDs(int[] mapping, int oldIDCount) {
+		int[] oldToNewID = null;
+		for (ListInfo info:mListInfoList) {
+			if (info.flagNo == -1) {
+				if (oldToNewID == null) {
+					oldToNewID = new int[oldIDCount];
+					Arrays.fill(oldToNewID, -1);
+					for (int newID=0; newID<mapping.length; newID++)
+						oldToNewID[mapping[newID]] = newID;
+					}
+				info.bitmap = info.bitmap.translateIDs(oldToNewID);
+				}
+			}
+		}
+
+	private RowBitmap createBitmapFromFlag(int flagNo) {
+		return createBitmapFromMask(1L << flagNo);
+		}
+
+	private RowBitmap createBitmapFromMask(long mask) {
+		BitSet members = new BitSet(mTableModel.getTotalRowCount());
+		if (mask != 0) {
+			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
+				CompoundRecord record = mTableModel.getTotalRecord(row);
+				if ((record.mFlags & mask) != 0)
+					members.set(record.getID());
+				}
+			}
+		return new RowBitmap(members);
 		}
 
 
@@ -206,7 +387,12 @@ public class CompoundTableListHandler {
 
 		name = getUniqueName(name);
 
-		mListInfoList.add(new ListInfo(name, flagNo));
+		ListInfo info = new ListInfo(name, flagNo);
+		info.pinCount = 1;	// keep the flag while setting list members
+		synchronized (this) {
+			info.lastUse = ++mUseCount;
+			mListInfoList.add(info);
+			}
 
 		if (source == ALL_IN_LIST) {
             for (int row=0; row<mTableModel.getTotalRowCount(); row++)
@@ -289,12 +475,17 @@ public class CompoundTableListHandler {
 
         mTableModel.setRowFlagToDirty(flagNo);
 
+		synchronized (this) {
+			info.pinCount--;
+			}
+
         fireEvents(new CompoundTableListEvent(this, CompoundTableListEvent.cAdd, mListInfoList.size()-1));
 		return name;
 		}
 
     /**
      * Creates a new list based on a boolean operation on existing lists.
+     * The new list is stored as bitmap and gets a record flag when it is used.
      * @param name intended name for new list
      * @param list1
      * @param list2
@@ -302,43 +493,28 @@ public class CompoundTableListHandler {
      * @return unique list name which may differ from the intended 'name'
      */
 	public String createList(String name, int list1, int list2, int operation) {
-		int flagNo = mTableModel.getUnusedRowFlag(false);
-		if (flagNo == -1)
-			return null;
+		int bitmapOperation = (operation == OPERATION_AND) ? RowBitmap.OPERATION_AND
+							: (operation == OPERATION_OR) ? RowBitmap.OPERATION_OR
+							: (operation == OPERATION_XOR) ? RowBitmap.OPERATION_XOR
+							: RowBitmap.OPERATION_AND_NOT;
+		return createList(name, getListBitmap(list1).combine(getListBitmap(list2), bitmapOperation));
+		}
 
+	/**
+	 * Creates a new list from a set of record IDs without allocating a record flag.
+	 * @param name intended name for new list
+	 * @param members record IDs of list members
+	 * @return unique list name which may differ from the intended 'name'
+	 */
+	public String createList(String name, RowBitmap members) {
 		name = getUniqueName(name);
 
-		mListInfoList.add(new ListInfo(name, flagNo));
-
-		long mask1 = getListMask(list1);
-        long mask2 = getListMask(list2);
-        long maskBoth = (mask1 | mask2);
-
-		for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
-			CompoundRecord record = mTableModel.getTotalRecord(row);
-			long availableFlags = (record.mFlags & maskBoth);
-			switch (operation) {
-			case OPERATION_AND:
-				if (availableFlags == maskBoth)
-					record.setFlag(flagNo);
-				break;
-			case OPERATION_OR:
-				if (availableFlags != 0)
-                    record.setFlag(flagNo);
-				break;
-			case OPERATION_XOR:
-				if (availableFlags == mask1 || availableFlags == mask2)
-                    record.setFlag(flagNo);
-				break;
-			case OPERATION_NOT:
-				if (availableFlags == mask1)
-                    record.setFlag(flagNo);
-				break;
-				}
+		ListInfo info = new ListInfo(name, -1);
+		info.bitmap = members;
+		synchronized (this) {
+			mListInfoList.add(info);
 			}
 
-        mTableModel.setRowFlagToDirty(flagNo);
-        
 		fireEvents(new CompoundTableListEvent(this, CompoundTableListEvent.cAdd, mListInfoList.size()-1));
 		return name;
 		}
@@ -359,11 +535,14 @@ public class CompoundTableListHandler {
      */
     public void addRecord(CompoundRecord record, int list) {
 	    int flagNo = getListFlagNo(list);
-	    if (!record.isFlagSet(flagNo)) {
+	    boolean isChange = !record.isFlagSet(flagNo);
+	    if (isChange) {
 	    	record.setFlag(flagNo);
-
 	    	mTableModel.setRowFlagToDirty(flagNo);
+	    	}
+	    releaseListFlag(list);
 
+	    if (isChange) {
 	        fireEvents(new CompoundTableListEvent(this, CompoundTableListEvent.cChange, list));
 			}
 		}
@@ -375,11 +554,14 @@ public class CompoundTableListHandler {
      */
     public void removeRecord(CompoundRecord record, int list) {
 	    int flagNo = getListFlagNo(list);
-	    if (record.isFlagSet(flagNo)) {
+	    boolean isChange = record.isFlagSet(flagNo);
+	    if (isChange) {
 	    	record.clearFlag(flagNo);
-
 	    	mTableModel.setRowFlagToDirty(flagNo);
+	    	}
+	    releaseListFlag(list);
 
+	    if (isChange) {
 	    	fireEvents(new CompoundTableListEvent(this, CompoundTableListEvent.cChange, list));
 			}
 		}
@@ -397,6 +579,7 @@ public class CompoundTableListHandler {
 			}
 
         mTableModel.setRowFlagToDirty(flagNo);
+        releaseListFlag(list);
 
         fireEvents(new CompoundTableListEvent(this, CompoundTableListEvent.cChange, list));
 		}
@@ -410,6 +593,7 @@ public class CompoundTableListHandler {
 			}
 
         mTableModel.setRowFlagToDirty(flagNo);
+        releaseListFlag(list);
 
         fireEvents(new CompoundTableListEvent(this, CompoundTableListEvent.cChange, list));
 		}
@@ -417,8 +601,11 @@ public class CompoundTableListHandler {
 	public void deleteList(String name) {
 		int index = indexOf(name);
 		if (index != -1) {
-			ListInfo info = mListInfoList.remove(index);
-			mTableModel.freeRowFlag(info.flagNo);
+			synchronized (this) {
+				ListInfo info = mListInfoList.remove(index);
+				if (info.flagNo != -1)
+					mTableModel.freeRowFlag(info.flagNo);
+				}
 
 			fireEvents(new CompoundTableListEvent(this, CompoundTableListEvent.cDelete, index));
 			}
@@ -435,7 +622,7 @@ public class CompoundTableListHandler {
 		return name;
 		}
 
-	protected void clearListData() {
+	protected synchronized void clearListData() {
 			// only to be called from CompoundTableModel on initializeTable()
 		mListInfoList.clear();
 		}
@@ -494,7 +681,10 @@ public class CompoundTableListHandler {
 
 class ListInfo {
 	public String	name;
-	public int 		flagNo;
+	public volatile int flagNo;	// -1 if membership is stored in bitmap
+	public volatile RowBitmap bitmap;
+	public long		lastUse;
+	public int		pinCount;	// number of callers currently using flagNo
 
     public ListInfo(String name, int flagNo) {
 		this.name = name;
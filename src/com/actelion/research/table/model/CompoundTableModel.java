@@ -28,6 +28,7 @@ import com.actelion.research.chem.reaction.Reaction;
 import com.actelion.research.chem.reaction.ReactionEncoder;
 import com.actelion.research.chem.reaction.SRSearcher;
 import com.actelion.research.table.BinGenerator;
+import com.actelion.research.table.RowTaskScheduler;
 import com.actelion.research.table.category.*;
 import com.actelion.research.util.*;
 import org.openmolecules.chem.conf.gen.RigidFragmentCache;
@@ -45,6 +46,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import java.util.stream.IntStream;
 
 public class CompoundTableModel extends AbstractTableModel
 			implements CompoundTableConstants,DescriptorConstants,TableModel {
@@ -63,10 +65,22 @@ public class CompoundTableModel extends AbstractTableModel
 		// a comma (',') cannot be a delimiter, because it would interfere with the date format
 	private static final String cSeparatorRegex = cEntrySeparator+"|"+cLineSeparator.replace("\n", "\\n")+"| *; *";
 
+	private static final int SORT_KEY_TYPE_NONE = 0;	// sorting relies on the tie breaker comparator
+	private static final int SORT_KEY_TYPE_STRING = 1;
+	private static final int SORT_KEY_TYPE_IDCODE = 2;
+	private static final long SORT_KEY_NAN = 0xFFFFFFFFL;
+	private static final long SORT_KEY_NULL = Long.MAX_VALUE;
+
+	private static final int SIMILARITY_INDEX_CHUNK_SIZE = 4096;	// fingerprints compared by one worker at a time
+
 	public static final int ATOM_COLOR_MODE_NONE = 0;
 	public static final int ATOM_COLOR_MODE_EXPLICIT = 1;
 	public static final int ATOM_COLOR_MODE_ALL = 2;
 
+	public static final int TEXT_INDEX_MODE_NONE = 0;
+	public static final int TEXT_INDEX_MODE_ON_DEMAND = 1;
+	public static final int TEXT_INDEX_MODE_ALWAYS = 2;
+
 	private CompoundTableListHandler mHitlistHandler;
 	private CompoundTableDetailHandler  mDetailHandler;
 	private CompoundTableExtensionHandler  mExtensionHandler;
@@ -75,6 +89,11 @@ public class CompoundTableModel extends AbstractTableModel
 	private ArrayList<HighlightListener>   mHighlightListener;
 	private TreeMap<String,Object> mTableExtensionMap;
 	private CompoundRecord[]	mRecord,mNonExcludedRecord,mSMPRecord;
+	private CompoundTableColumnStore mColumnStore;
+	private CompoundTableExclusionIndex mExclusionIndex;
+	private StructureCache		mStructureCache;
+	private RangeExclusion[]	mRangeExclusion;
+	private int[]				mIDToRow;
 	private CompoundRecord		mHighlightedRow,mActiveRow;
 	private File				mFile;
 	private long				mAllocatedExclusionFlags,mAllocatedCompoundFlags,
@@ -88,11 +107,13 @@ public class CompoundTableModel extends AbstractTableModel
 	private volatile float[]	mSimilarityListSMP,mSimilarityList2SMP;
 	private volatile boolean	mSMPProcessWaiting,mSMPStopDescriptorCalculation;
 	private volatile int		mRecords,mExclusionUpdateThreadCount;
-	private volatile AtomicInteger mSMPIndex,mSMPThreadIndex,mSimRecordIndex,mSMPDescriptorThreads,mSMPSimilarityThreads;
+	private volatile AtomicInteger mSimRecordIndex,mSMPSimilarityThreads;
 	private volatile DescriptorColumnSpec[] mSMPColumnSpec;
 	private volatile int		mSMPSimilarityErrors;
 	private volatile AtomicBoolean mLock;
+	private final Object		mRowFlagLock = new Object();	// guards allocation of row flags
 	private volatile ConcurrentHashMap<String,float[]> mFlexophoreSimilarityListCache;	// TODO prevent this to grow to much
+	private int					mTextIndexMode;
 
 	/**
 	 * This is the single point of assigning DescriptorHandlers to shortNames and, thus, defines
@@ -120,7 +141,11 @@ public class CompoundTableModel extends AbstractTableModel
 		mCompoundTableListener = new ArrayList<CompoundTableListener>();
 		mHighlightListener = new ArrayList<HighlightListener>();
 		mLastSortColumn = -1;
+		mTextIndexMode = TEXT_INDEX_MODE_ON_DEMAND;
 		mLock = new AtomicBoolean(false);
+		mExclusionIndex = new CompoundTableExclusionIndex();
+		mRangeExclusion = new RangeExclusion[64];
+		mStructureCache = new StructureCache(this);
 		}
 
 	public void addProgressListener(ProgressListener l) {
@@ -225,6 +250,8 @@ public class CompoundTableModel extends AbstractTableModel
 		mNonExcludedRecords = 0;
 		mAllocatedCompoundFlags = 0;
 		mAllocatedExclusionFlags = 0;
+		mExclusionIndex = new CompoundTableExclusionIndex();
+		mRangeExclusion = new RangeExclusion[64];
 
 		mDisplayableColumnToColumn = null;
 		mColumnToDisplayableColumn = null;
@@ -250,10 +277,11 @@ public class CompoundTableModel extends AbstractTableModel
 								CompoundTableEvent.cSpecifierNoRuntimeProperties),
 						  new TableModelEvent(this, TableModelEvent.HEADER_ROW));
 
+		mColumnStore = new CompoundTableColumnStore(rows, columns);
 		mRecord = new CompoundRecord[rows];
 		mNonExcludedRecord = new CompoundRecord[rows];
 		for (int i=0; i<rows; i++)
-			mRecord[i] = new CompoundRecord(i, columns);
+			mRecord[i] = new CompoundRecord(mColumnStore, i, columns);
 
 		mColumnInfo = new CompoundTableColumnInfo[columns];
 		for (int i=0; i<columns; i++)
@@ -289,6 +317,7 @@ public class CompoundTableModel extends AbstractTableModel
 		analyzeData(0, listener);
 		createDisplayableColumnMap();
 		compileVisibleRecords();
+		buildTextIndexes();
 		CompoundTableEvent cte = new CompoundTableEvent(this, CompoundTableEvent.cNewTable, -1, specifier);
 		TableModelEvent tme = new TableModelEvent(this, TableModelEvent.HEADER_ROW);
 		fireEventsNow(cte, tme);
@@ -373,13 +402,13 @@ public class CompoundTableModel extends AbstractTableModel
 				if (entry.length > 1) {
 					if ((mColumnInfo[column].type & cColumnTypeDate) != 0) {
 						String date = DateFormat.getDateInstance().format(new Date(
-								86400000 * (long) record.mFloat[column] + 43200000));
+								86400000 * (long) record.getDouble(column) + 43200000));
 						return mColumnInfo[column].summaryCountHidden ? date : date + getSummaryModeString(column, entry.length);
 						}
 	
 					float value = (mColumnInfo[column].logarithmicViewMode) ?
-							(float)Math.pow(10.0, record.mFloat[column])
-						  : record.mFloat[column];
+							(float)Math.pow(10.0, record.getDouble(column))
+						  : record.getDouble(column);
 	
 					String numPart = (mColumnInfo[column].significantDigits == 0) ?
 							  DoubleFormat.toString(value)
@@ -459,7 +488,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return 
 	 */
 	public float getDoubleAt(int row, int column) {
-		return mNonExcludedRecord[row].mFloat[column];
+		return mNonExcludedRecord[row].getDouble(column);
 		}
 
 	public int getRowCount() {
@@ -475,7 +504,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return 
 	 */
 	public float getTotalDoubleAt(int row, int column) {
-		return mRecord[row].mFloat[column];
+		return mRecord[row].getDouble(column);
 		}
 
 	/**
@@ -499,7 +528,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return 
 	 */
 	public float getTotalOriginalDoubleAt(int row, int column) {
-		float value = mRecord[row].mFloat[column];
+		float value = mRecord[row].getDouble(column);
 		return isLogarithmicViewMode(column) ? (float)Math.pow(10.0, value) : value;
 		}
 
@@ -614,6 +643,41 @@ public class CompoundTableModel extends AbstractTableModel
 		return null;
 		}
 
+	/**
+	 * Returns the molecule of a structure cell for depiction from a bounded cache of recently
+	 * displayed molecules. Thus, views don't need to parse idcodes and coordinates or to invent
+	 * coordinates on every repaint. Cached molecules are removed, when the underlying data changes.
+	 * @param record
+	 * @param column idcode column or 3D-coords column
+	 * @param atomColorMode one of ATOM_COLOR_MODE_...
+	 * @param mol null to get the shared cached molecule, which must not be changed, or a StereoMolecule to receive a copy
+	 * @return null, if record doesn't contain molecule information
+	 */
+	public StereoMolecule getCachedChemicalStructure(CompoundRecord record, int column, int atomColorMode, StereoMolecule mol) {
+		if (record == null || column == -1)
+			return null;
+
+		StereoMolecule cachedMol = mStructureCache.get(record, column, atomColorMode);
+		if (cachedMol == null || mol == null)
+			return cachedMol;
+
+		cachedMol.copyMolecule(mol);
+		return mol;
+		}
+
+	/**
+	 * Lets the structure cache create the molecules of the given records on a background thread,
+	 * e.g. for records adjacent to the visible area of a view. A new call cancels an unfinished
+	 * previous one.
+	 * @param record records in the order in which they are likely to be displayed
+	 * @param column idcode column or 3D-coords column
+	 * @param atomColorMode one of ATOM_COLOR_MODE_...
+	 */
+	public void prefetchChemicalStructures(CompoundRecord[] record, int column, int atomColorMode) {
+		if (column != -1 && record.length != 0)
+			mStructureCache.prefetch(record, column, atomColorMode);
+		}
+
 	public StereoMolecule getChemicalStructureFromReaction(CompoundRecord record, int reactionColumn, String reactionPart, boolean includeMapping) {
 		if (record == null || reactionColumn == -1)
 			return null;
@@ -1181,6 +1245,50 @@ public class CompoundTableModel extends AbstractTableModel
 		return mRecord[row];
 		}
 
+	/**
+	 * @return column oriented storage of all records' pre-processed float values
+	 */
+	public CompoundTableColumnStore getColumnStore() {
+		return mColumnStore;
+		}
+
+	/**
+	 * Defines a column, whose cell data is not decoded before any of its cells is accessed.
+	 * This may be called after initializeTable() and before finalizeTable().
+	 * @param column
+	 * @param lazyColumn
+	 */
+	public void setLazyColumn(int column, CompoundTableColumnStore.LazyColumn lazyColumn) {
+		CompoundRecord[] recordByID = new CompoundRecord[mRecord.length];
+		for (CompoundRecord record:mRecord)
+			recordByID[record.getID()] = record;
+		mColumnStore.setLazyColumn(column, lazyColumn, recordByID);
+		}
+
+	/**
+	 * If the data of a lazy column could not be decoded, the column's cells are empty.
+	 * Then the table must not be saved, because the file would lose the column's data.
+	 * @return null or the reason why cell data of a lazy column is missing
+	 */
+	public String getColumnLoadError() {
+		return mColumnStore.getLoadError();
+		}
+
+	/**
+	 * Defines numerical values, which were parsed from the column's cells before,
+	 * e.g. when the data was saved. These are used instead of parsing cell content,
+	 * when the column is analyzed by finalizeTable(). Values must be parsed in the default
+	 * way, i.e. without logarithmic view mode, summary mode or modifier exclusion.
+	 * This may be called after initializeTable() and before finalizeTable().
+	 * @param column
+	 * @param value parsed values indexed by record ID
+	 * @param hasModifiers whether any cell contains a modifier
+	 */
+	public void setPreparsedValues(int column, float[] value, boolean hasModifiers) {
+		mColumnInfo[column].preparsedValue = value;
+		mColumnInfo[column].preparsedHasModifiers = hasModifiers;
+		}
+
 	public float getDescriptorSimilarity(CompoundRecord r1, CompoundRecord r2, int column) {
 		Object o1 = r1.getData(column);
 		Object o2 = r2.getData(column);
@@ -1549,26 +1657,30 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	/**
-	 * Deselect all records which have a given flag set.
-	 * @param flagNo >= 0
+	 * Deselect all records, which belong to the given list. This doesn't allocate a record flag for the list.
+	 * @param listIndex valid list index
 	 */
-	public void deselectByList(int flagNo) {
-		long mask = convertRowFlagToMask(flagNo);
+	public void deselectByList(int listIndex) {
+		if (listIndex < 0)
+			return;
+
 		for (int row=0; row<mRecords; row++)
-			if ((mRecord[row].mFlags & mask) != 0)
+			if (mHitlistHandler.isListMember(mRecord[row], listIndex))
 				mRecord[row].mFlags &= ~CompoundRecord.cFlagMaskSelected;
 
 		fireEventsNow(new CompoundTableEvent(this, CompoundTableEvent.cChangeSelection, -1), null);
 		}
 	
 	/**
-	 * Select all records which have a given flag set.
-	 * @param flagNo >= 0
+	 * Select all records, which belong to the given list. This doesn't allocate a record flag for the list.
+	 * @param listIndex valid list index
 	 */
-	public void selectByList(int flagNo) {
-		long mask = convertRowFlagToMask(flagNo);
+	public void selectByList(int listIndex) {
+		if (listIndex < 0)
+			return;
+
 		for (int row=0; row<mRecords; row++)
-			if ((mRecord[row].mFlags & mask) != 0)
+			if (mHitlistHandler.isListMember(mRecord[row], listIndex))
 				mRecord[row].mFlags |= CompoundRecord.cFlagMaskSelected;
 
 		fireEventsNow(new CompoundTableEvent(this, CompoundTableEvent.cChangeSelection, -1), null);
@@ -1595,12 +1707,14 @@ public class CompoundTableModel extends AbstractTableModel
 	public void addNewRows(int newRowCount, boolean initializeNewRows) {
 		stopDescriptorCalculation();
 
+		mColumnStore.ensureRowCapacity(mRecords + newRowCount);
+
 		CompoundRecord[] record = new CompoundRecord[mRecords + newRowCount];
 		for (int row=0; row<mRecords; row++)
 			record[row] = mRecord[row];
 		if (initializeNewRows)
 			for (int row=mRecords; row<record.length; row++)
-				record[row] = new CompoundRecord(row, mColumnInfo.length);
+				record[row] = new CompoundRecord(mColumnStore, row, mColumnInfo.length);
 		mRecord = record;
 
 		CompoundRecord[] nonExcludedRecord = new CompoundRecord[mRecords + newRowCount];
@@ -1638,6 +1752,7 @@ public class CompoundTableModel extends AbstractTableModel
 
 		for (int row=0; row<mRecord.length; row++)
 			mRecord[row].addColumns(columnCount);
+		mColumnStore.addColumns(columnCount);
 
 		mColumnInfo = newColumnInfo;
 
@@ -1654,11 +1769,14 @@ public class CompoundTableModel extends AbstractTableModel
 		for (int i=0; i<columnName.length; i++)
 			newColumnInfo[firstNewColumn+i] = new CompoundTableColumnInfo(columnName[i]);
 
-		if (mRecord == null)
+		if (mRecord == null) {
 			mRecord = new CompoundRecord[0];
+			mColumnStore = new CompoundTableColumnStore(0, 0);
+			}
 
 		for (int row=0; row<mRecord.length; row++)
 			mRecord[row].addColumns(columnName.length);
+		mColumnStore.addColumns(columnName.length);
 
 		mColumnInfo = newColumnInfo;
 
@@ -1995,7 +2113,7 @@ public class CompoundTableModel extends AbstractTableModel
 		// if an indexing thread is running don't allow column removal if it
 		// would change the column index of a currently updated descriptor.
 		boolean stopDescriptorCalculation = false;
-		if (mSMPDescriptorThreads != null) {
+		if (mSMPThread != null || mSMPProcessWaiting) {
 			int firstRemovalColumn = -1;
 			for (int i = 0; i< mAllColumns; i++) {
 				if (removeColumn[i]) {
@@ -2031,9 +2149,17 @@ public class CompoundTableModel extends AbstractTableModel
 				}
 			}
 		mColumnInfo = newColumnInfo;
-
+		for (CompoundTableColumnInfo info:mColumnInfo)
+			if (info.isTextIndexBuilding)	// built with old column indexes
+				invalidateTextIndex(info);
+		for (int i=0; i<columnMapping.length; i++)
+			if (columnMapping[i] != -1 && columnMapping[i] != i)	// running index builds use old column indexes
+				invalidateChemistryIndexes(mColumnInfo[columnMapping[i]]);
+
+		mColumnStore.loadAllLazyColumns();
 		for (int row=0; row<mRecords; row++)
 			mRecord[row].removeColumns(removeColumn, removalCount);
+		mColumnStore.removeColumns(removeColumn, removalCount);
 
 		mAllColumns -= removalCount;
 
@@ -2117,11 +2243,18 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @param column
 	 */
 	public void finalizeChangeCell(CompoundRecord record, int column) {
-		analyzeColumn(column, 0, false);
+		CompoundTableTextIndex textIndex = mColumnInfo[column].textIndex;
+		analyzeColumn(column, 0, false, record);
+		if (textIndex != null) {	// keep the text index and just mark the changed record
+			textIndex.markChanged(record.getID());
+			if (!textIndex.isOutdated())
+				mColumnInfo[column].textIndex = textIndex;
+			}
 
 		for (int i=0; i<mColumnInfo.length; i++) {
 			if (i != column && isDescriptorColumn(i) && getParentColumn(i) == column) {
 				record.setData(null, i);
+				invalidateChemistryIndexes(mColumnInfo[i]);
 				DescriptorColumnSpec spec = new DescriptorColumnSpec(i);
 				updateDescriptor(record, spec, spec.descriptorHandler, null);
 				if (!mColumnInfo[i].isComplete && spec.isComplete)
@@ -2182,6 +2315,7 @@ public class CompoundTableModel extends AbstractTableModel
 					}
 				if (needsUpdate) {
 					mColumnInfo[i].isDescriptorIncomplete = true;
+					invalidateChemistryIndexes(mColumnInfo[i]);
 					startDescriptorThread = true;
 					}
 				}
@@ -2384,10 +2518,12 @@ public class CompoundTableModel extends AbstractTableModel
 		if (removalCount != 0) {
 			removeDeadReferences(mask);
 
-			boolean calculateDescriptors = (mSMPDescriptorThreads != null);
+			boolean calculateDescriptors = (mSMPThread != null || mSMPProcessWaiting);
 			if (calculateDescriptors)
 				stopDescriptorCalculation();
 
+			mColumnStore.loadAllLazyColumns();
+
 			int index = 0;
 			int[] mapping = new int[mRecord.length - removalCount];
 			CompoundRecord[] newRecord = new CompoundRecord[mRecord.length - removalCount];
@@ -2405,6 +2541,9 @@ public class CompoundTableModel extends AbstractTableModel
 
 			mRecords -= removalCount;
 			mRecord = newRecord;
+			mColumnStore.removeRows(mapping);
+			if (mHitlistHandler != null)
+				mHitlistHandler.translateRecordIDs(mapping, mRecords + removalCount);
 
 			analyzeDataAfterRemoval();
 
@@ -2413,9 +2552,10 @@ public class CompoundTableModel extends AbstractTableModel
 
 			mFlexophoreSimilarityListCache = null;
 
+			compileVisibleRecords();	// also needed for invisible removals to update the exclusion index
+
 			TableModelEvent tme = null;
 			if (visibleChanged) {
-				compileVisibleRecords();
 				tme = new TableModelEvent(this, 0, mNonExcludedRecords-1,
 								TableModelEvent.ALL_COLUMNS, TableModelEvent.DELETE);
 				}
@@ -2489,27 +2629,23 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	public synchronized void sort(int column, boolean descending, boolean selectedFirst) {
-		boolean calculateDescriptors = (mSMPDescriptorThreads != null);
-		if (calculateDescriptors)
-			stopDescriptorCalculation();
-
 		String specialType = getColumnSpecialType(column);
 		UniqueList<String> order = mColumnInfo[column].mCategoryCustomOrder;
 
 		if (order != null && order.size() != 0
 		 && (mColumnInfo[column].type & cColumnTypeCategory) != 0)
-			Arrays.sort(mRecord, new DoubleComparator(column, descending, selectedFirst));
+			sortByFloatKey(column, descending, selectedFirst);
 		else if (cColumnTypeIDCode.equals(specialType))
-			Arrays.sort(mRecord, new IDCodeComparator(column, descending, selectedFirst));
+			sortByRecordKey(column, SORT_KEY_TYPE_IDCODE, new StringComparator(column, descending, false), descending, selectedFirst);
 		else if (isDescriptorColumn(column))
-			Arrays.sort(mRecord, new DoubleComparator(column, descending, selectedFirst));
+			sortByFloatKey(column, descending, selectedFirst);
 		else if ("Idorsia No".equals(mColumnInfo[column].name) || "Actelion No".equals(mColumnInfo[column].name))
-			Arrays.sort(mRecord, new ActNoComparator(column, descending, selectedFirst));
+			sortByRecordKey(column, SORT_KEY_TYPE_NONE, new ActNoComparator(column, descending, false), descending, selectedFirst);
 		else if (mColumnInfo[column].type == cColumnTypeRangeCategory
 			 || (mColumnInfo[column].type & cColumnTypeDouble) != 0)
-			Arrays.sort(mRecord, new DoubleComparator(column, descending, selectedFirst));
+			sortByFloatKey(column, descending, selectedFirst);
 		else
-			Arrays.sort(mRecord, new StringComparator(column, descending, selectedFirst));
+			sortByRecordKey(column, SORT_KEY_TYPE_STRING, new StringComparator(column, descending, false), descending, selectedFirst);
 
 		mLastSortColumn = descending ? -1 : column;
 
@@ -2517,17 +2653,116 @@ public class CompoundTableModel extends AbstractTableModel
 
 		mFlexophoreSimilarityListCache = null;
 
-		if (calculateDescriptors)
-			updateDescriptors();
-
 		fireEventsNow(new CompoundTableEvent(this, CompoundTableEvent.cChangeSortOrder, -1),
 				   new TableModelEvent(this, 0, mNonExcludedRecords-1,
 							TableModelEvent.ALL_COLUMNS, TableModelEvent.UPDATE));
 		}
 
+	/**
+	 * Stable sort of all records by their float value in the given column. Every record gets one
+	 * primitive long key, which contains the selection state (bit 63), the value (bits 31-62)
+	 * and the current record position (bits 0-30) as tie breaker. Keys are sorted in parallel
+	 * and records are reordered according to the position of the sorted keys.
+	 * NaN values are sorted to the end in both directions.
+	 */
+	private void sortByFloatKey(final int column, final boolean descending, final boolean selectedFirst) {
+		final int recordCount = mRecord.length;
+		long[] key = new long[recordCount];
+		Arrays.parallelSetAll(key, row -> {
+			CompoundRecord record = mRecord[row];
+			float value = record.getDouble(column);
+			long valueKey = SORT_KEY_NAN;
+			if (!Float.isNaN(value)) {
+				// unsigned 32-bit key in value order; 0.0 and -0.0 are considered equal
+				valueKey = (CompoundTableRangeIndex.toSortableInt(value == 0f ? 0f : value) ^ 0x80000000) & 0xFFFFFFFFL;
+				if (descending)
+					valueKey = SORT_KEY_NAN - 1 - valueKey;
+				}
+			long selectionKey = (selectedFirst && record.isSelected()) ? Long.MIN_VALUE : 0L;
+			return selectionKey | (valueKey << 31) | row;
+			} );
+
+		Arrays.parallelSort(key);
+
+		CompoundRecord[] sortedRecord = new CompoundRecord[recordCount];
+		for (int i=0; i<recordCount; i++)
+			sortedRecord[i] = mRecord[(int)(key[i] & 0x7FFFFFFF)];
+		System.arraycopy(sortedRecord, 0, mRecord, 0, recordCount);
+		}
+
+	/**
+	 * Stable sort of all records by a column containing byte[] values. All keys are calculated
+	 * once in parallel and indexed by the records' original index. Depending on the key type,
+	 * a key contains the first bytes of a string, or the atom count and the first bytes of an idcode.
+	 * The tie breaker comparator is only used for records with equal keys.
+	 * Null values are sorted to the end in both directions.
+	 * @param column
+	 * @param keyType one of the SORT_KEY_ types
+	 * @param tieBreaker comparator for records with equal keys; it must not consider the selection state
+	 * @param descending
+	 * @param selectedFirst
+	 */
+	private void sortByRecordKey(final int column, final int keyType, Comparator<CompoundRecord> tieBreaker,
+								 final boolean descending, final boolean selectedFirst) {
+		final long[] key = new long[mRecord.length];
+		final ThreadLocal<IDCodeParser> parser = ThreadLocal.withInitial(() -> new IDCodeParser(false));
+		IntStream.range(0, mRecord.length).parallel().forEach(row -> {
+			CompoundRecord record = mRecord[row];
+			byte[] bytes = (byte[])record.getData(column);
+			long valueKey = (bytes == null) ? SORT_KEY_NULL
+						  : (keyType == SORT_KEY_TYPE_STRING) ? getPrefixKey(bytes, 0L, 7, descending)
+						  : (keyType == SORT_KEY_TYPE_IDCODE) ? getPrefixKey(bytes, getAtomCount(bytes, parser.get()), 3, descending)
+						  : 0L;
+			long selectionKey = (selectedFirst && !record.isSelected()) ? Long.MIN_VALUE : 0L;
+			key[record.mOriginalIndex] = selectionKey | valueKey;
+			} );
+
+		Arrays.parallelSort(mRecord, (r1, r2) -> {
+			long k1 = key[r1.mOriginalIndex];
+			long k2 = key[r2.mOriginalIndex];
+			return (k1 != k2) ? Long.compareUnsigned(k1, k2) : tieBreaker.compare(r1, r2);
+			} );
+		}
+
+	/**
+	 * Creates a key from a leading number and the first bytes of a byte array, which sorts
+	 * like the signed byte comparison of the complete arrays. Arrays with equal keys
+	 * may still differ in later bytes.
+	 * @param bytes
+	 * @param leadingValue non-negative value with higher priority than the bytes; must fit into 55-8*byteCount bits
+	 * @param byteCount number of leading bytes used; at most 7
+	 * @param descending
+	 * @return key below SORT_KEY_NULL
+	 */
+	private static long getPrefixKey(byte[] bytes, long leadingValue, int byteCount, boolean descending) {
+		long key = leadingValue;
+		for (int i=0; i<byteCount; i++)
+			key = (key << 8) | ((i < bytes.length) ? bytes[i] + 128 : 0);
+		return descending ? ((1L << 56) - 1) - key : key;
+		}
+
+	/**
+	 * @param idcode one or more idcodes separated by '\n'
+	 * @param parser
+	 * @return total atom count or Integer.MAX_VALUE for valid idcodes without atoms, which sorts them last
+	 */
+	private static int getAtomCount(byte[] idcode, IDCodeParser parser) {
+		int atomCount = 0;
+		int index = 0;
+		while (index < idcode.length) {
+			atomCount += parser.getAtomCount(idcode, index);
+			while (index<idcode.length && idcode[index] != '\n')
+				index++;
+			index++;
+			}
+
+		return (atomCount == 0) ? Integer.MAX_VALUE : atomCount;
+		}
+
 	public synchronized void sortBySimilarity(float[] similarity, int descriptorColumn) {
 		for (int row=0; row<mRecords; row++)
-			mRecord[row].mFloat[descriptorColumn] = similarity[mRecord[row].mOriginalIndex];
+			mRecord[row].setDouble(descriptorColumn, similarity[mRecord[row].mOriginalIndex]);
+		mColumnInfo[descriptorColumn].rangeIndex = null;
 		sort(descriptorColumn, true, false);
 		}
 
@@ -2852,6 +3087,7 @@ public class CompoundTableModel extends AbstractTableModel
 		else
 			mDirtyCompoundFlags &= ~mask;
 
+		mExclusionIndex.updateFlag(exclusionFlagNo, mRecord);
 		updateVisibleRecords(isAdjusting);
 		}
 
@@ -2870,12 +3106,12 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	/**
-	 * Currently the number of row flags (exclusion, list membership, selection) is limited
-	 * to 64. Once the limit is removed, this method will be useless.
-	 * @return number of available row flags
+	 * The number of row flags (exclusion, list membership, selection) is limited to 64.
+	 * Row lists without flag are stored as bitmaps, which lets row lists release their flags.
+	 * @return number of available row flags including flags that row lists may release
 	 */
 	public int getUnusedRowFlagCount() {
-		int count = 0;
+		int count = (mHitlistHandler == null) ? 0 : mHitlistHandler.getFlaggedListCount();
 		int flagNo = CompoundRecord.cFlagFirstUnusedFlagNo;
 		long bit = (1L << flagNo);
 		while (flagNo <= CompoundRecord.cFlagLastUnusedFlagNo) {
@@ -2896,20 +3132,27 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return flagNo >= 0 or -1 if no flag available
 	 */
 	public int getUnusedRowFlag(boolean useForExclusion) {
-		int flagNo = CompoundRecord.cFlagFirstUnusedFlagNo;
-		long bit = (1L << flagNo);
-		while ((bit & mAllocatedCompoundFlags) != 0) {
-			if (flagNo == CompoundRecord.cFlagLastUnusedFlagNo)
+		while (true) {
+			synchronized (mRowFlagLock) {
+				int flagNo = CompoundRecord.cFlagFirstUnusedFlagNo;
+				long bit = (1L << flagNo);
+				while (flagNo <= CompoundRecord.cFlagLastUnusedFlagNo) {
+					if ((bit & mAllocatedCompoundFlags) == 0) {
+						mAllocatedCompoundFlags |= bit;
+						if (useForExclusion)
+							mAllocatedExclusionFlags |= bit;
+
+						return flagNo;
+						}
+					bit <<= 1;
+					flagNo++;
+					}
+				}
+
+			// The list handler is called outside of the lock, because it locks itself before freeing a flag
+			if (mHitlistHandler == null || !mHitlistHandler.releaseLeastRecentlyUsedListFlag())
 				return -1;
-			bit <<= 1;
-			flagNo++;
 			}
-
-		mAllocatedCompoundFlags |= bit;
-		if (useForExclusion)
-			mAllocatedExclusionFlags |= bit;
-
-		return flagNo;
 		}
 
 	public void setRowFlagToDirty(int flagNo) {
@@ -2919,8 +3162,10 @@ public class CompoundTableModel extends AbstractTableModel
 	public void freeRowFlag(int flagNo) {
 		clearRowFlag(flagNo);
 		long mask = convertRowFlagToMask(flagNo);
-		mAllocatedCompoundFlags &= ~mask;
-		mAllocatedExclusionFlags &= ~mask;
+		synchronized (mRowFlagLock) {
+			mAllocatedCompoundFlags &= ~mask;
+			mAllocatedExclusionFlags &= ~mask;
+			}
 		}
 
 	public boolean isRowFlagSuspended(int flagNo) {
@@ -2941,6 +3186,7 @@ public class CompoundTableModel extends AbstractTableModel
 		if ((mDirtyCompoundFlags & mask) != 0) {
 			for (int row=0; row<mRecords; row++)
 				mRecord[row].mFlags &= ~mask;
+			mExclusionIndex.clear(flagNo);
 
 			mDirtyCompoundFlags &= ~mask;
 
@@ -2963,6 +3209,7 @@ public class CompoundTableModel extends AbstractTableModel
 			else
 				mRecord[row].mFlags &= ~mask;
 			}
+		mExclusionIndex.invert(exclusionFlagNo);
 
 		updateVisibleRecords(false);
 		}
@@ -2977,7 +3224,6 @@ public class CompoundTableModel extends AbstractTableModel
 		for (int row=0; row<mRecords; row++) {
 			String[] entry = separateEntries(encodeData(mRecord[row], column));
 
-			boolean isSet = ((mRecord[row].mFlags & mask) != 0);
 			boolean mustBeSet;
 			if (entry.length == 1) {
 				mustBeSet = (inverse == selection[categoryList.getIndexOfString(entry[0])]);
@@ -3005,13 +3251,8 @@ public class CompoundTableModel extends AbstractTableModel
 				mustBeSet = (visible == inverse);
 				}
 
-			if (isSet ^ mustBeSet) {
-				if (mustBeSet)
-					mRecord[row].mFlags |= mask;
-				else
-					mRecord[row].mFlags &= ~mask;
+			if (setExclusionFlag(row, exclusionFlagNo, mustBeSet))
 				changed = true;
-				}
 			}
 
 		if (changed) {
@@ -3024,9 +3265,10 @@ public class CompoundTableModel extends AbstractTableModel
 		if (!mColumnInfo[column].isComplete) {
 			long mask = convertRowFlagToMask(exclusionFlagNo);
 			mDirtyCompoundFlags |= mask;
+			float[] value = mColumnStore.getFloatColumn(column);
 			for (int row=0; row<mRecords; row++)
-				if (Float.isNaN(mRecord[row].mFloat[column]))
-					mRecord[row].mFlags |= mask;
+				if (Float.isNaN(value[mRecord[row].mOriginalIndex]))
+					setExclusionFlag(row, exclusionFlagNo, true);
 
 			updateVisibleRecords(false);
 			}
@@ -3109,54 +3351,29 @@ public class CompoundTableModel extends AbstractTableModel
 			columns[0] = filterColumn;
 			}
 
+		boolean[] isMatchingID = (type == cTextExclusionTypeRegEx) ? null
+				: findStringMatchesWithIndex(columns, queryList, type, caseSensitive);
+
 		boolean changed = false;
 		long mask = convertRowFlagToMask(exclusionFlagNo);
 		for (int row=0; row<mRecords; row++) {
 			boolean found = false;
-			for (int column:columns) {
-				String theString = encodeData(mRecord[row], column);
-				if (!caseSensitive)
-					theString = theString.toLowerCase();
-				for (String query:queryList) {
-					switch (type) {
-					case cTextExclusionTypeEquals:
-						if (theString.equals(query))
-							found = true;
-						break;
-					case cTextExclusionTypeStartsWith:
-						if (theString.startsWith(query))
-							found = true;
-						break;
-					case cTextExclusionTypeEndsWith:
-						if (theString.endsWith(query))
-							found = true;
-						break;
-					case cTextExclusionTypeContains:
-						if (theString.indexOf(query) != -1)
-							found = true;
-						break;
-					case cTextExclusionTypeRegEx:
-						if (theString.matches(query))
-							found = true;
+			if (isMatchingID != null) {
+				found = isMatchingID[mRecord[row].mOriginalIndex];
+				}
+			else {
+				for (int column:columns) {
+					if (matchesStringQuery(mRecord[row], column, queryList, type, caseSensitive)) {
+						found = true;
 						break;
 						}
-					if (found)
-						break;
 					}
-				if (found)
-					break;
 				}
 
-			boolean isSet = ((mRecord[row].mFlags & mask) != 0);
 			boolean mustBeSet = (inverse == found);
 
-			if (isSet ^ mustBeSet) {
-				if (mustBeSet)
-					mRecord[row].mFlags |= mask;
-				else
-					mRecord[row].mFlags &= ~mask;
+			if (setExclusionFlag(row, exclusionFlagNo, mustBeSet))
 				changed = true;
-				}
 			}
 
 		if (changed) {
@@ -3165,59 +3382,264 @@ public class CompoundTableModel extends AbstractTableModel
 			}
 		}
 
+	private boolean matchesStringQuery(CompoundRecord record, int column, String[] queryList, int type, boolean caseSensitive) {
+		String theString = encodeData(record, column);
+		if (!caseSensitive)
+			theString = theString.toLowerCase();
+		for (String query:queryList) {
+			switch (type) {
+			case cTextExclusionTypeEquals:
+				if (theString.equals(query))
+					return true;
+				break;
+			case cTextExclusionTypeStartsWith:
+				if (theString.startsWith(query))
+					return true;
+				break;
+			case cTextExclusionTypeEndsWith:
+				if (theString.endsWith(query))
+					return true;
+				break;
+			case cTextExclusionTypeContains:
+				if (theString.indexOf(query) != -1)
+					return true;
+				break;
+			case cTextExclusionTypeRegEx:
+				if (theString.matches(query))
+					return true;
+				break;
+				}
+			}
+		return false;
+		}
+
+	/**
+	 * Uses the columns' text indexes to find all records matching any of the queries.
+	 * Candidates from the index are verified by a full string comparison.
+	 * If any column has no index yet or any query is too short, then the building
+	 * of missing indexes is triggered and null is returned.
+	 * @param columns
+	 * @param queryList
+	 * @param type any text exclusion type except cTextExclusionTypeRegEx
+	 * @param caseSensitive
+	 * @return null or matching flag for every record ID
+	 */
+	private boolean[] findStringMatchesWithIndex(int[] columns, String[] queryList, int type, boolean caseSensitive) {
+		if (mTextIndexMode == TEXT_INDEX_MODE_NONE)
+			return null;
+
+		boolean indexesAvailable = true;
+		for (int column:columns) {
+			if (mColumnInfo[column].textIndex == null) {
+				buildTextIndexInBackground(column);
+				indexesAvailable = false;
+				}
+			}
+		if (!indexesAvailable)
+			return null;
+
+		for (String query:queryList)
+			if (!CompoundTableTextIndex.isSupportedQuery(query))
+				return null;
+
+		boolean[] isMatchingID = new boolean[mRecords];
+		for (int column:columns) {
+			for (String query:queryList) {
+				String[] singleQuery = { query };
+				for (int id:mColumnInfo[column].textIndex.getCandidates(caseSensitive ? query.toLowerCase() : query))
+					if (!isMatchingID[id] && matchesStringQuery(mRecord[getRowOfID(id)], column, singleQuery, type, caseSensitive))
+						isMatchingID[id] = true;
+				}
+			}
+		return isMatchingID;
+		}
+
+	/**
+	 * Defines, whether trigram text indexes are used to accelerate text filtering.
+	 * With TEXT_INDEX_MODE_ON_DEMAND (default) an index is built in the background, when a column
+	 * is searched for the first time. With TEXT_INDEX_MODE_ALWAYS the indexes of all alphanumerical
+	 * columns are built in the background after a table has been loaded.
+	 * @param mode one of TEXT_INDEX_MODE_...
+	 */
+	public void setTextIndexMode(int mode) {
+		mTextIndexMode = mode;
+		if (mode == TEXT_INDEX_MODE_NONE && mColumnInfo != null)
+			for (CompoundTableColumnInfo info:mColumnInfo)
+				invalidateTextIndex(info);
+		}
+
+	public int getTextIndexMode() {
+		return mTextIndexMode;
+		}
+
+	private void buildTextIndexes() {
+		if (mTextIndexMode == TEXT_INDEX_MODE_ALWAYS)
+			for (int column=0; column<mAllColumns; column++)
+				if (isColumnTypeString(column) && getColumnSpecialType(column) == null)
+					buildTextIndexInBackground(column);
+		}
+
+	/**
+	 * Starts a low priority thread to build the text index of the given column, unless the index
+	 * exists or is already being built. The index is only installed, if the column's textIndexVersion
+	 * didn't change while building. Otherwise, or if building failed, e.g. because records were
+	 * changed concurrently, the index is considered outdated and rebuilt by the next text search.
+	 * @param column
+	 */
+	private void buildTextIndexInBackground(final int column) {
+		final CompoundTableColumnInfo info = mColumnInfo[column];
+		if (info.textIndex != null || info.isTextIndexBuilding)
+			return;
+
+		info.isTextIndexBuilding = true;
+		final int version = info.textIndexVersion;
+		final CompoundRecord[] record = mRecord;
+		final int recordCount = mRecords;
+		Thread t = new Thread(() -> {
+			CompoundTableTextIndex textIndex = null;
+			try {
+				textIndex = new CompoundTableTextIndex(this, record, recordCount, column);
+				}
+			catch (RuntimeException e) {}	// the content was changed concurrently; textIndexVersion tells anyway
+			finally {
+				final CompoundTableTextIndex newIndex = textIndex;
+				SwingUtilities.invokeLater(() -> {
+					info.isTextIndexBuilding = false;
+					// without a new index, the next text search starts a new build
+					if (newIndex != null && info.textIndexVersion == version && mTextIndexMode != TEXT_INDEX_MODE_NONE)
+						info.textIndex = newIndex;
+					} );
+				}
+			}, "Text Index Builder");
+		t.setPriority(Thread.MIN_PRIORITY);
+		t.start();
+		}
+
+	private void invalidateTextIndex(CompoundTableColumnInfo info) {
+		info.textIndex = null;
+		info.textIndexVersion++;
+		}
+
 	public void setDoubleExclusion(int column, int exclusionFlagNo,
 								   float low, float high,
 								   boolean inverse, boolean isAdjusting) {
 		boolean changed = false;
 		long mask = convertRowFlagToMask(exclusionFlagNo);
-		for (int row=0; row<mRecords; row++) {
-			float value = mRecord[row].mFloat[column];
-			boolean isSet = ((mRecord[row].mFlags & mask) != 0);
-			boolean mustBeSet;
-			if (Float.isNaN(value) || Float.isInfinite(value))
-				mustBeSet = !inverse;
-			else
-				mustBeSet = (inverse ^ (value < low || value > high));
-
-			if (isSet ^ mustBeSet) {
-				if (mustBeSet)
-					mRecord[row].mFlags |= mask;
-				else
-					mRecord[row].mFlags &= ~mask;
+		CompoundTableRangeIndex rangeIndex = getRangeIndex(column);
+		RangeExclusion previous = (exclusionFlagNo == -1) ? null : mRangeExclusion[exclusionFlagNo];
+		if (previous != null
+		 && previous.rangeIndex == rangeIndex
+		 && previous.inverse == inverse
+		 && previous.modificationCount == mExclusionIndex.getModificationCount(exclusionFlagNo)) {
+			// Only rows with values between old and new range limits may change their state.
+			// Rows with NaN or infinite values are not affected as long as inverse is unchanged.
+			int oldFrom = rangeIndex.getLowerBound(previous.low);
+			int oldTo = rangeIndex.getUpperBound(previous.high);
+			int newFrom = rangeIndex.getLowerBound(low);
+			int newTo = rangeIndex.getUpperBound(high);
+			if (updateRangeExclusion(rangeIndex, exclusionFlagNo, Math.min(oldFrom, newFrom), Math.max(oldFrom, newFrom), newFrom, newTo, inverse))
 				changed = true;
+			if (updateRangeExclusion(rangeIndex, exclusionFlagNo, Math.min(oldTo, newTo), Math.max(oldTo, newTo), newFrom, newTo, inverse))
+				changed = true;
+			}
+		else {
+			float[] columnValue = mColumnStore.getFloatColumn(column);
+			for (int row=0; row<mRecords; row++) {
+				float value = columnValue[mRecord[row].mOriginalIndex];
+				boolean mustBeSet;
+				if (Float.isNaN(value) || Float.isInfinite(value))
+					mustBeSet = !inverse;
+				else
+					mustBeSet = (inverse ^ (value < low || value > high));
+
+				if (setExclusionFlag(row, exclusionFlagNo, mustBeSet))
+					changed = true;
 				}
 			}
 
+		if (exclusionFlagNo != -1)
+			mRangeExclusion[exclusionFlagNo] = new RangeExclusion(rangeIndex, low, high, inverse,
+														mExclusionIndex.getModificationCount(exclusionFlagNo));
+
 		if (changed) {
 			mDirtyCompoundFlags |= mask;
 			updateVisibleRecords(isAdjusting);
 			}
 		}
 
-	public void setHitlistExclusion(int hitlistIndex, int exclusionFlagNo, boolean inverse) {
+	/**
+	 * Updates the exclusion flag of all records within the given range of sorted range index positions.
+	 * @param rangeIndex
+	 * @param exclusionFlagNo
+	 * @param from first sorted index to update
+	 * @param to last sorted index + 1
+	 * @param insideFrom first sorted index within the current filter range
+	 * @param insideTo last sorted index + 1 within the current filter range
+	 * @param inverse
+	 * @return true if any flag was changed
+	 */
+	private boolean updateRangeExclusion(CompoundTableRangeIndex rangeIndex, int exclusionFlagNo,
+										 int from, int to, int insideFrom, int insideTo, boolean inverse) {
 		boolean changed = false;
-		long mask = convertRowFlagToMask(exclusionFlagNo);
+		for (int i=from; i<to; i++) {
+			boolean isInside = (i >= insideFrom && i < insideTo);
+			if (setExclusionFlag(getRowOfID(rangeIndex.getID(i)), exclusionFlagNo, inverse == isInside))
+				changed = true;
+			}
+		return changed;
+		}
 
-		long hitlistMask = (hitlistIndex == CompoundTableListHandler.LISTINDEX_NONE) ? -1L : mHitlistHandler.getListMask(hitlistIndex);
+	/**
+	 * Returns a sorted index of the column's float values, which is built on demand
+	 * and discarded whenever the column's values change.
+	 * @param column
+	 * @return
+	 */
+	public CompoundTableRangeIndex getRangeIndex(int column) {
+		CompoundTableRangeIndex rangeIndex = mColumnInfo[column].rangeIndex;
+		if (rangeIndex == null) {
+			rangeIndex = new CompoundTableRangeIndex(mColumnStore.getFloatColumn(column), mRecords);
+			mColumnInfo[column].rangeIndex = rangeIndex;
+			}
+		return rangeIndex;
+		}
 
-		for (int row=0; row<mRecords; row++) {
-			boolean isSet = ((mRecord[row].mFlags & mask) != 0);
-			boolean mustBeSet;
-			if (hitlistIndex == CompoundTableListHandler.LISTINDEX_NONE)
-				mustBeSet = inverse;
-			else
-				mustBeSet = (inverse == ((mRecord[row].mFlags & hitlistMask) != 0));
+	/**
+	 * @param id record ID
+	 * @return row index of the record in the current row order
+	 */
+	private int getRowOfID(int id) {
+		if (mIDToRow == null) {
+			int[] idToRow = new int[mRecords];
+			for (int row=0; row<mRecords; row++)
+				idToRow[mRecord[row].mOriginalIndex] = row;
+			mIDToRow = idToRow;
+			}
+		return mIDToRow[id];
+		}
 
-			if (isSet ^ mustBeSet) {
-				if (mustBeSet)
-					mRecord[row].mFlags |= mask;
-				else
-					mRecord[row].mFlags &= ~mask;
-				changed = true;
-				}
+	public void setHitlistExclusion(int hitlistIndex, int exclusionFlagNo, boolean inverse) {
+		if (exclusionFlagNo == -1)
+			return;
+
+		long mask = convertRowFlagToMask(exclusionFlagNo);
+
+		// Lists are used as they are, i.e. lists stored as bitmap don't take flags from other lists.
+		// The list's record ID bitmap is translated into row order and copied into the exclusion index.
+		long[] excludedWord = new long[(mRecords + 63) >>> 6];
+		if (hitlistIndex == CompoundTableListHandler.LISTINDEX_NONE) {
+			if (inverse)
+				for (int row=0; row<mRecords; row++)
+					excludedWord[row >>> 6] |= (1L << row);
+			}
+		else {
+			BitSet members = mHitlistHandler.getListBitmap(hitlistIndex).toBitSet();
+			for (int row=0; row<mRecords; row++)
+				if (members.get(mRecord[row].mOriginalIndex) == inverse)
+					excludedWord[row >>> 6] |= (1L << row);
 			}
 
-		if (changed) {
+		if (mExclusionIndex.copyFlag(exclusionFlagNo, excludedWord, mRecord)) {
 			mDirtyCompoundFlags |= mask;
 			updateVisibleRecords(false);
 			}
@@ -3309,11 +3731,13 @@ public class CompoundTableModel extends AbstractTableModel
 
 		if (SwingUtilities.isEventDispatchThread()) {
 			mDirtyCompoundFlags |= mask;
+			mExclusionIndex.updateFlag(exclusionFlagNo, mRecord);
 			updateVisibleRecords(false);
 			}
 		else  {
 			SwingUtilities.invokeLater(() -> {
 				mDirtyCompoundFlags |= mask;
+				mExclusionIndex.updateFlag(exclusionFlagNo, mRecord);
 				updateVisibleRecords(false);
 				});
 			}
@@ -3416,11 +3840,13 @@ public class CompoundTableModel extends AbstractTableModel
 
 		if (SwingUtilities.isEventDispatchThread()) {
 			mDirtyCompoundFlags |= mask;
+			mExclusionIndex.updateFlag(exclusionFlagNo, mRecord);
 			updateVisibleRecords(false);
 			}
 		else  {
 			SwingUtilities.invokeLater(() -> {
 				mDirtyCompoundFlags |= mask;
+				mExclusionIndex.updateFlag(exclusionFlagNo, mRecord);
 				updateVisibleRecords(false);
 				});
 			}
@@ -3436,7 +3862,6 @@ public class CompoundTableModel extends AbstractTableModel
 		 */
 	public void setSubStructureExclusion(final AtomicInteger rowAndFragmentIndex, final int exclusionFlagNo, final int idcodeColumn, final StereoMolecule[] fragment, String reactionPart, final boolean inverse) {
 		int threadCount = Runtime.getRuntime().availableProcessors();
-		rowAndFragmentIndex.set(mRecord.length*fragment.length);
 
 		final int ffpColumn = getChildColumn(idcodeColumn, DESCRIPTOR_FFP512.shortName, reactionPart);
 		final long mask = convertRowFlagToMask(exclusionFlagNo);
@@ -3450,6 +3875,14 @@ public class CompoundTableModel extends AbstractTableModel
 		for (int row=0; row<mRecord.length; row++)
 			mRecord[row].mFlags |= mask;
 
+		// If we have a fingerprint index, then only those rows need atom-by-atom matching,
+		// which pass the fingerprint screening of the respective fragment.
+		final int[][] candidateRow = getSubStructureCandidateRows(ffpColumn, fragment);
+		final int[] candidateOffset = new int[fragment.length+1];
+		for (int i=0; i<fragment.length; i++)
+			candidateOffset[i+1] = candidateOffset[i] + ((candidateRow[i] == null) ? mRecord.length : candidateRow[i].length);
+		rowAndFragmentIndex.set(candidateOffset[fragment.length]);
+
 		Thread[] worker = new Thread[threadCount];
 		for (int i=0; i<threadCount; i++) {
 			worker[i] = new Thread("SSS-Matcher "+(i+1)) {
@@ -3459,9 +3892,12 @@ public class CompoundTableModel extends AbstractTableModel
 					int combinedIndex = rowAndFragmentIndex.decrementAndGet();
 					int fragmentIndex = -1;
 					while (combinedIndex >= 0) {
-						int recordIndex = combinedIndex % mRecord.length;
+						int newFragmentIndex = fragment.length - 1;
+						while (candidateOffset[newFragmentIndex] > combinedIndex)
+							newFragmentIndex--;
+						int candidateIndex = combinedIndex - candidateOffset[newFragmentIndex];
+						int recordIndex = (candidateRow[newFragmentIndex] == null) ? candidateIndex : candidateRow[newFragmentIndex][candidateIndex];
 						if ((mRecord[recordIndex].mFlags & mask) != 0) {
-							int newFragmentIndex = combinedIndex / mRecord.length;
 							if (fragmentIndex != newFragmentIndex) {
 								fragmentIndex = newFragmentIndex;
 								searcherWithIndex.setFragment(fragment[fragmentIndex], (long[])null);
@@ -3505,16 +3941,82 @@ public class CompoundTableModel extends AbstractTableModel
 
 		if (SwingUtilities.isEventDispatchThread()) {
 			mDirtyCompoundFlags |= mask;
+			mExclusionIndex.updateFlag(exclusionFlagNo, mRecord);
 			updateVisibleRecords(false);
 			}
 		else  {
 			SwingUtilities.invokeLater(() -> {
 				mDirtyCompoundFlags |= mask;
+				mExclusionIndex.updateFlag(exclusionFlagNo, mRecord);
 				updateVisibleRecords(false);
 				});
 			}
 		}
 
+	/**
+	 * Screens all rows with the fingerprint index of the given FragFp column, if the
+	 * descriptor column is complete.
+	 * @param ffpColumn FragFp column or -1
+	 * @param fragment
+	 * @return for every fragment the candidate rows in ascending order or null, if all rows are candidates
+	 */
+	private int[][] getSubStructureCandidateRows(int ffpColumn, StereoMolecule[] fragment) {
+		int[][] candidateRow = new int[fragment.length][];
+		CompoundTableFingerprintIndex index = (ffpColumn == -1) ? null : getFingerprintIndex(ffpColumn);
+		if (index == null || index.getRecordCount() != mRecord.length)
+			return candidateRow;
+
+		SSSearcherWithIndex searcher = new SSSearcherWithIndex();
+		for (int i=0; i<fragment.length; i++) {
+			long[] candidate = index.getCandidates(searcher.createLongIndex(fragment[i]));
+			int count = 0;
+			for (long word:candidate)
+				count += Long.bitCount(word);
+			candidateRow[i] = new int[count];
+			count = 0;
+			for (int row=0; row<mRecord.length; row++) {
+				int id = mRecord[row].mOriginalIndex;
+				if ((candidate[id >>> 6] & (1L << id)) != 0)
+					candidateRow[i][count++] = row;
+				}
+			}
+
+		return candidateRow;
+		}
+
+	/**
+	 * Returns the bit-sliced index of the given binary fingerprint column, which is built
+	 * when the descriptor calculation has completed or on demand. The index is discarded
+	 * whenever descriptors of the column change.
+	 * @param fingerprintColumn FragFp column
+	 * @return index or null, if the descriptor calculation is not complete
+	 */
+	public CompoundTableFingerprintIndex getFingerprintIndex(int fingerprintColumn) {
+		CompoundTableColumnInfo info = mColumnInfo[fingerprintColumn];
+		return getFingerprintIndex(info, fingerprintColumn, info.chemistryIndexVersion);
+		}
+
+	/**
+	 * Returns or builds the fingerprint index of the given column info. A new index is only
+	 * installed, if the info's chemistry index version still matches, i.e. if neither the descriptors
+	 * nor the column's position changed since the version was taken.
+	 * @param info
+	 * @param fingerprintColumn column index of info, when version was taken
+	 * @param version chemistryIndexVersion of info before building
+	 * @return index or null
+	 */
+	private CompoundTableFingerprintIndex getFingerprintIndex(CompoundTableColumnInfo info, int fingerprintColumn, int version) {
+		CompoundTableFingerprintIndex index = info.fingerprintIndex;
+		if (index == null && info.chemistryIndexVersion == version && isDescriptorAvailable(fingerprintColumn)) {
+			index = new CompoundTableFingerprintIndex(this, mRecord, mRecords, fingerprintColumn);
+			synchronized (info) {
+				if (info.fingerprintIndex == null && info.chemistryIndexVersion == version && !info.isDescriptorIncomplete)
+					info.fingerprintIndex = index;
+				}
+			}
+		return index;
+		}
+
 	private StereoMolecule getReactionReactants(byte[] rxnCode, byte[] coords, byte[] mapping) {
 		return mergeMolecules(ReactionEncoder.decodeMolecules(rxnCode, coords, mapping, true, false));
 		}
@@ -3560,10 +4062,7 @@ public class CompoundTableModel extends AbstractTableModel
 		for (int row=0; row<mRecords; row++) {
 			Object descriptor = mRecord[row].getData(descriptorColumn);
 			if (descriptor == null) {
-				if (inverse)
-					mRecord[row].mFlags &= ~mask;
-				else
-					mRecord[row].mFlags |= mask;
+				setExclusionFlag(row, exclusionFlagNo, !inverse);
 				}
 			else {
 				boolean found = false;
@@ -3574,10 +4073,7 @@ public class CompoundTableModel extends AbstractTableModel
 						break;
 						}
 					}
-				if (inverse ^ found)
-					mRecord[row].mFlags &= ~mask;
-				else
-					mRecord[row].mFlags |= mask;
+				setExclusionFlag(row, exclusionFlagNo, !(inverse ^ found));
 				}
 			}
 
@@ -3594,10 +4090,7 @@ public class CompoundTableModel extends AbstractTableModel
 		for (int row=0; row<mRecords; row++) {
 			Object descriptor = mRecord[row].getData(descriptorColumn);
 			if (descriptor == null) {
-				if (inverse)
-					mRecord[row].mFlags &= ~mask;
-				else
-					mRecord[row].mFlags |= mask;
+				setExclusionFlag(row, exclusionFlagNo, !inverse);
 			}
 			else {
 				boolean found = false;
@@ -3607,10 +4100,7 @@ public class CompoundTableModel extends AbstractTableModel
 						break;
 					}
 				}
-				if (inverse ^ found)
-					mRecord[row].mFlags &= ~mask;
-				else
-					mRecord[row].mFlags |= mask;
+				setExclusionFlag(row, exclusionFlagNo, !(inverse ^ found));
 			}
 		}
 
@@ -3722,11 +4212,26 @@ public class CompoundTableModel extends AbstractTableModel
 				mRecord[row].mFlags &= ~CompoundRecord.cFlagMaskSelected;
 		}
 
+	/**
+	 * Calculates the similarities of all rows to the given chemistry object or descriptor.
+	 * For binary fingerprints the column's similarity index is used. Other descriptors are
+	 * compared to every row.
+	 * @param chemObject null or StereoMolecule
+	 * @param refDescriptor null if chemObject != null and vice versa
+	 * @param descriptorColumn
+	 * @return similarities indexed by record ID
+	 */
 	public float[] createStructureSimilarityList(Object chemObject, Object refDescriptor, int descriptorColumn) {
 		if (refDescriptor == null)
 			refDescriptor = mColumnInfo[descriptorColumn].getCachedDescriptor(chemObject);
-		DescriptorHandler<Object,Object> descriptorHandler = mColumnInfo[descriptorColumn].descriptorHandler;
 		float[] similarity = new float[mRecord.length];
+		CompoundTableSimilarityIndex index = (refDescriptor instanceof long[]) ? getSimilarityIndex(descriptorColumn) : null;
+		if (index != null) {
+			index.getSimilarities((long[])refDescriptor, similarity, 0, index.getSize());
+			return similarity;
+			}
+
+		DescriptorHandler<Object,Object> descriptorHandler = mColumnInfo[descriptorColumn].descriptorHandler;
 		for (int row=0; row<mRecord.length; row++) {
 			Object descriptor = mRecord[row].getData(descriptorColumn);
 			if (descriptor != null)
@@ -3735,6 +4240,102 @@ public class CompoundTableModel extends AbstractTableModel
 		return similarity;
 		}
 
+	/**
+	 * Starts a low priority thread to build the screening index of a FragFp column and the
+	 * similarity index of a binary fingerprint column, such that the first substructure or
+	 * similarity search doesn't need to wait for it. If descriptors change or columns are removed
+	 * while building, the new index is not installed.
+	 * @param descriptorColumn
+	 */
+	private void buildChemistryIndexesInBackground(final int descriptorColumn) {
+		final CompoundTableColumnInfo info = mColumnInfo[descriptorColumn];
+		final int version = info.chemistryIndexVersion;
+		DescriptorHandler<Object,Object> dh = info.descriptorHandler;
+		final boolean isFragFp = (dh != null && DESCRIPTOR_FFP512.shortName.equals(dh.getInfo().shortName));
+		Thread t = new Thread(() -> {
+			try {
+				if (isFragFp)
+					getFingerprintIndex(info, descriptorColumn, version);	// screening index for substructure filters
+				getSimilarityIndex(info, descriptorColumn, version);
+				}
+			catch (RuntimeException e) {
+				if (info.chemistryIndexVersion == version)	// otherwise rows or columns were changed concurrently
+					e.printStackTrace();
+				}
+			}, "Fingerprint Index Builder");
+		t.setPriority(Thread.MIN_PRIORITY);
+		t.start();
+		}
+
+	/**
+	 * Returns the similarity index of a binary fingerprint column, which is built when
+	 * the descriptor calculation has completed or on demand. The index is discarded
+	 * whenever descriptors of the column change.
+	 * @param descriptorColumn
+	 * @return index or null, if the descriptor is not a binary fingerprint or its calculation is not complete
+	 */
+	public CompoundTableSimilarityIndex getSimilarityIndex(int descriptorColumn) {
+		CompoundTableColumnInfo info = mColumnInfo[descriptorColumn];
+		return getSimilarityIndex(info, descriptorColumn, info.chemistryIndexVersion);
+		}
+
+	/**
+	 * Returns or builds the similarity index of the given column info. A new index is only
+	 * installed, if the info's chemistry index version still matches.
+	 * @param info
+	 * @param descriptorColumn column index of info, when version was taken
+	 * @param version chemistryIndexVersion of info before building
+	 * @return index or null
+	 */
+	private CompoundTableSimilarityIndex getSimilarityIndex(CompoundTableColumnInfo info, int descriptorColumn, int version) {
+		CompoundTableSimilarityIndex index = info.similarityIndex;
+		if (index == null
+		 && info.chemistryIndexVersion == version
+		 && isDescriptorAvailable(descriptorColumn)
+		 && isBinaryFingerprint(descriptorColumn)) {
+			index = new CompoundTableSimilarityIndex(this, mRecord, mRecords, descriptorColumn);
+			synchronized (info) {
+				if (info.similarityIndex == null && info.chemistryIndexVersion == version && !info.isDescriptorIncomplete)
+					info.similarityIndex = index;
+				}
+			}
+		return index;
+		}
+
+	/**
+	 * Discards the fingerprint and similarity indexes of a column and prevents running
+	 * index builds from installing their results.
+	 * @param info
+	 */
+	private void invalidateChemistryIndexes(CompoundTableColumnInfo info) {
+		synchronized (info) {
+			info.fingerprintIndex = null;
+			info.similarityIndex = null;
+			info.chemistryIndexVersion++;
+			}
+		}
+
+	/**
+	 * @param descriptorColumn
+	 * @return whether the column contains long[] fingerprints, whose similarity is derived from the Tanimoto coefficient
+	 */
+	protected boolean isBinaryFingerprint(int descriptorColumn) {
+		DescriptorHandler<Object,Object> dh = mColumnInfo[descriptorColumn].descriptorHandler;
+		if (dh == null || dh.getInfo().type == DESCRIPTOR_TYPE_REACTION)
+			return false;
+		String shortName = dh.getInfo().shortName;
+		if (!DESCRIPTOR_FFP512.shortName.equals(shortName)
+		 && !DESCRIPTOR_PFP512.shortName.equals(shortName)
+		 && !DESCRIPTOR_HashedCFp.shortName.equals(shortName))
+			return false;
+		for (int row=0; row<mRecords; row++) {
+			Object descriptor = mRecord[row].getData(descriptorColumn);
+			if (descriptor != null)
+				return descriptor instanceof long[];
+			}
+		return true;
+		}
+
 	public float[][] createReactionSimilarityList(Object chemObject, Object refDescriptor, int descriptorColumn) {
 		if (refDescriptor == null)
 			refDescriptor = mColumnInfo[descriptorColumn].getCachedDescriptor(chemObject);
@@ -3819,11 +4420,32 @@ public class CompoundTableModel extends AbstractTableModel
 				if (isReaction)
 					mSimilarityList2SMP = new float[mRecord.length];
 
+				// binary fingerprints are compared in chunks of their similarity index
+				final CompoundTableSimilarityIndex index = (!isReaction && refDescriptor instanceof long[]) ?
+						getSimilarityIndex(descriptorColumn) : null;
+				final AtomicInteger indexPosition = new AtomicInteger(0);
+				final AtomicInteger indexDoneCount = new AtomicInteger(0);
+
 				Thread[] worker = new Thread[threadCount];
 				for (int i=0; i<threadCount; i++) {
 					worker[i] = new Thread(getColumnSpecialType(descriptorColumn)+" calculator "+(i+1)) {
 						public void run() {
-							int recordIndex = mSimRecordIndex.decrementAndGet();
+							if (index != null) {
+								int fromIndex = indexPosition.getAndAdd(SIMILARITY_INDEX_CHUNK_SIZE);
+								while (fromIndex < index.getSize() && !pc.threadMustDie()) {
+									int toIndex = Math.min(index.getSize(), fromIndex+SIMILARITY_INDEX_CHUNK_SIZE);
+									try {
+										index.getSimilarities((long[])refDescriptor, mSimilarityListSMP, fromIndex, toIndex);
+										}
+									catch (Exception e) {
+										mSMPSimilarityErrors += toIndex - fromIndex;
+										}
+									pc.updateProgress(indexDoneCount.addAndGet(toIndex - fromIndex));
+									fromIndex = indexPosition.getAndAdd(SIMILARITY_INDEX_CHUNK_SIZE);
+									}
+								}
+
+							int recordIndex = (index != null) ? -1 : mSimRecordIndex.decrementAndGet();
 							while (recordIndex >= 0 && !pc.threadMustDie()) {
 								if (pc.threadMustDie())
 									break;
@@ -4043,10 +4665,36 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	public void fireCompoundTableChanged(CompoundTableEvent e) {
+		updateStructureCache(e);
 		for (int i=mCompoundTableListener.size()-1; i>=0; i--)
 			mCompoundTableListener.get(i).compoundTableChanged(e);
 		}
 
+	/**
+	 * Removes molecules from the structure cache, which may be outdated after the change.
+	 * Column wide descriptor updates don't affect cached molecules.
+	 * @param e
+	 */
+	private void updateStructureCache(CompoundTableEvent e) {
+		switch (e.getType()) {
+		case CompoundTableEvent.cChangeColumnData:
+			if (e.getSpecifier() != -1)
+				mStructureCache.remove(e.getSpecifier());
+			else if (mColumnInfo == null || e.getColumn() < 0 || e.getColumn() >= mColumnInfo.length
+			 || !isDescriptorColumn(e.getColumn()))
+				mStructureCache.clear();
+			break;
+		case CompoundTableEvent.cNewTable:
+		case CompoundTableEvent.cAddRows:
+		case CompoundTableEvent.cDeleteRows:
+		case CompoundTableEvent.cAddColumns:
+		case CompoundTableEvent.cRemoveColumns:
+		case CompoundTableEvent.cChangeColumnReference:
+			mStructureCache.clear();
+			break;
+			}
+		}
+
 	/**
 	 * Analyzes all column data, determines column types, column completeness,
 	 * updates outdated idcodes and starts the descriptor updating thread.
@@ -4271,6 +4919,10 @@ public class CompoundTableModel extends AbstractTableModel
 			mColumnInfo[column].isCompleteChild = true;
 			}
 
+		// complete lazy columns don't need to be loaded
+		if (firstRow == 0 && mColumnStore.getLazyEmptyCellCount(column) == 0)
+			return;
+
 		int parentColumn = getParentColumn(column);
 		if (mColumnInfo[column].isComplete
 		 || (parentColumn != -1 && mColumnInfo[column].isCompleteChild)) {
@@ -4298,6 +4950,22 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @param isAfterDeletion
 	 */
 	private void analyzeColumn(int column, int firstRow, boolean isAfterDeletion) {
+		analyzeColumn(column, firstRow, isAfterDeletion, null);
+		}
+
+	/**
+	 * @param column the column to be analyzed
+	 * @param firstRow != 0 if rows were appended
+	 * @param isAfterDeletion
+	 * @param changedRecord null or the only record, whose content was changed
+	 */
+	private void analyzeColumn(int column, int firstRow, boolean isAfterDeletion, CompoundRecord changedRecord) {
+		int previousType = mColumnInfo[column].type;
+		CategoryList<?> previousCategoryList = mColumnInfo[column].categoryList;
+
+		mColumnInfo[column].rangeIndex = null;
+		invalidateChemistryIndexes(mColumnInfo[column]);
+		invalidateTextIndex(mColumnInfo[column]);
 		analyzeCompleteness(column, firstRow);
 
 		if (!isAfterDeletion
@@ -4363,7 +5031,22 @@ public class CompoundTableModel extends AbstractTableModel
 		int categoryCountBeforeChange = (mColumnInfo[column].categoryList == null) ?
 				0 : mColumnInfo[column].categoryList.getSize();
 
-		mColumnInfo[column].categoryList = setupCategoryList(column);
+		// Plain text or structure categories are updated from the records' current category indexes,
+		// if rows were appended or removed or if one cell was changed. Only new or changed cells are parsed.
+		int[] categoryIndexMap = null;
+		int newRowStart = isAfterDeletion || changedRecord != null ? mRecord.length : firstRow;
+		if ((firstRow != 0 || isAfterDeletion || changedRecord != null)
+		 && previousType == (cColumnTypeString | cColumnTypeCategory)
+		 && mColumnInfo[column].type == cColumnTypeString
+		 && !mColumnInfo[column].belongsToMultipleCategories
+		 && (previousCategoryList instanceof SortedCategoryList || previousCategoryList instanceof DefinedCategoryList)) {
+			categoryIndexMap = new int[previousCategoryList.getSize()];
+			mColumnInfo[column].categoryList = updateCategoryList(column, previousCategoryList, newRowStart, changedRecord, categoryIndexMap);
+			}
+		else {
+			mColumnInfo[column].categoryList = setupCategoryList(column);
+			}
+		CategoryList<?> updatedCategoryList = (categoryIndexMap == null) ? null : mColumnInfo[column].categoryList;
 
 		mColumnInfo[column].isEqual = (mColumnInfo[column].categoryList != null
 									&& mColumnInfo[column].categoryList.getSize() == 1);
@@ -4498,58 +5181,74 @@ public class CompoundTableModel extends AbstractTableModel
 				}
 
 			if (mColumnInfo[column].categoryList != null) {
-				boolean countChanged = (mColumnInfo[column].categoryList.getSize() != categoryCountBeforeChange);
-				if (countChanged || !isAfterDeletion)	// if we deleted and count is unchanged we don't need to assign
-					assignRecordsToCategories(column, countChanged ? 0 : firstRow);	// if append and count is unchanged we just assign new rows
+				if (mColumnInfo[column].categoryList == updatedCategoryList) {
+					reassignRecordsToCategories(column, categoryIndexMap, newRowStart, changedRecord);
+					}
+				else {
+					boolean countChanged = (mColumnInfo[column].categoryList.getSize() != categoryCountBeforeChange);
+					if (countChanged || !isAfterDeletion)	// if we deleted and count is unchanged we don't need to assign
+						assignRecordsToCategories(column, countChanged ? 0 : firstRow);	// if append and count is unchanged we just assign new rows
+					}
 				}
 			}
 		}
 
 	private CategoryList<?> setupCategoryList(int column) {
-		CategoryList<?> categoryList = null;
 		mColumnInfo[column].belongsToMultipleCategories = false;
+		CategoryList<?> categoryList = createCategoryList(column);
+		if (categoryList == null)
+			return null;
+
 		boolean isIDCode = isColumnTypeStructure(column);
+		int coordsColumn = isIDCode ? getChildColumn(column, cColumnType2DCoordinates) : -1;
 
-		if ((mColumnInfo[column].type & cColumnTypeDate) != 0) {
-			categoryList = new SortedCategoryList<Float>(new DateCategoryNormalizer(mColumnInfo[column].dateAnalysis));
-			}
-		else if ((mColumnInfo[column].type & cColumnTypeDouble) != 0) {
-			if (mColumnInfo[column].hasModifiers)
+		// populate category list
+		for (int row=0; row<mRecord.length; row++) {
+			if (!addRecordCategories(categoryList, column, isIDCode, coordsColumn, mRecord[row])) {
+				mColumnInfo[column].belongsToMultipleCategories = false;
 				return null;
-
-			categoryList = new SortedCategoryList<Float>(new DoubleCategoryNormalizer());
-			}
-		else {
-			if (isIDCode) {
-				if (mColumnInfo[column].mCategoryCustomOrder != null) {
-					categoryList = new DefinedCategoryList<CategoryMolecule>(mColumnInfo[column].mCategoryCustomOrder, new MoleculeCategoryNormalizer());
-				} else {
-					categoryList = new SortedCategoryList<CategoryMolecule>(new MoleculeCategoryNormalizer());
-				}
-			}
-			else {
-				if (mColumnInfo[column].mCategoryCustomOrder != null) {
-					categoryList = new DefinedCategoryList<String>(mColumnInfo[column].mCategoryCustomOrder, new PlainCategoryNormalizer());
-				} else {
-					categoryList = new SortedCategoryList<String>(new PlainCategoryNormalizer());
 				}
 			}
+
+		return categoryList;
 		}
 
-		int coordsColumn = isIDCode ? getChildColumn(column, cColumnType2DCoordinates) : -1;
+	/**
+	 * @param column
+	 * @return empty category list matching the column type or null, if the column cannot have categories
+	 */
+	private CategoryList<?> createCategoryList(int column) {
+		if ((mColumnInfo[column].type & cColumnTypeDate) != 0)
+			return new SortedCategoryList<Float>(new DateCategoryNormalizer(mColumnInfo[column].dateAnalysis));
 
-		// populate category list
-		for (int row=0; row<mRecord.length; row++) {
-			try {
+		if ((mColumnInfo[column].type & cColumnTypeDouble) != 0)
+			return mColumnInfo[column].hasModifiers ? null : new SortedCategoryList<Float>(new DoubleCategoryNormalizer());
+
+		if (isColumnTypeStructure(column))
+			return (mColumnInfo[column].mCategoryCustomOrder != null) ?
+					new DefinedCategoryList<CategoryMolecule>(mColumnInfo[column].mCategoryCustomOrder, new MoleculeCategoryNormalizer())
+				  : new SortedCategoryList<CategoryMolecule>(new MoleculeCategoryNormalizer());
+
+		return (mColumnInfo[column].mCategoryCustomOrder != null) ?
+				new DefinedCategoryList<String>(mColumnInfo[column].mCategoryCustomOrder, new PlainCategoryNormalizer())
+			  : new SortedCategoryList<String>(new PlainCategoryNormalizer());
+		}
+
+	/**
+	 * Adds the category entries of one record to the category list and updates
+	 * the column's belongsToMultipleCategories flag.
+	 * @return false if the category list has reached the maximum category count
+	 */
+	private boolean addRecordCategories(CategoryList<?> categoryList, int column, boolean isIDCode, int coordsColumn, CompoundRecord record) {
+		try {
 			if (isIDCode) {
-				byte[] bytes = (byte[])mRecord[row].getData(column);
+				byte[] bytes = (byte[])record.getData(column);
 				CategoryList<CategoryMolecule> molList = (CategoryList<CategoryMolecule>)categoryList;
 				molList.add(new CategoryMolecule(bytes == null ? null : new String(bytes),
-						coordsColumn == -1 ? null : (byte[])mRecord[row].getData(coordsColumn)));
-
+						coordsColumn == -1 ? null : (byte[])record.getData(coordsColumn)));
 				}
 			else {
-				String[] entry = separateEntries(encodeData(mRecord[row], column));
+				String[] entry = separateEntries(encodeData(record, column));
 				for (int i = 0; i < entry.length; i++) {
 					categoryList.addString(entry[i]);
 					if (i != 0 && !entry[i].equals(entry[0]))
@@ -4558,34 +5257,117 @@ public class CompoundTableModel extends AbstractTableModel
 				}
 
 			if ((mColumnInfo[column].type & cColumnTypeDouble) != 0) {
-				if (categoryList.getSize() >= cMaxDateOrDoubleCategoryCount) {
-					categoryList = null;
-					mColumnInfo[column].belongsToMultipleCategories = false;
-					break;
-					}
+				if (categoryList.getSize() >= cMaxDateOrDoubleCategoryCount)
+					return false;
 				}
 			else {  // this applies also for molecules
-				if (categoryList.getSize() >= cMaxTextCategoryCount) {
-					categoryList = null;
-					mColumnInfo[column].belongsToMultipleCategories = false;
-					break;
-					}
+				if (categoryList.getSize() >= cMaxTextCategoryCount)
+					return false;
 				}
 			}
-			catch (Exception ee) {
-				ee.printStackTrace();
+		catch (Exception ee) {
+			ee.printStackTrace();
+			}
+
+		return true;
+		}
+
+	/**
+	 * Creates the category list of a plain text or structure category column after appending rows,
+	 * removing rows or changing one cell without parsing unchanged cells. Existing categories are
+	 * taken from the previous list, if they are still referenced by the category index of at least
+	 * one unchanged record. Categories of new records and of the changed record are added.
+	 * This requires that no record belongs to multiple categories of the previous list.
+	 * @param column
+	 * @param previousList the column's category list before the change
+	 * @param newRowStart first row that is new; mRecord.length, if rows were removed or one cell was changed
+	 * @param changedRecord null or the only changed record
+	 * @param indexMap receives for every previous category index the new index or -1
+	 * @return the new category list or null, if the maximum category count was exceeded
+	 */
+	private CategoryList<?> updateCategoryList(int column, CategoryList<?> previousList, int newRowStart,
+											   CompoundRecord changedRecord, int[] indexMap) {
+		int previousCount = previousList.getSize();
+		int[] recordCount = new int[previousCount];
+		for (int row=0; row<newRowStart; row++) {
+			if (mRecord[row] != changedRecord) {
+				int index = (int)mRecord[row].getDouble(column);
+				if (index >= 0 && index < previousCount)
+					recordCount[index]++;
 				}
 			}
 
+		CategoryList<?> categoryList = createCategoryList(column);
+		for (int i=0; i<previousCount; i++)
+			if (recordCount[i] != 0)
+				copyCategory(previousList, i, categoryList);
+
+		boolean isIDCode = isColumnTypeStructure(column);
+		int coordsColumn = isIDCode ? getChildColumn(column, cColumnType2DCoordinates) : -1;
+		if (changedRecord != null
+		 && !addRecordCategories(categoryList, column, isIDCode, coordsColumn, changedRecord)) {
+			mColumnInfo[column].belongsToMultipleCategories = false;
+			return null;
+			}
+		for (int row=newRowStart; row<mRecord.length; row++) {
+			if (!addRecordCategories(categoryList, column, isIDCode, coordsColumn, mRecord[row])) {
+				mColumnInfo[column].belongsToMultipleCategories = false;
+				return null;
+				}
+			}
+
+		for (int i=0; i<previousCount; i++)
+			indexMap[i] = (recordCount[i] == 0) ? -1 : getCategoryIndex(previousList, i, categoryList);
+
 		return categoryList;
 		}
 
+	@SuppressWarnings("unchecked")
+	private static <T extends Comparable<? super T>> void copyCategory(CategoryList<T> source, int index, CategoryList<?> target) {
+		((CategoryList<T>)target).add(source.get(index));
+		}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends Comparable<? super T>> int getCategoryIndex(CategoryList<T> source, int index, CategoryList<?> target) {
+		return ((CategoryList<T>)target).getIndex(source.get(index));
+		}
+
+	/**
+	 * Counterpart of assignRecordsToCategories() for category lists created by updateCategoryList():
+	 * Unchanged records get their category index translated, only new and changed records are parsed.
+	 * @param column
+	 * @param indexMap previous category index to new category index
+	 * @param newRowStart first row that is new
+	 * @param changedRecord null or the only changed record
+	 */
+	private void reassignRecordsToCategories(int column, int[] indexMap, int newRowStart, CompoundRecord changedRecord) {
+		mColumnInfo[column].rangeIndex = null;
+		int categoryCount = mColumnInfo[column].categoryList.getSize();
+		mColumnInfo[column].minValue = 0.0f;
+		mColumnInfo[column].maxValue = mColumnInfo[column].belongsToMultipleCategories ?
+										categoryCount+1 : categoryCount;
+
+		for (int row=0; row<newRowStart; row++) {
+			if (mRecord[row] != changedRecord) {
+				int index = (int)mRecord[row].getDouble(column);
+				mRecord[row].setDouble(column, 0.5f + ((index >= 0 && index < indexMap.length) ?
+						indexMap[index] : calcCategoryIndex(column, mRecord[row])));
+				}
+			}
+
+		if (changedRecord != null)
+			changedRecord.setDouble(column, 0.5f + calcCategoryIndex(column, changedRecord));
+		for (int row=newRowStart; row<mRecord.length; row++)
+			mRecord[row].setDouble(column, 0.5f + calcCategoryIndex(column, mRecord[row]));
+		}
+
 	/**
 	 * for range categories and non-date/float non-range categories
 	 * (min, max and values remain untouched in float- or date-categories)
 	 * @param column
 	 */
 	private void assignRecordsToCategories(int column, int firstRow) {
+		mColumnInfo[column].rangeIndex = null;
 		if ((mColumnInfo[column].type & (cColumnTypeCategory | cColumnTypeDouble | cColumnTypeDate)) == cColumnTypeCategory) {
 			if (firstRow == 0) {
 				int categoryCount = mColumnInfo[column].categoryList.getSize();
@@ -4595,7 +5377,7 @@ public class CompoundTableModel extends AbstractTableModel
 				}
 
 			for (int row=firstRow; row<mRecord.length; row++)
-				mRecord[row].mFloat[column] = 0.5f + calcCategoryIndex(column, mRecord[row]);
+				mRecord[row].setDouble(column, 0.5f + calcCategoryIndex(column, mRecord[row]));
 			}
 		}
 
@@ -4636,7 +5418,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 */
 	public int getCategoryIndex(int column, CompoundRecord record) {
 		if ((mColumnInfo[column].type & (cColumnTypeDouble | cColumnTypeDate)) == 0)
-			return (int)record.mFloat[column];
+			return (int)record.getDouble(column);
 
 		return calcCategoryIndex(column, record);
 		}
@@ -4662,6 +5444,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return true if at least one cell is numerical and the remaining cells are empty
 	 */
 	private boolean setupDoubleValues(int column, int firstRow) {
+		mColumnInfo[column].rangeIndex = null;
 		if (getExplicitDataType(column) != cDataTypeAutomatic
 		 && getExplicitDataType(column) != cDataTypeFloat
 		 && getExplicitDataType(column) != cDataTypeInteger)
@@ -4676,6 +5459,11 @@ public class CompoundTableModel extends AbstractTableModel
 			mColumnInfo[column].isInteger = true;
 			}
 
+		float[] preparsedValue = mColumnInfo[column].preparsedValue;
+		mColumnInfo[column].preparsedValue = null;
+		if (firstRow == 0 && preparsedValue != null && preparsedValue.length >= mRecord.length)
+			return setupPreparsedDoubleValues(column, preparsedValue);
+
 		boolean found = false;
 		for (int row=mRecord.length-1; row>=firstRow || (!found && row>=0); row--) {
 			try {
@@ -4688,14 +5476,14 @@ public class CompoundTableModel extends AbstractTableModel
 
 					found = true;
 					}
-				mRecord[row].mFloat[column] = value;
+				mRecord[row].setDouble(column, value);
 				}
 			catch (NumberFormatException e) {
 				if (getExplicitDataType(column) != cDataTypeInteger
 				 && getExplicitDataType(column) != cDataTypeFloat) {
 					return false;
 					}
-				mRecord[row].mFloat[column] = Float.NaN;
+				mRecord[row].setDouble(column, Float.NaN);
 				}
 			}
 
@@ -4705,6 +5493,26 @@ public class CompoundTableModel extends AbstractTableModel
 		return found;
 		}
 
+	private boolean setupPreparsedDoubleValues(int column, float[] preparsedValue) {
+		mColumnInfo[column].hasModifiers = mColumnInfo[column].preparsedHasModifiers;
+
+		boolean found = false;
+		for (CompoundRecord record:mRecord) {
+			float value = preparsedValue[record.getID()];
+			if (!Float.isNaN(value)) {
+				if (value - (int)value != 0)
+					mColumnInfo[column].isInteger = false;
+				found = true;
+				}
+			record.setDouble(column, value);
+			}
+
+		if (found)
+			findMinAndMaxFromDateOrDouble(column, 0, false);
+
+		return found;
+		}
+
 	/**
 	 * Tries to parse a text string to return a float value. The text may contain
 	 * NaN values and/or modifiers. It must not contain multiple values.
@@ -4973,6 +5781,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return true if at least one cell is a date and the remaining cells are empty
 	 */
 	private boolean setupDateValues(int column, int firstRow) {
+		mColumnInfo[column].rangeIndex = null;
 		boolean enforceDate = (getExplicitDataType(column) == cDataTypeDate);
 
 		if (!enforceDate && getExplicitDataType(column) != cDataTypeAutomatic)
@@ -5028,7 +5837,7 @@ public class CompoundTableModel extends AbstractTableModel
 				}
 
 			if (count == 0) {
-				mRecord[row].mFloat[column] = Float.NaN;
+				mRecord[row].setDouble(column, Float.NaN);
 				}
 			else {
 				found = true;
@@ -5036,16 +5845,16 @@ public class CompoundTableModel extends AbstractTableModel
 				case cSummaryModeMinimum:
 				case cSummaryModeMaximum:
 				case cSummaryModeSum:
-					mRecord[row].mFloat[column] = (float)(date/86400000);
+					mRecord[row].setDouble(column, (float)(date/86400000));
 					break;
 				case cSummaryModeMedian:
 					Arrays.sort(medianMillis, 0, count);
 					long millis = ((count & 1) != 0) ? medianMillis[count/2]
 							: (medianMillis[count/2-1] + medianMillis[count/2])/2;
-					mRecord[row].mFloat[column] = (float)(millis/86400000);
+					mRecord[row].setDouble(column, (float)(millis/86400000));
 					break;
 				default:    // mean or normal
-					mRecord[row].mFloat[column] = (float)((date/count)/86400000);
+					mRecord[row].setDouble(column, (float)((date/count)/86400000));
 					break;
 					}
 				}
@@ -5061,7 +5870,10 @@ public class CompoundTableModel extends AbstractTableModel
 
 	private void updateVisibleRecords(boolean isAdjusting) {
 		int oldVisibleRecords = mNonExcludedRecords;
-		compileVisibleRecords();
+		if (mExclusionIndex.getRowCount() != mRecords)
+			compileVisibleRecords();
+		else	// only rows after the first changed index word need to be updated
+			mNonExcludedRecords = mExclusionIndex.compileVisibleRecords(mRecord, mNonExcludedRecord, mAllocatedExclusionFlags);
 
 		int mode;
 		if (oldVisibleRecords < mNonExcludedRecords)
@@ -5088,13 +5900,38 @@ public class CompoundTableModel extends AbstractTableModel
 		return mExclusionTag;
 		}
 
+	/**
+	 * Rebuilds the exclusion index from the records' flags and compiles the list of visible
+	 * records from scratch. This must be called whenever row order or row count have changed.
+	 */
 	private void compileVisibleRecords() {
-		mNonExcludedRecords = 0;
-		for (int row=0; row<mRecords; row++) {
-			if ((mRecord[row].mFlags & mAllocatedExclusionFlags) == 0) {
-				mNonExcludedRecord[mNonExcludedRecords++] = mRecord[row];
-				}
-			}
+		mIDToRow = null;
+		mExclusionIndex.rebuild(mRecord, mRecords, mAllocatedExclusionFlags);
+		mNonExcludedRecords = mExclusionIndex.compileVisibleRecords(mRecord, mNonExcludedRecord, mAllocatedExclusionFlags);
+		}
+
+	/**
+	 * Sets or clears one exclusion flag of the record at the given row and keeps
+	 * the exclusion index in sync. Call updateVisibleRecords() after all changes.
+	 * @param row
+	 * @param exclusionFlagNo
+	 * @param isExcluded
+	 * @return true if the flag was changed
+	 */
+	private boolean setExclusionFlag(int row, int exclusionFlagNo, boolean isExcluded) {
+		if (exclusionFlagNo == -1)
+			return false;
+
+		long mask = convertRowFlagToMask(exclusionFlagNo);
+		if (((mRecord[row].mFlags & mask) != 0) == isExcluded)
+			return false;
+
+		if (isExcluded)
+			mRecord[row].mFlags |= mask;
+		else
+			mRecord[row].mFlags &= ~mask;
+		mExclusionIndex.set(exclusionFlagNo, row, isExcluded);
+		return true;
 		}
 
 	/**
@@ -5115,8 +5952,10 @@ public class CompoundTableModel extends AbstractTableModel
 			mColumnInfo[column].isComplete = true;
 			}
 
-		for (int row=firstRow; row<mRecord.length; row++) {
-			float value = mRecord[row].mFloat[column];
+		// new records are appended with IDs matching their row index
+		float[] columnValue = mColumnStore.getFloatColumn(column);
+		for (int id=firstRow; id<mRecord.length; id++) {
+			float value = columnValue[id];
 			if (Float.isNaN(value) || Float.isInfinite(value)) {
 				mColumnInfo[column].isComplete = false;
 				continue;
@@ -5413,61 +6252,30 @@ public class CompoundTableModel extends AbstractTableModel
 				if (descriptorColumnCount != 0) {
 					Arrays.sort(mSMPColumnSpec);	// sort descriptors by ascending calculation priority
 
-					int threadCount = Runtime.getRuntime().availableProcessors();
-					mSMPDescriptorThreads = new AtomicInteger(threadCount);
-					mSMPThreadIndex = new AtomicInteger(threadCount);
-					mSMPIndex = new AtomicInteger(mRecords*descriptorColumnCount);
-					mSMPRecord = mRecord;
-
-					final DescriptorHandler<Object,Object>[][] dh = new DescriptorHandler[threadCount][descriptorColumnCount];
-					for (int t=0; t<threadCount; t++)
-						for (int i=0; i<descriptorColumnCount; i++)
-							dh[t][i] = mColumnInfo[mSMPColumnSpec[i].descriptorColumn].descriptorHandler.getThreadSafeCopy();
-
+					mSMPRecord = mRecord.clone();	// sorting must not affect the calculation order
 					final int _records = mRecords;
-					Thread[] thread = new Thread[threadCount];
-					for (int i=0; i<threadCount; i++) {
-						thread[i] = new Thread("Descriptor Calculator "+(i+1)) {
-							public void run() {
-								int threadIndex = mSMPThreadIndex.decrementAndGet();
-								StereoMolecule molecule = new StereoMolecule();    // this is the default
-								int index = mSMPIndex.decrementAndGet();
-								while (index>=0 && !mSMPStopDescriptorCalculation) {
-									int descriptorIndex = index / _records;
-									int recordIndex = index % _records;
-
-									DescriptorColumnSpec spec = mSMPColumnSpec[descriptorIndex];
-
-									if (recordIndex == _records - 1)
-										for (int i = 0; i<mProgressListener.size(); i++)
-											mProgressListener.get(i).startProgress("Calculating "
-													+ spec.descriptorHandler.getInfo().shortName + "...", 0, _records/256);
-
-									updateDescriptor(mSMPRecord[recordIndex], spec, dh[threadIndex][descriptorIndex], molecule);
-
-									if ((recordIndex & 255) == 0)
-										for (ProgressListener pl : mProgressListener)
-											pl.updateProgress((_records-recordIndex)/256);
-
-									index = mSMPIndex.decrementAndGet();
-									}
+					for (int i=descriptorColumnCount-1; i>=0 && !mSMPStopDescriptorCalculation; i--) {
+						final DescriptorColumnSpec spec = mSMPColumnSpec[i];
+						for (ProgressListener pl:mProgressListener)
+							pl.startProgress("Calculating "+spec.descriptorHandler.getInfo().shortName+"...", 0, _records);
+
+						RowTaskScheduler.processRows(_records, getDescriptorChunkSize(spec.descriptorHandler),
+								() -> new DescriptorWorkerState(spec.descriptorHandler.getThreadSafeCopy()),
+								(row, state) -> updateDescriptor(mSMPRecord[row], spec, state.descriptorHandler, state.molecule),
+								() -> mSMPStopDescriptorCalculation,
+								count -> { for (ProgressListener pl:mProgressListener) pl.updateProgress(count); } );
+						}
 
-								if (mSMPDescriptorThreads.decrementAndGet() == 0) {
-									synchronized(CompoundTableModel.this) {
-										for (ProgressListener pl:mProgressListener)
-											pl.stopProgress();
+					synchronized(CompoundTableModel.this) {
+						for (ProgressListener pl:mProgressListener)
+							pl.stopProgress();
 
-										mSMPRecord = null;
-										}
-									}
-								}
-							};
-						thread[i].setPriority(Thread.MIN_PRIORITY);
-						thread[i].start();
+						mSMPRecord = null;
 						}
 
-					for (int i=0; i<threadCount; i++)
-						try { thread[i].join(); } catch (InterruptedException ie) {}
+					for (DescriptorColumnSpec spec:mSMPColumnSpec)
+						if (spec.descriptorStore != null)
+							spec.descriptorStore.flush();
 
 					for (DescriptorColumnSpec spec:mSMPColumnSpec) {
 						synchronized (CompoundTableModel.this) {
@@ -5476,9 +6284,11 @@ public class CompoundTableModel extends AbstractTableModel
 								if (spec.isOutdated)
 									setColumnProperty(spec.descriptorColumn, cColumnPropertyDescriptorVersion, spec.descriptorHandler.getVersion());
 
+								invalidateChemistryIndexes(mColumnInfo[spec.descriptorColumn]);
 								mColumnInfo[spec.descriptorColumn].isDescriptorIncomplete = false;
 								mColumnInfo[spec.descriptorColumn].isComplete = spec.isComplete;
 								mColumnInfo[spec.descriptorColumn].isCompleteChild = spec.isCompleteChild;
+								buildChemistryIndexesInBackground(spec.descriptorColumn);
 
 								if (spec.errorCount != 0) {
 									errorMsg = ((errorMsg == null) ? "" : errorMsg + "/n")
@@ -5525,7 +6335,12 @@ public class CompoundTableModel extends AbstractTableModel
 					}
 				}
 
-			if (chemData != null && !existingDescriptorIsValid) {
+			byte[] storedDescriptor = (chemData != null && !existingDescriptorIsValid && spec.descriptorStore != null) ?
+					spec.descriptorStore.get(chemData) : null;
+			if (storedDescriptor != null)
+				descriptor = descriptorHandler.decode(storedDescriptor);
+
+			if (chemData != null && !existingDescriptorIsValid && descriptor == null) {
 				Object chemObject = null;
 				if (spec.isReaction) {
 					if (descriptorHandler.getInfo().type == DescriptorConstants.DESCRIPTOR_TYPE_REACTION)
@@ -5544,6 +6359,8 @@ public class CompoundTableModel extends AbstractTableModel
 					}
 
 				descriptor = descriptorHandler.createDescriptor(chemObject);
+				if (descriptor != null && spec.descriptorStore != null && !descriptorHandler.calculationFailed(descriptor))
+					spec.descriptorStore.put(chemData, descriptorHandler.encode(descriptor).getBytes());
 				}
 			}
 		catch (Throwable t) {
@@ -5576,6 +6393,28 @@ public class CompoundTableModel extends AbstractTableModel
 		mSMPStopDescriptorCalculation = true;
 		}
 
+	/**
+	 * @param dh
+	 * @return number of rows claimed at once by a descriptor calculation thread
+	 */
+	private static int getDescriptorChunkSize(DescriptorHandler<?,?> dh) {
+		if (DescriptorConstants.DESCRIPTOR_Flexophore.shortName.equals(dh.getInfo().shortName))
+			return 1;	// conformer generation takes up to seconds per molecule
+		if (dh.getInfo().needsCoordinates)
+			return 8;
+		return 256;	// fingerprints and other cheap 2D descriptors
+		}
+
+	private static class DescriptorWorkerState {
+		DescriptorHandler<Object,Object> descriptorHandler;
+		StereoMolecule molecule;
+
+		public DescriptorWorkerState(DescriptorHandler<Object,Object> dh) {
+			descriptorHandler = dh;
+			molecule = new StereoMolecule();
+			}
+		}
+
 	private class DescriptorColumnSpec implements Comparable<DescriptorColumnSpec> {
 		int descriptorColumn;
 		int parentColumn;
@@ -5584,6 +6423,7 @@ public class CompoundTableModel extends AbstractTableModel
 		int untouchedCount;
 		String reactionPart;
 		DescriptorHandler<Object,Object> descriptorHandler;
+		DescriptorStore descriptorStore;
 		boolean isOutdated,isComplete,isCompleteChild,isReaction;
 
 		public DescriptorColumnSpec(int descriptorColumn) {
@@ -5593,6 +6433,7 @@ public class CompoundTableModel extends AbstractTableModel
 			reactionPart = mColumnInfo[descriptorColumn].getProperty(cColumnPropertyReactionPart);
 			isOutdated = !descriptorHandler.getVersion().equals(getColumnProperty(descriptorColumn, cColumnPropertyDescriptorVersion));
 			isReaction = cColumnTypeRXNCode.equals(getColumnSpecialType(parentColumn));
+			descriptorStore = isReaction ? null : DescriptorStore.getStore(descriptorHandler);
 			isComplete = true;
 			isCompleteChild = true;
 			updateCount = 0;
@@ -5622,6 +6463,25 @@ public class CompoundTableModel extends AbstractTableModel
 			return name1.compareTo(name2);
 			}
 		}
+
+	/**
+	 * Remembers the last range applied by setDoubleExclusion() to an exclusion flag,
+	 * which allows the next call to only update rows between old and new range limits.
+	 */
+	private static class RangeExclusion {
+		final CompoundTableRangeIndex rangeIndex;
+		final float low,high;
+		final boolean inverse;
+		final int modificationCount;
+
+		public RangeExclusion(CompoundTableRangeIndex rangeIndex, float low, float high, boolean inverse, int modificationCount) {
+			this.rangeIndex = rangeIndex;
+			this.low = low;
+			this.high = high;
+			this.inverse = inverse;
+			this.modificationCount = modificationCount;
+			}
+		}
 	}
 
 class CompoundTableColumnInfo {
@@ -5633,6 +6493,13 @@ class CompoundTableColumnInfo {
 								hasModifiers,excludeModifierValues,summaryCountHidden,stdDeviationShown;
 	protected float				minValue,maxValue,dataMin,dataMax;
 	protected CategoryList<?>	categoryList;
+	protected volatile CompoundTableRangeIndex rangeIndex;
+	protected volatile CompoundTableFingerprintIndex fingerprintIndex;
+	protected volatile CompoundTableSimilarityIndex similarityIndex;
+	protected volatile int		chemistryIndexVersion;	// incremented whenever fingerprint and similarity indexes become invalid
+	protected CompoundTableTextIndex textIndex;
+	protected int				textIndexVersion;
+	protected boolean			isTextIndexBuilding;
 	protected UniqueList<String> mCategoryCustomOrder;
 	protected String			name;
 	protected String			alias;		  // is treated as runtime property
@@ -5641,6 +6508,8 @@ class CompoundTableColumnInfo {
 	private HashMap<String,String> properties;		// belong to table data
 	protected DescriptorHandler<Object,Object> descriptorHandler;
 	private TreeMap<String,DescriptorCacheEntry> descriptorCache;
+	protected float[]			preparsedValue;	// used once by finalizeTable() instead of parsing cells
+	protected boolean			preparsedHasModifiers;
 
 	protected CompoundTableColumnInfo(String name) {
 		this.name = name;
@@ -5739,30 +6608,6 @@ class DescriptorCacheEntry {
 		}
 	}
 
-class DoubleComparator implements Comparator<CompoundRecord> {
-	private int mColumn;
-	private boolean mInverse,mSelectedFirst;
-
-	public DoubleComparator(int column, boolean inverse, boolean selectedFirst) {
-		mColumn = column;
-		mInverse = inverse;
-		mSelectedFirst = selectedFirst;
-		}
-
-	public int compare(CompoundRecord o1, CompoundRecord o2) {
-		if (mSelectedFirst && (o1.isSelected() != o2.isSelected()))
-			return o1.isSelected() ? -1 : 1;
-		float d1 = o1.mFloat[mColumn];
-		float d2 = o2.mFloat[mColumn];
-		if (Float.isNaN(d1))
-			return (Float.isNaN(d2)) ? 0 : 1;
-		if (Float.isNaN(d2))
-			return -1;
-		int comparison = (d1 < d2) ? -1 : (d1 == d2) ? 0 : 1;
-		return (mInverse) ? -comparison : comparison;
-		}
-	}
-
 class StringComparator implements Comparator<CompoundRecord> {
 	private int mColumn;
 	private boolean mInverse,mSelectedFirst;
@@ -5839,58 +6684,6 @@ class ActNoComparator implements Comparator<CompoundRecord> {
 		}
 	}
 
-class IDCodeComparator implements Comparator<CompoundRecord> {
-	private int mColumn;
-	private boolean mInverse,mSelectedFirst;
-	private IDCodeParser mParser;
-
-	public IDCodeComparator(int column, boolean inverse, boolean selectedFirst) {
-		mColumn = column;
-		mInverse = inverse;
-		mSelectedFirst = selectedFirst;
-		mParser = new IDCodeParser(false);
-		}
-
-	public int compare(CompoundRecord o1, CompoundRecord o2) {
-		byte[] s1 = (byte[])o1.getData(mColumn);
-		byte[] s2 = (byte[])o2.getData(mColumn);
-		if (mSelectedFirst && (o1.isSelected() != o2.isSelected()))
-			return o1.isSelected() ? -1 : 1;
-		if (s1 == null)
-			return (s2 == null) ? 0 : 1;
-		if (s2 == null)
-			return -1;
-		int a1 = getAtomCount(s1);
-		int a2 = getAtomCount(s2);
-		int comparison = (a1 < a2) ? -1 : (a1 == a2) ? compare(s1, s2) : 1;
-		return (mInverse) ? -comparison : comparison;
-		}
-
-	private int getAtomCount(byte[] idcode) {
-		int atomCount = 0;
-		int index = 0;
-		while (index < idcode.length) {
-			atomCount += mParser.getAtomCount(idcode, index);
-			while (index<idcode.length && idcode[index] != '\n')
-				index++;
-			index++;
-			}
-
-			// put valid idcodes with 0 atoms at the end of the list
-		return (atomCount == 0) ? Integer.MAX_VALUE : atomCount;
-		}
-
-	private int compare(byte[] s1, byte[] s2) {
-		for (int i=0; i<s1.length; i++) {
-			if (s2.length == i)
-				return 1;
-			if (s1[i] != s2[i])
-				return (s1[i] < s2[i]) ? -1 : 1;
-			}
-		return (s2.length > s1.length) ? -1 : 0;
-		}
-	}
-
 class EntryAnalysis {
 	// The first modifier of any type is the default one if multiple modifiers
 	// of the same type are merged, e.g. for mean generation.
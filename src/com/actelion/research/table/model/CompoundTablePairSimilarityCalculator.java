@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import com.actelion.research.calc.ProgressController;
+import com.actelion.research.chem.descriptor.DescriptorHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Calculates the similarities of all pairs of records of one descriptor column on all available cores.
+ * Records are processed in tiles of TILE_SIZE records. Every worker thread takes one pair of tiles
+ * at a time and reports qualifying pairs to its own PairConsumer, which avoids any synchronization
+ * per pair. Progress is reported once per tile pair.<br>
+ * For binary fingerprints with a similarity threshold, records are sorted by fingerprint bit count
+ * before tiling. Since the Tanimoto similarity of two fingerprints with a and b bits cannot exceed
+ * min(a,b)/max(a,b), complete tile pairs and, within tiles, all records with too many bits are skipped.
+ */
+public class CompoundTablePairSimilarityCalculator {
+	public static final int TILE_SIZE = 256;
+
+	public interface PairConsumer {
+		/**
+		 * Is called for every pair of records, whose similarity is at least the given minimum.
+		 * Every PairConsumer instance is used by one worker thread only.
+		 * @param row1 lower total row index
+		 * @param row2 higher total row index
+		 * @param similarity
+		 */
+		void addPair(int row1, int row2, float similarity);
+		}
+
+	private DescriptorHandler<Object,Object> mDescriptorHandler;
+	private Object[]	mDescriptor;
+	private int[]		mRow,mBitCount,mTileStart;
+	private boolean		mIsBinaryFingerprint;
+
+	/**
+	 * @param tableModel
+	 * @param descriptorColumn column with complete descriptors
+	 */
+	public CompoundTablePairSimilarityCalculator(CompoundTableModel tableModel, int descriptorColumn) {
+		mDescriptorHandler = tableModel.getDescriptorHandler(descriptorColumn);
+		mIsBinaryFingerprint = tableModel.isBinaryFingerprint(descriptorColumn);
+
+		int rowCount = tableModel.getTotalRowCount();
+		int count = 0;
+		for (int row=0; row<rowCount; row++)
+			if (tableModel.getTotalRecord(row).getData(descriptorColumn) != null)
+				count++;
+
+		mRow = new int[count];
+		mDescriptor = new Object[count];
+		count = 0;
+		for (int row=0; row<rowCount; row++) {
+			Object descriptor = tableModel.getTotalRecord(row).getData(descriptorColumn);
+			if (descriptor != null) {
+				mRow[count] = row;
+				mDescriptor[count] = descriptor;
+				count++;
+				}
+			}
+
+		if (mIsBinaryFingerprint)
+			sortByBitCount();
+
+		int tileCount = (count + TILE_SIZE - 1) / TILE_SIZE;
+		mTileStart = new int[tileCount+1];
+		for (int tile=0; tile<=tileCount; tile++)
+			mTileStart[tile] = Math.min(count, tile * TILE_SIZE);
+		}
+
+	private void sortByBitCount() {
+		long[] key = new long[mRow.length];
+		for (int i=0; i<mRow.length; i++) {
+			int bitCount = 0;
+			for (long word:(long[])mDescriptor[i])
+				bitCount += Long.bitCount(word);
+			key[i] = ((long)bitCount << 32) | i;
+			}
+		Arrays.parallelSort(key);
+
+		int[] row = new int[mRow.length];
+		Object[] descriptor = new Object[mRow.length];
+		mBitCount = new int[mRow.length];
+		for (int i=0; i<key.length; i++) {
+			int index = (int)key[i];
+			row[i] = mRow[index];
+			descriptor[i] = mDescriptor[index];
+			mBitCount[i] = (int)(key[i] >>> 32);
+			}
+		mRow = row;
+		mDescriptor = descriptor;
+		}
+
+	/**
+	 * @return number of progress steps reported by calculate()
+	 */
+	public int getTilePairCount() {
+		int tileCount = mTileStart.length - 1;
+		return tileCount * (tileCount + 1) / 2;
+		}
+
+	/**
+	 * Calculates similarities of all record pairs on all available cores and reports all pairs
+	 * with a similarity of at least minSimilarity to the PairConsumer of the respective worker thread.
+	 * Pairs with undefined similarity are never reported.
+	 * @param minSimilarity similarity threshold or 0 to report all pairs
+	 * @param consumerFactory creates one PairConsumer per worker thread
+	 * @param pc receives updateProgress(-1) after every tile pair; may be null
+	 * @return the PairConsumers of all worker threads, which the caller needs to merge
+	 */
+	public <T extends PairConsumer> ArrayList<T> calculate(final float minSimilarity, Supplier<T> consumerFactory, final ProgressController pc) {
+		final int tileCount = mTileStart.length - 1;
+		final int[] maxPartnerBitCount = (mIsBinaryFingerprint && minSimilarity > 0f) ? createMaxPartnerBitCounts(minSimilarity) : null;
+
+		// tile pairs are numbered row by row: (0,0),(0,1)...(0,n-1),(1,1),(1,2)...
+		final int[] tileRowStart = new int[tileCount+1];
+		for (int tile=0; tile<tileCount; tile++)
+			tileRowStart[tile+1] = tileRowStart[tile] + tileCount - tile;
+		final AtomicInteger tilePairIndex = new AtomicInteger(tileRowStart[tileCount]);
+
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		ArrayList<T> consumerList = new ArrayList<>();
+		Thread[] worker = new Thread[threadCount];
+		for (int i=0; i<threadCount; i++) {
+			final T consumer = consumerFactory.get();
+			consumerList.add(consumer);
+			worker[i] = new Thread(() -> {
+				int index = tilePairIndex.decrementAndGet();
+				while (index >= 0 && (pc == null || !pc.threadMustDie())) {
+					int tile1 = Arrays.binarySearch(tileRowStart, index);
+					if (tile1 < 0)
+						tile1 = -tile1 - 2;
+					int tile2 = tile1 + index - tileRowStart[tile1];
+
+					calculateTilePair(tile1, tile2, minSimilarity, maxPartnerBitCount, consumer);
+
+					if (pc != null)
+						pc.updateProgress(-1);
+					index = tilePairIndex.decrementAndGet();
+					}
+				}, "Pair Similarity Calculator "+(i+1));
+			worker[i].setPriority(Thread.MIN_PRIORITY);
+			worker[i].start();
+			}
+
+		for (Thread t:worker)
+			try { t.join(); } catch (InterruptedException e) {}
+
+		return consumerList;
+		}
+
+	private void calculateTilePair(int tile1, int tile2, float minSimilarity, int[] maxPartnerBitCount, PairConsumer consumer) {
+		int start1 = mTileStart[tile1];
+		int end1 = mTileStart[tile1+1];
+		int start2 = mTileStart[tile2];
+		int end2 = mTileStart[tile2+1];
+
+		// records are sorted by bit count; thus, if the last of tile1 doesn't find partners, nobody will
+		if (maxPartnerBitCount != null
+		 && maxPartnerBitCount[mBitCount[end1-1]] < mBitCount[start2])
+			return;
+
+		for (int i=start1; i<end1; i++) {
+			int maxBitCount = (maxPartnerBitCount == null) ? Integer.MAX_VALUE : maxPartnerBitCount[mBitCount[i]];
+			for (int j=(tile1 == tile2) ? i+1 : start2; j<end2; j++) {
+				if (maxPartnerBitCount != null && mBitCount[j] > maxBitCount)
+					break;
+
+				float similarity = mDescriptorHandler.getSimilarity(mDescriptor[i], mDescriptor[j]);
+				if (similarity >= minSimilarity) {
+					if (mRow[i] < mRow[j])
+						consumer.addPair(mRow[i], mRow[j], similarity);
+					else
+						consumer.addPair(mRow[j], mRow[i], similarity);
+					}
+				}
+			}
+		}
+
+	/**
+	 * For every bit count a determines the highest bit count b >= a, for which the similarity
+	 * bound of a and b fingerprints is still above minSimilarity. The bound is calculated
+	 * by the descriptor handler from two fingerprints, of which one contains all bits of the other.
+	 * @param minSimilarity
+	 * @return
+	 */
+	private int[] createMaxPartnerBitCounts(float minSimilarity) {
+		int maxBitCount = (mBitCount.length == 0) ? 0 : mBitCount[mBitCount.length-1];
+		int wordCount = (mDescriptor.length == 0) ? 1 : ((long[])mDescriptor[0]).length;
+		int[] maxPartnerBitCount = new int[maxBitCount+1];
+		int b = 0;
+		for (int a=0; a<=maxBitCount; a++) {
+			b = Math.max(b, a);
+			while (b < maxBitCount
+				&& mDescriptorHandler.getSimilarity(createFingerprint(a, wordCount), createFingerprint(b+1, wordCount)) >= minSimilarity)
+				b++;
+			maxPartnerBitCount[a] = b;
+			}
+		return maxPartnerBitCount;
+		}
+
+	private static long[] createFingerprint(int bitCount, int wordCount) {
+		long[] fingerprint = new long[Math.max(wordCount, (bitCount + 63) >>> 6)];
+		for (int i=0; i<bitCount; i++)
+			fingerprint[i >>> 6] |= (1L << i);
+		return fingerprint;
+		}
+	}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.util.Arrays;
+
+/**
+ * Sorted permutation of all record IDs of one numerical column by their float values.
+ * Records with NaN or infinite values are not part of the index. Range queries are
+ * answered by binary search, which allows range filters to only touch those rows,
+ * whose values are between the old and the new slider positions.
+ * An index is immutable and must be discarded, whenever the column's values change.
+ */
+public class CompoundTableRangeIndex {
+	private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+	private int[]	mSortedID;
+	private float[]	mSortedValue;
+
+	/**
+	 * Creates the index from a column of the CompoundTableColumnStore.
+	 * @param value float values indexed by record ID
+	 * @param rowCount number of valid values
+	 */
+	protected CompoundTableRangeIndex(float[] value, int rowCount) {
+		int count = 0;
+		for (int id=0; id<rowCount; id++)
+			if (!Float.isNaN(value[id]) && !Float.isInfinite(value[id]))
+				count++;
+
+		// sort value and ID at once as primitive long keys: sortable float bits in the upper half
+		long[] key = new long[count];
+		count = 0;
+		for (int id=0; id<rowCount; id++)
+			if (!Float.isNaN(value[id]) && !Float.isInfinite(value[id]))
+				key[count++] = ((long)toSortableInt(value[id]) << 32) | id;
+
+		if (count >= PARALLEL_SORT_THRESHOLD)
+			Arrays.parallelSort(key);
+		else
+			Arrays.sort(key);
+
+		mSortedID = new int[count];
+		mSortedValue = new float[count];
+		for (int i=0; i<count; i++) {
+			mSortedID[i] = (int)key[i];
+			mSortedValue[i] = value[mSortedID[i]];
+			}
+		}
+
+	/**
+	 * Converts a float into an int, which has the same sort order, if compared as signed int.
+	 * @param value
+	 * @return
+	 */
+	public static int toSortableInt(float value) {
+		int bits = Float.floatToIntBits(value);
+		return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+		}
+
+	/**
+	 * @return number of indexed records, i.e. records with a finite value
+	 */
+	public int getSize() {
+		return mSortedID.length;
+		}
+
+	/**
+	 * @param index position in sorted order
+	 * @return record ID
+	 */
+	public int getID(int index) {
+		return mSortedID[index];
+		}
+
+	public float getValue(int index) {
+		return mSortedValue[index];
+		}
+
+	/**
+	 * @param value
+	 * @return index of first entry with a value >= the given value
+	 */
+	public int getLowerBound(float value) {
+		int low = 0;
+		int high = mSortedValue.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (mSortedValue[mid] < value)
+				low = mid + 1;
+			else
+				high = mid;
+			}
+		return low;
+		}
+
+	/**
+	 * @param value
+	 * @return index of first entry with a value > the given value
+	 */
+	public int getUpperBound(float value) {
+		int low = 0;
+		int high = mSortedValue.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (mSortedValue[mid] <= value)
+				low = mid + 1;
+			else
+				high = mid;
+			}
+		return low;
+		}
+	}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import com.actelion.research.chem.descriptor.DescriptorHandler;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Similarity search index of a binary fingerprint descriptor column (FragFp, PathFp, SphereFp),
+ * whose similarity is a monotonous function of the Tanimoto coefficient. All fingerprints are
+ * stored in buckets of equal bit count. Since the Tanimoto similarity of two fingerprints with
+ * a and b bits cannot exceed min(a,b)/max(a,b), all buckets whose bit count is too different
+ * from the query's bit count can be skipped when searching for all records above a similarity
+ * threshold or for the most similar records.
+ * Records without valid fingerprint are not part of the index.
+ * An index is immutable and must be discarded, whenever the descriptor column changes.
+ */
+public class CompoundTableSimilarityIndex {
+	private DescriptorHandler<Object,Object> mDescriptorHandler;
+	private long[][]	mFingerprint;	// in order of ascending bit count
+	private int[]		mID;			// record IDs in the same order
+	private int[]		mBucketStart;	// first index of every bit count plus total count
+	private int			mWordCount;
+
+	/**
+	 * Creates the index for the given fingerprint column. This may be called from any thread,
+	 * but the caller must make sure that the descriptor column is complete and not changed
+	 * while building.
+	 * @param tableModel
+	 * @param record all records of the table model
+	 * @param recordCount
+	 * @param fingerprintColumn column with long[] fingerprints of constant length
+	 */
+	protected CompoundTableSimilarityIndex(CompoundTableModel tableModel, CompoundRecord[] record,
+										   int recordCount, int fingerprintColumn) {
+		mDescriptorHandler = tableModel.getDescriptorHandler(fingerprintColumn);
+
+		int[] bitCount = new int[recordCount];
+		int maxBitCount = 0;
+		int count = 0;
+		for (int row=0; row<recordCount; row++) {
+			Object fp = record[row].getData(fingerprintColumn);
+			bitCount[row] = -1;
+			if (fp instanceof long[] && !mDescriptorHandler.calculationFailed(fp)) {
+				long[] fingerprint = (long[])fp;
+				mWordCount = Math.max(mWordCount, fingerprint.length);
+				bitCount[row] = 0;
+				for (long word:fingerprint)
+					bitCount[row] += Long.bitCount(word);
+				maxBitCount = Math.max(maxBitCount, bitCount[row]);
+				count++;
+				}
+			}
+
+		// counting sort by bit count
+		mBucketStart = new int[maxBitCount+2];
+		for (int row=0; row<recordCount; row++)
+			if (bitCount[row] != -1)
+				mBucketStart[bitCount[row]+1]++;
+		for (int i=1; i<mBucketStart.length; i++)
+			mBucketStart[i] += mBucketStart[i-1];
+
+		mFingerprint = new long[count][];
+		mID = new int[count];
+		int[] index = Arrays.copyOf(mBucketStart, mBucketStart.length);
+		for (int row=0; row<recordCount; row++) {
+			if (bitCount[row] != -1) {
+				int i = index[bitCount[row]]++;
+				mFingerprint[i] = (long[])record[row].getData(fingerprintColumn);
+				mID[i] = record[row].getID();
+				}
+			}
+		}
+
+	/**
+	 * @return number of indexed records, i.e. records with a valid fingerprint
+	 */
+	public int getSize() {
+		return mID.length;
+		}
+
+	/**
+	 * Finds all records, whose similarity to the query is at least minSimilarity.
+	 * @param query fingerprint
+	 * @param minSimilarity
+	 * @param similarity null or array indexed by record ID, which receives the similarities of all found records
+	 * @return IDs of all found records in ascending order
+	 */
+	public int[] getSimilarRecordIDs(long[] query, float minSimilarity, float[] similarity) {
+		int queryBitCount = getBitCount(query);
+		int[] id = new int[0];
+		int count = 0;
+		for (int bits=0; bits<mBucketStart.length-1; bits++) {
+			if (mBucketStart[bits] == mBucketStart[bits+1]
+			 || getUpperBound(queryBitCount, bits) < minSimilarity)
+				continue;
+
+			for (int i=mBucketStart[bits]; i<mBucketStart[bits+1]; i++) {
+				float s = mDescriptorHandler.getSimilarity(query, mFingerprint[i]);
+				if (s >= minSimilarity) {
+					if (count == id.length)
+						id = Arrays.copyOf(id, Math.max(64, 2 * count));
+					id[count++] = mID[i];
+					if (similarity != null)
+						similarity[mID[i]] = s;
+					}
+				}
+			}
+
+		id = Arrays.copyOf(id, count);
+		Arrays.sort(id);
+		return id;
+		}
+
+	/**
+	 * Calculates the similarities of the query to the indexed records from fromIndex to toIndex-1,
+	 * which is needed, if a similarity value for every row is required, e.g. for similarity filters,
+	 * similarity coloring or chemsim(). Since the index knows the bit count of every fingerprint,
+	 * only the common bits need to be counted. The similarity itself is taken from a lookup table
+	 * of the query's and the bucket's bit count and the common bit count, which is filled on demand
+	 * by the descriptor handler. Indexes may be split into ranges to be processed by multiple threads.
+	 * @param query fingerprint
+	 * @param similarity array indexed by record ID, which receives the similarities; entries of not indexed records are not touched
+	 * @param fromIndex first index position, i.e. 0 for the first call
+	 * @param toIndex index position after the last one to process, i.e. getSize() for the last call
+	 */
+	public void getSimilarities(long[] query, float[] similarity, int fromIndex, int toIndex) {
+		if (fromIndex >= toIndex)
+			return;
+
+		int queryBitCount = getBitCount(query);
+		int bits = 0;
+		while (mBucketStart[bits+1] <= fromIndex)
+			bits++;
+
+		float[] lookup = null;
+		for (int i=fromIndex; i<toIndex; i++) {
+			while (mBucketStart[bits+1] <= i) {
+				bits++;
+				lookup = null;
+				}
+			if (lookup == null) {
+				lookup = new float[Math.min(queryBitCount, bits)+1];
+				Arrays.fill(lookup, Float.NaN);
+				}
+
+			long[] fingerprint = mFingerprint[i];
+			int commonBitCount = 0;
+			for (int w=0; w<fingerprint.length && w<query.length; w++)
+				commonBitCount += Long.bitCount(query[w] & fingerprint[w]);
+
+			if (Float.isNaN(lookup[commonBitCount]))
+				lookup[commonBitCount] = getSimilarity(queryBitCount, bits, commonBitCount);
+			similarity[mID[i]] = lookup[commonBitCount];
+			}
+		}
+
+	/**
+	 * Finds the given number of records with the highest similarity to the query.
+	 * Buckets are visited in the order of decreasing similarity bounds. The search stops
+	 * as soon as the bound of the next bucket cannot beat the worst record found so far.
+	 * @param query fingerprint
+	 * @param maxCount number of records to be found
+	 * @param similarity null or array with at least maxCount entries, which receives the similarities of the found records in the order of the returned IDs
+	 * @return IDs of found records in the order of decreasing similarity
+	 */
+	public int[] getMostSimilarRecordIDs(long[] query, int maxCount, float[] similarity) {
+		if (maxCount <= 0)
+			return new int[0];
+
+		// entries are sortable similarity in the upper and record ID in the lower half
+		PriorityQueue<Long> best = new PriorityQueue<>(maxCount+1);
+		int queryBitCount = getBitCount(query);
+		int lower = Math.min(queryBitCount, mBucketStart.length-2);
+		int upper = lower + 1;
+		while (lower >= 0 || upper < mBucketStart.length-1) {
+			float lowerBound = (lower >= 0) ? getUpperBound(queryBitCount, lower) : -1f;
+			float upperBound = (upper < mBucketStart.length-1) ? getUpperBound(queryBitCount, upper) : -1f;
+			int bits = (lowerBound >= upperBound) ? lower-- : upper++;
+			float bound = Math.max(lowerBound, upperBound);
+
+			if (best.size() == maxCount && bound < getSimilarity(best.peek()))
+				break;
+
+			for (int i=mBucketStart[bits]; i<mBucketStart[bits+1]; i++) {
+				float s = mDescriptorHandler.getSimilarity(query, mFingerprint[i]);
+				if (best.size() < maxCount || s > getSimilarity(best.peek())) {
+					best.add(((long)CompoundTableRangeIndex.toSortableInt(s) << 32) | mID[i]);
+					if (best.size() > maxCount)
+						best.poll();
+					}
+				}
+			}
+
+		int[] id = new int[best.size()];
+		for (int i=id.length-1; i>=0; i--) {
+			long entry = best.poll();
+			id[i] = (int)entry;
+			if (similarity != null)
+				similarity[i] = getSimilarity(entry);
+			}
+		return id;
+		}
+
+	private static float getSimilarity(long entry) {
+		int bits = (int)(entry >> 32);
+		return Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7FFFFFFF));
+		}
+
+	private static int getBitCount(long[] fingerprint) {
+		int count = 0;
+		for (long word:fingerprint)
+			count += Long.bitCount(word);
+		return count;
+		}
+
+	/**
+	 * Determines the similarity of two fingerprints with the given bit counts and common bit count
+	 * by letting the descriptor handler compare two fingerprints with the same counts.
+	 * @param bitCount1
+	 * @param bitCount2
+	 * @param commonBitCount
+	 * @return
+	 */
+	private float getSimilarity(int bitCount1, int bitCount2, int commonBitCount) {
+		long[] fingerprint1 = createFingerprint(bitCount1);
+		long[] fingerprint2 = new long[fingerprint1.length];
+		for (int i=bitCount1-commonBitCount; i<bitCount1-commonBitCount+bitCount2; i++)
+			fingerprint2[i >>> 6] |= (1L << i);
+		return mDescriptorHandler.getSimilarity(fingerprint1, fingerprint2);
+		}
+
+	/**
+	 * Determines the highest possible similarity of two fingerprints with the given bit counts
+	 * by letting the descriptor handler compare two fingerprints, of which one contains
+	 * all bits of the other.
+	 * @param bitCount1
+	 * @param bitCount2
+	 * @return
+	 */
+	private float getUpperBound(int bitCount1, int bitCount2) {
+		return mDescriptorHandler.getSimilarity(createFingerprint(Math.min(bitCount1, bitCount2)),
+												createFingerprint(Math.max(bitCount1, bitCount2)));
+		}
+
+	private long[] createFingerprint(int bitCount) {
+		long[] fingerprint = new long[Math.max(mWordCount, (bitCount + 63) >>> 6)];
+		for (int i=0; i<bitCount; i++)
+			fingerprint[i >>> 6] |= (1L << i);
+		return fingerprint;
+		}
+	}
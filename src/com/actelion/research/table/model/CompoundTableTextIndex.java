@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Inverted trigram index of the lower case text of one column. For every trigram the index
+ * contains the sorted IDs of all records, whose cell text contains the trigram. A query string
+ * with at least three characters is answered by intersecting the posting lists of all its
+ * trigrams, which gives a small candidate list that needs to be verified by the caller.
+ * Records, whose cells were changed after creating the index, are not re-indexed, but are
+ * included in any candidate list. Once too many records have changed, the index is outdated
+ * and should be rebuilt.
+ */
+public class CompoundTableTextIndex {
+	public static final int MIN_QUERY_LENGTH = 3;
+
+	private static final int MAX_CHANGED_FRACTION = 16;
+
+	private HashMap<Long,int[]>	mPosting;
+	private TreeSet<Integer>	mChangedID;
+	private int					mRecordCount;
+
+	/**
+	 * Creates the index from the current content of one column. This may be called from
+	 * any thread. The caller must discard the index, if the column content changes while
+	 * building it.
+	 * @param tableModel
+	 * @param record all records of the table model
+	 * @param recordCount
+	 * @param column
+	 */
+	protected CompoundTableTextIndex(CompoundTableModel tableModel, CompoundRecord[] record, int recordCount, int column) {
+		mRecordCount = recordCount;
+		mChangedID = new TreeSet<>();
+
+		HashMap<Long,IDList> postingBuilder = new HashMap<>();
+		for (int row=0; row<recordCount; row++) {
+			String text = tableModel.encodeData(record[row], column).toLowerCase();
+			int id = record[row].getID();
+			for (int i=0; i<=text.length()-MIN_QUERY_LENGTH; i++) {
+				long trigram = getTrigram(text, i);
+				IDList list = postingBuilder.get(trigram);
+				if (list == null) {
+					list = new IDList();
+					postingBuilder.put(trigram, list);
+					}
+				list.add(id);	// duplicate trigrams of one cell are skipped
+				}
+			}
+
+		mPosting = new HashMap<>(2 * postingBuilder.size());
+		for (Map.Entry<Long,IDList> entry:postingBuilder.entrySet())
+			mPosting.put(entry.getKey(), entry.getValue().toSortedArray());
+		}
+
+	private static long getTrigram(String text, int index) {
+		return ((long)text.charAt(index) << 32)
+			 | ((long)text.charAt(index+1) << 16)
+			 | (long)text.charAt(index+2);
+		}
+
+	/**
+	 * @param query
+	 * @return whether getCandidates() can be used for this query
+	 */
+	public static boolean isSupportedQuery(String query) {
+		return query.length() >= MIN_QUERY_LENGTH;
+		}
+
+	/**
+	 * Marks a record, whose cell content has changed. The record will be part of any
+	 * candidate list from now on.
+	 * @param id
+	 */
+	protected void markChanged(int id) {
+		mChangedID.add(id);
+		}
+
+	/**
+	 * @return true if so many records have changed that the index should be rebuilt
+	 */
+	protected boolean isOutdated() {
+		return mChangedID.size() * MAX_CHANGED_FRACTION > mRecordCount;
+		}
+
+	/**
+	 * Returns the sorted IDs of all records, which may contain the query string.
+	 * If a record's text equals, starts with or ends with the query, then it is
+	 * also contained in the candidate list. Candidates must be verified by the caller.
+	 * @param query lower case query with at least MIN_QUERY_LENGTH characters
+	 * @return sorted record IDs
+	 */
+	public int[] getCandidates(String query) {
+		int trigramCount = query.length() - MIN_QUERY_LENGTH + 1;
+		int[][] posting = new int[trigramCount][];
+		for (int i=0; i<trigramCount; i++) {
+			posting[i] = mPosting.get(getTrigram(query, i));
+			if (posting[i] == null) {
+				posting = null;
+				break;
+				}
+			}
+
+		int[] candidate = new int[0];
+		if (posting != null) {
+			Arrays.sort(posting, (p1, p2) -> Integer.compare(p1.length, p2.length));
+			candidate = posting[0];
+			for (int i=1; i<trigramCount && candidate.length != 0; i++)
+				candidate = intersect(candidate, posting[i]);
+			}
+
+		if (mChangedID.isEmpty())
+			return candidate;
+
+		TreeSet<Integer> union = new TreeSet<>(mChangedID);
+		for (int id:candidate)
+			union.add(id);
+		int[] result = new int[union.size()];
+		int index = 0;
+		for (Integer id:union)
+			result[index++] = id;
+		return result;
+		}
+
+	private static int[] intersect(int[] list1, int[] list2) {
+		int[] result = new int[Math.min(list1.length, list2.length)];
+		int count = 0;
+		int i1 = 0;
+		int i2 = 0;
+		while (i1 < list1.length && i2 < list2.length) {
+			if (list1[i1] < list2[i2])
+				i1++;
+			else if (list1[i1] > list2[i2])
+				i2++;
+			else {
+				result[count++] = list1[i1];
+				i1++;
+				i2++;
+				}
+			}
+		return Arrays.copyOf(result, count);
+		}
+
+	/**
+	 * Growable posting list used while building the index.
+	 */
+	private static class IDList {
+		private int[] mID = new int[4];
+		private int mSize;
+
+		private void add(int id) {
+			if (mSize != 0 && mID[mSize-1] == id)
+				return;
+			if (mSize == mID.length)
+				mID = Arrays.copyOf(mID, 2 * mSize);
+			mID[mSize++] = id;
+			}
+
+		private int[] toSortedArray() {
+			int[] id = Arrays.copyOf(mID, mSize);
+			Arrays.sort(id);
+			int count = 0;
+			for (int i=0; i<id.length; i++)
+				if (i == 0 || id[i] != id[i-1])
+					id[count++] = id[i];
+			return (count == id.length) ? id : Arrays.copyOf(id, count);
+			}
+		}
+	}
@@ -0,0 +1,646 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import com.actelion.research.chem.descriptor.DescriptorHandler;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Persistent store of encoded molecule descriptors keyed by idcode, which allows to skip
+ * the descriptor calculation for molecules, whose descriptor was calculated before, even in
+ * a different file. Every descriptor type and version has its own pair of append-only files
+ * in the store directory: a data file with records (idcode length, idcode, descriptor length,
+ * encoded descriptor) and an index file with one (idcode hash, record position) pair per record.
+ * The index is not kept in memory. Instead, the writing process maintains a third file with
+ * all index entries sorted by hash, which is searched with one positional read per lookup
+ * using a small in-memory table of every 256th hash. Index entries, which were appended after
+ * the sorted file was built, are kept in an in-memory hash table. When this exceeds
+ * MAX_MEMORY_ENTRIES, the sorted file is rebuilt. Records are read with one positional read,
+ * which is safe for concurrent threads.
+ * New records are buffered in memory and appended to both files by flush(), which writes
+ * outside of the store's lock, such that other threads can continue to read and add records.
+ * Only one process can write to a store; other processes use it read-only.<br>
+ * The store is enabled by defining its directory with setDirectory() or with the system
+ * property 'descriptorstore'.
+ */
+public class DescriptorStore {
+	private static final String SYSTEM_PROPERTY_DIRECTORY = "descriptorstore";
+	private static final String DATA_FILE_EXTENSION = ".dsdata";
+	private static final String INDEX_FILE_EXTENSION = ".dsindex";
+	private static final String SORTED_INDEX_FILE_EXTENSION = ".dssorted";
+	private static final int FLUSH_BUFFER_SIZE = 1 << 23;
+	private static final int MAX_RECORD_LENGTH = (1 << 24) - 1;	// record length is stored in the upper 24 bits of the position
+	private static final int MAX_MEMORY_ENTRIES = 1 << 18;	// unsorted index entries kept in memory by the writing process
+
+	private static File sDirectory;
+	private static boolean sDirectoryInitialized;
+	private static TreeMap<String,DescriptorStore> sStoreMap;
+
+	private final File mSortedIndexFile;
+	private final FileChannel mDataChannel,mIndexChannel;
+	private final FileLock mLock;
+	private final Object mFlushLock = new Object();	// serializes flushing; never acquired while holding the store's lock
+	private volatile SortedIndex mSortedIndex;
+	private long[] mHash,mPosition;		// open addressing hash table of unsorted entries; hash 0 means empty slot
+	private int mEntryCount;
+	private long mDataFileSize;			// includes buffers, which are being flushed
+	private long mIndexFileSize;
+	private boolean mSortedIndexFailed;
+	private ByteArrayOutputStream mDataBuffer,mIndexBuffer;
+	private DataOutputStream mDataOutput,mIndexOutput;
+
+	/**
+	 * @param path directory to be used for all descriptor stores or null to disable persistent descriptors
+	 */
+	public static synchronized void setDirectory(String path) {
+		sDirectory = (path == null) ? null : new File(path);
+		sDirectoryInitialized = true;
+		if (sStoreMap != null) {
+			for (DescriptorStore store:sStoreMap.values())
+				if (store != null)
+					store.close();
+			sStoreMap = null;
+			}
+		}
+
+	/**
+	 * Returns the store for the descriptor type and version of the handler, if the store is enabled
+	 * and the descriptor is calculated from the idcode alone.
+	 * @param dh
+	 * @return null if there is no store for this descriptor
+	 */
+	public static synchronized DescriptorStore getStore(DescriptorHandler<?,?> dh) {
+		if (!sDirectoryInitialized) {
+			String path = System.getProperty(SYSTEM_PROPERTY_DIRECTORY);
+			sDirectory = (path == null) ? null : new File(path);
+			sDirectoryInitialized = true;
+			}
+
+		if (sDirectory == null || dh.getInfo().needsCoordinates)
+			return null;
+
+		String name = (dh.getInfo().shortName+"_"+dh.getVersion()).replaceAll("[^A-Za-z0-9._-]", "_");
+		if (sStoreMap == null)
+			sStoreMap = new TreeMap<>();
+		if (!sStoreMap.containsKey(name)) {
+			DescriptorStore store = null;
+			try {
+				if (sDirectory.isDirectory() || sDirectory.mkdirs())
+					store = new DescriptorStore(new File(sDirectory, name+DATA_FILE_EXTENSION),
+												new File(sDirectory, name+INDEX_FILE_EXTENSION),
+												new File(sDirectory, name+SORTED_INDEX_FILE_EXTENSION));
+				}
+			catch (IOException ioe) {
+				ioe.printStackTrace();
+				}
+			sStoreMap.put(name, store);	// null if store cannot be used
+			}
+		return sStoreMap.get(name);
+		}
+
+	private DescriptorStore(File dataFile, File indexFile, File sortedIndexFile) throws IOException {
+		boolean canWrite = (!dataFile.exists() || dataFile.canWrite()) && (!indexFile.exists() || indexFile.canWrite());
+		String mode = canWrite ? "rw" : "r";
+		mSortedIndexFile = sortedIndexFile;
+		mDataChannel = new RandomAccessFile(dataFile, mode).getChannel();
+		mIndexChannel = new RandomAccessFile(indexFile, mode).getChannel();
+
+		FileLock lock = null;
+		if (canWrite) {
+			try {
+				lock = mIndexChannel.tryLock();
+				}
+			catch (IOException ioe) {}
+			}
+		mLock = lock;
+
+		mDataFileSize = mDataChannel.size();
+		mSortedIndex = SortedIndex.open(sortedIndexFile, mIndexChannel.size() & ~15L);
+		loadIndex(mSortedIndex == null ? 0 : mSortedIndex.mCoveredIndexSize);
+
+		if (mLock != null) {
+			mDataBuffer = new ByteArrayOutputStream();
+			mIndexBuffer = new ByteArrayOutputStream();
+			mDataOutput = new DataOutputStream(mDataBuffer);
+			mIndexOutput = new DataOutputStream(mIndexBuffer);
+
+			if (mEntryCount > MAX_MEMORY_ENTRIES)
+				synchronized (mFlushLock) {
+					rebuildSortedIndex();
+					}
+			}
+		}
+
+	/**
+	 * Reads all complete index entries behind the part covered by the sorted index,
+	 * which point to completely written records.
+	 * @param startPosition first index file position not covered by the sorted index
+	 */
+	private void loadIndex(long startPosition) throws IOException {
+		long indexSize = mIndexChannel.size() & ~15L;
+		mHash = new long[hashTableCapacity((int)Math.min(Integer.MAX_VALUE/4, (indexSize - startPosition) / 16))];
+		mPosition = new long[mHash.length];
+
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		long position = startPosition;
+		while (position < indexSize) {
+			buffer.clear();
+			buffer.limit((int)Math.min(buffer.capacity(), indexSize - position));
+			while (buffer.hasRemaining()) {
+				int count = mIndexChannel.read(buffer, position + buffer.position());
+				if (count < 0)
+					throw new IOException("Unexpected end of descriptor store index.");
+				}
+			buffer.flip();
+			while (buffer.remaining() >= 16) {
+				long hash = buffer.getLong();
+				long entry = buffer.getLong();
+				if ((entry & 0xFFFFFFFFFFL) + (entry >>> 40) <= mDataFileSize)
+					putIndexEntry(hash, entry);
+				}
+			position += buffer.limit();
+			}
+
+		if (mIndexChannel.size() != indexSize && mLock != null)
+			mIndexChannel.truncate(indexSize);	// remove partially written entry
+		mIndexFileSize = indexSize;
+		}
+
+	private static int hashTableCapacity(int entryCount) {
+		int capacity = 1024;
+		while (capacity < 2 * entryCount)
+			capacity <<= 1;
+		return capacity;
+		}
+
+	/**
+	 * @param idcode
+	 * @return encoded descriptor or null, if the idcode is not in the store
+	 */
+	public byte[] get(byte[] idcode) {
+		long hash = hash(idcode);
+		long entry = 0;
+		SortedIndex sortedIndex;
+		synchronized (this) {
+			if (mHash == null)
+				return null;
+
+			int mask = mHash.length - 1;
+			for (int slot=(int)hash & mask; mHash[slot] != 0; slot=(slot+1) & mask) {
+				if (mHash[slot] == hash) {
+					entry = mPosition[slot];
+					break;
+					}
+				}
+			sortedIndex = mSortedIndex;
+			}
+
+		try {
+			if (entry == 0 && sortedIndex != null)
+				entry = sortedIndex.find(hash);	// fails, if the sorted index was replaced meanwhile
+			if (entry == 0)
+				return null;
+
+			long position = entry & 0xFFFFFFFFFFL;
+			int length = (int)(entry >>> 40);
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining())
+				if (mDataChannel.read(buffer, position + buffer.position()) < 0)
+					return null;
+			buffer.flip();
+
+			int idcodeLength = buffer.getInt();
+			if (idcodeLength != idcode.length)
+				return null;
+			for (int i=0; i<idcodeLength; i++)
+				if (buffer.get() != idcode[i])
+					return null;	// hash collision
+
+			byte[] descriptor = new byte[buffer.getInt()];
+			buffer.get(descriptor);
+			return descriptor;
+			}
+		catch (Exception e) {
+			return null;
+			}
+		}
+
+	/**
+	 * Adds an idcode with its encoded descriptor to the write buffer.
+	 * Buffered records are written when the buffer is full or when flush() is called.
+	 * @param idcode
+	 * @param descriptor encoded descriptor
+	 */
+	public void put(byte[] idcode, byte[] descriptor) {
+		int length = 8 + idcode.length + descriptor.length;
+		if (length > MAX_RECORD_LENGTH)
+			return;
+
+		long hash = hash(idcode);
+		synchronized (this) {
+			if (mDataOutput == null)
+				return;
+
+			try {
+				long position = mDataFileSize + mDataBuffer.size();
+				mDataOutput.writeInt(idcode.length);
+				mDataOutput.write(idcode);
+				mDataOutput.writeInt(descriptor.length);
+				mDataOutput.write(descriptor);
+				mIndexOutput.writeLong(hash);
+				mIndexOutput.writeLong(position | ((long)length << 40));
+				}
+			catch (IOException ioe) {}	// doesn't happen with ByteArrayOutputStream
+
+			if (mDataBuffer.size() < FLUSH_BUFFER_SIZE)
+				return;
+			}
+
+		flush();
+		}
+
+	/**
+	 * Appends all buffered records to the store files and makes them available to get().
+	 * The buffers are swapped while holding the store's lock, but written without it.
+	 */
+	public void flush() {
+		synchronized (mFlushLock) {
+			ByteArrayOutputStream dataBuffer,indexBuffer;
+			long dataPosition;
+			synchronized (this) {
+				if (mDataOutput == null || mDataBuffer.size() == 0)
+					return;
+
+				dataBuffer = mDataBuffer;
+				indexBuffer = mIndexBuffer;
+				mDataBuffer = new ByteArrayOutputStream();
+				mIndexBuffer = new ByteArrayOutputStream();
+				mDataOutput = new DataOutputStream(mDataBuffer);
+				mIndexOutput = new DataOutputStream(mIndexBuffer);
+				dataPosition = mDataFileSize;
+				mDataFileSize += dataBuffer.size();	// records added meanwhile are located behind the swapped ones
+				}
+
+			byte[] index = indexBuffer.toByteArray();
+			try {
+				writeFully(mDataChannel, ByteBuffer.wrap(dataBuffer.toByteArray()), dataPosition);
+				writeFully(mIndexChannel, ByteBuffer.wrap(index), mIndexFileSize);
+				mIndexFileSize += index.length;
+				}
+			catch (IOException ioe) {
+				ioe.printStackTrace();
+				synchronized (this) {
+					mDataOutput = null;	// don't try to write anymore
+					}
+				return;
+				}
+
+			boolean isRebuildNeeded;
+			synchronized (this) {
+				if (mHash == null)
+					return;
+
+				ByteBuffer buffer = ByteBuffer.wrap(index);
+				while (buffer.remaining() >= 16)
+					putIndexEntry(buffer.getLong(), buffer.getLong());
+				isRebuildNeeded = (mEntryCount > MAX_MEMORY_ENTRIES && !mSortedIndexFailed);
+				}
+
+			if (isRebuildNeeded)
+				rebuildSortedIndex();
+			}
+		}
+
+	/**
+	 * Merges the sorted index with all in-memory index entries into a new sorted index file,
+	 * which replaces the current one. Then clears the in-memory entries.
+	 * This must be called while holding mFlushLock, which guarantees that the in-memory
+	 * entries are not changed meanwhile.
+	 */
+	private void rebuildSortedIndex() {
+		long[] hash;
+		long coveredIndexSize;
+		SortedIndex oldIndex;
+		synchronized (this) {
+			hash = new long[mEntryCount];
+			int count = 0;
+			for (long h:mHash)
+				if (h != 0)
+					hash[count++] = h;
+			coveredIndexSize = mIndexFileSize;
+			oldIndex = mSortedIndex;
+			}
+		Arrays.sort(hash);
+
+		File tempFile = new File(mSortedIndexFile.getPath()+".tmp");
+		try {
+			SortedIndex.write(tempFile, oldIndex == null ? null : mSortedIndexFile, hash, this::getMemoryEntry, coveredIndexSize);
+
+			synchronized (this) {
+				if (oldIndex != null)
+					oldIndex.close();	// otherwise the file cannot be replaced on some platforms
+				try {
+					Files.move(tempFile.toPath(), mSortedIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+				catch (IOException ioe) {
+					mSortedIndex = SortedIndex.open(mSortedIndexFile, coveredIndexSize);
+					throw ioe;
+					}
+				mSortedIndex = SortedIndex.open(mSortedIndexFile, coveredIndexSize);
+				if (mSortedIndex == null)
+					throw new IOException("Sorted descriptor store index could not be opened.");
+
+				mHash = new long[hashTableCapacity(0)];
+				mPosition = new long[mHash.length];
+				mEntryCount = 0;
+				}
+			}
+		catch (IOException ioe) {
+			ioe.printStackTrace();
+			tempFile.delete();
+			synchronized (this) {
+				mSortedIndexFailed = true;	// keep all entries in memory
+				}
+			}
+		}
+
+	/**
+	 * @return the in-memory index entry of the hash; mHash is not changed while holding mFlushLock
+	 */
+	private synchronized long getMemoryEntry(long hash) {
+		int mask = mHash.length - 1;
+		for (int slot=(int)hash & mask; mHash[slot] != 0; slot=(slot+1) & mask)
+			if (mHash[slot] == hash)
+				return mPosition[slot];
+		return 0;
+		}
+
+	private void close() {
+		flush();
+		synchronized (mFlushLock) {
+			synchronized (this) {
+				try {
+					if (mLock != null)
+						mLock.release();
+					mDataChannel.close();
+					mIndexChannel.close();
+					}
+				catch (IOException ioe) {}
+				if (mSortedIndex != null)
+					mSortedIndex.close();
+				mSortedIndex = null;
+				mHash = null;
+				mDataOutput = null;
+				}
+			}
+		}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+		}
+
+	private void putIndexEntry(long hash, long entry) {
+		if (2 * (mEntryCount + 1) > mHash.length) {
+			long[] oldHash = mHash;
+			long[] oldPosition = mPosition;
+			mHash = new long[2 * oldHash.length];
+			mPosition = new long[2 * oldHash.length];
+			mEntryCount = 0;
+			for (int i=0; i<oldHash.length; i++)
+				if (oldHash[i] != 0)
+					putIndexEntry(oldHash[i], oldPosition[i]);
+			}
+
+		int mask = mHash.length - 1;
+		int slot = (int)hash & mask;
+		while (mHash[slot] != 0 && mHash[slot] != hash)
+			slot = (slot+1) & mask;
+		if (mHash[slot] == 0)
+			mEntryCount++;
+		mHash[slot] = hash;
+		mPosition[slot] = entry;	// a newer record for the same hash replaces the older one
+		}
+
+	/**
+	 * @return 64-bit FNV-1a hash of the idcode, which is never 0
+	 */
+	private static long hash(byte[] idcode) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b:idcode) {
+			hash ^= (b & 0xFF);
+			hash *= 0x100000001b3L;
+			}
+		hash ^= (hash >>> 29);
+		return (hash == 0) ? 1 : hash;
+		}
+
+	private interface EntrySource {
+		long getEntry(long hash);
+		}
+
+	/**
+	 * Index file with unique hashes in ascending order. The file consists of a header
+	 * (magic number, covered size of the append-only index file, entry count), the
+	 * (hash, record position) entries and the hash of every FENCE_STEP-th entry.
+	 * Only the latter are kept in memory.
+	 */
+	private static class SortedIndex {
+		private static final long MAGIC = 0x4453534F52544431L;
+		private static final int HEADER_SIZE = 24;
+		private static final int FENCE_STEP = 256;
+
+		private final FileChannel mChannel;
+		private final long mCoveredIndexSize,mEntryCount;
+		private final long[] mFence;
+
+		private SortedIndex(FileChannel channel, long coveredIndexSize, long entryCount, long[] fence) {
+			mChannel = channel;
+			mCoveredIndexSize = coveredIndexSize;
+			mEntryCount = entryCount;
+			mFence = fence;
+			}
+
+		/**
+		 * @param file
+		 * @param indexSize current size of the append-only index file
+		 * @return null if the file doesn't exist or doesn't match the index file
+		 */
+		public static SortedIndex open(File file, long indexSize) {
+			if (!file.exists())
+				return null;
+
+			FileChannel channel = null;
+			try {
+				channel = new RandomAccessFile(file, "r").getChannel();
+				ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+				long coveredIndexSize = header.getLong(8);
+				long entryCount = header.getLong(16);
+				long fenceCount = (entryCount + FENCE_STEP - 1) / FENCE_STEP;
+				if (header.getLong(0) != MAGIC
+				 || coveredIndexSize > indexSize
+				 || fenceCount > Integer.MAX_VALUE / 8
+				 || channel.size() != HEADER_SIZE + 16 * entryCount + 8 * fenceCount) {
+					channel.close();
+					return null;
+					}
+
+				long[] fence = new long[(int)fenceCount];
+				readFully(channel, HEADER_SIZE + 16 * entryCount, 8 * fence.length).asLongBuffer().get(fence);
+				return new SortedIndex(channel, coveredIndexSize, entryCount, fence);
+				}
+			catch (IOException ioe) {
+				try {
+					if (channel != null)
+						channel.close();
+					}
+				catch (IOException e) {}
+				return null;
+				}
+			}
+
+		/**
+		 * Writes a new sorted index file merging the entries of an existing one with the given ones,
+		 * which replace existing entries with the same hash.
+		 * @param file
+		 * @param oldFile existing sorted index file or null
+		 * @param hash new hashes in ascending order
+		 * @param entrySource provides the record positions of the new hashes
+		 * @param coveredIndexSize size of the append-only index file covered by the new file
+		 */
+		public static void write(File file, File oldFile, long[] hash, EntrySource entrySource, long coveredIndexSize) throws IOException {
+			long oldCount = 0;
+			DataInputStream in = null;
+			if (oldFile != null) {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(oldFile), 1 << 16));
+				in.readLong();
+				in.readLong();
+				oldCount = in.readLong();
+				}
+
+			long[] fence = new long[(int)((oldCount + hash.length + FENCE_STEP - 1) / FENCE_STEP)];
+			long count = 0;
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+				out.writeLong(MAGIC);
+				out.writeLong(coveredIndexSize);
+				out.writeLong(0);	// entry count is written when known
+
+				int index = 0;
+				long oldHash = 0;
+				long oldEntry = 0;
+				boolean hasOld = false;
+				while (true) {
+					if (!hasOld && oldCount != 0) {
+						oldHash = in.readLong();
+						oldEntry = in.readLong();
+						oldCount--;
+						hasOld = true;
+						}
+					if (!hasOld && index == hash.length)
+						break;
+
+					long h,entry;
+					if (!hasOld || (index < hash.length && hash[index] <= oldHash)) {
+						if (hasOld && hash[index] == oldHash)
+							hasOld = false;	// newer entry replaces older one
+						h = hash[index++];
+						entry = entrySource.getEntry(h);
+						}
+					else {
+						h = oldHash;
+						entry = oldEntry;
+						hasOld = false;
+						}
+
+					if (count % FENCE_STEP == 0)
+						fence[(int)(count / FENCE_STEP)] = h;
+					out.writeLong(h);
+					out.writeLong(entry);
+					count++;
+					}
+
+				for (int i=0; i<(count + FENCE_STEP - 1) / FENCE_STEP; i++)
+					out.writeLong(fence[i]);
+				}
+			finally {
+				if (in != null)
+					in.close();
+				}
+
+			try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+				ByteBuffer buffer = ByteBuffer.allocate(8);
+				buffer.putLong(0, count);
+				writeFully(channel, buffer, 16);
+				}
+			}
+
+		/**
+		 * @param hash
+		 * @return record position and length or 0, if the hash is not found
+		 */
+		public long find(long hash) throws IOException {
+			int fenceIndex = Arrays.binarySearch(mFence, hash);
+			if (fenceIndex < 0)
+				fenceIndex = -fenceIndex - 2;
+			if (fenceIndex < 0)
+				return 0;
+
+			long firstEntry = (long)fenceIndex * FENCE_STEP;
+			int count = (int)Math.min(FENCE_STEP, mEntryCount - firstEntry);
+			ByteBuffer buffer = readFully(mChannel, HEADER_SIZE + 16 * firstEntry, 16 * count);
+			int low = 0;
+			int high = count - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				long midHash = buffer.getLong(16 * mid);
+				if (midHash < hash)
+					low = mid + 1;
+				else if (midHash > hash)
+					high = mid - 1;
+				else
+					return buffer.getLong(16 * mid + 8);
+				}
+			return 0;
+			}
+
+		public void close() {
+			try {
+				mChannel.close();
+				}
+			catch (IOException ioe) {}
+			}
+
+		private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining())
+				if (channel.read(buffer, position + buffer.position()) < 0)
+					throw new IOException("Unexpected end of sorted descriptor store index.");
+			buffer.flip();
+			return buffer;
+			}
+		}
+	}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable compressed set of record IDs, which is used to store row list memberships
+ * independently of the limited number of record flags. IDs are grouped into chunks
+ * of 65536 IDs sharing the same upper 16 bits. Chunks without any member are not stored.
+ * Sparse chunks contain their members as sorted char array; chunks with more than 4096
+ * members use a bit array of 1024 longs, which is never larger than 8 kB.
+ * Boolean operations are done chunk by chunk on uncompressed bit arrays.
+ */
+public class RowBitmap {
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_WORDS = (1 << CHUNK_BITS) / 64;
+	private static final int MAX_ARRAY_SIZE = 4096;
+
+	public static final int OPERATION_AND = 0;
+	public static final int OPERATION_OR = 1;
+	public static final int OPERATION_XOR = 2;
+	public static final int OPERATION_AND_NOT = 3;
+
+	private final int[] mKey;		// sorted upper 16 bits of all chunks
+	private final Object[] mChunk;	// char[] or long[]
+	private final int mCardinality;
+
+	/**
+	 * Creates a compressed copy of the bits set in members.
+	 * @param members
+	 */
+	public RowBitmap(BitSet members) {
+		this(members.toLongArray());
+		}
+
+	private RowBitmap(long[] word) {
+		int chunkCount = (word.length + CHUNK_WORDS - 1) / CHUNK_WORDS;
+		int[] key = new int[chunkCount];
+		Object[] chunk = new Object[chunkCount];
+		int count = 0;
+		int cardinality = 0;
+		long[] chunkWord = new long[CHUNK_WORDS];
+		for (int i=0; i<chunkCount; i++) {
+			int length = Math.min(CHUNK_WORDS, word.length - i * CHUNK_WORDS);
+			System.arraycopy(word, i * CHUNK_WORDS, chunkWord, 0, length);
+			Arrays.fill(chunkWord, length, CHUNK_WORDS, 0L);
+			Object c = compressChunk(chunkWord);
+			if (c != null) {
+				key[count] = i;
+				chunk[count] = c;
+				cardinality += getChunkCardinality(c);
+				count++;
+				}
+			}
+		mKey = Arrays.copyOf(key, count);
+		mChunk = Arrays.copyOf(chunk, count);
+		mCardinality = cardinality;
+		}
+
+	private RowBitmap(int[] key, Object[] chunk, int count) {
+		mKey = Arrays.copyOf(key, count);
+		mChunk = Arrays.copyOf(chunk, count);
+		int cardinality = 0;
+		for (int i=0; i<count; i++)
+			cardinality += getChunkCardinality(mChunk[i]);
+		mCardinality = cardinality;
+		}
+
+	/**
+	 * @return number of IDs in this set
+	 */
+	public int getCardinality() {
+		return mCardinality;
+		}
+
+	/**
+	 * @param id
+	 * @return whether id is member of this set
+	 */
+	public boolean contains(int id) {
+		int index = Arrays.binarySearch(mKey, id >>> CHUNK_BITS);
+		if (index < 0)
+			return false;
+
+		int low = id & 0xFFFF;
+		Object chunk = mChunk[index];
+		if (chunk instanceof char[])
+			return Arrays.binarySearch((char[])chunk, (char)low) >= 0;
+
+		return (((long[])chunk)[low >>> 6] & (1L << low)) != 0;
+		}
+
+	/**
+	 * @return uncompressed copy of this set
+	 */
+	public BitSet toBitSet() {
+		BitSet bitSet = new BitSet((mKey.length == 0) ? 0 : (mKey[mKey.length-1] + 1) << CHUNK_BITS);
+		for (int i=0; i<mKey.length; i++) {
+			int offset = mKey[i] << CHUNK_BITS;
+			if (mChunk[i] instanceof char[]) {
+				for (char low:(char[])mChunk[i])
+					bitSet.set(offset + low);
+				}
+			else {
+				long[] word = (long[])mChunk[i];
+				for (int j=0; j<CHUNK_WORDS; j++) {
+					long w = word[j];
+					while (w != 0) {
+						bitSet.set(offset + (j << 6) + Long.numberOfTrailingZeros(w));
+						w &= w - 1;
+						}
+					}
+				}
+			}
+		return bitSet;
+		}
+
+	/**
+	 * Creates a new set from this set and another one.
+	 * @param other
+	 * @param operation one of OPERATION_AND, OPERATION_OR, OPERATION_XOR, OPERATION_AND_NOT
+	 * @return new set
+	 */
+	public RowBitmap combine(RowBitmap other, int operation) {
+		int[] key = new int[mKey.length + other.mKey.length];
+		Object[] chunk = new Object[key.length];
+		long[] word1 = new long[CHUNK_WORDS];
+		long[] word2 = new long[CHUNK_WORDS];
+		int count = 0;
+		int i1 = 0;
+		int i2 = 0;
+		while (i1 < mKey.length || i2 < other.mKey.length) {
+			int k1 = (i1 < mKey.length) ? mKey[i1] : Integer.MAX_VALUE;
+			int k2 = (i2 < other.mKey.length) ? other.mKey[i2] : Integer.MAX_VALUE;
+			int k = Math.min(k1, k2);
+			Arrays.fill(word1, 0L);
+			Arrays.fill(word2, 0L);
+			if (k1 == k)
+				uncompressChunk(mChunk[i1++], word1);
+			if (k2 == k)
+				uncompressChunk(other.mChunk[i2++], word2);
+
+			for (int j=0; j<CHUNK_WORDS; j++) {
+				switch (operation) {
+				case OPERATION_AND:
+					word1[j] &= word2[j];
+					break;
+				case OPERATION_OR:
+					word1[j] |= word2[j];
+					break;
+				case OPERATION_XOR:
+					word1[j] ^= word2[j];
+					break;
+				case OPERATION_AND_NOT:
+					word1[j] &= ~word2[j];
+					break;
+					}
+				}
+
+			Object c = compressChunk(word1);
+			if (c != null) {
+				key[count] = k;
+				chunk[count] = c;
+				count++;
+				}
+			}
+
+		return new RowBitmap(key, chunk, count);
+		}
+
+	/**
+	 * Creates a new set after record IDs have changed, e.g. after deleting records.
+	 * @param oldToNewID new ID for every old ID or -1, if the record doesn't exist anymore
+	 * @return new set with translated IDs
+	 */
+	public RowBitmap translateIDs(int[] oldToNewID) {
+		BitSet oldMembers = toBitSet();
+		BitSet newMembers = new BitSet(oldToNewID.length);
+		for (int id=oldMembers.nextSetBit(0); id >= 0 && id < oldToNewID.length; id=oldMembers.nextSetBit(id+1))
+			if (oldToNewID[id] != -1)
+				newMembers.set(oldToNewID[id]);
+		return new RowBitmap(newMembers);
+		}
+
+	/**
+	 * @param word bit array of one chunk
+	 * @return null, if the chunk has no members, a char[] if it is sparse, or a copy of word
+	 */
+	private static Object compressChunk(long[] word) {
+		int cardinality = 0;
+		for (long w:word)
+			cardinality += Long.bitCount(w);
+
+		if (cardinality == 0)
+			return null;
+
+		if (cardinality > MAX_ARRAY_SIZE)
+			return word.clone();
+
+		char[] low = new char[cardinality];
+		int count = 0;
+		for (int j=0; j<CHUNK_WORDS; j++) {
+			long w = word[j];
+			while (w != 0) {
+				low[count++] = (char)((j << 6) + Long.numberOfTrailingZeros(w));
+				w &= w - 1;
+				}
+			}
+		return low;
+		}
+
+	private static void uncompressChunk(Object chunk, long[] word) {
+		if (chunk instanceof char[]) {
+			for (char low:(char[])chunk)
+				word[low >>> 6] |= (1L << low);
+			}
+		else {
+			System.arraycopy((long[])chunk, 0, word, 0, CHUNK_WORDS);
+			}
+		}
+
+	private static int getChunkCardinality(Object chunk) {
+		if (chunk instanceof char[])
+			return ((char[])chunk).length;
+
+		int cardinality = 0;
+		for (long w:(long[])chunk)
+			cardinality += Long.bitCount(w);
+		return cardinality;
+		}
+	}
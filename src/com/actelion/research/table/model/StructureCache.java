@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import com.actelion.research.chem.Molecule;
+import com.actelion.research.chem.StereoMolecule;
+import com.actelion.research.table.RowTaskScheduler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded cache of molecules, which were created from the idcodes, coordinates and atom colors
+ * of structure cells for depiction. Molecules are keyed by record ID, column and atom color mode.
+ * If the cache is full, the least recently used molecule is removed.
+ * Views may request the molecules of records near their visible area to be created in advance
+ * on the shared row task pool. A newer request for the same column cancels any unfinished older one.
+ */
+class StructureCache {
+	private static final int MAX_ENTRIES = 4096;
+
+	private final CompoundTableModel mTableModel;
+	private final LinkedHashMap<Long,StereoMolecule> mMoleculeMap;
+	private final AtomicInteger mRequestCounter;
+	private final ConcurrentHashMap<Integer,Integer> mPrefetchRequest;	// current prefetch request per column
+	private int mGeneration;	// incremented on invalidation to not cache molecules created from outdated data
+
+	StructureCache(CompoundTableModel tableModel) {
+		mTableModel = tableModel;
+		mMoleculeMap = new LinkedHashMap<Long,StereoMolecule>(256, 0.75f, true) {
+			private static final long serialVersionUID = 20261017L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long,StereoMolecule> eldest) {
+				return size() > MAX_ENTRIES;
+				}
+			};
+		mRequestCounter = new AtomicInteger();
+		mPrefetchRequest = new ConcurrentHashMap<>();
+		}
+
+	/**
+	 * @param record
+	 * @param column
+	 * @param atomColorMode
+	 * @return shared molecule, which must not be changed, or null if the cell is empty
+	 */
+	StereoMolecule get(CompoundRecord record, int column, int atomColorMode) {
+		return get(record, column, atomColorMode, -1);
+		}
+
+	/**
+	 * @param request -1 or the prefetch request, which must still be current when caching the molecule
+	 */
+	private StereoMolecule get(CompoundRecord record, int column, int atomColorMode, int request) {
+		long key = getKey(record.getID(), column, atomColorMode);
+		int generation;
+		synchronized (mMoleculeMap) {
+			StereoMolecule mol = mMoleculeMap.get(key);
+			if (mol != null)
+				return mol;
+			generation = mGeneration;
+			}
+
+		StereoMolecule mol = mTableModel.getChemicalStructure(record, column, atomColorMode, null);
+		if (mol != null) {
+			mol.ensureHelperArrays(Molecule.cHelperParities);
+			synchronized (mMoleculeMap) {
+				if (generation == mGeneration
+				 && (request == -1 || isCurrentRequest(column, request)))
+					mMoleculeMap.put(key, mol);
+				}
+			}
+		return mol;
+		}
+
+	/**
+	 * Creates and caches the molecules of the given records on a background thread,
+	 * unless they are cached already. Any previous unfinished request for the same column is cancelled.
+	 * @param record records in the order of their expected display
+	 * @param column
+	 * @param atomColorMode
+	 */
+	void prefetch(final CompoundRecord[] record, final int column, final int atomColorMode) {
+		final int request = mRequestCounter.incrementAndGet();
+		mPrefetchRequest.put(column, request);
+		RowTaskScheduler.getPool().execute(() -> {
+			for (CompoundRecord r:record) {
+				if (!isCurrentRequest(column, request))
+					return;
+				get(r, column, atomColorMode, request);
+				}
+			} );
+		}
+
+	/**
+	 * Removes all molecules of one record, e.g. after a cell of the record was changed.
+	 * @param recordID
+	 */
+	void remove(int recordID) {
+		synchronized (mMoleculeMap) {
+			mGeneration++;
+			Iterator<Long> iterator = mMoleculeMap.keySet().iterator();
+			while (iterator.hasNext())
+				if ((int)(iterator.next() >>> 32) == recordID)
+					iterator.remove();
+			}
+		}
+
+	/**
+	 * Removes all molecules and cancels prefetching, e.g. after record IDs or columns have changed.
+	 */
+	void clear() {
+		mPrefetchRequest.clear();	// records passed to prefetch() may not exist anymore
+		synchronized (mMoleculeMap) {
+			mGeneration++;
+			mMoleculeMap.clear();
+			}
+		}
+
+	private boolean isCurrentRequest(int column, int request) {
+		Integer currentRequest = mPrefetchRequest.get(column);
+		return currentRequest != null && currentRequest == request;
+		}
+
+	private static long getKey(int recordID, int column, int atomColorMode) {
+		return ((long)recordID << 32) | ((long)column << 2) | atomColorMode;
+		}
+	}
@@ -761,9 +761,14 @@ public class JCardView extends JPanel implements CompoundTableView, HighlightLis
     }
 
     private int mFocusListFlag = -1;
+    private int mPinnedFocusList = -1;	// list whose flag is kept in mFocusListFlag and must be released
 
     @Override
     public void setFocusList(int no) {
+		if (mPinnedFocusList != -1) {
+			mTableModel.getListHandler().releaseListFlag(mPinnedFocusList);
+			mPinnedFocusList = -1;
+		}
 
     	if(no<0){
     		// then we have to check whats going on:
@@ -788,13 +793,14 @@ public class JCardView extends JPanel implements CompoundTableView, HighlightLis
 			return;
 		}
 
-        int flag = mTableModel.getListHandler().getListFlagNo(no);
-        mFocusListFlag = flag;
+        // the flag is used by the card drawers and stays pinned until the focus changes
+        mFocusListFlag = mTableModel.getListHandler().getListFlagNo(no);
+        mPinnedFocusList = no;
 
         List<CompoundRecord> crList = new ArrayList<>();
         for( int zi = 0; zi<mTableModel.getRowCount();zi++){
             CompoundRecord cri = mTableModel.getRecord(zi);
-            if(cri.isFlagSet(flag)){
+            if(mTableModel.getListHandler().isListMember(cri, no)){
                 crList.add(cri);
             }
         }
@@ -57,7 +57,7 @@ public class JStructureGrid extends JScrollPane
 	private CompoundTableModel			mTableModel;
 	private CompoundTableColorHandler	mColorHandler;
 	private CompoundListSelectionModel	mSelectionModel;
-	private CompoundRecord				mActiveRow,mHighlightedRow;
+	private CompoundRecord				mActiveRow,mHighlightedRow,mPrefetchFirstRecord,mPrefetchLastRecord;
 	private ViewSelectionHelper			mViewSelectionHelper;
 	private JStructureGridContentPanel	mContentPanel;
 	private GridCellSize				mCellSize;
@@ -479,12 +479,12 @@ public class JStructureGrid extends JScrollPane
 				mFocusRow = null;
 				}
 			else {
-				int focusFlag = (mFocusList == cFocusOnSelection) ? CompoundRecord.cFlagSelected
-							  : mTableModel.getListHandler().getListFlagNo(mFocusList);
+				int focusList = (mFocusList == cFocusOnSelection) ? CompoundTableListHandler.LISTINDEX_SELECTION : mFocusList;
+				CompoundTableListHandler listHandler = mTableModel.getListHandler();
 		
 				mFocusCount = 0;
 				for (int row=0; row<mTableModel.getRowCount(); row++)
-					if (mTableModel.getRecord(row).isFlagSet(focusFlag))
+					if (listHandler.isListMember(mTableModel.getRecord(row), focusList))
 						mFocusCount++;
 		
 				mFocusRow = new int[mTableModel.getRowCount()];
@@ -492,7 +492,7 @@ public class JStructureGrid extends JScrollPane
 				int nonFocusIndex = mFocusCount;
 		
 				for (int row=0; row<mTableModel.getRowCount(); row++)
-					if (mTableModel.getRecord(row).isFlagSet(focusFlag))
+					if (listHandler.isListMember(mTableModel.getRecord(row), focusList))
 						mFocusRow[focusIndex++] = row;
 					else
 						mFocusRow[nonFocusIndex++] = row;
@@ -1025,9 +1025,10 @@ public class JStructureGrid extends JScrollPane
 			int coordinateColumn = (mStructureColumn == -1) ? -1
 					: mTableModel.getChildColumn(mStructureColumn, CompoundTableModel.cColumnType2DCoordinates, null);
 
+			prefetchAdjacentStructures(firstVisible, firstNonVisible, coordinateColumn);
+
 				// create and add not yet available structure images to imagelist
 			if (mSelectionChanged || firstNonVisible - firstVisible > mImageList.size()) {
-				StereoMolecule molContainer = new StereoMolecule();
 				int indexAfterLastImage = mIndexOfFirstImage + mImageList.size();
 				for (int i=firstVisible; i<firstNonVisible; i++) {
 					if ((i < mIndexOfFirstImage
@@ -1190,7 +1191,8 @@ public class JStructureGrid extends JScrollPane
 								CompoundTableChemistryCellRenderer.showOnTheFlyAtomCoordsExceededMessage(ig, bounds);
 								}
 							else {
-								StereoMolecule mol = mTableModel.getChemicalStructure(getRecord(i), mStructureColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL, molContainer);
+								// validateView() scales the coordinates; thus, we depict a copy of the shared cached molecule
+								StereoMolecule mol = mTableModel.getCachedChemicalStructure(getRecord(i), mStructureColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL, new StereoMolecule());
 								if (mol != null) {
 									AbstractDepictor depictor = new Depictor2D(mol, mStructureDrawMode);
 									depictor.validateView(ig,
@@ -1276,6 +1278,48 @@ public class JStructureGrid extends JScrollPane
 			}
 		}
 
+	/**
+	 * Lets the table model create the molecules of one page of records after and one page before
+	 * the visible ones in the background, such that they can be drawn without delay when scrolling.
+	 * Molecules, which would need on-the-fly coordinates, but are too large for that, are skipped.
+	 * @param firstVisible
+	 * @param firstNonVisible
+	 * @param coordinateColumn
+	 */
+	private void prefetchAdjacentStructures(int firstVisible, int firstNonVisible, int coordinateColumn) {
+		if (mStructureColumn == -1 || firstVisible >= firstNonVisible)
+			return;
+
+		// don't repeat the request on repaints without scrolling
+		CompoundRecord firstRecord = getRecord(firstVisible);
+		CompoundRecord lastRecord = getRecord(firstNonVisible-1);
+		if (firstRecord == mPrefetchFirstRecord && lastRecord == mPrefetchLastRecord)
+			return;
+
+		mPrefetchFirstRecord = firstRecord;
+		mPrefetchLastRecord = lastRecord;
+
+		int pageSize = firstNonVisible - firstVisible;
+		int rowCount = mTableModel.getRowCount();
+		ArrayList<CompoundRecord> recordList = new ArrayList<>();
+		IDCodeParser parser = new IDCodeParser();
+		for (int i=firstNonVisible; i<Math.min(rowCount, firstNonVisible+pageSize); i++)
+			addPrefetchRecord(getRecord(i), coordinateColumn, parser, recordList);
+		for (int i=firstVisible-1; i>=Math.max(0, firstVisible-pageSize); i--)
+			addPrefetchRecord(getRecord(i), coordinateColumn, parser, recordList);
+
+		mTableModel.prefetchChemicalStructures(recordList.toArray(new CompoundRecord[0]),
+				mStructureColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL);
+		}
+
+	private void addPrefetchRecord(CompoundRecord record, int coordinateColumn, IDCodeParser parser, ArrayList<CompoundRecord> recordList) {
+		byte[] idcode = (byte[])record.getData(mStructureColumn);
+		if (idcode != null
+		 && ((coordinateColumn != -1 && record.getData(coordinateColumn) != null)
+		  || parser.getAtomCount(idcode, 0) <= CompoundTableChemistryCellRenderer.ON_THE_FLY_COORD_MAX_ATOMS))
+			recordList.add(record);
+		}
+
 	class GridCellSize {
 		protected int border;
 		protected int totalWidth;
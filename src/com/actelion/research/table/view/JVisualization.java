@@ -945,16 +945,24 @@ public abstract class JVisualization extends JComponent
 		return mFocusList;
 		}
 
-	protected int getFocusFlag() {
-		return (mFocusList == FocusableView.cFocusNone) ? -1
-			 : (mFocusList == FocusableView.cFocusOnSelection) ? CompoundRecord.cFlagSelected
-			 : mTableModel.getListHandler().getListFlagNo(mFocusList);
+	/**
+	 * @param record
+	 * @return true, if record belongs to the focus list or selection, or if there is no focus
+	 */
+	protected boolean isInFocus(CompoundRecord record) {
+		return (mFocusList == FocusableView.cFocusNone) ? true
+			 : (mFocusList == FocusableView.cFocusOnSelection) ? record.isSelected()
+			 : mTableModel.getListHandler().isListMember(record, mFocusList);
 		}
 
-	protected int getLabelFlag() {
-		return (mLabelList == cLabelsOnAllRows) ? getFocusFlag()
-				: (mLabelList == FocusableView.cFocusOnSelection) ? CompoundRecord.cFlagSelected
-				: mTableModel.getListHandler().getListFlagNo(mLabelList);
+	/**
+	 * @param record
+	 * @return true, if record belongs to the label list or selection; if labels are shown on all rows, whether it is in focus
+	 */
+	protected boolean isLabelListMember(CompoundRecord record) {
+		return (mLabelList == cLabelsOnAllRows) ? isInFocus(record)
+				: (mLabelList == FocusableView.cFocusOnSelection) ? record.isSelected()
+				: mTableModel.getListHandler().isListMember(record, mLabelList);
 		}
 
 	public float getFontSize() {
@@ -1066,8 +1074,8 @@ public abstract class JVisualization extends JComponent
 			}
 
 		if (CompoundTableListHandler.isListColumn(mMarkerSizeColumn))
-			return getMarkerSizeFromHitlistMembership(vp.record.isFlagSet(
-				mTableModel.getListHandler().getListFlagNo(CompoundTableListHandler.convertToListIndex(mMarkerSizeColumn))));
+			return getMarkerSizeFromHitlistMembership(mTableModel.getListHandler().isListMember(
+				vp.record, CompoundTableListHandler.convertToListIndex(mMarkerSizeColumn)));
 
 		return getMarkerSizeFromValue(vp.record.getDouble(mMarkerSizeColumn));
 		}
@@ -1189,9 +1197,9 @@ public abstract class JVisualization extends JComponent
 			}
 		else if (CompoundTableListHandler.isListColumn(mMarkerColor.getColorColumn())) {
 			int listIndex = CompoundTableListHandler.convertToListIndex(mMarkerColor.getColorColumn());
-			int flagNo = mTableModel.getListHandler().getListFlagNo(listIndex);
+			CompoundTableListHandler listHandler = mTableModel.getListHandler();
 			for (int i=0; i<mDataPoints; i++)
-				mPoint[i].colorIndex = (short)(mPoint[i].record.isFlagSet(flagNo) ?
+				mPoint[i].colorIndex = (short)(listHandler.isListMember(mPoint[i].record, listIndex) ?
 						VisualizationColor.cSpecialColorCount : VisualizationColor.cSpecialColorCount + 1);
 			}
 		else if (mTableModel.isDescriptorColumn(mMarkerColor.getColorColumn())) {
@@ -1501,9 +1509,9 @@ public abstract class JVisualization extends JComponent
 			}
 		else if (mSplittingColumn[1] == cColumnUnassigned) {
 			if (CompoundTableListHandler.isListOrSelectionColumn(mSplittingColumn[0])) {
-				int flagNo = mTableModel.getListHandler().getListFlagNo(CompoundTableListHandler.convertToListIndex(mSplittingColumn[0]));
+				int listIndex = CompoundTableListHandler.convertToListIndex(mSplittingColumn[0]);
 				for (int i=0; i<mDataPoints; i++)
-					mPoint[i].hvIndex = mPoint[i].record.isFlagSet(flagNo) ? 0 : 1;
+					mPoint[i].hvIndex = mTableModel.getListHandler().isListMember(mPoint[i].record, listIndex) ? 0 : 1;
 				}
 			else if (mShowEmptyInSplitView) {
 				for (int i=0; i<mDataPoints; i++)
@@ -1515,24 +1523,22 @@ public abstract class JVisualization extends JComponent
 				}
 			}
 		else {
-			int flagNo1 = -1;
-			if (CompoundTableListHandler.isListOrSelectionColumn(mSplittingColumn[0]))
-				flagNo1 = mTableModel.getListHandler().getListFlagNo(CompoundTableListHandler.convertToListIndex(mSplittingColumn[0]));
-
-			int flagNo2 = -1;
-			if (CompoundTableListHandler.isListOrSelectionColumn(mSplittingColumn[1]))
-				flagNo2 = mTableModel.getListHandler().getListFlagNo(CompoundTableListHandler.convertToListIndex(mSplittingColumn[1]));
+			CompoundTableListHandler listHandler = mTableModel.getListHandler();
+			int listIndex1 = CompoundTableListHandler.isListOrSelectionColumn(mSplittingColumn[0]) ?
+					CompoundTableListHandler.convertToListIndex(mSplittingColumn[0]) : CompoundTableListHandler.LISTINDEX_NONE;
+			int listIndex2 = CompoundTableListHandler.isListOrSelectionColumn(mSplittingColumn[1]) ?
+					CompoundTableListHandler.convertToListIndex(mSplittingColumn[1]) : CompoundTableListHandler.LISTINDEX_NONE;
 
 			for (int i=0; i<mDataPoints; i++) {
 				CompoundRecord record = mPoint[i].record;
-				int index1 = (flagNo1 != -1) ? (record.isFlagSet(flagNo1) ? 0 : 1)
+				int index1 = (listIndex1 != CompoundTableListHandler.LISTINDEX_NONE) ? (listHandler.isListMember(record, listIndex1) ? 0 : 1)
 							: mShowEmptyInSplitView ? mTableModel.getCategoryIndex(mSplittingColumn[0], record)
 							: mVisibleCategoryFromCategory[mSplittingColumn[0]][mTableModel.getCategoryIndex(mSplittingColumn[0], record)];
 				if (index1 == -1) {
 					mPoint[i].hvIndex = -1;
 					continue;
 					}
-				int index2 = (flagNo2 != -1) ? (record.isFlagSet(flagNo2) ? 0 : 1)
+				int index2 = (listIndex2 != CompoundTableListHandler.LISTINDEX_NONE) ? (listHandler.isListMember(record, listIndex2) ? 0 : 1)
 							: mShowEmptyInSplitView ? mTableModel.getCategoryIndex(mSplittingColumn[1], record)
 							: mVisibleCategoryFromCategory[mSplittingColumn[1]][mTableModel.getCategoryIndex(mSplittingColumn[1], record)];
 				if (index2 == -1) {
@@ -2497,13 +2503,13 @@ public abstract class JVisualization extends JComponent
 			}
 		}
 
-	protected int getColorIndex(VisualizationPoint vp, int colorListLength, int focusFlagNo) {
+	protected int getColorIndex(VisualizationPoint vp, int colorListLength, boolean considerFocus) {
 		int colorIndex = (mUseAsFilterFlagNo != -1 && !mTableModel.isRowFlagSuspended(mUseAsFilterFlagNo)
 						&& !vp.record.isFlagSet(mUseAsFilterFlagNo)) ? colorListLength+1
 					   : (vp.record.isSelected() && mFocusList != FocusableView.cFocusOnSelection) ?
 						 colorListLength : vp.colorIndex;
 
-		if (focusFlagNo != -1 && !vp.record.isFlagSet(focusFlagNo))
+		if (considerFocus && !isInFocus(vp.record))
 			colorIndex += colorListLength+2;
 
 		return colorIndex;
@@ -2518,9 +2524,9 @@ public abstract class JVisualization extends JComponent
 		calculateCategoryCounts(-1);
 
 		Color[] colorList = mMarkerColor.getColorList();
-		int focusFlagNo = getFocusFlag();
+		boolean considerFocus = (mFocusList != FocusableView.cFocusNone);
 		int basicColorCount = colorList.length + 2;
-		int colorCount = basicColorCount * ((focusFlagNo == -1) ? 1 : 2);
+		int colorCount = basicColorCount * (considerFocus ? 2 : 1);
 
 		// determine the number of visible bars within the view, or within one view in case we have split views
 		int catCount = mCaseSeparationCategoryCount;
@@ -2560,7 +2566,7 @@ public abstract class JVisualization extends JComponent
 			mChartInfo.color[i] = colorList[i];
 		mChartInfo.color[colorList.length] = VisualizationColor.cSelectedColor;
 		mChartInfo.color[colorList.length+1] = VisualizationColor.cUseAsFilterColor;
-		if (focusFlagNo != -1) {
+		if (considerFocus) {
 			for (int i=0; i<colorList.length; i++)
 				mChartInfo.color[i+basicColorCount] = VisualizationColor.grayOutColor(colorList[i]);
 			mChartInfo.color[colorList.length+basicColorCount] = VisualizationColor.grayOutColor(VisualizationColor.cSelectedColor);
@@ -2571,7 +2577,7 @@ public abstract class JVisualization extends JComponent
 			VisualizationPoint vp = mPoint[i];
 			if (isVisibleInBarsOrPies(vp)) {
 				int cat = getChartCategoryIndex(vp);
-				int colorIndex = getColorIndex(vp, colorList.length, focusFlagNo);
+				int colorIndex = getColorIndex(vp, colorList.length, considerFocus);
 				float chartValue = (mChartColumn == -1) ? Float.NaN : vp.record.getDouble(mChartColumn);
 				float widthValue = (mMarkerSizeColumn == -1) ? Float.NaN : vp.record.getDouble(mMarkerSizeColumn);
 				mChartInfo.addValue(vp.hvIndex, cat, colorIndex, chartValue, widthValue);
@@ -2598,7 +2604,7 @@ public abstract class JVisualization extends JComponent
 			if (isVisibleInBarsOrPies(vp)) {
 				int hv = vp.hvIndex;
 				int cat = getChartCategoryIndex(vp);
-				int colorIndex = getColorIndex(vp, colorList.length, focusFlagNo);
+				int colorIndex = getColorIndex(vp, colorList.length, considerFocus);
 				vp.chartGroupIndex = count[hv][cat][colorIndex];
 				count[hv][cat][colorIndex]++;
 				}
@@ -2900,9 +2906,9 @@ public abstract class JVisualization extends JComponent
 		calculateCategoryCounts(doubleAxis);
 
 		Color[] colorList = mMarkerColor.getColorList();
-		int focusFlagNo = getFocusFlag();
+		boolean considerFocus = (mFocusList != FocusableView.cFocusNone);
 		int basicColorCount = colorList.length + 2;
-		int colorCount = basicColorCount * ((focusFlagNo == -1) ? 1 : 2);
+		int colorCount = basicColorCount * (considerFocus ? 2 : 1);
 
 		int catCount = mCaseSeparationCategoryCount;
 		for (int axis=0; axis<mDimensions; axis++)
@@ -3043,7 +3049,7 @@ public abstract class JVisualization extends JComponent
 			boxPlotInfo.color[i] = colorList[i];
 		boxPlotInfo.color[colorList.length] = VisualizationColor.cSelectedColor;
 		boxPlotInfo.color[colorList.length+1] = VisualizationColor.cUseAsFilterColor;
-		if (focusFlagNo != -1) {
+		if (considerFocus) {
 			for (int i=0; i<colorList.length; i++)
 				boxPlotInfo.color[i+basicColorCount] = VisualizationColor.grayOutColor(colorList[i]);
 			boxPlotInfo.color[colorList.length+basicColorCount] = VisualizationColor.grayOutColor(VisualizationColor.cSelectedColor);
@@ -3061,7 +3067,7 @@ public abstract class JVisualization extends JComponent
 					boxPlotInfo.outlierCount[hv][cat]++;
 					}
 				else {
-					int colorIndex = getColorIndex(vp, colorList.length, focusFlagNo);
+					int colorIndex = getColorIndex(vp, colorList.length, considerFocus);
 					boxPlotInfo.pointsInCategory[hv][cat]++;
 					boxPlotInfo.pointsInColorCategory[hv][cat][colorIndex]++;
 					}
@@ -3087,7 +3093,7 @@ public abstract class JVisualization extends JComponent
 						vp.chartGroupIndex = -1;
 						}
 					else {
-						int colorIndex = getColorIndex(vp, colorList.length, focusFlagNo);
+						int colorIndex = getColorIndex(vp, colorList.length, considerFocus);
 						vp.chartGroupIndex = count[hv][cat][colorIndex];
 						count[hv][cat][colorIndex]++;
 						}
@@ -3845,9 +3851,9 @@ public abstract class JVisualization extends JComponent
 			for (int i=0; i<mDataPoints; i++)
 				mPoint[i].shape = 0;
 		else if (CompoundTableListHandler.isListColumn(mMarkerShapeColumn)) {
-			int flagNo = mTableModel.getListHandler().getListFlagNo(CompoundTableListHandler.convertToListIndex(mMarkerShapeColumn));
+			int listIndex = CompoundTableListHandler.convertToListIndex(mMarkerShapeColumn);
 			for (int i=0; i<mDataPoints; i++)
-				mPoint[i].shape = (byte)(mPoint[i].record.isFlagSet(flagNo) ? 0 : 1);
+				mPoint[i].shape = (byte)(mTableModel.getListHandler().isListMember(mPoint[i].record, listIndex) ? 0 : 1);
 			}
 		else {
 			for (int i=0; i<mDataPoints; i++)
@@ -4571,8 +4577,7 @@ public abstract class JVisualization extends JComponent
 			String value = null;
 			if (CompoundTableListHandler.isListColumn(column)) {
 				int listIndex = CompoundTableListHandler.convertToListIndex(column);
-				int flagNo = mTableModel.getListHandler().getListFlagNo(listIndex);
-				title = record.isFlagSet(flagNo) ? "Member of '" : "Not member of '";
+				title = mTableModel.getListHandler().isListMember(record, listIndex) ? "Member of '" : "Not member of '";
 				value = mTableModel.getListHandler().getListName(listIndex);
 				}
 			else {
@@ -4969,9 +4974,8 @@ public abstract class JVisualization extends JComponent
 			if (CompoundTableListHandler.isListColumn(mMarkerShapeColumn)) {
 				int listIndex = CompoundTableListHandler.convertToListIndex(mMarkerShapeColumn);
 				if (e.getListIndex() == listIndex) {
-					int flagNo = mTableModel.getListHandler().getListFlagNo(listIndex);
 					for (int i=0; i<mDataPoints; i++)
-						mPoint[i].shape = (byte)(mPoint[i].record.isFlagSet(flagNo) ? 0 : 1);
+						mPoint[i].shape = (byte)(mTableModel.getListHandler().isListMember(mPoint[i].record, listIndex) ? 0 : 1);
 					invalidateOffImage(false);
 					}
 				}
@@ -5081,7 +5085,7 @@ public abstract class JVisualization extends JComponent
 	 */
 	protected boolean isVisibleInModel(VisualizationPoint point) {
 		if (mLocalExclusionList != CompoundTableListHandler.LISTINDEX_NONE
-				&& !point.record.isFlagSet(mTableModel.getListHandler().getListFlagNo(mLocalExclusionList)))
+				&& !mTableModel.getListHandler().isListMember(point.record, mLocalExclusionList))
 			return false;
 		return mIsIgnoreGlobalExclusion ? true
 				: (mUseAsFilterFlagNo == -1) ? mTableModel.isVisible(point.record)
@@ -5294,12 +5298,11 @@ public abstract class JVisualization extends JComponent
 					if (mLocalExclusionFlagNo != -1) {
 						boolean excludedRecordsFound = false;
 						long mask = mTableModel.convertRowFlagToMask(mLocalExclusionFlagNo);
-						long listMask = mTableModel.getListHandler().getListMask(mLocalExclusionList);
 						for (int i=0; i<mDataPoints; i++) {
 							if ((mPoint[i].exclusionFlags & mActiveExclusionFlags) == 0
 							 || (mShowNaNValues && (mPoint[i].exclusionFlags & ~EXCLUSION_FLAGS_NAN) == 0)
 							 || (mLocalExclusionList != CompoundTableListHandler.LISTINDEX_NONE
-									&& (mPoint[i].record.getFlags() & listMask) == 0)) {
+									&& !mTableModel.getListHandler().isListMember(mPoint[i].record, mLocalExclusionList))) {
 								mPoint[i].record.clearFlags(mask);
 								}
 							else {
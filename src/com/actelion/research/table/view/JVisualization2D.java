@@ -878,13 +878,13 @@ public class JVisualization2D extends JVisualization {
 				drawConnectionLines(true, true);
 			}
 		else {
-			int focusFlagNo = getFocusFlag();
+			boolean considerFocus = (mFocusList != FocusableView.cFocusNone);
 			int firstFocusIndex = 0;
-			if (focusFlagNo != -1) {
+			if (considerFocus) {
 				int index2 = mDataPoints-1;
 				while (firstFocusIndex<index2) {
-					if (mPoint[firstFocusIndex].record.isFlagSet(focusFlagNo)) {
-						while (mPoint[index2].record.isFlagSet(focusFlagNo)
+					if (isInFocus(mPoint[firstFocusIndex].record)) {
+						while (isInFocus(mPoint[index2].record)
 							&& index2 > firstFocusIndex)
 							index2--;
 						if (index2 == firstFocusIndex)
@@ -920,7 +920,7 @@ public class JVisualization2D extends JVisualization {
 				  || mTreeNodeList != null)) {
 					VisualizationPoint vp = mPoint[i];
 					vp.widthOrAngle1 = vp.heightOrAngle2 = (int)getMarkerSize(vp);
-					boolean inFocus = (focusFlagNo == -1 || vp.record.isFlagSet(focusFlagNo));
+					boolean inFocus = isInFocus(vp.record);
 
 					Color color = (isFilter && !vp.record.isFlagSet(mUseAsFilterFlagNo)) ? cUseAsFilterColor
 							: (vp.record.isSelected() && useSelectionColor) ? VisualizationColor.cSelectedColor
@@ -1003,7 +1003,6 @@ public class JVisualization2D extends JVisualization {
 
 		mLabelHelper = new LabelHelper();
 		MarkerLabelInfo mli = new MarkerLabelInfo();
-		int labelFlagNo = getLabelFlag();
 		TreeMap<byte[],VisualizationPoint> oneLabelPerCategoryMap = buildOnePerCategoryMap();
 		boolean isTreeView = isTreeViewGraph();
 
@@ -1020,7 +1019,7 @@ public class JVisualization2D extends JVisualization {
 			  || mChartType == cChartTypeWhiskerPlot
 			  || vp.chartGroupIndex == -1
 			  || mTreeNodeList != null)) {
-				if ((mLabelList == cLabelsOnAllRows || (labelFlagNo != -1 && vp.record.isFlagSet(labelFlagNo)))
+				if ((mLabelList == cLabelsOnAllRows || isLabelListMember(vp.record))
 				 && (oneLabelPerCategoryMap==null || vp==oneLabelPerCategoryMap.get(vp.record.getData(mOnePerCategoryLabelCategoryColumn)))) {
 					for (int j = 0; j<mLabelColumn.length; j++) {
 						if (mLabelColumn[j] != -1) {
@@ -1049,7 +1048,7 @@ public class JVisualization2D extends JVisualization {
 		if (isMolecule) {
 			if (mLabelMolecule == null)
 				mLabelMolecule = new StereoMolecule();
-			StereoMolecule mol = mTableModel.getChemicalStructure(vp.record, column, CompoundTableModel.ATOM_COLOR_MODE_EXPLICIT, mLabelMolecule);
+			StereoMolecule mol = mTableModel.getCachedChemicalStructure(vp.record, column, CompoundTableModel.ATOM_COLOR_MODE_EXPLICIT, mLabelMolecule);
 			if (mol != null) {
 				float zoom = Float.isNaN(mMarkerSizeZoomAdaption) ? 1f : mMarkerSizeZoomAdaption;
 				mli.depictor = new Depictor2D(mol, Depictor2D.cDModeSuppressChiralText);
@@ -1480,10 +1479,6 @@ public class JVisualization2D extends JVisualization {
 		}
 
 	private void drawCategoryConnectionLines(boolean considerFocus, boolean inFocus) {
-		long focusMask = (mFocusList == FocusableView.cFocusNone) ? 0
-					   : (mFocusList == FocusableView.cFocusOnSelection) ? CompoundRecord.cFlagMaskSelected
-					   : mTableModel.getListHandler().getListMask(mFocusList);
-
 		int fromIndex1 = mConnectionFromIndex1;
 		int fromIndex2 = mConnectionFromIndex2;
 
@@ -1508,7 +1503,7 @@ public class JVisualization2D extends JVisualization {
 							if (isVisibleExcludeNaN(mConnectionLinePoint[j])
 							 && (!considerFocus
 							  || (inFocus
-								^ (mConnectionLinePoint[j].record.getFlags() & focusMask) == 0)))
+								^ !isInFocus(mConnectionLinePoint[j].record))))
 								drawConnectionLine(mConnectionLinePoint[i], mConnectionLinePoint[j], considerFocus && !inFocus, 0.0f, false);
 
 			fromIndex1 = toIndex1;
@@ -1526,9 +1521,6 @@ public class JVisualization2D extends JVisualization {
 		}
 
 	private void drawReferenceConnectionLines(boolean considerFocus, boolean inFocus) {
-		long focusMask = (mFocusList == FocusableView.cFocusNone) ? 0
-					   : (mFocusList == FocusableView.cFocusOnSelection) ? CompoundRecord.cFlagMaskSelected
-					   : mTableModel.getListHandler().getListMask(mFocusList);
 		int strengthColumn = mTableModel.findColumn(mTableModel.getColumnProperty(mConnectionColumn,
 				CompoundTableConstants.cColumnPropertyReferenceStrengthColumn));
 		boolean isRedundant = CompoundTableConstants.cColumnPropertyReferenceTypeRedundant.equals(
@@ -1547,7 +1539,7 @@ public class JVisualization2D extends JVisualization {
 					 && isVisible(vp2)
 					 && (!considerFocus
 					  || (inFocus
-						^ (vp1.record.getFlags() & vp2.record.getFlags() & focusMask) == 0))) {
+						^ !(isInFocus(vp1.record) && isInFocus(vp2.record))))) {
 						if (strength > 0f)
 							drawConnectionLine(vp1, vp2, considerFocus && !inFocus, 1f-strength, !isRedundant);
 						}
@@ -1593,7 +1585,7 @@ public class JVisualization2D extends JVisualization {
 							 && (!isRedundant || (vp1.record.getID() < vp2.record.getID()))
 							 && (!considerFocus
 							  || (inFocus
-							   ^ (vp1.record.getFlags() & vp2.record.getFlags() & focusMask) == 0))) {
+							   ^ !(isInFocus(vp1.record) && isInFocus(vp2.record))))) {
 								float transparency = 0.0f;
 								if (strength != null) {
 									try {
@@ -1699,10 +1691,10 @@ public class JVisualization2D extends JVisualization {
 		if (mChartInfo.barWidth < 1)
 			mChartInfo.barWidth = 1;
 
-		int focusFlagNo = getFocusFlag();
+		boolean considerFocus = (mFocusList != FocusableView.cFocusNone);
 		int colorListLength = mMarkerColor.getColorList().length;
 		int basicColorCount = colorListLength + 2;
-		int colorCount = basicColorCount * ((focusFlagNo == -1) ? 1 : 2);
+		int colorCount = basicColorCount * (considerFocus ? 2 : 1);
 		int catCount = getCategoryVisCount(0)* getCategoryVisCount(1)*mCaseSeparationCategoryCount;
 
 		float barBaseOffset = (mChartInfo.barBase - mChartInfo.axisMin) * appliedHeight / axisRange;
@@ -1860,7 +1852,7 @@ public class JVisualization2D extends JVisualization {
 			if (isVisibleInBarsOrPies(vp)) {
 				int hv = vp.hvIndex;
 				int cat = getChartCategoryIndex(vp);
-				int colorIndex = getColorIndex(vp, colorListLength, focusFlagNo);
+				int colorIndex = getColorIndex(vp, colorListLength, considerFocus);
 
 				float width = mChartInfo.barWidth;
 				if (mChartInfo.useProportionalWidths())
@@ -1925,7 +1917,7 @@ public class JVisualization2D extends JVisualization {
 			for (int i=0; i<mDataPoints; i++) {
 				VisualizationPoint vp = mPoint[i];
 				if (isVisibleInBarsOrPies(vp) && labelHelper.hasLabels(vp)) {
-					Color color = mChartInfo.color[getColorIndex(vp, colorListLength, focusFlagNo)];
+					Color color = mChartInfo.color[getColorIndex(vp, colorListLength, considerFocus)];
 					labelHelper.prepareLabels(vp);
 					labelHelper.drawLabelLines(vp, color);
 					drawMarkerLabels(labelHelper.getLabelInfo(), color, color, false);
@@ -1999,10 +1991,10 @@ public class JVisualization2D extends JVisualization {
 		float cellWidth = (float)baseRect.width / (float)getCategoryVisCount(0);
 		float cellSize = Math.min(cellWidth, cellHeight);
 
-		int focusFlagNo = getFocusFlag();
+		boolean considerFocus = (mFocusList != FocusableView.cFocusNone);
 		int colorListLength = mMarkerColor.getColorList().length;
 		int basicColorCount = mMarkerColor.getColorList().length + 2;
-		int colorCount = basicColorCount * ((focusFlagNo == -1) ? 1 : 2);
+		int colorCount = basicColorCount * (considerFocus ? 2 : 1);
 		int catCount = mCaseSeparationCategoryCount* getCategoryVisCount(0)* getCategoryVisCount(1);
 
 		mChartInfo.pieSize = new float[mHVCount][catCount];
@@ -2131,7 +2123,7 @@ public class JVisualization2D extends JVisualization {
 				int cat = getChartCategoryIndex(vp);
 				float angle = 0f;
 				if (mChartInfo.useProportionalFractions()) {
-					int colorIndex = getColorIndex(vp, colorListLength, focusFlagNo);
+					int colorIndex = getColorIndex(vp, colorListLength, considerFocus);
 					float fractionAngle = 360f * Math.abs(vp.record.getDouble(mChartColumn))
 										/ mChartInfo.absValueSum[hv][cat];
 					vp.widthOrAngle1 = pieColorEdge[hv][cat][colorIndex];
@@ -2163,9 +2155,9 @@ public class JVisualization2D extends JVisualization {
 
 		mChartInfo.barWidth = Math.min(0.2f * cellHeight, 0.5f * cellWidth / mCaseSeparationCategoryCount);
 
-		int focusFlagNo = getFocusFlag();
+		boolean considerFocus = (mFocusList != FocusableView.cFocusNone);
 		int basicColorCount = mMarkerColor.getColorList().length + 2;
-		int colorCount = basicColorCount * ((focusFlagNo == -1) ? 1 : 2);
+		int colorCount = basicColorCount * (considerFocus ? 2 : 1);
 		int axisCatCount = getCategoryVisCount(boxPlotInfo.barAxis == 1 ? 0 : 1);
 		int catCount = axisCatCount * mCaseSeparationCategoryCount;
 
@@ -3984,9 +3976,9 @@ public class JVisualization2D extends JVisualization {
 				((VisualizationPoint2D)mPoint[i]).backgroundColorIndex = VisualizationColor.cDefaultDataColorIndex;
 		else if (CompoundTableListHandler.isListColumn(mBackgroundColor.getColorColumn())) {
 			int listIndex = CompoundTableListHandler.convertToListIndex(mBackgroundColor.getColorColumn());
-			int flagNo = mTableModel.getListHandler().getListFlagNo(listIndex);
+			CompoundTableListHandler listHandler = mTableModel.getListHandler();
 			for (int i=0; i<mDataPoints; i++)
-				((VisualizationPoint2D)mPoint[i]).backgroundColorIndex = mPoint[i].record.isFlagSet(flagNo) ?
+				((VisualizationPoint2D)mPoint[i]).backgroundColorIndex = listHandler.isListMember(mPoint[i].record, listIndex) ?
 						VisualizationColor.cSpecialColorCount : VisualizationColor.cSpecialColorCount + 1;
 			}
 		else if (mTableModel.isDescriptorColumn(mBackgroundColor.getColorColumn()))
@@ -4938,12 +4930,11 @@ public class JVisualization2D extends JVisualization {
 		float rangeY = yMax - yMin;
 		boolean considerVisibleRecords = (mBackgroundColorConsidered == BACKGROUND_VISIBLE_RECORDS) || (mTreeNodeList != null);
 		boolean considerAllRecords = (mBackgroundColorConsidered == BACKGROUND_ALL_RECORDS && !considerVisibleRecords);
-		int listFlagNo = (considerVisibleRecords || considerAllRecords) ? -1
-						: mTableModel.getListHandler().getListFlagNo(mBackgroundColorConsidered);
+		CompoundTableListHandler listHandler = mTableModel.getListHandler();
 		for (int i=0; i<mDataPoints; i++) {
 			if (considerAllRecords
 			 || (considerVisibleRecords && isVisibleExcludeNaN(mPoint[i]))
-			 || (!considerVisibleRecords && mPoint[i].record.isFlagSet(listFlagNo)))	{
+			 || (!considerVisibleRecords && listHandler.isListMember(mPoint[i].record, mBackgroundColorConsidered)))	{
 				float valueX;
 				float valueY;
 				if (mTreeNodeList != null) {
@@ -5583,14 +5574,12 @@ public class JVisualization2D extends JVisualization {
 		private Rectangle mBaseBounds,mBaseGraphRect;
 		private MarkerLabelInfo[] mLabelInfo;
 		private TreeMap<byte[],VisualizationPoint> mOneLabelPerCategoryMap;
-		private int mLabelFlagNo;
 		private boolean mIsTreeView;
 		private LabelPosition2D[][] mLabelPosition;
 
 		public LabelHelper(Rectangle baseBounds, Rectangle baseGraphRect) {
 			mBaseBounds = baseBounds;
 			mBaseGraphRect = baseGraphRect;
-			mLabelFlagNo = getLabelFlag();
 			mOneLabelPerCategoryMap = buildOnePerCategoryMap();
 			mLabelInfo = new MarkerLabelInfo[mLabelColumn.length];
 			mIsTreeView = isTreeViewGraph();
@@ -5601,7 +5590,7 @@ public class JVisualization2D extends JVisualization {
 
 		public boolean hasLabels(VisualizationPoint vp) {
 			return (mLabelList == cLabelsOnAllRows
-				|| (mLabelFlagNo != -1 && vp.record.isFlagSet(mLabelFlagNo)))
+				|| isLabelListMember(vp.record))
 			   && (mOneLabelPerCategoryMap == null
 				|| vp == mOneLabelPerCategoryMap.get(vp.record.getData(mOnePerCategoryLabelCategoryColumn)));
 			}
@@ -810,7 +810,7 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 		if (isMolecule) {
 			if (mLabelMolecule == null)
 				mLabelMolecule = new StereoMolecule();
-			StereoMolecule mol = mTableModel.getChemicalStructure(vp.record, mLabelColumn[position], CompoundTableModel.ATOM_COLOR_MODE_NONE, mLabelMolecule);
+			StereoMolecule mol = mTableModel.getCachedChemicalStructure(vp.record, mLabelColumn[position], CompoundTableModel.ATOM_COLOR_MODE_NONE, mLabelMolecule);
 			if (mol == null)
 				return null;
 
@@ -1348,9 +1348,9 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 		int catCount = getCategoryVisCount(0)* getCategoryVisCount(1)* getCategoryVisCount(2);
 
 		if (mChartInfo.barAxis == axis) {
-			int focusFlagNo = getFocusFlag();
+			boolean considerFocus = (mFocusList != FocusableView.cFocusNone);
 			int basicColorCount = mMarkerColor.getColorList().length + 1;
-			int colorCount = basicColorCount * ((focusFlagNo == -1) ? 1 : 2);
+			int colorCount = basicColorCount * (considerFocus ? 2 : 1);
 	
 			float barBaseOffset = (mChartInfo.barBase - mChartInfo.axisMin) * cellSize / axisSize;
 	
@@ -1406,7 +1406,7 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 				if (isVisibleExcludeNaN(vp)) {
 					int cat = getChartCategoryIndex(mPoint[i]);
 					if (mChartInfo.useProportionalFractions()) {
-						int colorIndex = getColorIndex(vp, colorListLength, focusFlagNo);
+						int colorIndex = getColorIndex(vp, colorListLength, considerFocus);
 						float fractionHeight = Math.abs(vp.record.getDouble(mChartColumn)) * mChartInfo.absValueFactor[0][cat];
 						((VisualizationPoint3D)vp).coord[axis] = barColorEdge[cat][colorIndex] + 0.5f * fractionHeight;
 						barColorEdge[cat][colorIndex] += fractionHeight;
@@ -2132,8 +2132,6 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 		}
 
 	private void drawMarkers(Rectangle clipRect) {
-		int focusFlagNo = getFocusFlag();
-		int labelFlagNo = getLabelFlag();
 
 		boolean showAnyLabels = showAnyLabels();
 		boolean isTreeView = isTreeViewGraph();
@@ -2149,11 +2147,11 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 		for (int i=mDataPoints-1; i>=0; i--) {
 			boolean drawLabels = false;
 			if (isVisible(mPoint[i])) {
-				boolean outOfFocus = focusFlagNo != -1 && !mPoint[i].record.isFlagSet(focusFlagNo);
+				boolean outOfFocus = !isInFocus(mPoint[i].record);
 				VisualizationPoint3D vp = (VisualizationPoint3D)mPoint[i];
 
 				drawLabels = showAnyLabels
-						&& (labelFlagNo == cLabelsOnAllRows || mPoint[i].record.isFlagSet(labelFlagNo))
+						&& isLabelListMember(mPoint[i].record)
 					    && (oneLabelPerCategoryMap==null || vp==oneLabelPerCategoryMap.get(vp.record.getData(mOnePerCategoryLabelCategoryColumn)));
 
 				mComposedMarker[vp.shape].calculate(vp);
@@ -2340,15 +2338,11 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 		}
 
 	private void drawConnectionLine(VisualizationPoint p1, VisualizationPoint p2, float intensity, boolean showArrow) {
-		int focusFlagNo = (mFocusList == FocusableView.cFocusNone) ? -1
-						: (mFocusList == FocusableView.cFocusOnSelection) ? CompoundRecord.cFlagSelected
-						: mTableModel.getListHandler().getListFlagNo(mFocusList);
-
 		VisualizationPoint3D vp1 = (VisualizationPoint3D)p1;
 		VisualizationPoint3D vp2 = (VisualizationPoint3D)p2;
 
-		boolean grayOut1 = focusFlagNo != -1 && !vp1.record.isFlagSet(focusFlagNo);
-		boolean grayOut2 = focusFlagNo != -1 && !vp2.record.isFlagSet(focusFlagNo);
+		boolean grayOut1 = !isInFocus(vp1.record);
+		boolean grayOut2 = !isInFocus(vp2.record);
 
 		int so1 = !mIsStereo ? 0 : (mEyeOffset > 0) ? vp1.stereoOffset : -vp1.stereoOffset;
 		int so2 = !mIsStereo ? 0 : (mEyeOffset > 0) ? vp2.stereoOffset : -vp2.stereoOffset;
@@ -2427,9 +2421,9 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 			return;
 
 		int catCount = getCategoryVisCount(0)* getCategoryVisCount(1)* getCategoryVisCount(2);
-		int focusFlagNo = getFocusFlag();
+		boolean considerFocus = (mFocusList != FocusableView.cFocusNone);
 		int basicColorCount = mMarkerColor.getColorList().length + 2;
-		int colorCount = basicColorCount * ((focusFlagNo == -1) ? 1 : 2);
+		int colorCount = basicColorCount * (considerFocus ? 2 : 1);
 
 		if (mHighlightedPoint != null && (clipRect != null || mIsAdjusting)) {
 			short colix = Graphics3D.getColix(mChartInfo.color[mHighlightedPoint.colorIndex].darker().darker().getRGB());
@@ -2716,7 +2710,7 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 			if (isMolecule) {
 				if (mLabelMolecule == null)
 					mLabelMolecule = new StereoMolecule();
-				StereoMolecule mol = mTableModel.getChemicalStructure(vp.record, column, CompoundTableModel.ATOM_COLOR_MODE_EXPLICIT, mLabelMolecule);
+				StereoMolecule mol = mTableModel.getCachedChemicalStructure(vp.record, column, CompoundTableModel.ATOM_COLOR_MODE_EXPLICIT, mLabelMolecule);
 				if (mol == null)
 					return;
 
@@ -414,8 +414,7 @@ public class VisualizationColor implements CompoundTableListener,CompoundTableLi
 			return cDefaultDataColorIndex;
 		if (CompoundTableListHandler.isListColumn(mColorColumn)) {
 			int hitlistIndex = CompoundTableListHandler.convertToListIndex(mColorColumn);
-			int flagNo = mTableModel.getListHandler().getListFlagNo(hitlistIndex);
-			return record.isFlagSet(flagNo) ? cSpecialColorCount : cSpecialColorCount + 1;
+			return mTableModel.getListHandler().isListMember(record, hitlistIndex) ? cSpecialColorCount : cSpecialColorCount + 1;
 			}
 		if (mTableModel.isDescriptorColumn(mColorColumn))
 			return getSimilarityColorIndex(record);
@@ -41,6 +41,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
 import static java.lang.Math.exp;
 import static java.lang.Math.log;
@@ -101,28 +102,14 @@ public class BHTSne implements BarnesHutTSne {
 		int N = parameterObject.getNrRows();
 		int no_dims = parameterObject.getOutputDims();
 
-		double [] Y = new double[N*no_dims];
 //TLS		System.out.println("BH-TSNE X:Shape is = " + N + " x " + D);
 		// Determine whether we are using an exact algorithm
 		double perplexity = parameterObject.getPerplexity();
 		if(N - 1 < 3 * perplexity) { throw new IllegalArgumentException("Perplexity too large for the number of data points!\n"); }
 //TLS		System.out.printf("BH-TSNE Using no_dims = %d, perplexity = %f, and theta = %f\n", no_dims, perplexity, parameterObject.getTheta());
 
-		// Set learning parameters
-		double total_time = 0;
-		int stop_lying_iter = 250, mom_switch_iter = 250;
-		double momentum = .5, final_momentum = .8;
-		double eta = 200.0;
-
-		// Allocate some memory
-		double [] dY    = new double[N * no_dims];
-		double [] uY    = new double[N * no_dims];
-		double [] gains = new double[N * no_dims];
-		for(int i = 0; i < N * no_dims; i++) gains[i] = 1.0;
-
 		// Normalize input data (to prevent numerical problems)
 		pc.startProgress("BH-TSNE Computing input similarities...", 0, 0);
-		long start = System.currentTimeMillis();
 		//zeroMean(X, N, D);
 		double max_X = .0;
 		for(int i = 0; i < N * D; i++) {
@@ -181,27 +168,77 @@ public class BHTSne implements BarnesHutTSne {
 			for(int i = 0; i < row_P[N]; i++) sum_P += val_P[i];
 			for(int i = 0; i < row_P[N]; i++) val_P[i] /= sum_P;
 		}
-		long end = System.currentTimeMillis();
+
+		return learnEmbedding(row_P, col_P, val_P, N, no_dims, parameterObject.getMaxIter(), parameterObject.getTheta(), pc);
+	}
+
+	/**
+	 * Performs Barnes-Hut t-SNE with input similarities derived from precomputed nearest neighbors
+	 * rather than from input vectors. This allows any metric, e.g. a descriptor similarity, and
+	 * avoids building dense input vectors and a vantage point tree.
+	 * @param N number of points
+	 * @param neighbor_start N+1 offsets into neighbor and distance; neighbor count may vary per point
+	 * @param neighbor neighbor indexes of all points, not containing the point itself
+	 * @param distance non-negative distances of all neighbors
+	 * @param no_dims output dimensions
+	 * @param perplexity should be lower than the neighbor count per point
+	 * @param max_iter
+	 * @param theta Barnes-Hut accuracy, e.g. 0.5
+	 * @param pc
+	 * @return coordinates as [N][no_dims]
+	 */
+	public double[][] tsne(int N, int[] neighbor_start, int[] neighbor, double[] distance,
+						   int no_dims, double perplexity, int max_iter, double theta, ProgressController pc) {
+		pc.startProgress("BH-TSNE Computing input similarities...", 0, 0);
+
+		int [] row_P = neighbor_start;
+		int [] col_P = neighbor;
+		double [] val_P = new double[row_P[N]];
+		computeGaussianPerplexity(N, row_P, distance, val_P, perplexity);
+
+		// Symmetrize input similarities
+		SymResult res = symmetrizeMatrix(row_P, col_P, val_P, N);
+		row_P = res.sym_row_P;
+		col_P = res.sym_col_P;
+		val_P = res.sym_val_P;
+
+		double sum_P = .0;
+		for(int i = 0; i < row_P[N]; i++) sum_P += val_P[i];
+		for(int i = 0; i < row_P[N]; i++) val_P[i] /= sum_P;
+
+		if (pc.threadMustDie())
+			return null;
+
+		return learnEmbedding(row_P, col_P, val_P, N, no_dims, max_iter, theta, pc);
+	}
+
+	// Learn embedding from symmetric, normalized sparse input similarities
+	double[][] learnEmbedding(int[] row_P, int[] col_P, double[] val_P, int N, int no_dims, int max_iter, double theta, ProgressController pc) {
+		// Set learning parameters
+		int stop_lying_iter = 250, mom_switch_iter = 250;
+		double momentum = .5, final_momentum = .8;
+		double eta = 200.0;
+
+		// Allocate some memory
+		double [] Y     = new double[N * no_dims];
+		double [] dY    = new double[N * no_dims];
+		double [] uY    = new double[N * no_dims];
+		double [] gains = new double[N * no_dims];
+		for(int i = 0; i < N * no_dims; i++) gains[i] = 1.0;
 
 		// Lie about the P-values
-		if(exact) { for(int i = 0; i < N * N; i++)        P[i] *= 12.0; }
-		else {      for(int i = 0; i < row_P[N]; i++) val_P[i] *= 12.0; }
+		for(int i = 0; i < row_P[N]; i++) val_P[i] *= 12.0;
 
 		// Initialize solution (randomly)
 		for(int i = 0; i < N * no_dims; i++) Y[i] = ThreadLocalRandom.current().nextDouble() * 0.0001;
 
 		// Perform main training loop
-//TLS		if(exact) System.out.printf("Done in %4.2f seconds!\nLearning embedding...\n", (end - start) / 1000.0);
-//TLS		else System.out.printf("Done in %4.2f seconds (sparsity = %f)!\nLearning embedding...\n", (end - start) / 1000.0, (double) row_P[N] / ((double) N * (double) N));
-		pc.startProgress("Learning embedding...", 0, parameterObject.getMaxIter());
-		start = System.currentTimeMillis();
-//TLS		for(int iter = 0; iter < parameterObject.getMaxIter() && !abort; iter++) {
-		for(int iter = 0; iter < parameterObject.getMaxIter() && !pc.threadMustDie(); iter++) {
+		pc.startProgress("Learning embedding...", 0, max_iter);
+		for(int iter = 0; iter < max_iter && !pc.threadMustDie(); iter++) {
 			pc.updateProgress(iter);
 
-			if(exact) computeExactGradient(P, Y, N, no_dims, dY);
 			// Compute (approximate) gradient
-			else computeGradient(P, row_P, col_P, val_P, Y, N, no_dims, dY, parameterObject.getTheta());
+			computeGradient(null, row_P, col_P, val_P, Y, N, no_dims, dY, theta);
 
 			updateGradient(N, no_dims, Y, momentum, eta, dY, uY, gains);
 
@@ -210,34 +247,11 @@ public class BHTSne implements BarnesHutTSne {
 
 			// Stop lying about the P-values after a while, and switch momentum
 			if(iter == stop_lying_iter) {
-				if(exact) { for(int i = 0; i < N * N; i++)        P[i] /= 12.0; }
-				else      { for(int i = 0; i < row_P[N]; i++) val_P[i] /= 12.0; }
+				for(int i = 0; i < row_P[N]; i++) val_P[i] /= 12.0;
 			}
 			if(iter == mom_switch_iter) momentum = final_momentum;
-
-			// Print out progress
-			if(((iter > 0 && iter % 50 == 0) || iter == parameterObject.getMaxIter() - 1) && !parameterObject.silent() ) {
-				end = System.currentTimeMillis();
-				String err_string = "not_calculated";
-				if(parameterObject.printError()) {
-					double C = .0;
-					if(exact) C = evaluateError(P, Y, N, no_dims);
-					else      C = evaluateError(row_P, col_P, val_P, Y, N, no_dims, parameterObject.getTheta());  // doing approximate computation here!
-					err_string = "" + C;
-				}
-//TLS				if(iter == 0)
-//TLS					System.out.printf("Iteration %d: error is %s\n", iter + 1, err_string);
-//TLS				else {
-if (iter != 0)
-					total_time += (end - start) / 1000.0;
-//TLS					System.out.printf("Iteration %d: error is %s (50 iterations in %4.2f seconds)\n", iter, err_string, (end - start) / 1000.0);
-//TLS				}
-				start = System.currentTimeMillis();
-			}
 		}
-		end = System.currentTimeMillis(); total_time += (end - start) / 1000.0;
 
-//TLS		System.out.printf("Fitting performed in %4.2f seconds.\n", total_time);
 		return expand(Y,N,no_dims);
 	}
 
@@ -465,6 +479,68 @@ if (iter != 0)
 		}
 	}
 
+	// Compute input similarities with a fixed perplexity from precomputed neighbor distances
+	void computeGaussianPerplexity(int N, int [] row_P, double [] distance, double [] val_P, double perplexity) {
+		IntStream.range(0, N).parallel().forEach(n -> {
+			int K = row_P[n + 1] - row_P[n];
+			if(K == 0) return;
+
+			double [] cur_P = new double[K];
+
+			// Initialize some variables for binary search
+			boolean found = false;
+			double beta = 1.0;
+			double min_beta = -Double.MAX_VALUE;
+			double max_beta =  Double.MAX_VALUE;
+			double tol = 1e-5;
+
+			// Iterate until we found a good perplexity
+			int iter = 0;
+			double sum_P = 0.;
+			while(!found && iter < 200) {
+
+				// Compute Gaussian kernel row and entropy of current row
+				sum_P = Double.MIN_VALUE;
+				double H = .0;
+				for(int m = 0; m < K; m++) {
+					cur_P[m] = exp(-beta * distance[row_P[n] + m]);
+					sum_P += cur_P[m];
+					H += beta * (distance[row_P[n] + m] * cur_P[m]);
+				}
+				H = (H / sum_P) + log(sum_P);
+
+				// Evaluate whether the entropy is within the tolerance level
+				double Hdiff = H - log(perplexity);
+				if(Hdiff < tol && -Hdiff < tol) {
+					found = true;
+				}
+				else {
+					if(Hdiff > 0) {
+						min_beta = beta;
+						if(max_beta == Double.MAX_VALUE || max_beta == -Double.MAX_VALUE)
+							beta *= 2.0;
+						else
+							beta = (beta + max_beta) / 2.0;
+					}
+					else {
+						max_beta = beta;
+						if(min_beta == -Double.MAX_VALUE || min_beta == Double.MAX_VALUE)
+							beta /= 2.0;
+						else
+							beta = (beta + min_beta) / 2.0;
+					}
+				}
+
+				// Update iteration counter
+				iter++;
+			}
+
+			// Row-normalize current row of P and store in matrix
+			for(int m = 0; m < K; m++)
+				val_P[row_P[n] + m] = cur_P[m] / sum_P;
+		});
+	}
+
 	// Compute input similarities with a fixed perplexity using ball trees
 	void computeGaussianPerplexity(double [] X, int N, int D, int [] _row_P, int [] _col_P, double [] _val_P, double perplexity, int K) {
 		if(perplexity > K) System.out.println("BH-TSNE Perplexity should be lower than K!");
@@ -0,0 +1,282 @@
+package com.jujutsu.tsne.barneshut;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * t-SNE, which calculates repulsive forces of 2-dimensional embeddings by interpolation on a
+ * regular grid rather than with a Barnes-Hut tree. Point charges are spread onto the grid nodes
+ * by bilinear weights, convolved with the t-SNE kernels 1/(1+d^2) and 1/(1+d^2)^2 using FFTs of
+ * the zero padded grid, and the resulting potentials are interpolated back to the points.
+ * The cost per iteration is O(N + G^2 log G) with G being the grid size, which is limited.
+ * All grids and force buffers are kept and reused across iterations.
+ * Embeddings with other than 2 dimensions are optimized with the Barnes-Hut gradient.
+ */
+public class FFTTsne extends ParallelBHTsne {
+	private static final double TARGET_GRID_SPACING = 0.5;
+	private static final int MIN_GRID_SIZE = 32;
+	private static final int MAX_GRID_SIZE = 1024;
+
+	private int currentGridSize,paddedSize;
+	private double[] k1Re,k1Im,k2Re,k2Im;	// transformed kernels
+	private double[] c1Re,c1Im,cxyRe,cxyIm;	// unit charges and coordinate charges (x real, y imaginary)
+	private double[] cosTable,sinTable;
+	private int[] bitReverse;
+	private double[] pos_f,sum_Q;
+
+	@Override
+	void computeGradient(double [] P, int [] inp_row_P,
+			int [] inp_col_P, double [] inp_val_P, double [] Y, int N, int D,
+			double [] dC, double theta)
+	{
+		if(D != 2) {
+			super.computeGradient(P, inp_row_P, inp_col_P, inp_val_P, Y, N, D, dC, theta);
+			return;
+		}
+
+		if(pos_f == null || pos_f.length != N * D) {
+			pos_f = new double[N * D];
+			sum_Q = new double[N];
+		}
+
+		computeEdgeForces(inp_row_P, inp_col_P, inp_val_P, Y, N);
+
+		// Determine grid covering all points
+		double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for(int n = 0; n < N; n++) {
+			minX = Math.min(minX, Y[2*n]);
+			maxX = Math.max(maxX, Y[2*n]);
+			minY = Math.min(minY, Y[2*n+1]);
+			maxY = Math.max(maxY, Y[2*n+1]);
+		}
+		double extent = Math.max(1e-6, Math.max(maxX - minX, maxY - minY));
+		int gridSize = MIN_GRID_SIZE;
+		while(gridSize < MAX_GRID_SIZE && (gridSize - 1) * TARGET_GRID_SPACING < extent)
+			gridSize *= 2;
+		ensureGridSize(gridSize);
+		final int G = gridSize;
+		int M = paddedSize;
+		double h = extent / (G - 1);
+
+		// Spread unit and coordinate charges onto grid nodes
+		Arrays.fill(c1Re, 0, M * M, 0.0);
+		Arrays.fill(c1Im, 0, M * M, 0.0);
+		Arrays.fill(cxyRe, 0, M * M, 0.0);
+		Arrays.fill(cxyIm, 0, M * M, 0.0);
+		for(int n = 0; n < N; n++) {
+			double fx = (Y[2*n] - minX) / h;
+			double fy = (Y[2*n+1] - minY) / h;
+			int ix = Math.min((int)fx, G - 2);
+			int iy = Math.min((int)fy, G - 2);
+			double wx = fx - ix;
+			double wy = fy - iy;
+			int index = iy * M + ix;
+			spread(index,         (1 - wx) * (1 - wy), Y[2*n], Y[2*n+1]);
+			spread(index + 1,     wx * (1 - wy),       Y[2*n], Y[2*n+1]);
+			spread(index + M,     (1 - wx) * wy,       Y[2*n], Y[2*n+1]);
+			spread(index + M + 1, wx * wy,             Y[2*n], Y[2*n+1]);
+		}
+
+		// Sample kernels on all node offsets of the padded grid with circular wrap-around
+		for(int b = 0; b < M; b++) {
+			int dy = (b < G) ? b : (b > M - G) ? b - M : Integer.MAX_VALUE;
+			for(int a = 0; a < M; a++) {
+				int dx = (a < G) ? a : (a > M - G) ? a - M : Integer.MAX_VALUE;
+				int index = b * M + a;
+				if(dx == Integer.MAX_VALUE || dy == Integer.MAX_VALUE) {
+					k1Re[index] = 0.0;
+					k2Re[index] = 0.0;
+				}
+				else {
+					double q = 1.0 / (1.0 + h * h * ((double)dx * dx + (double)dy * dy));
+					k1Re[index] = q;
+					k2Re[index] = q * q;
+				}
+				k1Im[index] = 0.0;
+				k2Im[index] = 0.0;
+			}
+		}
+
+		fft2D(k1Re, k1Im, false);
+		fft2D(k2Re, k2Im, false);
+		fft2D(c1Re, c1Im, false);
+		fft2D(cxyRe, cxyIm, false);
+
+		// Multiply in frequency space. Both kernel convolutions of the unit charges are real,
+		// which allows combining them into one inverse transform as real and imaginary part.
+		final double[] kr1 = k1Re, ki1 = k1Im, kr2 = k2Re, ki2 = k2Im;
+		final double[] cr1 = c1Re, ci1 = c1Im, crxy = cxyRe, cixy = cxyIm;
+		IntStream.range(0, M).parallel().forEach(row -> {
+			for(int i = row * M; i < (row + 1) * M; i++) {
+				double p1Re = kr1[i] * cr1[i] - ki1[i] * ci1[i];
+				double p1Im = kr1[i] * ci1[i] + ki1[i] * cr1[i];
+				double p2Re = kr2[i] * cr1[i] - ki2[i] * ci1[i];
+				double p2Im = kr2[i] * ci1[i] + ki2[i] * cr1[i];
+				double pxyRe = kr2[i] * crxy[i] - ki2[i] * cixy[i];
+				double pxyIm = kr2[i] * cixy[i] + ki2[i] * crxy[i];
+				cr1[i] = p1Re - p2Im;
+				ci1[i] = p1Im + p2Re;
+				crxy[i] = pxyRe;
+				cixy[i] = pxyIm;
+			}
+		});
+
+		fft2D(c1Re, c1Im, true);
+		fft2D(cxyRe, cxyIm, true);
+
+		// Interpolate potentials back to points
+		final double fMinX = minX, fMinY = minY;
+		final double[] fPos_f = pos_f, fSum_Q = sum_Q;
+		IntStream.range(0, N).parallel().forEach(n -> {
+			double fx = (Y[2*n] - fMinX) / h;
+			double fy = (Y[2*n+1] - fMinY) / h;
+			int ix = Math.min((int)fx, G - 2);
+			int iy = Math.min((int)fy, G - 2);
+			double wx = fx - ix;
+			double wy = fy - iy;
+			int i00 = iy * M + ix;
+			int i10 = i00 + 1;
+			int i01 = i00 + M;
+			int i11 = i01 + 1;
+			double w00 = (1 - wx) * (1 - wy), w10 = wx * (1 - wy), w01 = (1 - wx) * wy, w11 = wx * wy;
+
+			double phi1 = w00 * cr1[i00] + w10 * cr1[i10] + w01 * cr1[i01] + w11 * cr1[i11];
+			double phi2 = w00 * ci1[i00] + w10 * ci1[i10] + w01 * ci1[i01] + w11 * ci1[i11];
+			double psiX = w00 * crxy[i00] + w10 * crxy[i10] + w01 * crxy[i01] + w11 * crxy[i11];
+			double psiY = w00 * cixy[i00] + w10 * cixy[i10] + w01 * cixy[i01] + w11 * cixy[i11];
+
+			fSum_Q[n] = phi1 - 1.0;	// without the point's own kernel value 1/(1+0)
+			dC[2*n]   = Y[2*n] * phi2 - psiX;	// temporarily the unnormalized repulsive force
+			dC[2*n+1] = Y[2*n+1] * phi2 - psiY;
+		});
+
+		double sumQ = 0.0;
+		for(int n = 0; n < N; n++)
+			sumQ += fSum_Q[n];
+		final double totalSum_Q = Math.max(sumQ, Double.MIN_VALUE);
+
+		// Compute final t-SNE gradient
+		IntStream.range(0, N * D).parallel().forEach(i -> {
+			dC[i] = fPos_f[i] - dC[i] / totalSum_Q;
+		});
+	}
+
+	private void spread(int index, double w, double x, double y) {
+		c1Re[index] += w;
+		cxyRe[index] += w * x;
+		cxyIm[index] += w * y;
+	}
+
+	private void computeEdgeForces(int [] row_P, int [] col_P, double [] val_P, double [] Y, int N) {
+		final double[] f = pos_f;
+		IntStream.range(0, N).parallel().forEach(n -> {
+			double fx = 0.0, fy = 0.0;
+			for(int i = row_P[n]; i < row_P[n + 1]; i++) {
+				int m = col_P[i];
+				double dx = Y[2*n] - Y[2*m];
+				double dy = Y[2*n+1] - Y[2*m+1];
+				double q = val_P[i] / (1.0 + dx * dx + dy * dy);
+				fx += q * dx;
+				fy += q * dy;
+			}
+			f[2*n] = fx;
+			f[2*n+1] = fy;
+		});
+	}
+
+	private void ensureGridSize(int G) {
+		if(G == currentGridSize)
+			return;
+
+		currentGridSize = G;
+		paddedSize = 2 * G;
+		int M = paddedSize;
+		if(k1Re == null || k1Re.length < M * M) {
+			k1Re = new double[M * M];
+			k1Im = new double[M * M];
+			k2Re = new double[M * M];
+			k2Im = new double[M * M];
+			c1Re = new double[M * M];
+			c1Im = new double[M * M];
+			cxyRe = new double[M * M];
+			cxyIm = new double[M * M];
+		}
+
+		cosTable = new double[M / 2];
+		sinTable = new double[M / 2];
+		for(int k = 0; k < M / 2; k++) {
+			cosTable[k] = Math.cos(2.0 * Math.PI * k / M);
+			sinTable[k] = Math.sin(2.0 * Math.PI * k / M);
+		}
+
+		int bits = Integer.numberOfTrailingZeros(M);
+		bitReverse = new int[M];
+		for(int i = 0; i < M; i++)
+			bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+	}
+
+	/**
+	 * Transforms rows, transposes, and transforms rows again. Thus, the forward transform
+	 * leaves the spectrum transposed, which the inverse transform undoes. This is fine for
+	 * convolutions, because all spectra are multiplied element-wise in the same layout.
+	 */
+	private void fft2D(double[] re, double[] im, boolean inverse) {
+		int M = paddedSize;
+		IntStream.range(0, M).parallel().forEach(row -> fft1D(re, im, row * M, inverse));
+		transpose(re, im);
+		IntStream.range(0, M).parallel().forEach(row -> fft1D(re, im, row * M, inverse));
+		if(inverse) {
+			double scale = 1.0 / ((double)M * M);
+			IntStream.range(0, M).parallel().forEach(row -> {
+				for(int i = row * M; i < (row + 1) * M; i++) {
+					re[i] *= scale;
+					im[i] *= scale;
+				}
+			});
+		}
+	}
+
+	private void transpose(double[] re, double[] im) {
+		int M = paddedSize;
+		IntStream.range(0, M).parallel().forEach(row -> {
+			for(int col = row + 1; col < M; col++) {
+				int i1 = row * M + col;
+				int i2 = col * M + row;
+				double t = re[i1]; re[i1] = re[i2]; re[i2] = t;
+				t = im[i1]; im[i1] = im[i2]; im[i2] = t;
+			}
+		});
+	}
+
+	// In-place iterative radix-2 FFT of paddedSize values starting at offset
+	private void fft1D(double[] re, double[] im, int offset, boolean inverse) {
+		int n = paddedSize;
+		for(int i = 0; i < n; i++) {
+			int j = bitReverse[i];
+			if(i < j) {
+				double t = re[offset + i]; re[offset + i] = re[offset + j]; re[offset + j] = t;
+				t = im[offset + i]; im[offset + i] = im[offset + j]; im[offset + j] = t;
+			}
+		}
+
+		for(int len = 2; len <= n; len <<= 1) {
+			int half = len >> 1;
+			int step = n / len;
+			for(int i = 0; i < n; i += len) {
+				for(int k = 0; k < half; k++) {
+					double wr = cosTable[k * step];
+					double wi = inverse ? sinTable[k * step] : -sinTable[k * step];
+					int a = offset + i + k;
+					int b = a + half;
+					double tr = re[b] * wr - im[b] * wi;
+					double ti = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+}